@@ -1,13 +1,14 @@
 package com.sap.cloud.s4hana.eventing.businesspartner.controller;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.sap.cloud.s4hana.eventing.businesspartner.model.AddrConfState;
@@ -15,17 +16,21 @@ import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
 import com.sap.cloud.s4hana.eventing.businesspartner.model.CustomBusinessPartner;
 import com.sap.cloud.s4hana.eventing.businesspartner.service.CustomBusinessPartnerService;
 import com.sap.cloud.s4hana.eventing.core.exceptions.RestExceptionHandler;
-import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+import com.sap.cloud.s4hana.eventing.core.util.ODataTaskExecutor;
+import com.sap.cloud.s4hana.eventing.security.AddressChecksum;
 import com.sap.cloud.s4hana.eventing.security.AddressConfirmationToken;
-import com.sap.cloud.s4hana.eventing.security.ExecuteWithJwtTokenFromXsuaa;
-import com.sap.cloud.s4hana.eventing.security.HashUtils;
-import com.sap.cloud.s4hana.eventing.security.RSACipher;
+import com.sap.cloud.s4hana.eventing.security.AddressConfirmationTokenCache;
+import com.sap.cloud.s4hana.eventing.security.TokenCipher;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
 
 /**
  * {@link RestController} which handles communication with the UI.
  * <p> 
  * The error handling is done in {@link RestExceptionHandler}
+ * <p>
+ * The token is validated in the servlet thread, the requests to S/4HANA are
+ * executed by {@link ODataTaskExecutor} so that the servlet thread is released
+ * in the meantime.
  */
 @RestController
 @RequestMapping(BusinessPartnerController.PATH)
@@ -34,14 +39,16 @@ public class BusinessPartnerController {
     public static final String PATH = "/rest/businesspartner";
     
     private CustomBusinessPartnerService businessPartnerService;
-    private RSACipher cipher;
+    private AddressConfirmationTokenCache tokenCache;
+    private ODataTaskExecutor oDataTaskExecutor;
     
     @Autowired
     public BusinessPartnerController(CustomBusinessPartnerService businessPartnerService,
-    		RSACipher cipher) {
+    		AddressConfirmationTokenCache tokenCache, ODataTaskExecutor oDataTaskExecutor) {
     	
         this.businessPartnerService = businessPartnerService;
-        this.cipher = cipher;
+        this.tokenCache = tokenCache;
+        this.oDataTaskExecutor = oDataTaskExecutor;
     }
     
     /**
@@ -52,26 +59,22 @@ public class BusinessPartnerController {
 	 * 
 	 * @param encryptedToken
 	 *            {@link AddressConfirmationToken} string encrypted with
-	 *            {@link RSACipher}. It authorizes the current user and contains
+	 *            {@link TokenCipher}. It authorizes the current user and contains
 	 *            the keys of {@link BusinessPartnerAddress} to be fetched.
 	 * 
 	 * @return {@link BusinessPartnerAddress} as a {@link AddressDTO} Data
-	 *         Transfer Object
+	 *         Transfer Object, once it was fetched
 	 * 
 	 * @see AddressConfirmationToken
-	 * @see RSACipher#encrypt(java.io.Serializable)
-	 * @see RSACipher#decrypt(java.io.Serializable)
+	 * @see TokenCipher#encrypt(java.io.Serializable)
+	 * @see TokenCipher#decrypt(java.io.Serializable)
 	 */
     @GetMapping("/address")
-    @ExecuteWithJwtTokenFromXsuaa
-    public AddressDTO getBusinessPartnerAddress(@RequestParam(value = "token", defaultValue = "0") final String encryptedToken) {
-        AddressConfirmationToken token = cipher.decrypt(encryptedToken);
-        if (!token.isValid()){
-            throw new SAPSecurityException("Token expired. "
-            		+ "Please contact your contact person to resend the address confirmation email.");
-        }
+    public CompletableFuture<AddressDTO> getBusinessPartnerAddress(@RequestParam(value = "token", defaultValue = "0") final String encryptedToken) {
+        final AddressConfirmationToken token = tokenCache.getValidToken(encryptedToken);
         
-        return AddressDTO.of(businessPartnerService.getAddressByKeys(token.getBusinessPartner(), token.getAddressID()));
+        return oDataTaskExecutor.supplyAsync(() -> AddressDTO.of(
+        		businessPartnerService.getAddressByKeys(token.getBusinessPartner(), token.getAddressID())));
     }
     
     
@@ -85,32 +88,32 @@ public class BusinessPartnerController {
 	 * 
 	 * @param encryptedToken
 	 *            {@link AddressConfirmationToken} string encrypted with
-	 *            {@link RSACipher}
+	 *            {@link TokenCipher}
+	 * 
+	 * @return {@code 204 No Content}, once the address was updated
 	 * 
 	 * @see AddressConfirmationToken
-	 * @see RSACipher#encrypt(java.io.Serializable)
-	 * @see RSACipher#decrypt(java.io.Serializable)
+	 * @see TokenCipher#encrypt(java.io.Serializable)
+	 * @see TokenCipher#decrypt(java.io.Serializable)
 	 */
     @PatchMapping("/address")
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    @ExecuteWithJwtTokenFromXsuaa
-    public void updateBusinessPartnerAddress(@RequestBody AddressDTO address,
+    public CompletableFuture<ResponseEntity<Void>> updateBusinessPartnerAddress(@RequestBody AddressDTO address,
             @RequestParam("token") final String encryptedToken) {
     	
-        AddressConfirmationToken token = cipher.decrypt(encryptedToken);
-        if (!token.isValid()){
-            throw new SAPSecurityException("Token expired. "
-            		+ "Please contact your contact person to resend the address confirmation email.");
-        }
-        
-        businessPartnerService.updateAddress(address);
-        
-        CustomBusinessPartner businessPartner = CustomBusinessPartner.newInstance();
+        tokenCache.getValidToken(encryptedToken);
         
-        businessPartner.setAddressConfirmationState(AddrConfState.CONFIRMED);
-        businessPartner.setAddressChecksum(HashUtils.hash(address.toString()));
-        businessPartner.setBusinessPartner(address.getBusinessPartner());
-        businessPartnerService.updateBusinessPartner(businessPartner);
+        return oDataTaskExecutor.supplyAsync(() -> {
+        	businessPartnerService.updateAddress(address);
+        	
+        	CustomBusinessPartner businessPartner = CustomBusinessPartner.newInstance();
+        	
+        	businessPartner.setAddressConfirmationState(AddrConfState.CONFIRMED);
+        	businessPartner.setAddressChecksum(AddressChecksum.of(address));
+        	businessPartner.setBusinessPartner(address.getBusinessPartner());
+        	businessPartnerService.updateBusinessPartner(businessPartner);
+        	
+        	return ResponseEntity.noContent().build();
+        });
     }
     
 }
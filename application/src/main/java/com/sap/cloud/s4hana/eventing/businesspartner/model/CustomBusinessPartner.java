@@ -27,6 +27,28 @@ public class CustomBusinessPartner extends BusinessPartner {
 		return MapperUtils.map(businessPartner, CustomBusinessPartner.class);
 	}
 	
+	/**
+	 * @return a new instance with only the key, the version identifier and the
+	 *         custom fields of the given {@link BusinessPartner}, so that an
+	 *         update does not send its other fields and navigation properties
+	 */
+	public static CustomBusinessPartner customFieldsOf(BusinessPartner businessPartner) {
+		final CustomBusinessPartner customFields = newInstance();
+		
+		customFields.setBusinessPartner(businessPartner.getBusinessPartner());
+		customFields.setVersionIdentifier(businessPartner.getVersionIdentifier().getOrNull());
+		copyCustomField(businessPartner, customFields, ADDRESS_CONFIRMATION_STATE_CUSTOM_FIELD_NAME);
+		copyCustomField(businessPartner, customFields, ADDRESS_CHECKSUM_CUSTOM_FIELD_NAME);
+		
+		return customFields;
+	}
+	
+	private static void copyCustomField(BusinessPartner source, BusinessPartner target, String fieldName) {
+		if (source.hasCustomField(fieldName)) {
+			target.setCustomField(fieldName, source.getCustomField(fieldName));
+		}
+	}
+	
 	/**
 	 * @return address confirmation state or {@code null} if the state is invalid
 	 */
@@ -0,0 +1,70 @@
+package com.sap.cloud.s4hana.eventing.businesspartner.model;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BPContactToFuncAndDept;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+
+/**
+ * A business partner together with the associated objects that are needed to
+ * confirm its address, read from SAP S/4HANA in one request.
+ *
+ * @see com.sap.cloud.s4hana.eventing.businesspartner.service.CustomBusinessPartnerService#getExpandedBusinessPartnerByKey(String)
+ */
+public class ExpandedBusinessPartner {
+
+	private final CustomBusinessPartner businessPartner;
+	private final BusinessPartnerAddress address;
+	private final List<BPContactToFuncAndDept> contacts;
+
+	public static ExpandedBusinessPartner of(CustomBusinessPartner businessPartner,
+			BusinessPartnerAddress address,
+			List<BPContactToFuncAndDept> contacts) {
+
+		return new ExpandedBusinessPartner(businessPartner, address, contacts);
+	}
+
+	protected ExpandedBusinessPartner(CustomBusinessPartner businessPartner,
+			BusinessPartnerAddress address,
+			List<BPContactToFuncAndDept> contacts) {
+
+		super();
+		this.businessPartner = businessPartner;
+		this.address = address;
+		this.contacts = contacts == null ? Collections.emptyList() : Collections.unmodifiableList(contacts);
+	}
+
+	/**
+	 * @return root and custom fields of the business partner
+	 */
+	public CustomBusinessPartner getBusinessPartner() {
+		return businessPartner;
+	}
+
+	/**
+	 * @return the first address of the business partner or {@code null} if
+	 *         the business partner has no address
+	 */
+	public BusinessPartnerAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return functions and departments of the contact persons of the
+	 *         business partner, i.e. of the company with its key, which is
+	 *         not necessarily its customer number
+	 */
+	public List<BPContactToFuncAndDept> getContacts() {
+		return contacts;
+	}
+
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+
+}
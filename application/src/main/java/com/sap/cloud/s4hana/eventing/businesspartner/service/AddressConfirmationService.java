@@ -3,7 +3,12 @@ package com.sap.cloud.s4hana.eventing.businesspartner.service;
 import static com.sap.cloud.s4hana.eventing.businesspartner.model.AddrConfState.INITIAL;
 import static com.sap.cloud.s4hana.eventing.businesspartner.model.AddrConfState.OPEN;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import javax.validation.Valid;
 
@@ -18,12 +23,16 @@ import com.google.common.annotations.VisibleForTesting;
 import com.sap.cloud.s4hana.eventing.businesspartner.model.AddrConfState;
 import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
 import com.sap.cloud.s4hana.eventing.businesspartner.model.CustomBusinessPartner;
+import com.sap.cloud.s4hana.eventing.businesspartner.model.ExpandedBusinessPartner;
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.s4hana.eventing.security.AddressChecksum;
 import com.sap.cloud.s4hana.eventing.security.AddressConfirmationToken;
-import com.sap.cloud.s4hana.eventing.security.HashUtils;
-import com.sap.cloud.s4hana.eventing.security.RSACipher;
+import com.sap.cloud.s4hana.eventing.security.ExecuteWithJwtTokenFromXsuaa;
+import com.sap.cloud.s4hana.eventing.security.TokenCipher;
 import com.sap.cloud.s4hana.eventing.sendmail.AddressChangeNotification;
 import com.sap.cloud.s4hana.eventing.sendmail.AddressChangeNotificationService;
+import com.sap.cloud.s4hana.eventing.sendmail.MailDeliveredEvent;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BPContactToFuncAndDept;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
@@ -39,52 +48,139 @@ public class AddressConfirmationService {
 	public static final int DEFAULT_NUMBER_OF_DAYS_VALID = 4;
 	
     private final CustomBusinessPartnerService customBusinessPartnerService;
+    private final BusinessPartnerUpdateBatcher businessPartnerUpdateBatcher;
     private final AddressChangeNotificationService notificationService;
-    private final RSACipher cipher;
+    private final TokenCipher cipher;
     
     private String addressConfirmationUrl;
     private final int numberOfDaysValid;
     
     @Autowired
     public AddressConfirmationService(CustomBusinessPartnerService customBusinessPartnerService, 
+            BusinessPartnerUpdateBatcher businessPartnerUpdateBatcher,
             AddressChangeNotificationService notificationService,
-            RSACipher cipher,
+            TokenCipher cipher,
             @Value("${addressConfirmation.url}") String confirmationLink,
 			@Value("${security.token.numberOfDaysValid:" + DEFAULT_NUMBER_OF_DAYS_VALID + "}") int numberOfDaysValid) {
         
         this.customBusinessPartnerService = customBusinessPartnerService;
+        this.businessPartnerUpdateBatcher = businessPartnerUpdateBatcher;
         this.notificationService = notificationService;
         this.cipher = cipher;
         this.addressConfirmationUrl = confirmationLink;
         this.numberOfDaysValid = numberOfDaysValid;
     }
     
+    @ExecuteWithJwtTokenFromXsuaa(error = "There was an exception while handling an event. The event was dropped.")
     public void confirmAddress(@Valid String businessPartnerKey) {
     	log.debug("Confirm the address of a business partner with key {}", businessPartnerKey);
     	
-        CustomBusinessPartner businessPartner = customBusinessPartnerService.getBusinessPartnerRootByKey(businessPartnerKey);
+        // get the business partner together with its address and contacts in one request
+        final ExpandedBusinessPartner expandedBusinessPartner = customBusinessPartnerService.getExpandedBusinessPartnerByKey(businessPartnerKey);
+        
+        final Confirmation confirmation = prepareConfirmation(expandedBusinessPartner);
+        
+        if (confirmation.update) {
+        	businessPartnerUpdateBatcher.updateBusinessPartner(expandedBusinessPartner.getBusinessPartner());
+        }
+        
+        if (confirmation.email) {
+        	queueAddressConfirmationEmailQuietly(expandedBusinessPartner);
+        }
+    }
+    
+	/**
+	 * Confirms the addresses of several business partners like
+	 * {@link #confirmAddress(String)}, but reads all of them in one request
+	 * and sends all updates in one {@code $batch} request.
+	 * <p>
+	 * Emails are queued only for business partners that were updated
+	 * successfully.
+	 * 
+	 * @return the errors of the business partners that could not be updated
+	 *         by their keys, empty if all of them were updated
+	 * @throws SAPODataException
+	 *             if the business partners could not be read or the
+	 *             {@code $batch} request as a whole failed
+	 */
+    @ExecuteWithJwtTokenFromXsuaa(error = "There was an exception while handling a batch of events.")
+    public Map<String, SAPODataException> confirmAddresses(List<String> businessPartnerKeys) {
+    	log.debug("Confirm the addresses of {} business partners", businessPartnerKeys.size());
+    	
+    	final List<ExpandedBusinessPartner> expandedBusinessPartners = customBusinessPartnerService
+    			.getExpandedBusinessPartnersByKeys(businessPartnerKeys);
+    	
+    	// business partners to be updated and the steps to confirm their addresses in the same order
+    	final List<ExpandedBusinessPartner> updated = new ArrayList<>();
+    	final List<Confirmation> confirmations = new ArrayList<>();
+    	for (ExpandedBusinessPartner expandedBusinessPartner : expandedBusinessPartners) {
+    		final Confirmation confirmation = prepareConfirmation(expandedBusinessPartner);
+    		
+    		if (confirmation.update) {
+    			updated.add(expandedBusinessPartner);
+    			confirmations.add(confirmation);
+    		} else if (confirmation.email) {
+    			queueAddressConfirmationEmailQuietly(expandedBusinessPartner);
+    		}
+    	}
+    	
+    	if (updated.isEmpty()) {
+    		return Collections.emptyMap();
+    	}
+    	
+    	final List<CustomBusinessPartner> businessPartners = new ArrayList<>(updated.size());
+    	updated.forEach(expandedBusinessPartner -> businessPartners.add(expandedBusinessPartner.getBusinessPartner()));
+    	
+    	final List<Optional<SAPODataException>> results = customBusinessPartnerService.updateBusinessPartners(businessPartners);
+    	
+    	final Map<String, SAPODataException> failed = new LinkedHashMap<>();
+    	for (int i = 0; i < updated.size(); i++) {
+    		final String businessPartnerKey = updated.get(i).getBusinessPartner().getBusinessPartner();
+    		if (i >= results.size()) {
+    			failed.put(businessPartnerKey, new SAPODataException(
+    					"There was no result of the update of the Business Partner " + businessPartnerKey));
+    		} else if (results.get(i).isPresent()) {
+    			failed.put(businessPartnerKey, results.get(i).get());
+    		} else if (confirmations.get(i).email) {
+    			queueAddressConfirmationEmailQuietly(updated.get(i));
+    		}
+    	}
+    	
+    	if (!failed.isEmpty()) {
+    		log.warn("{} of {} Business Partners could not be updated: {}", failed.size(), updated.size(), failed.keySet());
+    	}
+    	
+    	return failed;
+    }
+    
+	/**
+	 * Decides whether {@code expandedBusinessPartner} needs to be updated and
+	 * whether a confirmation email needs to be sent, and sets the address
+	 * confirmation state and checksum accordingly.
+	 */
+    private Confirmation prepareConfirmation(ExpandedBusinessPartner expandedBusinessPartner) {
+        final CustomBusinessPartner businessPartner = expandedBusinessPartner.getBusinessPartner();
+        final String businessPartnerKey = businessPartner.getBusinessPartner();
         
         log.debug("Confirm the address of a business partner {}", businessPartner);
         
         if (StringUtils.isBlank(businessPartner.getCustomer()) || StringUtils.isNotBlank(businessPartner.getIsNaturalPerson())) {
             log.debug("Business partner {} is neither a Customer nor a Person. Therefore the address will not be confirmed", businessPartner);
-            return;
+            return Confirmation.NONE;
         }
         
         // get address
-        BusinessPartnerAddress address = customBusinessPartnerService.getAddress(businessPartner);
+        final BusinessPartnerAddress address = expandedBusinessPartner.getAddress();
         if (address == null) {
             log.debug("No address assigned to business partner {}", businessPartnerKey);
             businessPartner.setAddressChecksum("");
             businessPartner.setAddressConfirmationState(INITIAL);
-            customBusinessPartnerService.updateBusinessPartner(businessPartner);
-            return;
+            return Confirmation.UPDATE;
         }
         
         // check if the address was changed
         final String oldAddressChecksum = businessPartner.getAddressChecksum();
-        final String newAddressCheckSum = HashUtils.hash(AddressDTO.of(address).toString());
-        final boolean addressChanged = !Objects.equals(newAddressCheckSum, oldAddressChecksum);
+        final boolean addressChanged = !AddressChecksum.matches(oldAddressChecksum, address);
         
         final AddrConfState oldAddressConfirmationState = businessPartner.getAddressConfirmationState();
         
@@ -96,7 +192,7 @@ public class AddressConfirmationService {
                     oldAddressConfirmationState.toString(),
                     addressChanged ? "" : " NOT");
 			
-            return;
+            return Confirmation.NONE;
         }
         
         if (OPEN.equals(oldAddressConfirmationState)) {
@@ -104,38 +200,77 @@ public class AddressConfirmationService {
 					+ "one have already been sent before, will not bother its contact person anymore",
 					businessPartnerKey);
         	
-            return;
+            return Confirmation.NONE;
         }
              
-        // set confirmation state and address hash
+        // set confirmation state and address hash, the state is set to OPEN
+        // when the email was sent (see onMailDelivered)
+        final String addressChecksum = AddressChecksum.of(address);
         businessPartner.setAddressConfirmationState(INITIAL);
-        businessPartner.setAddressChecksum(newAddressCheckSum);
+        businessPartner.setAddressChecksum(addressChecksum);
         
-        try {
-	        sendAddressConfirmationEmail(businessPartner, address);
-	        businessPartner.setAddressConfirmationState(OPEN);
-        } catch (SAPMailingException e) {
-        	log.debug("Error when sending email", e);
+        // update the business partner before the email is queued, so that
+        // the checksum is already stored when the email was sent. This
+        // includes a legacy checksum that still matches the address, since
+        // onMailDelivered compares the stored checksum with the one of the email
+        if (addressChanged || !INITIAL.equals(oldAddressConfirmationState) 
+        		|| !addressChecksum.equals(oldAddressChecksum)) {
+        	return Confirmation.UPDATE_AND_EMAIL;
         }
         
-        // update the business partner
-        if (addressChanged || !businessPartner.getAddressConfirmationState().equals(oldAddressConfirmationState)) {
-        	customBusinessPartnerService.updateBusinessPartner(businessPartner);   
+        return Confirmation.EMAIL;
+    }
+    
+    private void queueAddressConfirmationEmailQuietly(ExpandedBusinessPartner expandedBusinessPartner) {
+        try {
+	        queueAddressConfirmationEmail(expandedBusinessPartner);
+        } catch (SAPMailingException e) {
+        	log.debug("Error when queuing email", e);
         }
     }
     
     /**
-     * Sends a confirmation email to the contact person of
-     * {@code businessPartner}.
+	 * Sets the address confirmation state of a business partner to OPEN after
+	 * the confirmation email was sent, unless its address was changed again
+	 * in the meantime. Called by
+	 * {@link com.sap.cloud.s4hana.eventing.events.service.MailDeliveredListener}
+	 * outside of the threads sending emails.
+	 */
+    @ExecuteWithJwtTokenFromXsuaa(error = "There was an exception while setting the address confirmation state after an email was sent.")
+    public void onMailDelivered(MailDeliveredEvent event) {
+    	final CustomBusinessPartner businessPartner = customBusinessPartnerService.getBusinessPartnerRootByKey(event.getBusinessPartner());
+    	
+    	if (!INITIAL.equals(businessPartner.getAddressConfirmationState()) 
+    			|| !event.getAddressChecksum().equals(businessPartner.getAddressChecksum())) {
+    		log.debug("Address confirmation state of business partner {} is not changed: "
+    				+ "its address or state was changed after the email was queued", event.getBusinessPartner());
+    		return;
+    	}
+    	
+    	businessPartner.setAddressConfirmationState(OPEN);
+    	businessPartnerUpdateBatcher.updateBusinessPartner(businessPartner);
+    }
+    
+    /**
+     * Queues a confirmation email to the contact person of
+     * {@code businessPartner}, i.e. of the company with its customer number
+     * like {@link CustomBusinessPartnerService#determineResponsibleContact(BusinessPartner)}.
      * 
-     * @return {@code true} if an email was send.<br>
-     *         {@code false} if the Business Partner has no contact person or no
-     *         valid email address can be found.
+     * @throws SAPMailingException
+     *             if the Business Partner has no contact person with a valid
+     *             email address or the email cannot be queued
      */
 	@VisibleForTesting
-    protected void sendAddressConfirmationEmail(CustomBusinessPartner businessPartner, BusinessPartnerAddress address) {
-        // get contact
-        BPContactToFuncAndDept contact = customBusinessPartnerService.determineResponsibleContact(businessPartner);
+    protected void queueAddressConfirmationEmail(ExpandedBusinessPartner expandedBusinessPartner) {
+        final CustomBusinessPartner businessPartner = expandedBusinessPartner.getBusinessPartner();
+        final BusinessPartnerAddress address = expandedBusinessPartner.getAddress();
+        
+        // get contact: the contacts of the company with the customer number,
+        // which were already read if it is the business partner itself
+        final List<BPContactToFuncAndDept> contacts = StringUtils.equals(businessPartner.getCustomer(), businessPartner.getBusinessPartner())
+                ? expandedBusinessPartner.getContacts()
+                : customBusinessPartnerService.getContacts(businessPartner.getCustomer());
+        BPContactToFuncAndDept contact = customBusinessPartnerService.determineResponsibleContact(contacts);
         
         if (StringUtils.isBlank(contact.getEmailAddress())) {
             throw new SAPMailingException(String.format(
@@ -159,10 +294,28 @@ public class AddressConfirmationService {
                 contact.getEmailAddress(), 
                 confirmationUrl);
         
-        // send email
-        notificationService.sendMail(notification);
-        
-        log.debug("Email has been sent to {}", contact.getEmailAddress());
+        // queue email
+        if (notificationService.queueMail(notification)) {
+        	log.debug("Email to {} has been queued", contact.getEmailAddress());
+        }
+    }
+    
+    /**
+     * Steps needed to confirm the address of a business partner: the
+     * business partner is updated before the email is queued
+     */
+    private enum Confirmation {
+    	
+    	NONE(false, false), UPDATE(true, false), EMAIL(false, true), UPDATE_AND_EMAIL(true, true);
+    	
+    	private final boolean update;
+    	private final boolean email;
+    	
+    	private Confirmation(boolean update, boolean email) {
+    		this.update = update;
+    		this.email = email;
+    	}
+    	
     }
 
 }
@@ -0,0 +1,228 @@
+package com.sap.cloud.s4hana.eventing.businesspartner.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
+
+/**
+ * Collects updates of the custom fields of business partners from concurrent
+ * callers and sends them to SAP S/4HANA in OData {@code $batch} requests.
+ * <p>
+ * A batch is sent when it contains {@code maxSize} updates or
+ * {@code maxDelayMillis} after its first update was submitted, whichever
+ * comes first. Each update is sent in its own changeset, so a failed update
+ * does not affect the other updates of the batch.
+ * <p>
+ * If {@code maxSize} is {@code 1} or less, every update is sent immediately
+ * in the calling thread using
+ * {@link CustomBusinessPartnerService#updateBusinessPartner(BusinessPartner)}.
+ *
+ * @see CustomBusinessPartnerService#updateBusinessPartners(List)
+ */
+@Service
+public class BusinessPartnerUpdateBatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(BusinessPartnerUpdateBatcher.class);
+
+	/**
+	 * Default maximum number of updates in one {@code $batch} request
+	 */
+	public static final int DEFAULT_MAX_SIZE = 50;
+
+	/**
+	 * Default maximum time in milliseconds an update waits for other updates
+	 */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 100;
+
+	private final CustomBusinessPartnerService customBusinessPartnerService;
+	private final int maxSize;
+	private final long maxDelayMillis;
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	private List<PendingUpdate> pendingUpdates = new ArrayList<>();
+	// flush of the pending updates after maxDelayMillis, guarded by this
+	private ScheduledFuture<?> delayedFlush;
+
+	/**
+	 * @param maxSize
+	 *            maximum number of updates in one {@code $batch} request. If
+	 *            {@code 1} or less, updates are not batched.
+	 * @param maxDelayMillis
+	 *            maximum time in milliseconds an update waits for other
+	 *            updates before the batch is sent
+	 */
+	@Autowired
+	public BusinessPartnerUpdateBatcher(CustomBusinessPartnerService customBusinessPartnerService,
+			@Value("${s4hana.batch.maxSize:" + DEFAULT_MAX_SIZE + "}") int maxSize,
+			@Value("${s4hana.batch.maxDelayMillis:" + DEFAULT_MAX_DELAY_MILLIS + "}") long maxDelayMillis) {
+
+		this.customBusinessPartnerService = customBusinessPartnerService;
+		this.maxSize = maxSize;
+		this.maxDelayMillis = maxDelayMillis;
+
+		if (maxSize > 1) {
+			scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("bp-update-batcher-"));
+			scheduler.setRemoveOnCancelPolicy(true);
+		} else {
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Updates the custom fields of {@code businessPartner} in SAP S/4HANA
+	 * together with the updates submitted by other threads and waits for the
+	 * result.
+	 *
+	 * @throws SAPODataException
+	 *             if the business partner could not be updated or the batcher
+	 *             is shut down
+	 */
+	public void updateBusinessPartner(BusinessPartner businessPartner) throws SAPODataException {
+		if (scheduler == null) {
+			customBusinessPartnerService.updateBusinessPartner(businessPartner);
+			return;
+		}
+
+		try {
+			submit(businessPartner).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new SAPODataException("There was an error while updating the Business Partner " + businessPartner,
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Adds the update of the custom fields of {@code businessPartner} to the
+	 * next batch.
+	 *
+	 * @return a future that is completed when the batch was sent, or completed
+	 *         exceptionally if the business partner could not be updated
+	 * @throws SAPODataException
+	 *             if the batcher is shut down
+	 */
+	public CompletableFuture<Void> submit(BusinessPartner businessPartner) {
+		if (scheduler == null) {
+			return CompletableFuture.runAsync(() -> customBusinessPartnerService.updateBusinessPartner(businessPartner),
+					Runnable::run);
+		}
+
+		final PendingUpdate update = new PendingUpdate(businessPartner);
+
+		synchronized (this) {
+			if (scheduler.isShutdown()) {
+				throw new SAPODataException("The Business Partner " + businessPartner
+						+ " cannot be updated, the application is shutting down");
+			}
+
+			pendingUpdates.add(update);
+
+			if (pendingUpdates.size() == 1) {
+				delayedFlush = scheduler.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+			} else if (pendingUpdates.size() >= maxSize) {
+				scheduler.execute(this::flush);
+			}
+		}
+
+		return update.result;
+	}
+
+	/**
+	 * Sends all pending updates in one {@code $batch} request.
+	 */
+	protected void flush() {
+		final List<PendingUpdate> batch;
+		synchronized (this) {
+			if (pendingUpdates.isEmpty()) {
+				return;
+			}
+			batch = pendingUpdates;
+			pendingUpdates = new ArrayList<>();
+
+			// the batch may be sent because it is full before its delay elapsed
+			if (delayedFlush != null) {
+				delayedFlush.cancel(false);
+				delayedFlush = null;
+			}
+		}
+
+		log.debug("Send {} business partner update(s) in a batch", batch.size());
+
+		final List<BusinessPartner> businessPartners = new ArrayList<>(batch.size());
+		batch.forEach(update -> businessPartners.add(update.businessPartner));
+
+		try {
+			final List<Optional<SAPODataException>> results = customBusinessPartnerService
+					.updateBusinessPartners(businessPartners);
+
+			for (int i = 0; i < batch.size(); i++) {
+				final Optional<SAPODataException> error = i < results.size() ? results.get(i)
+						: Optional.of(new SAPODataException("No result in batch response for " + businessPartners.get(i)));
+
+				if (error.isPresent()) {
+					batch.get(i).result.completeExceptionally(error.get());
+				} else {
+					batch.get(i).result.complete(null);
+				}
+			}
+		} catch (RuntimeException e) {
+			batch.forEach(update -> update.result.completeExceptionally(e));
+		}
+	}
+
+	/**
+	 * Sends the pending updates and stops accepting new ones.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler == null) {
+			return;
+		}
+
+		synchronized (this) {
+			scheduler.shutdownNow();
+		}
+		flush();
+	}
+
+	/**
+	 * @return number of flushes waiting to be executed
+	 */
+	@VisibleForTesting
+	int scheduledFlushes() {
+		return scheduler.getQueue().size();
+	}
+
+	private static class PendingUpdate {
+
+		private final BusinessPartner businessPartner;
+		private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+		private PendingUpdate(BusinessPartner businessPartner) {
+			this.businessPartner = businessPartner;
+		}
+
+	}
+
+}
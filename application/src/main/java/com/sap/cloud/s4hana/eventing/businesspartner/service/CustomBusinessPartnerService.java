@@ -1,8 +1,12 @@
 package com.sap.cloud.s4hana.eventing.businesspartner.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -13,14 +17,23 @@ import org.springframework.stereotype.Service;
 
 import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
 import com.sap.cloud.s4hana.eventing.businesspartner.model.CustomBusinessPartner;
+import com.sap.cloud.s4hana.eventing.businesspartner.model.ExpandedBusinessPartner;
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
 import com.sap.cloud.s4hana.eventing.core.util.MapperUtils;
+import com.sap.cloud.s4hana.eventing.security.ExecuteWithJwtTokenFromXsuaa;
 import com.sap.cloud.sdk.odatav2.connectivity.ODataException;
 import com.sap.cloud.sdk.s4hana.connectivity.ErpConfigContext;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.helper.ExpressionFluentHelper;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.helper.batch.BatchResponse;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.helper.batch.BatchResponseChangeSet;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BPContactToFuncAndDept;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerContact;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.services.BusinessPartnerService;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.services.BusinessPartnerServiceBatch;
+
+import io.vavr.control.Try;
 
 @Service
 public class CustomBusinessPartnerService {
@@ -107,6 +120,90 @@ public class CustomBusinessPartnerService {
         }
     }
     
+    /**
+	 * Fetches a Business Partner with the given {@code businessPartnerKey}
+	 * together with its addresses and the functions and departments of its
+	 * contact persons from S/4HANA in a single request using {@code $expand}.
+	 * Only the root fields that are needed to confirm the address are
+	 * selected.
+	 * 
+	 * @return the Business Partner with its first address (if any) and the
+	 *         functions and departments of its contact persons
+	 */
+    public ExpandedBusinessPartner getExpandedBusinessPartnerByKey(String businessPartnerKey) throws SAPODataException {
+        final BusinessPartner businessPartner;
+        try {
+            businessPartner = businessPartnerService
+                    .getBusinessPartnerByKey(businessPartnerKey)
+                    .select(BusinessPartner.BUSINESS_PARTNER, BusinessPartner.CUSTOMER, BusinessPartner.IS_NATURAL_PERSON, BusinessPartner.BUSINESS_PARTNER_FULL_NAME)
+                    .select(CustomBusinessPartner.ADDRESS_CHECKSUM, CustomBusinessPartner.ADDRESS_CONFIRMATION_STATE)
+                    .select(BusinessPartner.TO_BUSINESS_PARTNER_ADDRESS)
+                    .select(BusinessPartner.TO_BUSINESS_PARTNER_CONTACT.select(BusinessPartnerContact.TO_CONTACT_RELATIONSHIP))
+                    .execute(erpConfigContext);
+        } catch (ODataException e) {
+            throw error("There was an error while retrieving the expanded BusinessPartner with the Key: " 
+                        + businessPartnerKey, e);
+        }
+        
+        return expand(businessPartner);
+    }
+    
+    /**
+	 * Fetches the Business Partners with the given {@code businessPartnerKeys}
+	 * like {@link #getExpandedBusinessPartnerByKey(String)} but in a single
+	 * request using {@code $filter} over the keys.
+	 * 
+	 * @return the Business Partners that were found, in no particular order.
+	 *         Keys without a Business Partner are ignored.
+	 */
+    public List<ExpandedBusinessPartner> getExpandedBusinessPartnersByKeys(Collection<String> businessPartnerKeys) throws SAPODataException {
+        if (businessPartnerKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        ExpressionFluentHelper<BusinessPartner> filter = null;
+        for (String businessPartnerKey : businessPartnerKeys) {
+            final ExpressionFluentHelper<BusinessPartner> keyFilter = BusinessPartner.BUSINESS_PARTNER.eq(businessPartnerKey);
+            filter = filter == null ? keyFilter : filter.or(keyFilter);
+        }
+        
+        final List<BusinessPartner> businessPartners;
+        try {
+            businessPartners = businessPartnerService
+                    .getAllBusinessPartner()
+                    .filter(filter)
+                    .select(BusinessPartner.BUSINESS_PARTNER, BusinessPartner.CUSTOMER, BusinessPartner.IS_NATURAL_PERSON, BusinessPartner.BUSINESS_PARTNER_FULL_NAME)
+                    .select(CustomBusinessPartner.ADDRESS_CHECKSUM, CustomBusinessPartner.ADDRESS_CONFIRMATION_STATE)
+                    .select(BusinessPartner.TO_BUSINESS_PARTNER_ADDRESS)
+                    .select(BusinessPartner.TO_BUSINESS_PARTNER_CONTACT.select(BusinessPartnerContact.TO_CONTACT_RELATIONSHIP))
+                    .top(businessPartnerKeys.size())
+                    .execute(erpConfigContext);
+        } catch (ODataException e) {
+            throw error("There was an error while retrieving the expanded BusinessPartners with the Keys: " 
+                        + businessPartnerKeys, e);
+        }
+        
+        return businessPartners.stream()
+                .map(CustomBusinessPartnerService::expand)
+                .collect(Collectors.toList());
+    }
+    
+    private static ExpandedBusinessPartner expand(BusinessPartner businessPartner) {
+        final BusinessPartnerAddress address = businessPartner.getBusinessPartnerAddressIfPresent()
+                .filter(addresses -> !addresses.isEmpty())
+                .map(addresses -> addresses.get(0))
+                .orElse(null);
+        
+        final List<BPContactToFuncAndDept> contacts = businessPartner.getBusinessPartnerContactIfPresent()
+                .orElse(Collections.emptyList())
+                .stream()
+                .map(contact -> contact.getContactRelationshipIfPresent().orElse(null))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        
+        return ExpandedBusinessPartner.of(CustomBusinessPartner.of(businessPartner), address, contacts);
+    }
+    
     /**
      * Updates the given {@link BusinessPartner} in S/4HANA
      */
@@ -123,6 +220,55 @@ public class CustomBusinessPartnerService {
         }
     }
     
+    /**
+	 * Updates the custom fields of the given {@link BusinessPartner}s in
+	 * S/4HANA using a single OData {@code $batch} request. Each update is sent
+	 * in its own changeset, so that a failed update does not roll back the
+	 * others.
+	 * <p>
+	 * Like {@link #updateBusinessPartner(BusinessPartner)}, only the custom
+	 * fields are updated: the changesets cannot be restricted with
+	 * {@code includingFields}, so they contain
+	 * {@link CustomBusinessPartner#customFieldsOf(BusinessPartner)} instead of
+	 * the given business partners.
+	 * 
+	 * @return one result per business partner in the same order: an empty
+	 *         {@link Optional} if the update was successful or the error
+	 *         otherwise
+	 * @throws SAPODataException
+	 *             if the {@code $batch} request as a whole failed
+	 */
+    @ExecuteWithJwtTokenFromXsuaa(error = "There was an error while updating Business Partners in a batch")
+    public List<Optional<SAPODataException>> updateBusinessPartners(List<? extends BusinessPartner> businessPartners) throws SAPODataException {
+        BusinessPartnerServiceBatch batch = businessPartnerService.batch();
+        for (BusinessPartner businessPartner : businessPartners) {
+            batch = batch.beginChangeSet()
+                    .updateBusinessPartner(CustomBusinessPartner.customFieldsOf(businessPartner))
+                    .endChangeSet();
+        }
+        
+        final BatchResponse response;
+        try {
+            response = batch.execute(erpConfigContext);
+        } catch (ODataException e) {
+            throw error("There was an error while updating " + businessPartners.size() 
+                        + " Business Partners in a batch", e);
+        }
+        
+        final List<Optional<SAPODataException>> results = new ArrayList<>(businessPartners.size());
+        for (int i = 0; i < businessPartners.size(); i++) {
+            final Try<BatchResponseChangeSet> changeSetResult = response.get(i);
+            if (changeSetResult.isSuccess()) {
+                results.add(Optional.empty());
+            } else {
+                results.add(Optional.of(error("There was an error while updating the Business Partner " 
+                        + businessPartners.get(i), toException(changeSetResult.getCause()))));
+            }
+        }
+        
+        return results;
+    }
+    
     /*
      * Methods for Business Partner associated objects
      */
@@ -220,6 +366,17 @@ public class CustomBusinessPartnerService {
         //Get list of all Contact persons of the Company 
         List<BPContactToFuncAndDept> allContacts = getContacts(businessPartner.getCustomer());
         
+        return determineResponsibleContact(allContacts);
+    }
+    
+    /**
+	 * Determines the responsible contact person among already fetched
+	 * {@code allContacts} of a company, e.g. from
+	 * {@link ExpandedBusinessPartner#getContacts()}
+	 * 
+	 * @see CustomBusinessPartnerService#determineResponsibleContact(BusinessPartner)
+	 */
+    public BPContactToFuncAndDept determineResponsibleContact(List<BPContactToFuncAndDept> allContacts) {
         return getQualityOfficerFromQADept(allContacts)
                 .orElse(getAnyQualityOfficer(allContacts)
                 .orElse(getAnyoneWithEmail(allContacts)
@@ -251,6 +408,10 @@ public class CustomBusinessPartnerService {
         return new BPContactToFuncAndDept();
     }
     
+    private static Exception toException(final Throwable throwable) {
+        return throwable instanceof Exception ? (Exception) throwable : new Exception(throwable);
+    }
+    
     private static SAPODataException error(final String message, Exception cause) {
         if (cause == null) {
             log.error(message);
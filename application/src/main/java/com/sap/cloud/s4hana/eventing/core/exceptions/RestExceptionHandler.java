@@ -1,5 +1,8 @@
 package com.sap.cloud.s4hana.eventing.core.exceptions;
 
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
 import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonProcessingException;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.http.HttpStatus;
@@ -17,7 +20,22 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
 	protected ResponseEntity<DetailedErrorResponse> handleODataException(Throwable exception,
 			WebRequest request) throws JsonProcessingException {
 		
-		return ResponseEntity.status(getHttpStatus(exception)).body(createErrorResponse(exception));
+		final Throwable cause = unwrap(exception);
+		return ResponseEntity.status(getHttpStatus(cause)).body(createErrorResponse(cause));
+	}
+	
+	/**
+	 * @return the exception thrown by an asynchronous task, e.g. by
+	 *         {@link com.sap.cloud.s4hana.eventing.core.util.ODataTaskExecutor},
+	 *         instead of the exception of the future that wraps it
+	 */
+	private static Throwable unwrap(Throwable exception) {
+		Throwable cause = exception;
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+				&& cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause;
 	}
 
 	private DetailedErrorResponse createErrorResponse(Throwable exception) {
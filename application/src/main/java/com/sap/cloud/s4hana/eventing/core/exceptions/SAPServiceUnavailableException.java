@@ -0,0 +1,19 @@
+package com.sap.cloud.s4hana.eventing.core.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE, reason = "Service unavailable")
+public class SAPServiceUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+    
+    public SAPServiceUnavailableException(String message) {
+        super(message);
+    }
+    
+    public SAPServiceUnavailableException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+
+}
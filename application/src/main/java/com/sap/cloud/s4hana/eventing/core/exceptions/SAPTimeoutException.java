@@ -0,0 +1,19 @@
+package com.sap.cloud.s4hana.eventing.core.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.GATEWAY_TIMEOUT, reason = "Timeout")
+public class SAPTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+    
+    public SAPTimeoutException(String message) {
+        super(message);
+    }
+    
+    public SAPTimeoutException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+
+}
@@ -7,16 +7,31 @@ import org.modelmapper.convention.NamingConventions;
 
 /**
  * Convenience methods for {@link ModelMapper} 
- *
+ * <p>
+ * {@link #map(Object, Class)} and {@link #map(Object, Object)} share
+ * {@link ModelMapper} instances, so that the type map of each pair of source
+ * and destination types is only discovered once, when it is used for the first
+ * time. A configured {@link ModelMapper} is thread-safe.
  */
 public class MapperUtils {
 	
+	/**
+	 * Shared mapper for {@link #map(Object, Class)}
+	 */
+	private static final ModelMapper CONFIGURED_MAPPER = getMapper();
+	
+	/**
+	 * Shared mapper with the default configuration for {@link #map(Object, Object)}
+	 */
+	private static final ModelMapper DEFAULT_MAPPER = new ModelMapper();
+	
 	private MapperUtils() {
 		// prevents util class from being instantiated 
 	}
 
 	/**
-	 * @return preconfigured {@link ModelMapper}
+	 * @return a new preconfigured {@link ModelMapper} that can be further
+	 *         customized by the caller
 	 */
 	public static ModelMapper getMapper() {
 		final ModelMapper mapper = new ModelMapper();
@@ -46,12 +61,12 @@ public class MapperUtils {
 	 * @see ModelMapper#map(Object, Class)
 	 */
 	public static <T, D> D map(T source, Class<D> destinationType) {
-		return getMapper().map(source, destinationType);
+		return CONFIGURED_MAPPER.map(source, destinationType);
 	}
 	
 	/**
 	 * Maps {@code source} object to an existing {@code destination} object
-	 * using a preconfigured {@link ModelMapper}
+	 * using a {@link ModelMapper} with the default configuration
 	 * 
 	 * @param <T>
 	 *            type of {@code source} object
@@ -61,7 +76,7 @@ public class MapperUtils {
 	 * @see ModelMapper#map(Object, Class)
 	 */
 	public static <T, D> D map(T source, D destination) {
-		new ModelMapper().map(source, destination);
+		DEFAULT_MAPPER.map(source, destination);
 		return destination;
 	}
 	
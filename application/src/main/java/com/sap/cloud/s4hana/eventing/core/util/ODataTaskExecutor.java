@@ -0,0 +1,179 @@
+package com.sap.cloud.s4hana.eventing.core.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.RestExceptionHandler;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPServiceUnavailableException;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPTimeoutException;
+import com.sap.cloud.s4hana.eventing.security.XsuaaContextRunner;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Executes the S/4HANA OData requests of the REST controllers in a bounded
+ * pool of worker threads, so that the servlet threads are released while
+ * S/4HANA responds and a few slow requests cannot block all of them.
+ * <p>
+ * Tasks are executed with a JWT token from the XSUAA service by
+ * {@link XsuaaContextRunner}, because the request context of the servlet
+ * thread is not available in the worker threads.
+ * <p>
+ * The returned future fails with
+ * <ul>
+ * <li>{@link SAPServiceUnavailableException} if all worker threads are busy
+ * and the queue is full</li>
+ * <li>{@link SAPTimeoutException} if the task did not finish within
+ * {@code timeoutMillis}. The worker thread is interrupted.</li>
+ * </ul>
+ * which are mapped to HTTP status codes by {@link RestExceptionHandler}.
+ * <p>
+ * The following metrics are exposed:
+ * <ul>
+ * <li>{@value #METRIC_TIMEOUTS} - number of tasks that timed out</li>
+ * <li>{@value #METRIC_REJECTIONS} - number of tasks rejected because the
+ * queue was full</li>
+ * </ul>
+ */
+@Component
+public class ODataTaskExecutor {
+
+	private static final Logger log = LoggerFactory.getLogger(ODataTaskExecutor.class);
+
+	/**
+	 * Default number of worker threads
+	 */
+	public static final int DEFAULT_NUMBER_OF_THREADS = 16;
+
+	/**
+	 * Default number of tasks that can wait for a worker thread
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+	/**
+	 * Default time in milliseconds after which a task times out
+	 */
+	public static final long DEFAULT_TIMEOUT_MILLIS = 20000;
+
+	public static final String METRIC_TIMEOUTS = "rest.odata.timeouts";
+	public static final String METRIC_REJECTIONS = "rest.odata.rejections";
+
+	private final XsuaaContextRunner xsuaaContextRunner;
+	private final long timeoutMillis;
+
+	private final ThreadPoolExecutor workers;
+	private final ScheduledThreadPoolExecutor timeoutScheduler;
+
+	private final Counter timeouts;
+	private final Counter rejections;
+
+	/**
+	 * @param numberOfThreads
+	 *            the number of worker threads
+	 * @param queueCapacity
+	 *            the number of tasks that can wait for a worker thread
+	 * @param timeoutMillis
+	 *            time in milliseconds after which a task times out
+	 */
+	@Autowired
+	public ODataTaskExecutor(XsuaaContextRunner xsuaaContextRunner, MeterRegistry meterRegistry,
+			@Value("${rest.async.threads:" + DEFAULT_NUMBER_OF_THREADS + "}") int numberOfThreads,
+			@Value("${rest.async.queueCapacity:" + DEFAULT_QUEUE_CAPACITY + "}") int queueCapacity,
+			@Value("${rest.async.timeoutMillis:" + DEFAULT_TIMEOUT_MILLIS + "}") long timeoutMillis) {
+
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive: " + numberOfThreads);
+		}
+
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+		}
+
+		if (timeoutMillis < 1) {
+			throw new IllegalArgumentException("Timeout must be positive: " + timeoutMillis);
+		}
+
+		this.xsuaaContextRunner = xsuaaContextRunner;
+		this.timeoutMillis = timeoutMillis;
+
+		workers = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("odata-worker-"));
+
+		timeoutScheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("odata-timeout-"));
+		// most tasks finish in time, their timeouts should not pile up in the queue
+		timeoutScheduler.setRemoveOnCancelPolicy(true);
+
+		timeouts = meterRegistry.counter(METRIC_TIMEOUTS);
+		rejections = meterRegistry.counter(METRIC_REJECTIONS);
+
+		log.info("S/4HANA requests of the REST endpoints are executed by {} thread(s) with a timeout of {} ms",
+				numberOfThreads, timeoutMillis);
+	}
+
+	/**
+	 * Executes {@code task} in a worker thread with a JWT token from the XSUAA
+	 * service.
+	 *
+	 * @param task
+	 *            task that calls S/4HANA
+	 * @return future that is completed with the result of {@code task}, or
+	 *         completed exceptionally with the exception thrown by
+	 *         {@code task}, {@link SAPTimeoutException} or
+	 *         {@link SAPServiceUnavailableException}
+	 */
+	public <T> CompletableFuture<T> supplyAsync(final Supplier<T> task) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+
+		final Future<?> execution;
+		try {
+			execution = workers.submit(() -> {
+				try {
+					result.complete(xsuaaContextRunner.call(task));
+				} catch (Throwable t) {
+					result.completeExceptionally(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejections.increment();
+			result.completeExceptionally(new SAPServiceUnavailableException(
+					"Too many requests to S/4HANA are in progress, please try again later", e));
+			return result;
+		}
+
+		final ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+			if (result.completeExceptionally(
+					new SAPTimeoutException("S/4HANA did not respond within " + timeoutMillis + " ms"))) {
+				timeouts.increment();
+				execution.cancel(/* mayInterruptIfRunning = */ true);
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+
+		result.whenComplete((value, throwable) -> timeout.cancel(/* mayInterruptIfRunning = */ false));
+
+		return result;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		workers.shutdownNow();
+		timeoutScheduler.shutdownNow();
+	}
+
+}
@@ -1,18 +1,28 @@
 package com.sap.cloud.s4hana.eventing.countries.controller;
 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
-import com.sap.cloud.s4hana.eventing.countries.service.CountryService;
+import com.sap.cloud.s4hana.eventing.core.util.ODataTaskExecutor;
+import com.sap.cloud.s4hana.eventing.countries.service.CountryCache;
+import com.sap.cloud.s4hana.eventing.countries.service.CountryCache.Countries;
 import com.sap.cloud.s4hana.eventing.security.AddressConfirmationToken;
-import com.sap.cloud.s4hana.eventing.security.ExecuteWithJwtTokenFromXsuaa;
-import com.sap.cloud.s4hana.eventing.security.RSACipher;
+import com.sap.cloud.s4hana.eventing.security.AddressConfirmationTokenCache;
+import com.sap.cloud.s4hana.eventing.security.TokenCipher;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.country.CountryText;
 
 @RestController
@@ -21,13 +31,33 @@ public class CountryController {
     
     public static final String PATH = "/rest/countries";
     
-	private CountryService countryService;
-	private RSACipher cipher;
+    /**
+     * Default time in seconds during which a browser may reuse the list of
+     * countries without asking again
+     */
+    public static final long DEFAULT_MAX_AGE_SECONDS = 3600;
+    
+    private static final String GZIP = "gzip";
+    
+	private CountryCache countryCache;
+	private AddressConfirmationTokenCache tokenCache;
+	private ODataTaskExecutor oDataTaskExecutor;
+	private CacheControl cacheControl;
     
+	/**
+	 * @param maxAgeSeconds
+	 *            time in seconds during which a browser may reuse the list of
+	 *            countries without asking again
+	 */
     @Autowired
-    public CountryController(CountryService countryService, RSACipher cipher) {
-        this.cipher = cipher;
-        this.countryService = countryService;
+    public CountryController(CountryCache countryCache, AddressConfirmationTokenCache tokenCache,
+    		ODataTaskExecutor oDataTaskExecutor,
+    		@Value("${s4hana.countryService.cache.maxAgeSeconds:" + DEFAULT_MAX_AGE_SECONDS + "}") long maxAgeSeconds) {
+    	
+        this.tokenCache = tokenCache;
+        this.countryCache = countryCache;
+        this.oDataTaskExecutor = oDataTaskExecutor;
+        this.cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePrivate();
     }
     
     /**
@@ -35,29 +65,69 @@ public class CountryController {
 	 * <p>
 	 * This endpoint is not protected by the Spring Security / OAuth scope and
 	 * therefore should only allow requests with a valid token.
+	 * <p>
+	 * The list is served from {@link CountryCache} with an {@code ETag}. If the
+	 * {@code If-None-Match} request header contains it, {@code 304 Not
+	 * Modified} is returned without a body. The list is sent compressed with
+	 * gzip if the client accepts it, with an {@code ETag} of its own.
+	 * <p>
+	 * If {@link CountryCache} was not loaded yet, the list is read by
+	 * {@link ODataTaskExecutor}, because it is requested from S/4HANA. A loaded
+	 * list is returned directly from the servlet thread.
 	 * 
 	 * @param encryptedToken
 	 *            {@link AddressConfirmationToken} string encrypted with
-	 *            {@link RSACipher}. It authorizes the current user mainly to
+	 *            {@link TokenCipher}. It authorizes the current user mainly to
 	 *            prevent DOS attacks on the open endpoint.
 	 * 
-	 * @return the list of countries from S/4HANA
+	 * @return the list of {@link CountryText}s from S/4HANA as JSON
 	 * 
 	 * @see AddressConfirmationToken
-	 * @see RSACipher#encrypt(java.io.Serializable)
-	 * @see RSACipher#decrypt(java.io.Serializable)
+	 * @see TokenCipher#encrypt(java.io.Serializable)
+	 * @see TokenCipher#decrypt(java.io.Serializable)
 	 */
     @GetMapping
-    @ExecuteWithJwtTokenFromXsuaa
-    public List<CountryText> getAll(@RequestParam("token") final String encryptedToken) {
+    public CompletableFuture<ResponseEntity<byte[]>> getAll(@RequestParam("token") final String encryptedToken,
+    		@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch,
+    		@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding) {
     	
-        AddressConfirmationToken token = cipher.decrypt(encryptedToken);
-        if (!token.isValid()){
-            throw new SAPSecurityException("Token expired. "
-            		+ "Please contact your contact person to resend the address confirmation email.");
+        tokenCache.getValidToken(encryptedToken);
+        
+        if (countryCache.isLoaded()) {
+        	return CompletableFuture.completedFuture(toResponse(countryCache.get(), ifNoneMatch, acceptEncoding));
+        }
+        
+        return oDataTaskExecutor.supplyAsync(() -> toResponse(countryCache.get(), ifNoneMatch, acceptEncoding));
+    }
+    
+    private ResponseEntity<byte[]> toResponse(final Countries countries, final String ifNoneMatch,
+    		final String acceptEncoding) {
+    	
+        // the representations differ in their bytes and therefore in their ETags
+        final boolean gzip = StringUtils.containsIgnoreCase(acceptEncoding, GZIP);
+        final String eTag = gzip ? countries.getGzippedETag() : countries.getETag();
+        
+        if (countries.isMatchedBy(ifNoneMatch)) {
+        	return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+        			.eTag(eTag)
+        			.cacheControl(cacheControl)
+        			.varyBy(HttpHeaders.ACCEPT_ENCODING)
+        			.build();
+        }
+        
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        		.eTag(eTag)
+        		.cacheControl(cacheControl)
+        		.varyBy(HttpHeaders.ACCEPT_ENCODING)
+        		.contentType(MediaType.APPLICATION_JSON_UTF8);
+        
+        if (gzip) {
+        	return response
+        			.header(HttpHeaders.CONTENT_ENCODING, GZIP)
+        			.body(countries.getGzippedJson());
         }
         
-        return countryService.getAll();
+        return response.body(countries.getJson());
     } 
     
 }
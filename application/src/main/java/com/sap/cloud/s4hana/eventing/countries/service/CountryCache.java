@@ -0,0 +1,268 @@
+package com.sap.cloud.s4hana.eventing.countries.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.country.CountryText;
+
+/**
+ * Keeps the list of countries from {@link CountryService} in memory together
+ * with its JSON representation, so that repeated requests cost neither a
+ * round trip to SAP S/4HANA nor JSON serialization.
+ * <p>
+ * The list is loaded on first use. When it is older than {@code ttlSeconds},
+ * the cached list is still returned and a reload is started in the background
+ * (stale-while-revalidate). If the reload fails, the cached list is kept and
+ * the next request tries again.
+ * <p>
+ * If {@code ttlSeconds} is {@code 0}, the list is loaded on every call.
+ */
+@Service
+public class CountryCache {
+
+	private static final Logger log = LoggerFactory.getLogger(CountryCache.class);
+
+	/**
+	 * Default time in seconds after which the list of countries is reloaded
+	 */
+	public static final long DEFAULT_TTL_SECONDS = 3600;
+
+	private final CountryService countryService;
+	private final ObjectMapper objectMapper;
+	private final long ttlMillis;
+	private final Clock clock;
+
+	private final ExecutorService refresher;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	private volatile Countries countries;
+
+	/**
+	 * @param objectMapper
+	 *            mapper used to serialize the list of countries, should be the
+	 *            same as the one used for REST responses
+	 * @param ttlSeconds
+	 *            time in seconds after which the list of countries is reloaded
+	 *            in the background. If {@code 0}, the list is not cached.
+	 */
+	@Autowired
+	public CountryCache(CountryService countryService, ObjectMapper objectMapper,
+			@Value("${s4hana.countryService.cache.ttlSeconds:" + DEFAULT_TTL_SECONDS + "}") long ttlSeconds) {
+
+		this(countryService, objectMapper, ttlSeconds, Clock.systemUTC(),
+				new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+						new CustomizableThreadFactory("country-cache-")));
+	}
+
+	/**
+	 * @param clock
+	 *            tells when the countries were loaded and whether they are
+	 *            stale
+	 * @param refresher
+	 *            reloads stale countries in the background
+	 */
+	@VisibleForTesting
+	CountryCache(CountryService countryService, ObjectMapper objectMapper, long ttlSeconds, Clock clock,
+			ExecutorService refresher) {
+
+		this.countryService = countryService;
+		this.objectMapper = objectMapper;
+		this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+		this.clock = clock;
+		this.refresher = refresher;
+	}
+
+	/**
+	 * @return the cached list of countries, loaded from SAP S/4HANA if there
+	 *         is none yet
+	 */
+	public Countries get() throws SAPODataException {
+		if (ttlMillis <= 0) {
+			return load();
+		}
+
+		final Countries current = countries;
+		if (current == null) {
+			return loadIfAbsent();
+		}
+
+		if (clock.millis() - current.getLoadedAtMillis() > ttlMillis) {
+			refreshInBackground();
+		}
+		return current;
+	}
+
+	/**
+	 * @return {@code true} if {@link #get()} returns the cached list without
+	 *         waiting for SAP S/4HANA
+	 */
+	public boolean isLoaded() {
+		return ttlMillis > 0 && countries != null;
+	}
+
+	private synchronized Countries loadIfAbsent() throws SAPODataException {
+		if (countries == null) {
+			countries = load();
+		}
+		return countries;
+	}
+
+	private void refreshInBackground() {
+		if (!refreshing.compareAndSet(false, true)) {
+			return;
+		}
+
+		refresher.execute(() -> {
+			try {
+				countries = load();
+			} catch (RuntimeException e) {
+				log.warn("The list of countries could not be reloaded, the cached list is used", e);
+			} finally {
+				refreshing.set(false);
+			}
+		});
+	}
+
+	private Countries load() throws SAPODataException {
+		final List<CountryText> countryList = countryService.getAll();
+
+		try {
+			final byte[] json = objectMapper.writeValueAsBytes(countryList);
+			log.debug("Loaded {} countries", countryList.size());
+			return new Countries(countryList, json, clock.millis());
+		} catch (JsonProcessingException e) {
+			throw new SAPODataException("Error when serializing the list of countries", e);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		refresher.shutdownNow();
+	}
+
+	/**
+	 * The list of countries and its precalculated JSON representation.
+	 */
+	public static class Countries {
+
+		/**
+		 * Appended to the entity tag of the gzipped representation
+		 */
+		public static final String GZIPPED_ETAG_SUFFIX = "-gzip";
+
+		private final List<CountryText> countries;
+		private final byte[] json;
+		private final byte[] gzippedJson;
+		private final String eTag;
+		private final String gzippedETag;
+		private final long loadedAtMillis;
+
+		protected Countries(List<CountryText> countries, byte[] json, long loadedAtMillis) {
+			this.countries = Collections.unmodifiableList(countries);
+			this.json = json;
+			this.gzippedJson = gzip(json);
+			final String digest = DigestUtils.md5DigestAsHex(json);
+			this.eTag = "\"" + digest + "\"";
+			this.gzippedETag = "\"" + digest + GZIPPED_ETAG_SUFFIX + "\"";
+			this.loadedAtMillis = loadedAtMillis;
+		}
+
+		public List<CountryText> getCountries() {
+			return countries;
+		}
+
+		/**
+		 * @return the list of countries as JSON in UTF-8. Must not be modified.
+		 */
+		public byte[] getJson() {
+			return json;
+		}
+
+		/**
+		 * @return {@link #getJson()} compressed with gzip. Must not be
+		 *         modified.
+		 */
+		public byte[] getGzippedJson() {
+			return gzippedJson;
+		}
+
+		/**
+		 * @return strong entity tag of {@link #getJson()} including the
+		 *         double quotes
+		 */
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * @return strong entity tag of {@link #getGzippedJson()} including the
+		 *         double quotes. It differs from {@link #getETag()}, since the
+		 *         bytes of the two representations differ.
+		 */
+		public String getGzippedETag() {
+			return gzippedETag;
+		}
+
+		public long getLoadedAtMillis() {
+			return loadedAtMillis;
+		}
+
+		/**
+		 * @param ifNoneMatch
+		 *            value of an {@code If-None-Match} request header, may be
+		 *            {@code null}
+		 * @return {@code true} if the client already has this list, compressed
+		 *         or not
+		 */
+		public boolean isMatchedBy(String ifNoneMatch) {
+			if (StringUtils.isBlank(ifNoneMatch)) {
+				return false;
+			}
+
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = StringUtils.removeStart(tag.trim(), "W/");
+				if (tag.equals("*") || tag.equals(eTag) || tag.equals(gzippedETag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static byte[] gzip(byte[] bytes) {
+			final ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length / 4 + 64);
+			try (GZIPOutputStream gzip = new GZIPOutputStream(result)) {
+				gzip.write(bytes);
+			} catch (IOException e) {
+				// cannot happen when writing to a byte array
+				throw new IllegalStateException(e);
+			}
+			return result.toByteArray();
+		}
+
+	}
+
+}
@@ -10,6 +10,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.s4hana.eventing.security.ExecuteWithJwtTokenFromXsuaa;
 import com.sap.cloud.sdk.odatav2.connectivity.ODataQueryBuilder;
 import com.sap.cloud.sdk.s4hana.connectivity.ErpConfigContext;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.helper.VdmEntity;
@@ -75,6 +76,7 @@ public class CountryService {
 	 *      of the preview release of Virtual Data Model (VDM) generator</a>
 	 *
 	 */
+	@ExecuteWithJwtTokenFromXsuaa(error = "Error when getting the list of countries")
 	public List<CountryText> getAll() throws SAPODataException {
 		try {
 			return ODataQueryBuilder.withEntity(odataServicePath, odataEntitySetName)
@@ -18,12 +18,17 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.sap.cloud.s4hana.eventing.events.model.BusinessEvent;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessPartnerEvent;
 
 /**
  * This class is a replacement for {@link MappingJackson2MessageConverter} that
  * cannot be used since events from SAP S/4HANA do not contain type id property
  * which MUST be set via
  * {@link MappingJackson2MessageConverter#setTypeIdPropertyName(String)}.
+ * <p>
+ * Business partner events are decoded with {@link BusinessPartnerEventDecoder}
+ * that reads only the needed properties. All other events are bound to
+ * {@link BusinessEvent} by the {@link ObjectMapper}.
  */
 @Component
 public class BusinessEventMessageConverter implements MessageConverter {
@@ -31,6 +36,7 @@ public class BusinessEventMessageConverter implements MessageConverter {
 	private static final Logger log = LoggerFactory.getLogger(BusinessEventMessageConverter.class);
 	
 	private final ObjectMapper om;
+	private final BusinessPartnerEventDecoder businessPartnerEventDecoder;
 	
 	@Autowired
 	public BusinessEventMessageConverter() {
@@ -38,6 +44,8 @@ public class BusinessEventMessageConverter implements MessageConverter {
 		
 		// We only define properties that we need in our event model 
 		om.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		
+		businessPartnerEventDecoder = new BusinessPartnerEventDecoder(om.getFactory());
 	}
 
 	@Override
@@ -49,6 +57,11 @@ public class BusinessEventMessageConverter implements MessageConverter {
 	public Object fromMessage(Message message) throws JMSException, MessageConversionException {
 		final byte[] messageBytes = extractMessageBytes(message);
 		
+		final BusinessPartnerEvent businessPartnerEvent = businessPartnerEventDecoder.decode(messageBytes);
+		if (businessPartnerEvent != null) {
+			return businessPartnerEvent;
+		}
+		
 		try {
 			return om.readValue(messageBytes, BusinessEvent.class);
 		} catch (IOException e) {
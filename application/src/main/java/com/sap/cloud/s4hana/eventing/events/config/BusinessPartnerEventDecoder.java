@@ -0,0 +1,169 @@
+package com.sap.cloud.s4hana.eventing.events.config;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessEvent;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessPartnerEvent;
+
+/**
+ * Decodes business partner events with a streaming {@link JsonParser} instead
+ * of binding the whole JSON document to {@link BusinessEvent} with Jackson's
+ * polymorphic type handling.
+ * <p>
+ * Only {@code eventType}, {@code eventID}, {@code contentType} and
+ * {@code data.KEY[0].BUSINESSPARTNER} are read, all other properties are
+ * skipped without being materialized. If the event cannot be decided this
+ * way, e.g. because it is of another type, has not exactly one key or is not
+ * well-formed, {@link #decode(byte[])} returns {@code null} and the caller
+ * should fall back to full binding, which also reports the errors.
+ */
+public class BusinessPartnerEventDecoder {
+
+	private static final String PROPERTY_CONTENT_TYPE = "contentType";
+	private static final String PROPERTY_EVENT_ID = "eventID";
+	private static final String PROPERTY_DATA = "data";
+	private static final String PROPERTY_KEY = "KEY";
+	private static final String PROPERTY_BUSINESS_PARTNER = "BUSINESSPARTNER";
+
+	private static final String CONTENT_TYPE_JSON = "application/json";
+
+	private final JsonFactory jsonFactory;
+
+	public BusinessPartnerEventDecoder(JsonFactory jsonFactory) {
+		this.jsonFactory = jsonFactory;
+	}
+
+	/**
+	 * @return the decoded event or {@code null} if {@code json} cannot be
+	 *         decoded on the fast path
+	 */
+	public BusinessPartnerEvent decode(byte[] json) {
+		try (JsonParser parser = jsonFactory.createParser(json)) {
+			return decode(parser);
+		} catch (IOException e) {
+			// not well-formed, full binding reports the error
+			return null;
+		}
+	}
+
+	private static BusinessPartnerEvent decode(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			return null;
+		}
+
+		String eventType = null;
+		String eventID = null;
+		String contentType = null;
+		String businessPartnerKey = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String property = parser.getCurrentName();
+			final JsonToken value = parser.nextToken();
+
+			if (BusinessEvent.JSON_TYPE_ID_SOURCE_PROPERTY.equals(property)) {
+				if (value != JsonToken.VALUE_STRING) {
+					return null;
+				}
+				eventType = parser.getText();
+			} else if (PROPERTY_EVENT_ID.equals(property)) {
+				if (value != JsonToken.VALUE_STRING && value != JsonToken.VALUE_NULL) {
+					return null;
+				}
+				eventID = parser.getValueAsString();
+			} else if (PROPERTY_CONTENT_TYPE.equals(property)) {
+				if (value != JsonToken.VALUE_STRING && value != JsonToken.VALUE_NULL) {
+					return null;
+				}
+				contentType = parser.getValueAsString();
+			} else if (PROPERTY_DATA.equals(property)) {
+				businessPartnerKey = decodeBusinessPartnerKey(parser);
+				if (businessPartnerKey == null) {
+					return null;
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if (!BusinessPartnerEvent.JSON_TYPE_ID_CREATED.equals(eventType)
+				&& !BusinessPartnerEvent.JSON_TYPE_ID_CHANGED.equals(eventType)) {
+			return null;
+		}
+
+		// events that would not pass validation are left to full binding
+		if (businessPartnerKey == null || (contentType != null && !CONTENT_TYPE_JSON.equals(contentType))) {
+			return null;
+		}
+
+		final BusinessPartnerEvent event = new BusinessPartnerEvent();
+		event.setEventID(eventID);
+		event.setContentType(contentType);
+		event.setPayload(new BusinessPartnerEvent.Payload());
+		event.getPayload().setBusinessPartnerKey(businessPartnerKey);
+		return event;
+	}
+
+	/**
+	 * Reads {@code {"KEY":[{"BUSINESSPARTNER":"..."}]}} with the parser
+	 * positioned at its start.
+	 *
+	 * @return the business partner key or {@code null} if there is not exactly
+	 *         one key
+	 */
+	private static String decodeBusinessPartnerKey(JsonParser parser) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			return null;
+		}
+
+		String businessPartnerKey = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String property = parser.getCurrentName();
+			final JsonToken value = parser.nextToken();
+
+			if (!PROPERTY_KEY.equals(property)) {
+				parser.skipChildren();
+				continue;
+			}
+
+			if (value != JsonToken.START_ARRAY || businessPartnerKey != null) {
+				return null;
+			}
+
+			int numberOfKeys = 0;
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				if (++numberOfKeys > 1 || parser.currentToken() != JsonToken.START_OBJECT) {
+					return null;
+				}
+				businessPartnerKey = decodeKey(parser);
+				if (businessPartnerKey == null) {
+					return null;
+				}
+			}
+		}
+
+		return businessPartnerKey;
+	}
+
+	private static String decodeKey(JsonParser parser) throws IOException {
+		String businessPartnerKey = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String property = parser.getCurrentName();
+			final JsonToken value = parser.nextToken();
+
+			if (PROPERTY_BUSINESS_PARTNER.equals(property)) {
+				if (value != JsonToken.VALUE_STRING) {
+					return null;
+				}
+				businessPartnerKey = parser.getText();
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		return businessPartnerKey;
+	}
+
+}
@@ -1,5 +1,6 @@
 package com.sap.cloud.s4hana.eventing.events.config;
 
+import javax.jms.ConnectionFactory;
 import javax.jms.Session;
 
 import org.apache.qpid.jms.JmsConnectionFactory;
@@ -42,18 +43,37 @@ public class JmsConfiguration {
 	
 	private MessagingService messagingService;
 	
+	/**
+	 * @return connection factory for the Enterprise Messaging Service bound to
+	 *         the application, used by the {@link #jmsListenerContainerFactory}
+	 *         and by
+	 *         {@link com.sap.cloud.s4hana.eventing.events.service.BusinessPartnerBatchConsumer}
+	 */
 	@Bean
-    public DefaultJmsListenerContainerFactory jmsListenerContainerFactory(BusinessEventMessageConverter messageConverter) throws Exception {
-		log.info("Intitializing the default JmsListenerContainerFactory");
-		
+	public JmsConnectionFactory jmsConnectionFactory() throws Exception {
 		try {
 			MessagingService messagingService = grantMessagingService();		
 			final JmsConnectionFactory connectionFactory = messagingService.configure(JmsConnectionFactory.class);
 			
 			connectionFactory.setRemoteURI(String.format(REMOTE_URI_WITH_FAILOVER, connectionFactory.getRemoteURI()));
 			
+			return connectionFactory;
+		} catch (Exception e) {
+			log.error("Error while initializing the JMS connection factory. Events from S/4HANA will NOT be processed", e);
+			throw e;
+		}
+	}
+	
+	@Bean
+    public DefaultJmsListenerContainerFactory jmsListenerContainerFactory(ConnectionFactory connectionFactory, 
+    		BusinessEventMessageConverter messageConverter) throws Exception {
+		log.info("Intitializing the default JmsListenerContainerFactory");
+		
+		try {
 			DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
 			factory.setConnectionFactory(connectionFactory);
+			// Events are acknowledged when they are handed over to the coalescer,
+			// they are kept in the EventInbox until they were handled
 			factory.setSessionAcknowledgeMode(Session.AUTO_ACKNOWLEDGE);
 			
 			// Necessary to get it work with enterprise messaging
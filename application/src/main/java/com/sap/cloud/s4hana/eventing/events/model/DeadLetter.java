@@ -0,0 +1,72 @@
+package com.sap.cloud.s4hana.eventing.events.model;
+
+import java.time.Instant;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * An event about a business partner that could not be handled, kept in the
+ * dead letter journal until it is replayed successfully.
+ */
+public class DeadLetter {
+
+	private final long id;
+	private final String businessPartnerKey;
+	private final String eventId;
+	private final Instant failedAt;
+	private final int attempts;
+	private final String cause;
+
+	public DeadLetter(long id, String businessPartnerKey, String eventId, Instant failedAt, int attempts,
+			String cause) {
+		this.id = id;
+		this.businessPartnerKey = businessPartnerKey;
+		this.eventId = eventId;
+		this.failedAt = failedAt;
+		this.attempts = attempts;
+		this.cause = cause;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getBusinessPartnerKey() {
+		return businessPartnerKey;
+	}
+
+	/**
+	 * @return ID of the event, {@code null} if the event had none
+	 */
+	public String getEventId() {
+		return eventId;
+	}
+
+	/**
+	 * @return time of the last failed attempt
+	 */
+	public Instant getFailedAt() {
+		return failedAt;
+	}
+
+	/**
+	 * @return number of failed attempts, including the first one
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return message of the exception of the last failed attempt
+	 */
+	public String getCause() {
+		return cause;
+	}
+
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+
+}
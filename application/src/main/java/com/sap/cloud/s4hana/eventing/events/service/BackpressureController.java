@@ -0,0 +1,409 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.listener.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Limits the number of events that are handled at the same time depending on
+ * the latency of SAP S/4HANA and the SMTP server, so that a slow downstream
+ * system does not tie up all worker threads in blocked calls.
+ * <p>
+ * The latency of every call is recorded with
+ * {@link #record(Downstream, long)} as an exponentially weighted moving
+ * average. Every {@code intervalMillis}, the concurrency limit is adjusted
+ * following an additive increase, multiplicative decrease (AIMD) policy:
+ * <ul>
+ * <li>if the average latency of a downstream system exceeds its threshold,
+ * the limit is multiplied by {@code decreaseFactor}, down to
+ * {@code minConcurrency}</li>
+ * <li>otherwise, if the limit was reached in the last interval, it is
+ * increased by one, up to {@code maxConcurrency}</li>
+ * </ul>
+ * {@link KeyedEventDispatcher} calls {@link #acquire()} before and
+ * {@link #release()} after every event, i.e. workers wait while the limit is
+ * reached. If the limit is reached while a downstream system is degraded, the
+ * JMS listener containers are stopped, so that no more events are pulled from
+ * the Enterprise Messaging Service, and they are started again as soon as
+ * the events in progress are handled.
+ * <p>
+ * If {@code maxConcurrency} is {@code 0}, the number of events handled at the
+ * same time is not limited. The following metrics are exposed:
+ * <ul>
+ * <li>{@value #METRIC_CONCURRENCY} - effective concurrency limit</li>
+ * <li>{@value #METRIC_IN_FLIGHT} - number of events in progress</li>
+ * <li>{@value #METRIC_PAUSED} - {@code 1} while the JMS listener containers
+ * are stopped, {@code 0} otherwise</li>
+ * <li>{@value #METRIC_LATENCY} - average latency in milliseconds by
+ * {@code downstream} system</li>
+ * </ul>
+ */
+@Component
+public class BackpressureController {
+
+	private static final Logger log = LoggerFactory.getLogger(BackpressureController.class);
+
+	/**
+	 * Downstream systems whose latency is tracked
+	 */
+	public enum Downstream {
+		S4HANA, SMTP
+	}
+
+	/**
+	 * Default minimum number of events handled at the same time
+	 */
+	public static final int DEFAULT_MIN_CONCURRENCY = 1;
+
+	/**
+	 * Default maximum number of events handled at the same time
+	 */
+	public static final int DEFAULT_MAX_CONCURRENCY = KeyedEventDispatcher.DEFAULT_NUMBER_OF_WORKERS;
+
+	/**
+	 * Default average latency in milliseconds above which SAP S/4HANA is
+	 * considered degraded
+	 */
+	public static final long DEFAULT_S4HANA_LATENCY_THRESHOLD_MILLIS = 2000;
+
+	/**
+	 * Default average latency in milliseconds above which the SMTP server is
+	 * considered degraded
+	 */
+	public static final long DEFAULT_SMTP_LATENCY_THRESHOLD_MILLIS = 5000;
+
+	/**
+	 * Default factor the concurrency limit is multiplied with while a
+	 * downstream system is degraded
+	 */
+	public static final double DEFAULT_DECREASE_FACTOR = 0.5;
+
+	/**
+	 * Default time in milliseconds between two adjustments of the concurrency
+	 * limit
+	 */
+	public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * Weight of the latest latency in the moving average
+	 */
+	private static final double LATENCY_WEIGHT = 0.2;
+
+	public static final String METRIC_CONCURRENCY = "eventing.backpressure.concurrency";
+	public static final String METRIC_IN_FLIGHT = "eventing.backpressure.inflight";
+	public static final String METRIC_PAUSED = "eventing.backpressure.paused";
+	public static final String METRIC_LATENCY = "eventing.backpressure.latency";
+
+	/**
+	 * Controller that does not limit the number of events handled at the same
+	 * time
+	 */
+	public static final BackpressureController UNLIMITED = new BackpressureController(
+			(JmsListenerEndpointRegistry) null, new SimpleMeterRegistry(), 0, 0, 0, 0, 0, 0);
+
+	private final JmsListenerEndpointRegistry listenerRegistry;
+	private final int minConcurrency;
+	private final int maxConcurrency;
+	private final double decreaseFactor;
+
+	// indexed by Downstream#ordinal()
+	private final long[] latencyThresholdMillis = new long[Downstream.values().length];
+
+	// guarded by this
+	private final double[] averageLatencyMillis = new double[Downstream.values().length];
+	private int limit;
+	private int inFlight;
+	private int peakInFlight;
+
+	private volatile boolean paused;
+
+	private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1,
+			new CustomizableThreadFactory("event-backpressure-"));
+
+	/**
+	 * @param listenerRegistry
+	 *            provides the registry of the JMS listener containers to be
+	 *            stopped while a downstream system is degraded, if any
+	 * @param minConcurrency
+	 *            minimum number of events handled at the same time
+	 * @param maxConcurrency
+	 *            maximum number of events handled at the same time. If
+	 *            {@code 0}, the number is not limited.
+	 * @param s4HanaLatencyThresholdMillis
+	 *            average latency in milliseconds above which SAP S/4HANA is
+	 *            considered degraded
+	 * @param smtpLatencyThresholdMillis
+	 *            average latency in milliseconds above which the SMTP server
+	 *            is considered degraded
+	 * @param decreaseFactor
+	 *            factor the concurrency limit is multiplied with while a
+	 *            downstream system is degraded
+	 * @param intervalMillis
+	 *            time in milliseconds between two adjustments of the
+	 *            concurrency limit
+	 */
+	@Autowired
+	public BackpressureController(ObjectProvider<JmsListenerEndpointRegistry> listenerRegistry,
+			MeterRegistry meterRegistry,
+			@Value("${eventing.backpressure.minConcurrency:" + DEFAULT_MIN_CONCURRENCY + "}") int minConcurrency,
+			@Value("${eventing.backpressure.maxConcurrency:" + DEFAULT_MAX_CONCURRENCY + "}") int maxConcurrency,
+			@Value("${eventing.backpressure.s4hanaLatencyThresholdMillis:" + DEFAULT_S4HANA_LATENCY_THRESHOLD_MILLIS + "}") long s4HanaLatencyThresholdMillis,
+			@Value("${eventing.backpressure.smtpLatencyThresholdMillis:" + DEFAULT_SMTP_LATENCY_THRESHOLD_MILLIS + "}") long smtpLatencyThresholdMillis,
+			@Value("${eventing.backpressure.decreaseFactor:" + DEFAULT_DECREASE_FACTOR + "}") double decreaseFactor,
+			@Value("${eventing.backpressure.intervalMillis:" + DEFAULT_INTERVAL_MILLIS + "}") long intervalMillis) {
+
+		this(listenerRegistry.getIfAvailable(), meterRegistry, minConcurrency, maxConcurrency,
+				s4HanaLatencyThresholdMillis, smtpLatencyThresholdMillis, decreaseFactor, intervalMillis);
+	}
+
+	protected BackpressureController(JmsListenerEndpointRegistry listenerRegistry, MeterRegistry meterRegistry,
+			int minConcurrency, int maxConcurrency, long s4HanaLatencyThresholdMillis, long smtpLatencyThresholdMillis,
+			double decreaseFactor, long intervalMillis) {
+
+		if (maxConcurrency < 0) {
+			throw new IllegalArgumentException("Maximum concurrency must not be negative: " + maxConcurrency);
+		}
+
+		if (maxConcurrency > 0 && (minConcurrency < 1 || minConcurrency > maxConcurrency)) {
+			throw new IllegalArgumentException("Minimum concurrency must be between 1 and " + maxConcurrency
+					+ ": " + minConcurrency);
+		}
+
+		if (maxConcurrency > 0 && (decreaseFactor <= 0 || decreaseFactor >= 1)) {
+			throw new IllegalArgumentException("Decrease factor must be between 0 and 1: " + decreaseFactor);
+		}
+
+		this.listenerRegistry = listenerRegistry;
+		this.minConcurrency = minConcurrency;
+		this.maxConcurrency = maxConcurrency;
+		this.decreaseFactor = decreaseFactor;
+		this.limit = maxConcurrency;
+
+		latencyThresholdMillis[Downstream.S4HANA.ordinal()] = s4HanaLatencyThresholdMillis;
+		latencyThresholdMillis[Downstream.SMTP.ordinal()] = smtpLatencyThresholdMillis;
+
+		if (maxConcurrency == 0) {
+			scheduler.shutdown();
+			return;
+		}
+
+		meterRegistry.gauge(METRIC_CONCURRENCY, this, BackpressureController::getConcurrency);
+		meterRegistry.gauge(METRIC_IN_FLIGHT, this, BackpressureController::getInFlight);
+		meterRegistry.gauge(METRIC_PAUSED, this, controller -> controller.isPaused() ? 1 : 0);
+		for (Downstream downstream : Downstream.values()) {
+			meterRegistry.gauge(METRIC_LATENCY, Tags.of("downstream", downstream.name().toLowerCase(Locale.ROOT)),
+					this, controller -> controller.getAverageLatencyMillis(downstream));
+		}
+
+		if (intervalMillis > 0) {
+			scheduler.scheduleWithFixedDelay(this::adjustQuietly, intervalMillis, intervalMillis,
+					TimeUnit.MILLISECONDS);
+		}
+
+		log.info("Between {} and {} events are handled at the same time depending on the downstream latency",
+				minConcurrency, maxConcurrency);
+	}
+
+	/**
+	 * Waits until the number of events in progress is below the concurrency
+	 * limit and counts one more event in progress. Every call must be followed
+	 * by {@link #release()}.
+	 *
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 */
+	public void acquire() throws InterruptedException {
+		if (maxConcurrency == 0) {
+			return;
+		}
+
+		synchronized (this) {
+			while (inFlight >= limit) {
+				wait();
+			}
+
+			inFlight++;
+			peakInFlight = Math.max(peakInFlight, inFlight);
+		}
+	}
+
+	/**
+	 * Counts one event less in progress.
+	 */
+	public void release() {
+		if (maxConcurrency == 0) {
+			return;
+		}
+
+		synchronized (this) {
+			inFlight--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Records the latency of one call of a downstream system, regardless of
+	 * whether it succeeded, as timeouts are reflected in the latency.
+	 *
+	 * @param elapsedNanos
+	 *            duration of the call in nanoseconds
+	 */
+	public void record(Downstream downstream, long elapsedNanos) {
+		if (maxConcurrency == 0) {
+			return;
+		}
+
+		final double latencyMillis = elapsedNanos / 1e6;
+		synchronized (this) {
+			final double average = averageLatencyMillis[downstream.ordinal()];
+			averageLatencyMillis[downstream.ordinal()] = average == 0 ? latencyMillis
+					: average + LATENCY_WEIGHT * (latencyMillis - average);
+		}
+	}
+
+	/**
+	 * Adjusts the concurrency limit to the latency recorded so far and stops or
+	 * starts the JMS listener containers.
+	 */
+	protected void adjust() {
+		final boolean pause;
+		synchronized (this) {
+			final Downstream degraded = degradedDownstream();
+			final int previousLimit = limit;
+
+			if (degraded != null) {
+				limit = Math.max(minConcurrency, (int) (limit * decreaseFactor));
+			} else if (peakInFlight >= limit) {
+				limit = Math.min(maxConcurrency, limit + 1);
+			}
+
+			if (limit != previousLimit) {
+				log.debug("Concurrency limit changed from {} to {}, degraded downstream system: {}", previousLimit,
+						limit, degraded);
+			}
+
+			if (limit > previousLimit) {
+				notifyAll();
+			}
+
+			peakInFlight = inFlight;
+			pause = degraded != null && inFlight >= limit;
+		}
+
+		if (pause != paused) {
+			setListenersPaused(pause);
+		}
+	}
+
+	private void adjustQuietly() {
+		try {
+			adjust();
+		} catch (RuntimeException e) {
+			log.warn("Error while adjusting the concurrency limit", e);
+		}
+	}
+
+	/**
+	 * @return the first downstream system whose average latency exceeds its
+	 *         threshold, {@code null} if there is none
+	 */
+	private Downstream degradedDownstream() {
+		for (Downstream downstream : Downstream.values()) {
+			if (averageLatencyMillis[downstream.ordinal()] > latencyThresholdMillis[downstream.ordinal()]) {
+				return downstream;
+			}
+		}
+
+		return null;
+	}
+
+	private void setListenersPaused(boolean pause) {
+		paused = pause;
+		if (pause) {
+			log.warn("Consumption of events is paused until the events in progress are handled, "
+					+ "a downstream system is degraded");
+		} else {
+			log.info("Consumption of events is resumed");
+		}
+
+		if (listenerRegistry == null) {
+			return;
+		}
+
+		for (MessageListenerContainer container : listenerRegistry.getListenerContainers()) {
+			if (pause) {
+				container.stop();
+			} else {
+				container.start();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of events that may be handled at the same time,
+	 *         {@code 0} if it is not limited
+	 */
+	public synchronized int getConcurrency() {
+		return limit;
+	}
+
+	/**
+	 * @return the number of events in progress
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return {@code true} while the JMS listener containers are stopped
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * @return moving average of the latency of {@code downstream} in
+	 *         milliseconds
+	 */
+	public synchronized double getAverageLatencyMillis(Downstream downstream) {
+		return averageLatencyMillis[downstream.ordinal()];
+	}
+
+	/**
+	 * Stops adjusting the concurrency limit, before the JMS listener containers
+	 * are stopped on shutdown so that they are not started again.
+	 */
+	@PreDestroy
+	@EventListener(ContextClosedEvent.class)
+	public void shutdown() {
+		scheduler.shutdown();
+
+		try {
+			if (!scheduler.awaitTermination(DEFAULT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+				scheduler.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,318 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.s4hana.eventing.events.config.BusinessEventMessageConverter;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessPartnerEvent;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Consumes business partner events in batches instead of one at a time.
+ * <p>
+ * Up to {@code maxSize} messages are received, waiting at most
+ * {@code maxWaitMillis} after the first one. The addresses of all business
+ * partners in the batch are confirmed with
+ * {@link AddressConfirmationService#confirmAddresses(List)}, i.e. with one
+ * request to read them and one {@code $batch} request to update them. Events
+ * of the same business partner within a batch are handled once, events that
+ * were already handled according to {@link EventDeduplicator} are dropped.
+ * <p>
+ * The messages are acknowledged together after the batch was handled.
+ * Business partners that could not be updated are handed over to
+ * {@link DeadLetterService} to be replayed later, so that a business partner
+ * that cannot be updated permanently does not block the other messages. If
+ * the batch fails as a whole, e.g. because S/4HANA is not available, the
+ * session is recovered after {@code retryDelayMillis} and the messages are
+ * redelivered by the Enterprise Messaging Service.
+ * <p>
+ * Enabled with {@code eventing.batch.enabled=true} instead of
+ * {@link BusinessPartnerMessageConsumer}. The following metrics are exposed:
+ * <ul>
+ * <li>{@value #METRIC_BATCH_SIZE} - number of messages per batch</li>
+ * </ul>
+ */
+@Service
+@Profile("cloud")
+@ConditionalOnProperty(name = "eventing.batch.enabled", havingValue = "true")
+public class BusinessPartnerBatchConsumer {
+
+	private static final Logger log = LoggerFactory.getLogger(BusinessPartnerBatchConsumer.class);
+
+	/**
+	 * Default maximum number of messages in one batch
+	 */
+	public static final int DEFAULT_MAX_SIZE = 50;
+
+	/**
+	 * Default maximum time in milliseconds to wait for more messages after the
+	 * first message of a batch was received
+	 */
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 500;
+
+	/**
+	 * Default time in milliseconds to wait before a failed batch is
+	 * redelivered or the connection is opened again
+	 */
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 5000;
+
+	/**
+	 * Time in milliseconds to wait for the first message of a batch before
+	 * checking whether the consumer was stopped
+	 */
+	public static final long POLL_TIMEOUT_MILLIS = 1000;
+
+	public static final String METRIC_BATCH_SIZE = "eventing.batch.size";
+
+	private final JmsTemplate jmsTemplate;
+	private final MessageConverter messageConverter;
+	private final AddressConfirmationService addressConfirmationService;
+	private final EventDeduplicator deduplicator;
+	private final DeadLetterService deadLetterService;
+	private final String destinationName;
+	private final int maxSize;
+	private final long maxWaitMillis;
+	private final long retryDelayMillis;
+
+	private final DistributionSummary batchSize;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(
+			new CustomizableThreadFactory("event-batch-consumer-"));
+
+	private volatile boolean running;
+
+	/**
+	 * @param maxSize
+	 *            maximum number of messages in one batch
+	 * @param maxWaitMillis
+	 *            maximum time in milliseconds to wait for more messages after
+	 *            the first message of a batch was received
+	 * @param retryDelayMillis
+	 *            time in milliseconds to wait before a failed batch is
+	 *            redelivered or the connection is opened again
+	 */
+	@Autowired
+	public BusinessPartnerBatchConsumer(ConnectionFactory connectionFactory,
+			BusinessEventMessageConverter messageConverter,
+			AddressConfirmationService addressConfirmationService,
+			EventDeduplicator deduplicator,
+			DeadLetterService deadLetterService,
+			MeterRegistry meterRegistry,
+			@Value("${eventing.queue}") String destinationName,
+			@Value("${eventing.batch.maxSize:" + DEFAULT_MAX_SIZE + "}") int maxSize,
+			@Value("${eventing.batch.maxWaitMillis:" + DEFAULT_MAX_WAIT_MILLIS + "}") long maxWaitMillis,
+			@Value("${eventing.batch.retryDelayMillis:" + DEFAULT_RETRY_DELAY_MILLIS + "}") long retryDelayMillis) {
+
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Maximum batch size must be positive: " + maxSize);
+		}
+
+		this.jmsTemplate = new JmsTemplate(connectionFactory);
+		// Necessary to get it work with enterprise messaging
+		jmsTemplate.setSessionTransacted(false);
+		// Messages are acknowledged per batch
+		jmsTemplate.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+
+		this.messageConverter = messageConverter;
+		this.addressConfirmationService = addressConfirmationService;
+		this.deduplicator = deduplicator;
+		this.deadLetterService = deadLetterService;
+		this.destinationName = destinationName;
+		this.maxSize = maxSize;
+		this.maxWaitMillis = maxWaitMillis;
+		this.retryDelayMillis = retryDelayMillis;
+
+		batchSize = meterRegistry.summary(METRIC_BATCH_SIZE);
+
+		log.info("Events are consumed in batches of up to {} messages within {} ms", maxSize, maxWaitMillis);
+	}
+
+	/**
+	 * Starts consuming messages when the application context is ready.
+	 */
+	@EventListener(ContextRefreshedEvent.class)
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+
+		running = true;
+		executor.execute(this::consume);
+	}
+
+	private void consume() {
+		while (running) {
+			try {
+				jmsTemplate.execute(session -> {
+					final Destination destination = jmsTemplate.getDestinationResolver()
+							.resolveDestinationName(session, destinationName, false);
+					final MessageConsumer consumer = session.createConsumer(destination);
+					try {
+						while (running) {
+							receiveBatch(session, consumer);
+						}
+					} finally {
+						JmsUtils.closeMessageConsumer(consumer);
+					}
+					return null;
+				}, true);
+			} catch (JmsException e) {
+				log.warn("JMS error: events are consumed again after {} ms", retryDelayMillis, e);
+				sleep(retryDelayMillis);
+			}
+		}
+	}
+
+	/**
+	 * Receives and handles one batch of messages and acknowledges them.
+	 *
+	 * @return number of received messages, {@code 0} if no message arrived
+	 *         within {@value #POLL_TIMEOUT_MILLIS} ms
+	 */
+	protected int receiveBatch(Session session, MessageConsumer consumer) throws JMSException {
+		final Message first = consumer.receive(POLL_TIMEOUT_MILLIS);
+		if (first == null) {
+			return 0;
+		}
+
+		final List<Message> messages = new ArrayList<>(maxSize);
+		messages.add(first);
+
+		final long deadline = System.currentTimeMillis() + maxWaitMillis;
+		while (messages.size() < maxSize) {
+			final long remainingMillis = deadline - System.currentTimeMillis();
+			final Message message = remainingMillis > 0 ? consumer.receive(remainingMillis) : consumer.receiveNoWait();
+			if (message == null) {
+				break;
+			}
+			messages.add(message);
+		}
+
+		batchSize.record(messages.size());
+
+		final List<BusinessPartnerEvent> events = toBusinessPartnerEvents(messages);
+		try {
+			if (!events.isEmpty()) {
+				// business partner keys with the ID of their first event in the batch
+				final Map<String, String> eventIds = new LinkedHashMap<>();
+				events.forEach(event -> eventIds.putIfAbsent(event.getPayload().getBusinessPartnerKey(), event.getEventID()));
+
+				final Map<String, SAPODataException> failed = addressConfirmationService
+						.confirmAddresses(new ArrayList<>(eventIds.keySet()));
+				failed.forEach((businessPartnerKey, cause) -> deadLetterService.deadLetter(businessPartnerKey,
+						eventIds.get(businessPartnerKey), cause));
+
+				events.forEach(event -> deduplicator.markProcessed(event.getEventID()));
+			}
+
+			// acknowledges all messages received by the session so far
+			messages.get(messages.size() - 1).acknowledge();
+		} catch (RuntimeException e) {
+			log.warn("Error while handling a batch of {} events, they are redelivered after {} ms",
+					messages.size(), retryDelayMillis, e);
+			sleep(retryDelayMillis);
+			session.recover();
+		}
+
+		return messages.size();
+	}
+
+	/**
+	 * @return business partner events of {@code messages} in the order they
+	 *         were received. Messages that cannot be converted and duplicate
+	 *         events are dropped.
+	 */
+	private List<BusinessPartnerEvent> toBusinessPartnerEvents(List<Message> messages) {
+		final List<BusinessPartnerEvent> events = new ArrayList<>(messages.size());
+		for (Message message : messages) {
+			try {
+				final Object event = messageConverter.fromMessage(message);
+				if (!(event instanceof BusinessPartnerEvent)) {
+					log.warn("JMS error: the message is dropped, it is not a business partner event: {}", event);
+					continue;
+				}
+
+				final BusinessPartnerEvent businessPartnerEvent = (BusinessPartnerEvent) event;
+				log.debug("Handle BusinessPartnerEvent: {}", businessPartnerEvent);
+
+				final BusinessPartnerEvent.Payload payload = businessPartnerEvent.getPayload();
+				if (payload == null || StringUtils.isBlank(payload.getBusinessPartnerKey())) {
+					log.warn("JMS error: the message is dropped, it has no business partner key: {}", businessPartnerEvent);
+					continue;
+				}
+
+				if (deduplicator.isDuplicate(businessPartnerEvent.getEventID())) {
+					log.debug("Event {} was already handled and is dropped", businessPartnerEvent.getEventID());
+					continue;
+				}
+
+				events.add(businessPartnerEvent);
+			} catch (JMSException | MessageConversionException e) {
+				log.warn("JMS error: the message is dropped", e);
+			}
+		}
+
+		return events;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops consuming messages after the current batch.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		executor.shutdown();
+
+		try {
+			if (!executor.awaitTermination(POLL_TIMEOUT_MILLIS + retryDelayMillis + maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				log.warn("The current batch of events was not handled before shutdown, it is redelivered");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
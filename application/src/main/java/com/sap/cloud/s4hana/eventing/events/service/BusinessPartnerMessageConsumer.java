@@ -5,33 +5,117 @@ import javax.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.stereotype.Service;
 
 import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPException;
 import com.sap.cloud.s4hana.eventing.events.model.BusinessPartnerEvent;
-import com.sap.cloud.s4hana.eventing.security.ExecuteWithJwtTokenFromXsuaa;
+import com.sap.cloud.s4hana.eventing.events.model.DeadLetter;
 
+/**
+ * Consumes business partner events one at a time. Replaced by
+ * {@link BusinessPartnerBatchConsumer} if {@code eventing.batch.enabled} is
+ * {@code true}.
+ */
 @Service
+@ConditionalOnProperty(name = "eventing.batch.enabled", havingValue = "false", matchIfMissing = true)
 public class BusinessPartnerMessageConsumer {
     
     private static final Logger log = LoggerFactory.getLogger(BusinessPartnerMessageConsumer.class);
     
     private final AddressConfirmationService addressConfirmationService;
+    private final EventCoalescer coalescer;
+    private final EventDeduplicator deduplicator;
+    private final DeadLetterService deadLetterService;
+    private final EventInbox inbox;
+    
+    private boolean started;
     
     @Autowired
-    public BusinessPartnerMessageConsumer(AddressConfirmationService addressConfirmationService) {
+    public BusinessPartnerMessageConsumer(AddressConfirmationService addressConfirmationService,
+    		EventCoalescer coalescer,
+    		EventDeduplicator deduplicator,
+    		DeadLetterService deadLetterService,
+    		EventInbox inbox) {
 		this.addressConfirmationService = addressConfirmationService;
+		this.coalescer = coalescer;
+		this.deduplicator = deduplicator;
+		this.deadLetterService = deadLetterService;
+		this.inbox = inbox;
+	}
+	
+	/**
+	 * Hands over the events that were received but not handled before the
+	 * application stopped again, see {@link EventInbox}.
+	 */
+	@EventListener(ContextRefreshedEvent.class)
+	public synchronized void start() {
+		if (started) {
+			return;
+		}
+		
+		started = true;
+		for (DeadLetter event : inbox.recovered()) {
+			coalescer.submit(event.getBusinessPartnerKey(),
+					() -> confirmAddress(event.getBusinessPartnerKey(), event.getEventId(), event.getId()));
+		}
 	}
 
+	/**
+	 * Drops events that were already received according to
+	 * {@link EventDeduplicator} and hands the others over to
+	 * {@link EventCoalescer} that collapses bursts of
+	 * events of the same business partner and then to
+	 * {@link KeyedEventDispatcher} so that events of different business
+	 * partners are handled in parallel while events of the same business
+	 * partner are handled in the order they were received. Events whose
+	 * address cannot be confirmed are handed over to {@link DeadLetterService}
+	 * to be replayed later. An event is marked as processed only after it was
+	 * handled or handed over to {@link DeadLetterService}, so that an event
+	 * that was redelivered because it could not be handed over is not dropped.
+	 * <p>
+	 * The event is acknowledged as soon as this method returns, i.e. before it
+	 * is handled. It is therefore written to {@link EventInbox} first, so that
+	 * it is handled after a restart if it was still waiting in
+	 * {@link EventCoalescer} or {@link KeyedEventDispatcher}. If it cannot be
+	 * written, it is not acknowledged and redelivered.
+	 */
 	@JmsListener(destination = "${eventing.queue}")
-	@ExecuteWithJwtTokenFromXsuaa(error = "There was an exception while handling an event. The event was dropped.")
 	public void onEvent(@Valid BusinessPartnerEvent event) {
         log.debug("Handle BusinessPartnerEvent: {}", event);
         
+        if (deduplicator.isDuplicate(event.getEventID())) {
+        	log.debug("Event {} was already received and is dropped", event.getEventID());
+        	return;
+        }
+        
         final String businessPartnerKey = event.getPayload().getBusinessPartnerKey();
         
-        addressConfirmationService.confirmAddress(businessPartnerKey);
+        final String eventId = event.getEventID();
+        
+        final long acceptedId = inbox.accept(businessPartnerKey, eventId);
+        
+        coalescer.submit(businessPartnerKey, () -> confirmAddress(businessPartnerKey, eventId, acceptedId));
     }
+	
+	private void confirmAddress(String businessPartnerKey, String eventId, long acceptedId) {
+		try {
+			addressConfirmationService.confirmAddress(businessPartnerKey);
+		} catch (RuntimeException e) {
+			deadLetterService.deadLetter(businessPartnerKey, eventId, e);
+		}
+		
+		// the events collapsed into this one were handled as well
+		try {
+			inbox.complete(businessPartnerKey, acceptedId).forEach(deduplicator::markProcessed);
+		} catch (SAPException e) {
+			log.warn("Events about business partner {} are handled again after the next start", businessPartnerKey, e);
+			deduplicator.markProcessed(eventId);
+		}
+	}
 
 }
@@ -0,0 +1,74 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.events.model.DeadLetter;
+
+/**
+ * Actuator endpoint to list, replay and discard the dead letters of
+ * {@link DeadLetterService}, e.g.
+ * <ul>
+ * <li>{@code GET /actuator/deadletters?businessPartnerKey=9980021470}</li>
+ * <li>{@code POST /actuator/deadletters} with
+ * {@code {"from": "2021-03-01T08:00:00Z", "to": "2021-03-01T12:00:00Z"}}</li>
+ * <li>{@code DELETE /actuator/deadletters/42}</li>
+ * </ul>
+ * All parameters are optional, the time range applies to the last failed
+ * attempt. The endpoint is exposed over JMX; to expose it over HTTP, add it
+ * to {@code management.endpoints.web.exposure.include}.
+ */
+@Component
+@Endpoint(id = DeadLetterEndpoint.ID)
+public class DeadLetterEndpoint {
+
+	public static final String ID = "deadletters";
+
+	private final DeadLetterService deadLetterService;
+
+	@Autowired
+	public DeadLetterEndpoint(DeadLetterService deadLetterService) {
+		this.deadLetterService = deadLetterService;
+	}
+
+	@ReadOperation
+	public List<DeadLetter> deadLetters(@Nullable String businessPartnerKey, @Nullable OffsetDateTime from,
+			@Nullable OffsetDateTime to) {
+		return deadLetterService.find(businessPartnerKey, toInstant(from), toInstant(to));
+	}
+
+	/**
+	 * Replays the matching dead letters at the rate of
+	 * {@link DeadLetterService}.
+	 *
+	 * @return number of dead letters that are replayed
+	 */
+	@WriteOperation
+	public Map<String, Integer> replay(@Nullable String businessPartnerKey, @Nullable OffsetDateTime from,
+			@Nullable OffsetDateTime to) {
+		return Collections.singletonMap("replayed",
+				deadLetterService.replay(businessPartnerKey, toInstant(from), toInstant(to)));
+	}
+
+	@DeleteOperation
+	public Map<String, Boolean> discard(@Selector long id) {
+		return Collections.singletonMap("discarded", deadLetterService.discard(id));
+	}
+
+	private static Instant toInstant(OffsetDateTime dateTime) {
+		return dateTime == null ? null : dateTime.toInstant();
+	}
+
+}
@@ -0,0 +1,456 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPException;
+import com.sap.cloud.s4hana.eventing.events.model.DeadLetter;
+
+/**
+ * Keeps events that could not be handled on the local disk, so that they are
+ * not lost when the application is restarted.
+ * <p>
+ * Every failed attempt and every resolved dead letter is appended as a record
+ * to the current segment file in {@code directory}. When the current segment
+ * grows larger than {@code maxSegmentBytes}, a new one is started. Old
+ * segments are deleted as soon as they contain no unresolved dead letter;
+ * when there are more than {@link #MAX_SEGMENTS} segments, the unresolved
+ * dead letters of the oldest one are written to the current one again, so
+ * that the oldest one can be deleted.
+ * <p>
+ * On startup, all segments are read up to their first incomplete record,
+ * which was being written when the application stopped.
+ */
+@Component
+public class DeadLetterJournal {
+
+	private static final Logger log = LoggerFactory.getLogger(DeadLetterJournal.class);
+
+	/**
+	 * Default directory of the segments in {@code java.io.tmpdir}
+	 */
+	public static final String DEFAULT_DIRECTORY = "dead-letters";
+
+	/**
+	 * Default size of a segment in bytes after which a new one is started
+	 */
+	public static final long DEFAULT_MAX_SEGMENT_BYTES = 1024 * 1024;
+
+	/**
+	 * Number of segments after which the unresolved dead letters of the
+	 * oldest one are moved to the current one
+	 */
+	public static final int MAX_SEGMENTS = 8;
+
+	/**
+	 * Maximum length of the cause that is kept for a dead letter
+	 */
+	public static final int MAX_CAUSE_LENGTH = 1000;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private static final byte RECORD_FAILED = 1;
+	private static final byte RECORD_RESOLVED = 2;
+
+	private final Path directory;
+	private final long maxSegmentBytes;
+
+	// guarded by this
+	private final TreeMap<Long, Path> segments = new TreeMap<>();
+	private final Map<Long, DeadLetter> deadLetters = new LinkedHashMap<>();
+	// number of the segment with the latest record of a dead letter by its ID
+	private final Map<Long, Long> segmentByDeadLetter = new HashMap<>();
+	// number of unresolved dead letters by segment number
+	private final Map<Long, Integer> deadLettersBySegment = new HashMap<>();
+	private FileChannel currentChannel;
+	private long currentSegment;
+	private long currentBytes;
+	private long nextId = 1;
+
+	/**
+	 * Reads the unresolved dead letters from the segments in
+	 * {@code directory}.
+	 *
+	 * @param directory
+	 *            directory of the segments. If empty,
+	 *            {@link #DEFAULT_DIRECTORY} in {@code java.io.tmpdir} is used.
+	 * @param maxSegmentBytes
+	 *            size of a segment in bytes after which a new one is started
+	 * @throws SAPException
+	 *             if the segments cannot be read or written
+	 */
+	@Autowired
+	public DeadLetterJournal(@Value("${eventing.deadLetters.directory:}") String directory,
+			@Value("${eventing.deadLetters.maxSegmentBytes:" + DEFAULT_MAX_SEGMENT_BYTES + "}") long maxSegmentBytes)
+			throws SAPException {
+
+		this.directory = StringUtils.isBlank(directory)
+				? Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY)
+				: Paths.get(directory);
+		this.maxSegmentBytes = maxSegmentBytes;
+
+		synchronized (this) {
+			try {
+				Files.createDirectories(this.directory);
+				recover();
+				// the last segment may end with an incomplete record, so a new one is started
+				startSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+				deleteResolvedSegments();
+			} catch (IOException e) {
+				throw new SAPException("The dead letter journal " + this.directory + " cannot be read", e);
+			}
+		}
+
+		log.info("Dead letter journal {} contains {} events that were not handled yet", this.directory,
+				deadLetters.size());
+	}
+
+	/**
+	 * Writes a dead letter for an event that failed for the first time.
+	 *
+	 * @param eventId
+	 *            ID of the event, may be {@code null}
+	 * @param cause
+	 *            why the event failed
+	 * @return the new dead letter
+	 * @throws SAPException
+	 *             if the dead letter cannot be written
+	 */
+	public synchronized DeadLetter append(String businessPartnerKey, String eventId, String cause) throws SAPException {
+		final DeadLetter deadLetter = new DeadLetter(nextId++, businessPartnerKey, eventId, Instant.now(), 1,
+				StringUtils.abbreviate(StringUtils.defaultString(cause), MAX_CAUSE_LENGTH));
+		write(deadLetter);
+		return deadLetter;
+	}
+
+	/**
+	 * Writes another failed attempt of the dead letter with {@code id}.
+	 *
+	 * @return the updated dead letter, {@code null} if it was resolved
+	 * @throws SAPException
+	 *             if the attempt cannot be written
+	 */
+	public synchronized DeadLetter recordFailure(long id, String cause) throws SAPException {
+		final DeadLetter deadLetter = deadLetters.get(id);
+		if (deadLetter == null) {
+			return null;
+		}
+
+		final DeadLetter failed = new DeadLetter(id, deadLetter.getBusinessPartnerKey(), deadLetter.getEventId(),
+				Instant.now(), deadLetter.getAttempts() + 1,
+				StringUtils.abbreviate(StringUtils.defaultString(cause), MAX_CAUSE_LENGTH));
+		write(failed);
+		return failed;
+	}
+
+	/**
+	 * Removes the dead letter with {@code id}, e.g. after it was replayed
+	 * successfully.
+	 *
+	 * @return {@code false} if there is no such dead letter
+	 * @throws SAPException
+	 *             if the removal cannot be written
+	 */
+	public synchronized boolean resolve(long id) throws SAPException {
+		if (!deadLetters.containsKey(id)) {
+			return false;
+		}
+
+		try {
+			appendRecord(resolvedRecord(id));
+			removeDeadLetter(id);
+			deleteResolvedSegments();
+		} catch (IOException e) {
+			throw new SAPException("The dead letter " + id + " cannot be removed from the journal " + directory, e);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the dead letter with {@code id}, {@code null} if there is none
+	 */
+	public synchronized DeadLetter get(long id) {
+		return deadLetters.get(id);
+	}
+
+	/**
+	 * @param businessPartnerKey
+	 *            key of the business partner, {@code null} for all business
+	 *            partners
+	 * @param from
+	 *            earliest time of the last failed attempt, {@code null} for no
+	 *            limit
+	 * @param to
+	 *            latest time of the last failed attempt, {@code null} for no
+	 *            limit
+	 * @return the matching dead letters in the order they were written first
+	 */
+	public synchronized List<DeadLetter> find(String businessPartnerKey, Instant from, Instant to) {
+		final List<DeadLetter> result = new ArrayList<>();
+		for (DeadLetter deadLetter : deadLetters.values()) {
+			if ((businessPartnerKey == null || businessPartnerKey.equals(deadLetter.getBusinessPartnerKey()))
+					&& (from == null || !deadLetter.getFailedAt().isBefore(from))
+					&& (to == null || !deadLetter.getFailedAt().isAfter(to))) {
+				result.add(deadLetter);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return number of unresolved dead letters
+	 */
+	public synchronized int size() {
+		return deadLetters.size();
+	}
+
+	/**
+	 * @return number of segment files
+	 */
+	public synchronized int segments() {
+		return segments.size();
+	}
+
+	/**
+	 * Closes the current segment.
+	 */
+	@PreDestroy
+	public synchronized void close() {
+		try {
+			if (currentChannel != null) {
+				currentChannel.close();
+			}
+		} catch (IOException e) {
+			log.debug("Exception when closing the dead letter journal", e);
+		}
+	}
+
+	private void write(DeadLetter deadLetter) throws SAPException {
+		try {
+			if (currentBytes >= maxSegmentBytes) {
+				startSegment(currentSegment + 1);
+				moveOldestSegment();
+			}
+
+			appendRecord(failedRecord(deadLetter));
+			putDeadLetter(deadLetter, currentSegment);
+			deleteResolvedSegments();
+		} catch (IOException e) {
+			throw new SAPException("The dead letter about business partner " + deadLetter.getBusinessPartnerKey()
+					+ " cannot be written to the journal " + directory, e);
+		}
+	}
+
+	private void putDeadLetter(DeadLetter deadLetter, long segment) {
+		removeDeadLetter(deadLetter.getId());
+		deadLetters.put(deadLetter.getId(), deadLetter);
+		segmentByDeadLetter.put(deadLetter.getId(), segment);
+		deadLettersBySegment.merge(segment, 1, Integer::sum);
+	}
+
+	private void removeDeadLetter(long id) {
+		deadLetters.remove(id);
+		final Long segment = segmentByDeadLetter.remove(id);
+		if (segment != null) {
+			deadLettersBySegment.computeIfPresent(segment, (key, count) -> count > 1 ? count - 1 : null);
+		}
+	}
+
+	/**
+	 * Writes the unresolved dead letters of the oldest segment to the current
+	 * one if there are too many segments.
+	 */
+	private void moveOldestSegment() throws IOException {
+		if (segments.size() <= MAX_SEGMENTS) {
+			return;
+		}
+
+		final long oldestSegment = segments.firstKey();
+		for (DeadLetter deadLetter : new ArrayList<>(deadLetters.values())) {
+			if (segmentByDeadLetter.get(deadLetter.getId()) == oldestSegment) {
+				appendRecord(failedRecord(deadLetter));
+				putDeadLetter(deadLetter, currentSegment);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the oldest segments as long as they contain no unresolved dead
+	 * letter. Younger segments are kept even if they contain none, so that
+	 * the resolved records they contain are read before the failed records of
+	 * older segments are.
+	 */
+	private void deleteResolvedSegments() throws IOException {
+		final Iterator<Map.Entry<Long, Path>> iterator = segments.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<Long, Path> segment = iterator.next();
+			if (segment.getKey() == currentSegment || deadLettersBySegment.containsKey(segment.getKey())) {
+				return;
+			}
+
+			Files.deleteIfExists(segment.getValue());
+			iterator.remove();
+		}
+	}
+
+	private void startSegment(long segment) throws IOException {
+		if (currentChannel != null) {
+			currentChannel.close();
+		}
+
+		final Path segmentFile = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+		currentChannel = FileChannel.open(segmentFile, CREATE, WRITE, APPEND);
+		currentSegment = segment;
+		currentBytes = currentChannel.size();
+		segments.put(segment, segmentFile);
+	}
+
+	private void recover() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				final String name = file.getFileName().toString();
+				try {
+					segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+							name.length() - SEGMENT_SUFFIX.length())), file);
+				} catch (NumberFormatException e) {
+					log.warn("File {} in the dead letter journal is ignored", file);
+				}
+			}
+		}
+
+		for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+			recover(segment.getKey(), segment.getValue());
+		}
+	}
+
+	/**
+	 * Reads the records of {@code file} up to the first incomplete one.
+	 */
+	private void recover(long segment, Path file) throws IOException {
+		final long fileSize = Files.size(file);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			while (true) {
+				final byte[] record;
+				try {
+					final int length = in.readInt();
+					final long checksum = in.readInt() & 0xFFFFFFFFL;
+					if (length < 0 || length > fileSize) {
+						log.warn("Dead letter journal segment {} ends with a corrupt record that is ignored", file);
+						return;
+					}
+
+					record = new byte[length];
+					in.readFully(record);
+
+					if (crc(record) != checksum) {
+						log.warn("Dead letter journal segment {} ends with a corrupt record that is ignored", file);
+						return;
+					}
+				} catch (EOFException e) {
+					return;
+				}
+
+				apply(record, segment);
+			}
+		}
+	}
+
+	private void apply(byte[] record, long segment) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		final byte recordType = in.readByte();
+		final long id = in.readLong();
+
+		nextId = Math.max(nextId, id + 1);
+
+		if (recordType == RECORD_RESOLVED) {
+			removeDeadLetter(id);
+			return;
+		}
+
+		final String businessPartnerKey = in.readUTF();
+		final String eventId = StringUtils.defaultIfEmpty(in.readUTF(), null);
+		final Instant failedAt = Instant.ofEpochMilli(in.readLong());
+		final int attempts = in.readInt();
+		final String cause = in.readUTF();
+		putDeadLetter(new DeadLetter(id, businessPartnerKey, eventId, failedAt, attempts, cause), segment);
+	}
+
+	private void appendRecord(byte[] record) throws IOException {
+		if (!currentChannel.isOpen()) {
+			// closed when a thread writing to it was interrupted
+			currentChannel = FileChannel.open(segments.get(currentSegment), CREATE, WRITE, APPEND);
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(8 + record.length);
+		buffer.putInt(record.length).putInt((int) crc(record)).put(record).flip();
+		while (buffer.hasRemaining()) {
+			currentChannel.write(buffer);
+		}
+		currentChannel.force(false);
+		currentBytes += buffer.limit();
+	}
+
+	private static byte[] failedRecord(DeadLetter deadLetter) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(RECORD_FAILED);
+		out.writeLong(deadLetter.getId());
+		out.writeUTF(deadLetter.getBusinessPartnerKey());
+		out.writeUTF(StringUtils.defaultString(deadLetter.getEventId()));
+		out.writeLong(deadLetter.getFailedAt().toEpochMilli());
+		out.writeInt(deadLetter.getAttempts());
+		out.writeUTF(deadLetter.getCause());
+		return bytes.toByteArray();
+	}
+
+	private static byte[] resolvedRecord(long id) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(RECORD_RESOLVED);
+		out.writeLong(id);
+		return bytes.toByteArray();
+	}
+
+	private static long crc(byte[] record) {
+		final CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+		return crc.getValue();
+	}
+
+}
@@ -0,0 +1,319 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPException;
+import com.sap.cloud.s4hana.eventing.events.model.DeadLetter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Keeps events whose addresses could not be confirmed in the
+ * {@link DeadLetterJournal} and replays them, so that a temporary outage of
+ * SAP S/4HANA does not lose address confirmations.
+ * <p>
+ * A dead letter is replayed after a delay that doubles with every attempt,
+ * starting with {@code initialBackoffMillis} and limited by
+ * {@code maxBackoffMillis}. After {@code maxAttempts} attempts, it is kept in
+ * the journal but replayed only on request, see
+ * {@link #replay(String, Instant, Instant)}. Replayed events are handed over
+ * to {@link KeyedEventDispatcher}, i.e. after the events of the same business
+ * partner received before and within the limit of
+ * {@link BackpressureController}. At most {@code replayRatePerSecond} events
+ * are replayed per second, so that a replay does not overload SAP S/4HANA.
+ * <p>
+ * The following metrics are exposed:
+ * <ul>
+ * <li>{@value #METRIC_SIZE} - number of dead letters in the journal</li>
+ * <li>{@value #METRIC_REPLAYED} - number of dead letters replayed
+ * successfully</li>
+ * </ul>
+ */
+@Service
+public class DeadLetterService {
+
+	private static final Logger log = LoggerFactory.getLogger(DeadLetterService.class);
+
+	/**
+	 * Default number of attempts after which a dead letter is replayed only on
+	 * request
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+	/**
+	 * Default delay in milliseconds before the first replay of a dead letter
+	 */
+	public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 60000;
+
+	/**
+	 * Default maximum delay in milliseconds between two replays of a dead
+	 * letter
+	 */
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 3600000;
+
+	/**
+	 * Default maximum number of dead letters replayed per second
+	 */
+	public static final double DEFAULT_REPLAY_RATE_PER_SECOND = 2;
+
+	public static final String METRIC_SIZE = "eventing.deadletters.size";
+	public static final String METRIC_REPLAYED = "eventing.deadletters.replayed";
+
+	private final DeadLetterJournal journal;
+	private final AddressConfirmationService addressConfirmationService;
+	private final KeyedEventDispatcher dispatcher;
+	private final int maxAttempts;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	private final RateLimiter replayRateLimiter;
+
+	private final Counter replayedCounter;
+
+	// replays that were not started yet by the IDs of their dead letters
+	private final Map<Long, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<>();
+
+	private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+			new CustomizableThreadFactory("dead-letter-"));
+
+	private boolean started;
+
+	/**
+	 * @param maxAttempts
+	 *            number of attempts after which a dead letter is replayed only
+	 *            on request
+	 * @param initialBackoffMillis
+	 *            delay in milliseconds before the first replay of a dead letter
+	 * @param maxBackoffMillis
+	 *            maximum delay in milliseconds between two replays of a dead
+	 *            letter
+	 * @param replayRatePerSecond
+	 *            maximum number of dead letters replayed per second
+	 */
+	@Autowired
+	public DeadLetterService(DeadLetterJournal journal, AddressConfirmationService addressConfirmationService,
+			KeyedEventDispatcher dispatcher, MeterRegistry meterRegistry,
+			@Value("${eventing.deadLetters.maxAttempts:" + DEFAULT_MAX_ATTEMPTS + "}") int maxAttempts,
+			@Value("${eventing.deadLetters.initialBackoffMillis:" + DEFAULT_INITIAL_BACKOFF_MILLIS + "}") long initialBackoffMillis,
+			@Value("${eventing.deadLetters.maxBackoffMillis:" + DEFAULT_MAX_BACKOFF_MILLIS + "}") long maxBackoffMillis,
+			@Value("${eventing.deadLetters.replayRatePerSecond:" + DEFAULT_REPLAY_RATE_PER_SECOND + "}") double replayRatePerSecond) {
+
+		if (replayRatePerSecond <= 0) {
+			throw new IllegalArgumentException("Replay rate must be positive: " + replayRatePerSecond);
+		}
+
+		this.journal = journal;
+		this.addressConfirmationService = addressConfirmationService;
+		this.dispatcher = dispatcher;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+		this.maxBackoffMillis = maxBackoffMillis;
+		this.replayRateLimiter = RateLimiter.create(replayRatePerSecond);
+
+		scheduler.setRemoveOnCancelPolicy(true);
+		scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+		replayedCounter = meterRegistry.counter(METRIC_REPLAYED);
+		meterRegistry.gauge(METRIC_SIZE, journal, DeadLetterJournal::size);
+	}
+
+	/**
+	 * Starts replaying the dead letters that were not replayed before the
+	 * application stopped.
+	 */
+	@EventListener(ContextRefreshedEvent.class)
+	public synchronized void start() {
+		if (started) {
+			return;
+		}
+
+		started = true;
+		journal.find(null, null, null).stream()
+				.filter(deadLetter -> deadLetter.getAttempts() < maxAttempts)
+				.forEach(deadLetter -> schedule(deadLetter.getId(), backoffMillis(deadLetter.getAttempts())));
+	}
+
+	/**
+	 * Writes a dead letter for an event whose address could not be confirmed
+	 * and schedules its replay.
+	 *
+	 * @param eventId
+	 *            ID of the event, may be {@code null}
+	 * @param cause
+	 *            why the address could not be confirmed
+	 */
+	public void deadLetter(String businessPartnerKey, String eventId, RuntimeException cause) {
+		final DeadLetter deadLetter;
+		try {
+			deadLetter = journal.append(businessPartnerKey, eventId, describe(cause));
+		} catch (SAPException e) {
+			log.error("Event {} about business partner {} is dropped, it cannot be written to the dead letter journal",
+					eventId, businessPartnerKey, e);
+			return;
+		}
+
+		final long backoffMillis = backoffMillis(1);
+		log.warn("Address of business partner {} was not confirmed, event {} is replayed in {} ms",
+				businessPartnerKey, eventId, backoffMillis, cause);
+
+		synchronized (this) {
+			if (started) {
+				schedule(deadLetter.getId(), backoffMillis);
+			}
+		}
+	}
+
+	/**
+	 * @see DeadLetterJournal#find(String, Instant, Instant)
+	 */
+	public List<DeadLetter> find(String businessPartnerKey, Instant from, Instant to) {
+		return journal.find(businessPartnerKey, from, to);
+	}
+
+	/**
+	 * Replays the matching dead letters now, regardless of their number of
+	 * attempts, at a rate of at most {@code replayRatePerSecond}.
+	 *
+	 * @see DeadLetterJournal#find(String, Instant, Instant)
+	 * @return number of dead letters that are replayed
+	 */
+	public int replay(String businessPartnerKey, Instant from, Instant to) {
+		int replayed = 0;
+		for (DeadLetter deadLetter : journal.find(businessPartnerKey, from, to)) {
+			if (schedule(deadLetter.getId(), 0)) {
+				replayed++;
+			}
+		}
+
+		log.info("{} dead letter(s) are replayed", replayed);
+		return replayed;
+	}
+
+	/**
+	 * Removes the dead letter with {@code id} without replaying it.
+	 *
+	 * @return {@code false} if there is no such dead letter
+	 */
+	public boolean discard(long id) {
+		final boolean discarded = journal.resolve(id);
+		if (discarded) {
+			log.warn("Dead letter {} was discarded", id);
+		}
+		return discarded;
+	}
+
+	/**
+	 * Schedules the replay of the dead letter with {@code id}. A replay that
+	 * is already scheduled is moved forward if it would start later.
+	 *
+	 * @return {@code false} if the replay of the dead letter is already
+	 *         scheduled to start earlier or in progress
+	 */
+	private synchronized boolean schedule(long id, long delayMillis) {
+		final ScheduledFuture<?> previous = scheduled.get(id);
+		if (previous != null
+				&& (previous.getDelay(TimeUnit.MILLISECONDS) <= delayMillis || !previous.cancel(false))) {
+			return false;
+		}
+
+		scheduled.put(id, scheduler.schedule(() -> dispatch(id), delayMillis, TimeUnit.MILLISECONDS));
+		return true;
+	}
+
+	private void dispatch(long id) {
+		final DeadLetter deadLetter = journal.get(id);
+		if (deadLetter == null) {
+			scheduled.remove(id);
+			return;
+		}
+
+		replayRateLimiter.acquire();
+		try {
+			dispatcher.dispatch(deadLetter.getBusinessPartnerKey(), () -> replay(deadLetter));
+		} catch (RuntimeException e) {
+			scheduled.remove(id);
+			log.warn("Dead letter {} was not replayed, it is replayed after the next start", id, e);
+		}
+	}
+
+	private void replay(DeadLetter deadLetter) {
+		scheduled.remove(deadLetter.getId());
+
+		try {
+			addressConfirmationService.confirmAddress(deadLetter.getBusinessPartnerKey());
+		} catch (RuntimeException e) {
+			retryOrPark(deadLetter, e);
+			return;
+		}
+
+		journal.resolve(deadLetter.getId());
+		replayedCounter.increment();
+		log.info("Event {} about business partner {} was replayed after {} failed attempt(s)",
+				deadLetter.getEventId(), deadLetter.getBusinessPartnerKey(), deadLetter.getAttempts());
+	}
+
+	private void retryOrPark(DeadLetter deadLetter, RuntimeException cause) {
+		final DeadLetter failed = journal.recordFailure(deadLetter.getId(), describe(cause));
+		if (failed == null) {
+			// discarded in the meantime
+			return;
+		}
+
+		if (failed.getAttempts() >= maxAttempts) {
+			log.error("Address of business partner {} was not confirmed after {} attempt(s), "
+					+ "event {} is replayed only on request", failed.getBusinessPartnerKey(), failed.getAttempts(),
+					failed.getEventId(), cause);
+			return;
+		}
+
+		final long backoffMillis = backoffMillis(failed.getAttempts());
+		log.warn("Address of business partner {} was not confirmed, attempt {} of {} in {} ms",
+				failed.getBusinessPartnerKey(), failed.getAttempts() + 1, maxAttempts, backoffMillis, cause);
+		schedule(failed.getId(), backoffMillis);
+	}
+
+	/**
+	 * @return exponential backoff with jitter, between half and the full delay
+	 */
+	private long backoffMillis(int attempts) {
+		final long delay = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempts - 1, 30));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	private static String describe(RuntimeException cause) {
+		final String message = ExceptionUtils.getMessage(cause);
+		final String rootCauseMessage = ExceptionUtils.getRootCauseMessage(cause);
+		return message.equals(rootCauseMessage) ? message : message + ", caused by " + rootCauseMessage;
+	}
+
+	/**
+	 * Stops replaying dead letters after the current one. They stay in the
+	 * journal and are replayed after the next start.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdown();
+	}
+
+}
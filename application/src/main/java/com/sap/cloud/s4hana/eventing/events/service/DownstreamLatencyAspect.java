@@ -0,0 +1,42 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.events.service.BackpressureController.Downstream;
+
+@Aspect
+@Component
+public class DownstreamLatencyAspect {
+
+	private final BackpressureController backpressure;
+
+	@Autowired
+	public DownstreamLatencyAspect(BackpressureController backpressure) {
+		this.backpressure = backpressure;
+	}
+
+	/**
+	 * Aspect-oriented Programming (AOP) advice that records the latency of
+	 * every call of SAP S/4HANA made by
+	 * {@link com.sap.cloud.s4hana.eventing.businesspartner.service.CustomBusinessPartnerService}
+	 * in {@link BackpressureController}.
+	 *
+	 * @param method
+	 *            method to be executed
+	 * @return the value returned by the executed {@code method}
+	 */
+	@Around("execution(public * com.sap.cloud.s4hana.eventing.businesspartner.service.CustomBusinessPartnerService.*(..))")
+	public Object recordS4HanaLatency(ProceedingJoinPoint method) throws Throwable {
+		final long start = System.nanoTime();
+		try {
+			return method.proceed();
+		} finally {
+			backpressure.record(Downstream.S4HANA, System.nanoTime() - start);
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Collapses bursts of events with the same key into one.
+ * <p>
+ * An event is held back for a configurable time window. If more events with
+ * the same key arrive within the window, only the latest one is handed over to
+ * {@link KeyedEventDispatcher} when the window closes, the others are
+ * dropped. E.g. SAP S/4HANA emits a {@code BO.BusinessPartner.Changed} event
+ * for each saved tab of a business partner, but the address needs to be
+ * confirmed only once.
+ * <p>
+ * If the time window is {@code 0}, events are dispatched immediately.
+ * <p>
+ * The following metrics are exposed:
+ * <ul>
+ * <li>{@value #METRIC_RECEIVED} - number of received events</li>
+ * <li>{@value #METRIC_COLLAPSED} - number of events that were dropped because
+ * a newer event with the same key arrived within the time window</li>
+ * <li>{@value #METRIC_PENDING} - number of events waiting for their time
+ * window to close</li>
+ * </ul>
+ */
+@Component
+public class EventCoalescer {
+
+	private static final Logger log = LoggerFactory.getLogger(EventCoalescer.class);
+
+	/**
+	 * Default time window in milliseconds
+	 */
+	public static final long DEFAULT_WINDOW_MILLIS = 2000;
+
+	/**
+	 * Default maximum number of keys held back at the same time
+	 */
+	public static final int DEFAULT_MAX_PENDING = 10000;
+
+	public static final String METRIC_RECEIVED = "eventing.events.received";
+	public static final String METRIC_COLLAPSED = "eventing.events.collapsed";
+	public static final String METRIC_PENDING = "eventing.events.pending";
+
+	private final KeyedEventDispatcher dispatcher;
+	private final long windowMillis;
+	private final int maxPending;
+
+	private final Map<String, Runnable> pendingTasks = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+
+	private final Counter receivedCounter;
+	private final Counter collapsedCounter;
+
+	/**
+	 * @param windowMillis
+	 *            time window in milliseconds in which events with the same
+	 *            key are collapsed. If {@code 0}, events are dispatched
+	 *            immediately.
+	 * @param maxPending
+	 *            maximum number of keys held back at the same time. When it is
+	 *            reached, events with new keys are dispatched immediately.
+	 */
+	@Autowired
+	public EventCoalescer(KeyedEventDispatcher dispatcher, MeterRegistry meterRegistry,
+			@Value("${eventing.coalescing.windowMillis:" + DEFAULT_WINDOW_MILLIS + "}") long windowMillis,
+			@Value("${eventing.coalescing.maxPending:" + DEFAULT_MAX_PENDING + "}") int maxPending) {
+
+		this(dispatcher, meterRegistry, windowMillis, maxPending, windowMillis > 0 ? newScheduler() : null);
+	}
+
+	/**
+	 * @param scheduler
+	 *            closes the time windows, {@code null} if events are
+	 *            dispatched immediately
+	 */
+	@VisibleForTesting
+	EventCoalescer(KeyedEventDispatcher dispatcher, MeterRegistry meterRegistry, long windowMillis, int maxPending,
+			ScheduledExecutorService scheduler) {
+
+		this.dispatcher = dispatcher;
+		this.windowMillis = windowMillis;
+		this.maxPending = maxPending;
+		this.scheduler = scheduler;
+
+		receivedCounter = meterRegistry.counter(METRIC_RECEIVED);
+		collapsedCounter = meterRegistry.counter(METRIC_COLLAPSED);
+		meterRegistry.gauge(METRIC_PENDING, pendingTasks, Map::size);
+
+		log.info("Events with the same key are collapsed within {} ms", windowMillis);
+	}
+
+	private static ScheduledExecutorService newScheduler() {
+		final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+				new CustomizableThreadFactory("event-coalescer-"));
+		scheduler.setRemoveOnCancelPolicy(true);
+		return scheduler;
+	}
+
+	/**
+	 * Dispatches {@code task} when the time window of its {@code key} closes
+	 * unless a newer task with the same key is submitted before that.
+	 *
+	 * @param key
+	 *            key to collapse events by, e.g. business partner key
+	 * @param task
+	 *            task handling the event
+	 */
+	public void submit(final String key, final Runnable task) {
+		receivedCounter.increment();
+
+		if (scheduler == null || key == null) {
+			dispatcher.dispatch(key, task);
+			return;
+		}
+
+		if (pendingTasks.size() >= maxPending && !pendingTasks.containsKey(key)) {
+			log.debug("Too many pending events, event with key {} is dispatched immediately", key);
+			dispatcher.dispatch(key, task);
+			return;
+		}
+
+		final Runnable replacedTask = pendingTasks.put(key, task);
+		if (replacedTask == null) {
+			scheduler.schedule(() -> flush(key), windowMillis, TimeUnit.MILLISECONDS);
+		} else {
+			log.debug("Event with key {} is collapsed with a newer one", key);
+			collapsedCounter.increment();
+		}
+	}
+
+	private void flush(final String key) {
+		final Runnable task = pendingTasks.remove(key);
+		if (task != null) {
+			dispatcher.dispatch(key, task);
+		}
+	}
+
+	/**
+	 * Dispatches all pending events without waiting for their time windows to
+	 * close.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler == null) {
+			return;
+		}
+
+		scheduler.shutdownNow();
+		pendingTasks.keySet().forEach(this::flush);
+	}
+
+}
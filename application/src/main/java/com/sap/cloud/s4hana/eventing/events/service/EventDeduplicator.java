@@ -0,0 +1,146 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Recognizes events that were already processed by their event ID, e.g.
+ * when the Enterprise Messaging Service redelivers messages after a
+ * reconnect or SAP S/4HANA emits the same event twice.
+ * <p>
+ * The IDs of processed events are kept in an {@link InMemoryEventIdStore}.
+ * If another {@link EventIdStore} is configured, e.g. {@link JdbcEventIdStore}
+ * with {@code eventing.deduplication.store=jdbc}, the IDs are stored there as
+ * well and events that are not known in memory are looked up in it.
+ * <p>
+ * If {@code maxSize} is {@code 0}, no event is considered a duplicate. Events
+ * without ID are never considered duplicates. The following metrics are
+ * exposed, the duplicate rate is the ratio of the two counters:
+ * <ul>
+ * <li>{@value #METRIC_CHECKED} - number of checked events</li>
+ * <li>{@value #METRIC_DUPLICATES} - number of duplicate events</li>
+ * <li>{@value #METRIC_SIZE} - number of event IDs kept in memory</li>
+ * </ul>
+ */
+@Component
+public class EventDeduplicator {
+
+	private static final Logger log = LoggerFactory.getLogger(EventDeduplicator.class);
+
+	/**
+	 * Default maximum number of event IDs kept in memory
+	 */
+	public static final int DEFAULT_MAX_SIZE = 100000;
+
+	/**
+	 * Default time in milliseconds the ID of a processed event is kept
+	 */
+	public static final long DEFAULT_TTL_MILLIS = 86400000;
+
+	public static final String METRIC_CHECKED = "eventing.deduplication.checked";
+	public static final String METRIC_DUPLICATES = "eventing.deduplication.duplicates";
+	public static final String METRIC_SIZE = "eventing.deduplication.size";
+
+	private final InMemoryEventIdStore memoryStore;
+	private final EventIdStore persistentStore;
+
+	private final Counter checkedCounter;
+	private final Counter duplicatesCounter;
+
+	/**
+	 * @param persistentStore
+	 *            provides the {@link EventIdStore} to be used in addition to
+	 *            the memory, if any
+	 * @param maxSize
+	 *            maximum number of event IDs kept in memory. If {@code 0},
+	 *            events are not deduplicated.
+	 * @param ttlMillis
+	 *            time in milliseconds the ID of a processed event is kept
+	 */
+	@Autowired
+	public EventDeduplicator(ObjectProvider<EventIdStore> persistentStore, MeterRegistry meterRegistry,
+			@Value("${eventing.deduplication.maxSize:" + DEFAULT_MAX_SIZE + "}") int maxSize,
+			@Value("${eventing.deduplication.ttlMillis:" + DEFAULT_TTL_MILLIS + "}") long ttlMillis) {
+
+		this(maxSize > 0 ? persistentStore.getIfAvailable() : null, meterRegistry, maxSize, ttlMillis);
+	}
+
+	protected EventDeduplicator(EventIdStore persistentStore, MeterRegistry meterRegistry, int maxSize,
+			long ttlMillis) {
+
+		this.memoryStore = maxSize > 0 ? new InMemoryEventIdStore(maxSize, ttlMillis) : null;
+		this.persistentStore = persistentStore;
+
+		checkedCounter = meterRegistry.counter(METRIC_CHECKED);
+		duplicatesCounter = meterRegistry.counter(METRIC_DUPLICATES);
+		if (memoryStore != null) {
+			meterRegistry.gauge(METRIC_SIZE, memoryStore, InMemoryEventIdStore::size);
+		}
+
+		log.info("Processed events are remembered for {} ms, up to {} in memory{}", ttlMillis, maxSize,
+				persistentStore == null ? "" : " and in " + persistentStore.getClass().getSimpleName());
+	}
+
+	/**
+	 * @return {@code true} if an event with {@code eventId} was marked as
+	 *         processed with {@link #markProcessed(String)} before
+	 */
+	public boolean isDuplicate(String eventId) {
+		if (memoryStore == null || eventId == null) {
+			return false;
+		}
+
+		checkedCounter.increment();
+
+		final boolean duplicate = memoryStore.contains(eventId) || persistentStoreContains(eventId);
+		if (duplicate) {
+			duplicatesCounter.increment();
+		}
+
+		return duplicate;
+	}
+
+	/**
+	 * Marks the event with {@code eventId} as processed, so that it is
+	 * considered a duplicate when it is received again.
+	 */
+	public void markProcessed(String eventId) {
+		if (memoryStore == null || eventId == null) {
+			return;
+		}
+
+		memoryStore.add(eventId);
+		if (persistentStore != null) {
+			try {
+				persistentStore.add(eventId);
+			} catch (RuntimeException e) {
+				log.warn("Error while storing the ID of event {}", eventId, e);
+			}
+		}
+	}
+
+	/**
+	 * Events are processed rather than dropped if the persistent store is not
+	 * available
+	 */
+	private boolean persistentStoreContains(String eventId) {
+		if (persistentStore == null) {
+			return false;
+		}
+
+		try {
+			return persistentStore.contains(eventId);
+		} catch (RuntimeException e) {
+			log.warn("Error while looking up the ID of event {}, it is processed", eventId, e);
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+/**
+ * Remembers the IDs of processed events for a limited time, see
+ * {@link EventDeduplicator}.
+ */
+public interface EventIdStore {
+
+	/**
+	 * @return {@code true} if {@code eventId} was added and has not expired
+	 *         yet
+	 */
+	boolean contains(String eventId);
+
+	/**
+	 * Adds {@code eventId} or renews it if it was added before.
+	 */
+	void add(String eventId);
+
+}
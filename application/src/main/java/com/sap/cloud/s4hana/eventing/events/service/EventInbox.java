@@ -0,0 +1,161 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPException;
+import com.sap.cloud.s4hana.eventing.events.model.DeadLetter;
+
+/**
+ * Keeps the events received by {@link BusinessPartnerMessageConsumer} on the
+ * local disk until they were handled, because they are acknowledged while
+ * they still wait in {@link EventCoalescer} or {@link KeyedEventDispatcher}.
+ * <p>
+ * An event is written to a {@link DeadLetterJournal} in {@code directory}
+ * before it is acknowledged. When the address of a business partner was
+ * confirmed or the event was handed over to {@link DeadLetterService}, the
+ * event and all events of the same business partner received before it are
+ * removed, since the collapsed ones were handled as well. The events that are
+ * still in the journal when the application starts are returned by
+ * {@link #recovered()} to be handled again.
+ */
+@Component
+@ConditionalOnProperty(name = "eventing.batch.enabled", havingValue = "false", matchIfMissing = true)
+public class EventInbox {
+
+	private static final Logger log = LoggerFactory.getLogger(EventInbox.class);
+
+	/**
+	 * Default directory of the journal in {@code java.io.tmpdir}
+	 */
+	public static final String DEFAULT_DIRECTORY = "accepted-events";
+
+	private final DeadLetterJournal journal;
+	private final List<DeadLetter> recovered;
+
+	// accepted events by business partner key in the order they were received, guarded by this
+	private final Map<String, List<DeadLetter>> acceptedEvents = new HashMap<>();
+
+	/**
+	 * @param directory
+	 *            directory of the journal. If empty, {@link #DEFAULT_DIRECTORY}
+	 *            in {@code java.io.tmpdir} is used.
+	 * @param maxSegmentBytes
+	 *            size of a journal segment in bytes after which a new one is
+	 *            started
+	 * @throws SAPException
+	 *             if the journal cannot be read or written
+	 */
+	@Autowired
+	public EventInbox(@Value("${eventing.inbox.directory:}") String directory,
+			@Value("${eventing.inbox.maxSegmentBytes:" + DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES + "}") long maxSegmentBytes)
+			throws SAPException {
+
+		journal = new DeadLetterJournal(StringUtils.isBlank(directory)
+				? Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY).toString()
+				: directory, maxSegmentBytes);
+
+		final List<DeadLetter> events = journal.find(null, null, null);
+		// the journal may have moved old events behind newer ones
+		events.sort(Comparator.comparingLong(DeadLetter::getId));
+		events.forEach(this::index);
+		recovered = Collections.unmodifiableList(events);
+
+		if (!recovered.isEmpty()) {
+			log.warn("{} event(s) were received but not handled before the application stopped", recovered.size());
+		}
+	}
+
+	/**
+	 * Writes an event to the journal. Must be called before the event is
+	 * acknowledged.
+	 *
+	 * @param eventId
+	 *            ID of the event, may be {@code null}
+	 * @return the ID of the event in the journal
+	 * @throws SAPException
+	 *             if the event cannot be written
+	 */
+	public synchronized long accept(String businessPartnerKey, String eventId) throws SAPException {
+		final DeadLetter event = journal.append(businessPartnerKey, eventId, null);
+		index(event);
+		return event.getId();
+	}
+
+	/**
+	 * Removes the event with {@code id} and the events of the same business
+	 * partner received before it from the journal.
+	 *
+	 * @param id
+	 *            the ID returned by {@link #accept(String, String)}
+	 * @return the IDs of the removed events that had one
+	 * @throws SAPException
+	 *             if the removal cannot be written
+	 */
+	public synchronized List<String> complete(String businessPartnerKey, long id) throws SAPException {
+		final List<DeadLetter> events = acceptedEvents.get(businessPartnerKey);
+		if (events == null) {
+			return Collections.emptyList();
+		}
+
+		final List<String> eventIds = new ArrayList<>();
+		final Iterator<DeadLetter> iterator = events.iterator();
+		while (iterator.hasNext()) {
+			final DeadLetter event = iterator.next();
+			if (event.getId() > id) {
+				break;
+			}
+
+			journal.resolve(event.getId());
+			iterator.remove();
+			if (event.getEventId() != null) {
+				eventIds.add(event.getEventId());
+			}
+		}
+
+		if (events.isEmpty()) {
+			acceptedEvents.remove(businessPartnerKey);
+		}
+		return eventIds;
+	}
+
+	/**
+	 * @return the events that were not handled before the application stopped
+	 */
+	public List<DeadLetter> recovered() {
+		return recovered;
+	}
+
+	/**
+	 * @return number of events that were not handled yet
+	 */
+	public int size() {
+		return journal.size();
+	}
+
+	@PreDestroy
+	public void close() {
+		journal.close();
+	}
+
+	private void index(DeadLetter event) {
+		acceptedEvents.computeIfAbsent(event.getBusinessPartnerKey(), key -> new ArrayList<>()).add(event);
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Keeps up to {@code maxSize} event IDs in memory for {@code ttlMillis}.
+ * <p>
+ * The IDs are kept in an exact set, the oldest ID is removed first when it is
+ * full. A Bloom filter in front of the set answers most lookups of new IDs
+ * without touching the set: if the filter does not contain an ID, the set
+ * does not contain it either. The filter cannot remove IDs, so it is rebuilt
+ * from the set after twice as many IDs were added to it as the set holds. This
+ * way it always contains the IDs in the set and its false positive rate does
+ * not grow.
+ */
+public class InMemoryEventIdStore implements EventIdStore {
+
+	/**
+	 * False positive probability of the Bloom filter
+	 */
+	public static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+	private final int maxSize;
+	private final long ttlMillis;
+
+	// contains at least all IDs in eventIds, guarded by this
+	private BloomFilter<CharSequence> filter;
+	private int filterSize;
+
+	// expiry time by event ID in the order the IDs were added, guarded by this
+	private final Map<String, Long> eventIds;
+
+	/**
+	 * @param maxSize
+	 *            maximum number of event IDs, must be positive
+	 * @param ttlMillis
+	 *            time in milliseconds an event ID is kept
+	 */
+	public InMemoryEventIdStore(int maxSize, long ttlMillis) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be positive: " + maxSize);
+		}
+
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+
+		filter = newFilter();
+
+		eventIds = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > InMemoryEventIdStore.this.maxSize;
+			}
+
+		};
+	}
+
+	@Override
+	public synchronized boolean contains(String eventId) {
+		if (!filter.mightContain(eventId)) {
+			return false;
+		}
+
+		final Long expiresAt = eventIds.get(eventId);
+		if (expiresAt == null) {
+			return false;
+		}
+
+		if (expiresAt <= System.currentTimeMillis()) {
+			eventIds.remove(eventId);
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public synchronized void add(String eventId) {
+		// re-insert to move renewed IDs to the end
+		eventIds.remove(eventId);
+		eventIds.put(eventId, System.currentTimeMillis() + ttlMillis);
+
+		if (filterSize >= 2 * maxSize) {
+			filter = newFilter();
+			filterSize = 0;
+			eventIds.keySet().forEach(this::putIntoFilter);
+		} else {
+			putIntoFilter(eventId);
+		}
+	}
+
+	private void putIntoFilter(String eventId) {
+		filter.put(eventId);
+		filterSize++;
+	}
+
+	/**
+	 * @return number of event IDs in the set, including expired ones that
+	 *         were not removed yet
+	 */
+	public synchronized int size() {
+		return eventIds.size();
+	}
+
+	private BloomFilter<CharSequence> newFilter() {
+		return BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), 2 * maxSize,
+				FALSE_POSITIVE_PROBABILITY);
+	}
+
+}
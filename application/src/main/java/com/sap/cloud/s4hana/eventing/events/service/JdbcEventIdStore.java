@@ -0,0 +1,150 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps event IDs in a database table, so that duplicates are recognized
+ * across restarts and by all instances of the application.
+ * <p>
+ * Enabled with {@code eventing.deduplication.store=jdbc}. It needs a
+ * {@link DataSource} bean, e.g. configured with the {@code spring.datasource}
+ * properties, and creates the table if it does not exist:
+ *
+ * <pre>
+ * CREATE TABLE PROCESSED_EVENTS (EVENT_ID VARCHAR(255) PRIMARY KEY, EXPIRES_AT BIGINT NOT NULL)
+ * </pre>
+ *
+ * Expired event IDs are deleted every {@code cleanupIntervalMillis}.
+ */
+@Component
+@ConditionalOnProperty(name = "eventing.deduplication.store", havingValue = "jdbc")
+public class JdbcEventIdStore implements EventIdStore {
+
+	private static final Logger log = LoggerFactory.getLogger(JdbcEventIdStore.class);
+
+	/**
+	 * Default name of the table
+	 */
+	public static final String DEFAULT_TABLE = "PROCESSED_EVENTS";
+
+	/**
+	 * Default time in milliseconds between deletions of expired event IDs
+	 */
+	public static final long DEFAULT_CLEANUP_INTERVAL_MILLIS = 3600000;
+
+	private final JdbcTemplate jdbcTemplate;
+	private final String table;
+	private final long ttlMillis;
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/**
+	 * @param table
+	 *            name of the table
+	 * @param ttlMillis
+	 *            time in milliseconds an event ID is kept
+	 * @param cleanupIntervalMillis
+	 *            time in milliseconds between deletions of expired event IDs,
+	 *            {@code 0} to never delete them
+	 */
+	@Autowired
+	public JdbcEventIdStore(DataSource dataSource,
+			@Value("${eventing.deduplication.jdbc.table:" + DEFAULT_TABLE + "}") String table,
+			@Value("${eventing.deduplication.ttlMillis:" + EventDeduplicator.DEFAULT_TTL_MILLIS + "}") long ttlMillis,
+			@Value("${eventing.deduplication.jdbc.cleanupIntervalMillis:" + DEFAULT_CLEANUP_INTERVAL_MILLIS + "}") long cleanupIntervalMillis) {
+
+		if (!table.matches("[A-Za-z_][A-Za-z0-9_.]*")) {
+			throw new IllegalArgumentException("Invalid table name: " + table);
+		}
+
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.table = table;
+		this.ttlMillis = ttlMillis;
+
+		createTableIfNotExists();
+
+		if (cleanupIntervalMillis > 0) {
+			scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("event-id-cleanup-"));
+			scheduler.scheduleWithFixedDelay(this::deleteExpired, cleanupIntervalMillis, cleanupIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		} else {
+			scheduler = null;
+		}
+
+		log.info("IDs of processed events are stored in table {}", table);
+	}
+
+	private void createTableIfNotExists() {
+		try {
+			jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE 1 = 0", Integer.class);
+		} catch (DataAccessException e) {
+			log.info("Table {} is created", table);
+			jdbcTemplate.execute("CREATE TABLE " + table
+					+ " (EVENT_ID VARCHAR(255) PRIMARY KEY, EXPIRES_AT BIGINT NOT NULL)");
+		}
+	}
+
+	@Override
+	public boolean contains(String eventId) {
+		final Integer count = jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM " + table + " WHERE EVENT_ID = ? AND EXPIRES_AT > ?", Integer.class,
+				eventId, System.currentTimeMillis());
+		return count != null && count > 0;
+	}
+
+	@Override
+	public void add(String eventId) {
+		final long expiresAt = System.currentTimeMillis() + ttlMillis;
+
+		if (jdbcTemplate.update("UPDATE " + table + " SET EXPIRES_AT = ? WHERE EVENT_ID = ?", expiresAt, eventId) > 0) {
+			return;
+		}
+
+		try {
+			jdbcTemplate.update("INSERT INTO " + table + " (EVENT_ID, EXPIRES_AT) VALUES (?, ?)", eventId, expiresAt);
+		} catch (DuplicateKeyException e) {
+			// added by another instance in the meantime
+			log.debug("Event ID {} was added concurrently", eventId);
+		}
+	}
+
+	/**
+	 * Deletes expired event IDs.
+	 *
+	 * @return number of deleted event IDs
+	 */
+	public int deleteExpired() {
+		try {
+			final int deleted = jdbcTemplate.update("DELETE FROM " + table + " WHERE EXPIRES_AT <= ?",
+					System.currentTimeMillis());
+			log.debug("{} expired event ID(s) deleted", deleted);
+			return deleted;
+		} catch (DataAccessException e) {
+			log.warn("Error while deleting expired event IDs", e);
+			return 0;
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,193 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dispatches tasks to a pool of worker threads so that tasks with different
+ * keys are executed in parallel while tasks with the same key are executed
+ * strictly in the order they were dispatched.
+ * <p>
+ * Each key is assigned to one of the single-threaded workers by its hash code,
+ * i.e. all tasks for a business partner are always executed by the same
+ * worker. Every worker has a bounded queue: when it is full,
+ * {@link #dispatch(String, Runnable)} blocks until there is space again, which
+ * slows down the JMS listener instead of buffering an unlimited number of
+ * events in memory.
+ * <p>
+ * Before a task is executed, a worker waits for {@link BackpressureController}
+ * until the number of tasks in progress is below its concurrency limit.
+ * <p>
+ * If the number of workers is {@code 0}, tasks are executed synchronously in
+ * the calling thread.
+ */
+@Component
+public class KeyedEventDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(KeyedEventDispatcher.class);
+
+	/**
+	 * Default number of worker threads
+	 */
+	public static final int DEFAULT_NUMBER_OF_WORKERS = 8;
+
+	/**
+	 * Default number of tasks that can wait in the queue of one worker
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+	/**
+	 * Default time in seconds to wait for queued tasks on shutdown
+	 */
+	public static final int DEFAULT_SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+	private final BackpressureController backpressure;
+	private final ExecutorService[] workers;
+	private final int shutdownTimeoutSeconds;
+
+	/**
+	 * @param backpressure
+	 *            limits the number of tasks executed at the same time
+	 * @param numberOfWorkers
+	 *            the number of worker threads. If {@code 0}, tasks are executed
+	 *            synchronously in the calling thread.
+	 * @param queueCapacity
+	 *            the number of tasks that can wait in the queue of one worker
+	 * @param shutdownTimeoutSeconds
+	 *            time to wait for queued tasks when the application is shut
+	 *            down
+	 */
+	@Autowired
+	public KeyedEventDispatcher(BackpressureController backpressure,
+			@Value("${eventing.dispatcher.workers:" + DEFAULT_NUMBER_OF_WORKERS + "}") int numberOfWorkers,
+			@Value("${eventing.dispatcher.queueCapacity:" + DEFAULT_QUEUE_CAPACITY + "}") int queueCapacity,
+			@Value("${eventing.dispatcher.shutdownTimeoutSeconds:" + DEFAULT_SHUTDOWN_TIMEOUT_SECONDS + "}") int shutdownTimeoutSeconds) {
+
+		if (numberOfWorkers < 0) {
+			throw new IllegalArgumentException("Number of workers must not be negative: " + numberOfWorkers);
+		}
+
+		if (numberOfWorkers > 0 && queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+		}
+
+		final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("event-worker-");
+
+		this.workers = new ExecutorService[numberOfWorkers];
+		for (int i = 0; i < numberOfWorkers; i++) {
+			workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<>(queueCapacity), threadFactory, new BlockWhenQueueIsFull());
+		}
+
+		this.backpressure = backpressure;
+		this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+
+		log.info("Events are dispatched to {} worker(s)", numberOfWorkers);
+	}
+
+	/**
+	 * Executes {@code task} after all the tasks previously dispatched with the
+	 * same {@code key} are finished.
+	 * <p>
+	 * Exceptions thrown by the task are logged and do not affect the other
+	 * tasks.
+	 *
+	 * @param key
+	 *            ordering key, e.g. business partner key
+	 * @param task
+	 *            task to be executed
+	 * @throws RejectedExecutionException
+	 *             if the dispatcher is shut down or the calling thread is
+	 *             interrupted while waiting for space in the queue
+	 */
+	public void dispatch(final String key, final Runnable task) {
+		final Runnable loggingTask = () -> {
+			try {
+				backpressure.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.warn("The task for key {} is dropped, interrupted while waiting for the backpressure limit", key);
+				return;
+			}
+
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				log.warn("Error while executing a task for key {}", key, e);
+			} finally {
+				backpressure.release();
+			}
+		};
+
+		if (workers.length == 0) {
+			loggingTask.run();
+			return;
+		}
+
+		workers[workerIndex(key, workers.length)].execute(loggingTask);
+	}
+
+	/**
+	 * @return index of the worker responsible for {@code key}
+	 */
+	protected static int workerIndex(final String key, final int numberOfWorkers) {
+		return key == null ? 0 : Math.floorMod(key.hashCode(), numberOfWorkers);
+	}
+
+	/**
+	 * Stops accepting new tasks and waits for the queued ones to finish.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		for (ExecutorService worker : workers) {
+			worker.shutdown();
+		}
+
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(shutdownTimeoutSeconds);
+		try {
+			for (ExecutorService worker : workers) {
+				if (!worker.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+					log.warn("Not all queued events were handled before shutdown");
+					worker.shutdownNow();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Blocks the dispatching thread until there is space in the worker queue.
+	 */
+	private static class BlockWhenQueueIsFull implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Event dispatcher is shut down");
+			}
+
+			try {
+				executor.getQueue().put(task);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for a worker", e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.s4hana.eventing.sendmail.MailDeliveredEvent;
+
+/**
+ * Sets the address confirmation state of a business partner to OPEN after its
+ * confirmation email was sent, see
+ * {@link AddressConfirmationService#onMailDelivered(MailDeliveredEvent)}.
+ * <p>
+ * The update is handed over to {@link KeyedEventDispatcher}, so that it does
+ * not block the threads sending emails and is ordered with the events of the
+ * same business partner. If it fails, the business partner is handed over to
+ * {@link DeadLetterService}: when its address is confirmed again, the email
+ * is not sent again but {@link MailDeliveredEvent} is published again, see
+ * {@link com.sap.cloud.s4hana.eventing.sendmail.MailOutbox}.
+ */
+@Component
+public class MailDeliveredListener {
+
+	private static final Logger log = LoggerFactory.getLogger(MailDeliveredListener.class);
+
+	private final AddressConfirmationService addressConfirmationService;
+	private final KeyedEventDispatcher dispatcher;
+	private final DeadLetterService deadLetterService;
+
+	@Autowired
+	public MailDeliveredListener(AddressConfirmationService addressConfirmationService,
+			KeyedEventDispatcher dispatcher,
+			DeadLetterService deadLetterService) {
+		this.addressConfirmationService = addressConfirmationService;
+		this.dispatcher = dispatcher;
+		this.deadLetterService = deadLetterService;
+	}
+
+	@EventListener
+	public void onMailDelivered(MailDeliveredEvent event) {
+		final String businessPartnerKey = event.getBusinessPartner();
+
+		try {
+			dispatcher.dispatch(businessPartnerKey, () -> updateConfirmationState(event));
+		} catch (RejectedExecutionException e) {
+			log.debug("Address confirmation state of business partner {} is not updated now", businessPartnerKey, e);
+			deadLetterService.deadLetter(businessPartnerKey, null, e);
+		}
+	}
+
+	private void updateConfirmationState(MailDeliveredEvent event) {
+		try {
+			addressConfirmationService.onMailDelivered(event);
+		} catch (RuntimeException e) {
+			deadLetterService.deadLetter(event.getBusinessPartner(), null, e);
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+
+/**
+ * Calculates checksums of the address fields that are confirmed by a customer
+ * to detect whether an address was changed.
+ * <p>
+ * The fields are fed directly into a {@link MessageDigest} that is reused by
+ * the current thread, in the fixed order of {@link Field}. Each value is
+ * encoded as UTF-8 and prefixed with its length, so that e.g. a value moved
+ * from one field to the next one changes the checksum.
+ * <p>
+ * Checksums start with {@link #VERSION_PREFIX}. Checksums without the prefix
+ * were calculated by {@link HashUtils#hash(String)} over
+ * {@link AddressDTO#toString()} and are still accepted by
+ * {@link #matches(String, BusinessPartnerAddress)}. A checksum is 24
+ * characters long in both versions.
+ */
+public class AddressChecksum {
+
+	/**
+	 * Prefix of the checksums calculated by this class
+	 */
+	public static final String VERSION_PREFIX = "2:";
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte TRUE = 2;
+	private static final byte FALSE = 3;
+
+	private static final ThreadLocal<Digester> DIGESTER = ThreadLocal.withInitial(Digester::new);
+
+	/**
+	 * Address fields that are confirmed by a customer in the order they are
+	 * fed into the checksum. Never change the order or remove fields without
+	 * changing {@link AddressChecksum#VERSION_PREFIX}.
+	 */
+	enum Field {
+		ADDRESS_ID(BusinessPartnerAddress::getAddressID, AddressDTO::getAddressID),
+		BUSINESS_PARTNER(BusinessPartnerAddress::getBusinessPartner, AddressDTO::getBusinessPartner),
+		AUTHORIZATION_GROUP(BusinessPartnerAddress::getAuthorizationGroup, AddressDTO::getAuthorizationGroup),
+		ADDITIONAL_STREET_PREFIX_NAME(BusinessPartnerAddress::getAdditionalStreetPrefixName, AddressDTO::getAdditionalStreetPrefixName),
+		ADDITIONAL_STREET_SUFFIX_NAME(BusinessPartnerAddress::getAdditionalStreetSuffixName, AddressDTO::getAdditionalStreetSuffixName),
+		ADDRESS_TIME_ZONE(BusinessPartnerAddress::getAddressTimeZone, AddressDTO::getAddressTimeZone),
+		CARE_OF_NAME(BusinessPartnerAddress::getCareOfName, AddressDTO::getCareOfName),
+		CITY_CODE(BusinessPartnerAddress::getCityCode, AddressDTO::getCityCode),
+		CITY_NAME(BusinessPartnerAddress::getCityName, AddressDTO::getCityName),
+		COMPANY_POSTAL_CODE(BusinessPartnerAddress::getCompanyPostalCode, AddressDTO::getCompanyPostalCode),
+		COUNTRY(BusinessPartnerAddress::getCountry, AddressDTO::getCountry),
+		COUNTY(BusinessPartnerAddress::getCounty, AddressDTO::getCounty),
+		DELIVERY_SERVICE_NUMBER(BusinessPartnerAddress::getDeliveryServiceNumber, AddressDTO::getDeliveryServiceNumber),
+		DELIVERY_SERVICE_TYPE_CODE(BusinessPartnerAddress::getDeliveryServiceTypeCode, AddressDTO::getDeliveryServiceTypeCode),
+		DISTRICT(BusinessPartnerAddress::getDistrict, AddressDTO::getDistrict),
+		FORM_OF_ADDRESS(BusinessPartnerAddress::getFormOfAddress, AddressDTO::getFormOfAddress),
+		FULL_NAME(BusinessPartnerAddress::getFullName, AddressDTO::getFullName),
+		HOME_CITY_NAME(BusinessPartnerAddress::getHomeCityName, AddressDTO::getHomeCityName),
+		HOUSE_NUMBER(BusinessPartnerAddress::getHouseNumber, AddressDTO::getHouseNumber),
+		HOUSE_NUMBER_SUPPLEMENT_TEXT(BusinessPartnerAddress::getHouseNumberSupplementText, AddressDTO::getHouseNumberSupplementText),
+		LANGUAGE(BusinessPartnerAddress::getLanguage, AddressDTO::getLanguage),
+		PO_BOX(BusinessPartnerAddress::getPOBox, AddressDTO::getPOBox),
+		PO_BOX_DEVIATING_CITY_NAME(BusinessPartnerAddress::getPOBoxDeviatingCityName, AddressDTO::getPOBoxDeviatingCityName),
+		PO_BOX_DEVIATING_COUNTRY(BusinessPartnerAddress::getPOBoxDeviatingCountry, AddressDTO::getPOBoxDeviatingCountry),
+		PO_BOX_DEVIATING_REGION(BusinessPartnerAddress::getPOBoxDeviatingRegion, AddressDTO::getPOBoxDeviatingRegion),
+		PO_BOX_IS_WITHOUT_NUMBER(BusinessPartnerAddress::getPOBoxIsWithoutNumber, AddressDTO::getPOBoxIsWithoutNumber),
+		PO_BOX_LOBBY_NAME(BusinessPartnerAddress::getPOBoxLobbyName, AddressDTO::getPOBoxLobbyName),
+		PO_BOX_POSTAL_CODE(BusinessPartnerAddress::getPOBoxPostalCode, AddressDTO::getPOBoxPostalCode),
+		PERSON(BusinessPartnerAddress::getPerson, AddressDTO::getPerson),
+		POSTAL_CODE(BusinessPartnerAddress::getPostalCode, AddressDTO::getPostalCode),
+		PRFRD_COMM_MEDIUM_TYPE(BusinessPartnerAddress::getPrfrdCommMediumType, AddressDTO::getPrfrdCommMediumType),
+		REGION(BusinessPartnerAddress::getRegion, AddressDTO::getRegion),
+		STREET_NAME(BusinessPartnerAddress::getStreetName, AddressDTO::getStreetName),
+		STREET_PREFIX_NAME(BusinessPartnerAddress::getStreetPrefixName, AddressDTO::getStreetPrefixName),
+		STREET_SUFFIX_NAME(BusinessPartnerAddress::getStreetSuffixName, AddressDTO::getStreetSuffixName),
+		TAX_JURISDICTION(BusinessPartnerAddress::getTaxJurisdiction, AddressDTO::getTaxJurisdiction),
+		TRANSPORT_ZONE(BusinessPartnerAddress::getTransportZone, AddressDTO::getTransportZone),
+		ADDRESS_ID_BY_EXTERNAL_SYSTEM(BusinessPartnerAddress::getAddressIDByExternalSystem, AddressDTO::getAddressIDByExternalSystem);
+
+		private final Function<BusinessPartnerAddress, Object> addressGetter;
+		private final Function<AddressDTO, Object> addressDTOGetter;
+
+		private Field(Function<BusinessPartnerAddress, Object> addressGetter,
+				Function<AddressDTO, Object> addressDTOGetter) {
+			this.addressGetter = addressGetter;
+			this.addressDTOGetter = addressDTOGetter;
+		}
+
+	}
+
+	private static final Field[] FIELDS = Field.values();
+
+	private AddressChecksum() {
+		// prevents util class from being instantiated
+	}
+
+	/**
+	 * @return checksum of the confirmed fields of {@code address}
+	 */
+	public static String of(BusinessPartnerAddress address) throws SAPSecurityException {
+		final Digester digester = DIGESTER.get().reset();
+		for (Field field : FIELDS) {
+			digester.update(field.addressGetter.apply(address));
+		}
+		return digester.finish();
+	}
+
+	/**
+	 * @return checksum of the confirmed fields of {@code address}, the same as
+	 *         {@link #of(BusinessPartnerAddress)} of the address the DTO was
+	 *         created from
+	 */
+	public static String of(AddressDTO address) throws SAPSecurityException {
+		final Digester digester = DIGESTER.get().reset();
+		for (Field field : FIELDS) {
+			digester.update(field.addressDTOGetter.apply(address));
+		}
+		return digester.finish();
+	}
+
+	/**
+	 * Checks whether {@code checksum} was calculated from an address with the
+	 * same confirmed fields as {@code address}. Checksums without
+	 * {@link #VERSION_PREFIX} are compared to
+	 * {@link HashUtils#hash(String)} of {@link AddressDTO#toString()}.
+	 *
+	 * @return {@code true} if the address was not changed
+	 */
+	public static boolean matches(String checksum, BusinessPartnerAddress address) throws SAPSecurityException {
+		if (StringUtils.isBlank(checksum)) {
+			return false;
+		}
+
+		if (checksum.startsWith(VERSION_PREFIX)) {
+			return checksum.equals(of(address));
+		}
+
+		return checksum.equals(HashUtils.hash(AddressDTO.of(address).toString()));
+	}
+
+	/**
+	 * A {@link MessageDigest} and an encoding buffer used by one thread.
+	 */
+	private static class Digester {
+
+		private static final int MAX_RETAINED_BUFFER_SIZE = 4096;
+
+		private final MessageDigest digest = HashUtils.getHasher();
+		private byte[] buffer = new byte[256];
+
+		private Digester reset() {
+			digest.reset();
+			return this;
+		}
+
+		private void update(Object value) {
+			if (value == null) {
+				digest.update(NULL);
+			} else if (value instanceof Boolean) {
+				digest.update(((Boolean) value) ? TRUE : FALSE);
+			} else {
+				final int length = encode(value.toString());
+				digest.update(STRING);
+				digest.update(buffer, 0, length);
+			}
+		}
+
+		/**
+		 * Writes the length of {@code value} in UTF-8 as 4 bytes followed by
+		 * {@code value} in UTF-8 into {@link #buffer}. Unpaired surrogates are
+		 * replaced with {@code '?'} like {@link String#getBytes(java.nio.charset.Charset)} does.
+		 *
+		 * @return number of bytes written
+		 */
+		private int encode(String value) {
+			final int maxLength = 4 + value.length() * 3;
+			if (buffer.length < maxLength) {
+				buffer = new byte[maxLength];
+			}
+
+			int position = 4;
+			for (int i = 0; i < value.length(); i++) {
+				final char c = value.charAt(i);
+				if (c < 0x80) {
+					buffer[position++] = (byte) c;
+				} else if (c < 0x800) {
+					buffer[position++] = (byte) (0xC0 | (c >> 6));
+					buffer[position++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+						&& Character.isLowSurrogate(value.charAt(i + 1))) {
+					final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+					buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+					buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					buffer[position++] = '?';
+				} else {
+					buffer[position++] = (byte) (0xE0 | (c >> 12));
+					buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buffer[position++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+
+			final int length = position - 4;
+			buffer[0] = (byte) (length >>> 24);
+			buffer[1] = (byte) (length >>> 16);
+			buffer[2] = (byte) (length >>> 8);
+			buffer[3] = (byte) length;
+
+			return position;
+		}
+
+		private String finish() {
+			final byte[] hashBytes = digest.digest();
+
+			if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+				buffer = new byte[256];
+			}
+
+			return VERSION_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(hashBytes);
+		}
+
+	}
+
+}
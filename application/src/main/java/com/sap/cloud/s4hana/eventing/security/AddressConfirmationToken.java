@@ -8,7 +8,7 @@ import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.Busin
  * Stores keys of {@link BusinessPartnerAddress} and maximal validity date.<br>
  * Authorizes not authenticated users to access open REST endpoints.
  * 
- * @see RSACipher
+ * @see TokenCipher
  * @see WebSecurityConfig
  */
 public final class AddressConfirmationToken implements Serializable {
@@ -29,6 +29,16 @@ public final class AddressConfirmationToken implements Serializable {
 		this.expiryTimeMilis = System.currentTimeMillis() + numberOfDaysValid * 24 * 60 * 60 * 1000;
 	}
 	
+	/**
+	 * @see AddressConfirmationTokenCodec
+	 */
+	AddressConfirmationToken(String businessPartner, String addressID, long expiryTimeMilis) {
+		super();
+		this.businessPartner = businessPartner;
+		this.addressID = addressID;
+		this.expiryTimeMilis = expiryTimeMilis;
+	}
+	
 	/**
 	 * @param address
 	 *            {@link BusinessPartnerAddress} to be confirmed
@@ -0,0 +1,138 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Decrypts {@link AddressConfirmationToken}s with {@link TokenCipher} and keeps
+ * the most recently used ones until they expire.
+ * <p>
+ * The UI calls several token protected endpoints with the same token while a
+ * customer confirms the address, so only the first call needs to decrypt it.
+ * A cached token is checked with {@link AddressConfirmationToken#isValid()}
+ * on every call and removed as soon as it expired. When the cache is full,
+ * expired tokens are removed first, then the least recently used ones.
+ * <p>
+ * The following metrics are exposed:
+ * <ul>
+ * <li>{@value #METRIC_HITS} - number of tokens found in the cache</li>
+ * <li>{@value #METRIC_MISSES} - number of tokens that had to be
+ * decrypted</li>
+ * <li>{@value #METRIC_SIZE} - number of cached tokens</li>
+ * </ul>
+ */
+@Component
+public class AddressConfirmationTokenCache {
+
+	/**
+	 * Default maximum number of cached tokens
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	public static final String METRIC_HITS = "security.token.cache.hits";
+	public static final String METRIC_MISSES = "security.token.cache.misses";
+	public static final String METRIC_SIZE = "security.token.cache.size";
+
+	private final TokenCipher cipher;
+	private final int maxSize;
+
+	private final Map<String, AddressConfirmationToken> tokens;
+
+	private final Counter hitCounter;
+	private final Counter missCounter;
+
+	/**
+	 * @param maxSize
+	 *            maximum number of cached tokens. If {@code 0}, every token is
+	 *            decrypted.
+	 */
+	@Autowired
+	public AddressConfirmationTokenCache(TokenCipher cipher, MeterRegistry meterRegistry,
+			@Value("${security.token.cache.maxSize:" + DEFAULT_MAX_SIZE + "}") int maxSize) {
+
+		this.cipher = cipher;
+		this.maxSize = maxSize;
+
+		tokens = new LinkedHashMap<String, AddressConfirmationToken>(16, 0.75f, /* accessOrder = */ true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, AddressConfirmationToken> eldest) {
+				return size() > maxSize;
+			}
+
+		};
+
+		hitCounter = meterRegistry.counter(METRIC_HITS);
+		missCounter = meterRegistry.counter(METRIC_MISSES);
+		meterRegistry.gauge(METRIC_SIZE, this, AddressConfirmationTokenCache::size);
+	}
+
+	/**
+	 * @param encryptedToken
+	 *            {@link AddressConfirmationToken} string encrypted with
+	 *            {@link TokenCipher}
+	 * @return the decrypted token
+	 *
+	 * @throws SAPSecurityException
+	 *             if the token cannot be decrypted or expired
+	 */
+	public AddressConfirmationToken getValidToken(final String encryptedToken) throws SAPSecurityException {
+		AddressConfirmationToken token = get(encryptedToken);
+
+		if (token != null) {
+			hitCounter.increment();
+		} else {
+			missCounter.increment();
+			token = cipher.decrypt(encryptedToken);
+			if (token.isValid()) {
+				put(encryptedToken, token);
+			}
+		}
+
+		if (!token.isValid()) {
+			throw new SAPSecurityException("Token expired. "
+					+ "Please contact your contact person to resend the address confirmation email.");
+		}
+
+		return token;
+	}
+
+	/**
+	 * @return cached token that did not expire yet or {@code null}
+	 */
+	private synchronized AddressConfirmationToken get(final String encryptedToken) {
+		final AddressConfirmationToken token = tokens.get(encryptedToken);
+		if (token != null && !token.isValid()) {
+			tokens.remove(encryptedToken);
+			return null;
+		}
+		return token;
+	}
+
+	private synchronized void put(final String encryptedToken, final AddressConfirmationToken token) {
+		if (maxSize <= 0) {
+			return;
+		}
+
+		if (tokens.size() >= maxSize) {
+			tokens.values().removeIf(cachedToken -> !cachedToken.isValid());
+		}
+		tokens.put(encryptedToken, token);
+	}
+
+	protected synchronized int size() {
+		return tokens.size();
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+/**
+ * Converts objects to be encrypted by {@link TokenCipher} to bytes and back.
+ * <p>
+ * {@link AddressConfirmationToken}s are written in a compact binary layout:
+ * <ol>
+ * <li>{@link #VERSION} (1 byte)</li>
+ * <li>length of the business partner in UTF-8 (2 bytes) followed by the
+ * business partner in UTF-8</li>
+ * <li>length of the address ID in UTF-8 (2 bytes) followed by the address ID
+ * in UTF-8</li>
+ * <li>expiry time in milliseconds (8 bytes)</li>
+ * </ol>
+ * {@code null} fields are written as empty strings.
+ * <p>
+ * Any other object is written with Java serialization. Serialized objects
+ * start with {@link #SERIALIZATION_MAGIC}, so they cannot be mistaken for a
+ * compact token. This also allows to read tokens that were created before the
+ * compact layout was introduced.
+ */
+public class AddressConfirmationTokenCodec {
+
+	/**
+	 * First byte of a token in the compact binary layout
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * First two bytes of a Java serialization stream
+	 */
+	public static final short SERIALIZATION_MAGIC = (short) 0xACED;
+
+	private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+	private AddressConfirmationTokenCodec() {
+		// prevents util class from being instantiated
+	}
+
+	/**
+	 * @return {@code object} in the compact binary layout if it is an
+	 *         {@link AddressConfirmationToken}, otherwise serialized
+	 */
+	public static byte[] encode(final Serializable object) throws SAPSecurityException {
+		if (!(object instanceof AddressConfirmationToken)) {
+			return SerializationUtils.serialize(object);
+		}
+
+		final AddressConfirmationToken token = (AddressConfirmationToken) object;
+		final byte[] businessPartner = toBytes(token.getBusinessPartner());
+		final byte[] addressID = toBytes(token.getAddressID());
+
+		return ByteBuffer.allocate(1 + 2 + businessPartner.length + 2 + addressID.length + 8)
+				.put(VERSION)
+				.putShort((short) businessPartner.length).put(businessPartner)
+				.putShort((short) addressID.length).put(addressID)
+				.putLong(token.getExpiryTimeMilis())
+				.array();
+	}
+
+	/**
+	 * @param acceptSerialized
+	 *            if {@code false}, only tokens in the compact binary layout
+	 *            are accepted
+	 * @return the object read from {@code bytes}
+	 *
+	 * @throws SAPSecurityException
+	 *             if {@code bytes} are neither a compact token nor a
+	 *             serialized object that is accepted
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Serializable> T decode(final byte[] bytes, final boolean acceptSerialized)
+			throws SAPSecurityException {
+
+		if (bytes.length > 0 && bytes[0] == VERSION) {
+			return (T) decodeToken(bytes);
+		}
+
+		if (bytes.length > 1 && ByteBuffer.wrap(bytes).getShort() == SERIALIZATION_MAGIC) {
+			if (!acceptSerialized) {
+				throw new SAPSecurityException("Serialized tokens are not accepted anymore");
+			}
+			try {
+				return SerializationUtils.deserialize(bytes);
+			} catch (SerializationException | ClassCastException e) {
+				throw new SAPSecurityException("Token could not be deserialized", e);
+			}
+		}
+
+		throw new SAPSecurityException("Token has an unknown format");
+	}
+
+	private static AddressConfirmationToken decodeToken(final byte[] bytes) throws SAPSecurityException {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.get();
+
+		try {
+			final String businessPartner = readString(buffer);
+			final String addressID = readString(buffer);
+			final long expiryTimeMilis = buffer.getLong();
+
+			if (buffer.hasRemaining()) {
+				throw new SAPSecurityException("Token has unexpected trailing bytes");
+			}
+
+			return new AddressConfirmationToken(businessPartner, addressID, expiryTimeMilis);
+		} catch (BufferUnderflowException e) {
+			throw new SAPSecurityException("Token is truncated", e);
+		}
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] toBytes(final String value) throws SAPSecurityException {
+		final byte[] result = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+		if (result.length > MAX_STRING_LENGTH) {
+			throw new SAPSecurityException("Token field is too long: " + result.length + " bytes");
+		}
+		return result;
+	}
+
+}
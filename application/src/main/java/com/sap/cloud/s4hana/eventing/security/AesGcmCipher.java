@@ -0,0 +1,299 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPException;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
+
+/**
+ * Cipher that encrypts and authenticates tokens with AES-GCM, which is much
+ * faster than {@link CloudRSACipher} and not limited to one RSA block. It is
+ * used instead of {@link CloudRSACipher} if {@code security.tokenCipher.type}
+ * is {@value #TYPE}.
+ * <p>
+ * The keys are stored in the {@value #KEYS_PROPERTY} property of an SAP
+ * Business Technology Platform (BTP) destination as a comma-separated list of
+ * {@code <key ID>:<Base64 encoded AES key>}. Tokens are encrypted with the
+ * first key and can be decrypted with any key of the list, so a key is
+ * rotated by adding a new key at the beginning of the list and removing the
+ * previous key once all tokens encrypted with it expired. The keys are read
+ * again when the destination changed, see {@link DestinationChangedEvent}.
+ * <p>
+ * A token consists of:
+ * <ol>
+ * <li>{@link #FORMAT_VERSION} (1 byte)</li>
+ * <li>length of the key ID in UTF-8 (1 byte) followed by the key ID in
+ * UTF-8</li>
+ * <li>random initialization vector (12 bytes)</li>
+ * <li>the object converted with {@link AddressConfirmationTokenCodec},
+ * encrypted, followed by the authentication tag (16 bytes)</li>
+ * </ol>
+ * The version and the key ID are authenticated as well. The token is encoded
+ * in URL-safe Base64 like the ones of {@link CloudRSACipher}.
+ */
+@Service
+@ConditionalOnProperty(name = "security.tokenCipher.type", havingValue = AesGcmCipher.TYPE)
+public class AesGcmCipher implements TokenCipher {
+
+	private static final Logger log = LoggerFactory.getLogger(AesGcmCipher.class);
+
+	/**
+	 * Value of {@code security.tokenCipher.type} that selects this cipher
+	 */
+	public static final String TYPE = "aes-gcm";
+
+	public static final String ALGORITHM = "AES";
+
+	public static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	/**
+	 * SAP Business Technology Platform (BTP) destination to store the keys
+	 *
+	 * @see AesGcmCipher#KEYS_PROPERTY
+	 */
+	public static final String DEFAULT_DESTINATION_NAME = "TokenKeyStorage";
+
+	/**
+	 * SAP Business Technology Platform (BTP) destination property in which the
+	 * keys are stored
+	 *
+	 * @see AesGcmCipher#DEFAULT_DESTINATION_NAME
+	 */
+	public static final String KEYS_PROPERTY = "mail.password";
+
+	/**
+	 * First byte of a token
+	 */
+	public static final byte FORMAT_VERSION = 1;
+
+	private static final int IV_LENGTH = 12;
+
+	private static final int TAG_LENGTH_BITS = 128;
+
+	private static final int MAX_KEY_ID_LENGTH = 0xFF;
+
+	private final boolean acceptSerializedTokens;
+
+	private final String destinationName;
+
+	private volatile Keys keys;
+
+	private final SecureRandom random = new SecureRandom();
+
+	// ciphers are initialized with the key and initialization vector of every call
+	private final ThreadLocal<Cipher> ciphers = new ThreadLocal<>();
+
+	private final NoRequestContextDestinationAccessor noRequestContextDestinationAccessor;
+
+	/**
+	 * @param destinationName
+	 *            The name of SAP Business Technology Platform (BTP) destination
+	 *            that stores the keys. If the provided value is blank (null or
+	 *            empty even when trimmed), then
+	 *            {@link AesGcmCipher#DEFAULT_DESTINATION_NAME} is used as a
+	 *            default value.
+	 * @param acceptSerializedTokens
+	 *            If {@code false}, only tokens in the compact layout of
+	 *            {@link AddressConfirmationTokenCodec} can be decrypted.
+	 */
+	@Autowired
+	public AesGcmCipher(NoRequestContextDestinationAccessor noRequestContextDestinationAccessor,
+			@Value("${security.tokenCipher.destination:}") String destinationName,
+			@Value("${security.token.acceptSerializedTokens:" + CloudRSACipher.DEFAULT_ACCEPT_SERIALIZED_TOKENS + "}") boolean acceptSerializedTokens) throws SAPException {
+
+		this.noRequestContextDestinationAccessor = noRequestContextDestinationAccessor;
+		this.acceptSerializedTokens = acceptSerializedTokens;
+
+		if (StringUtils.isBlank(destinationName)) {
+			destinationName = DEFAULT_DESTINATION_NAME;
+		}
+		this.destinationName = destinationName;
+		keys = getKeys(noRequestContextDestinationAccessor.getGenericDestination(destinationName));
+	}
+
+	/**
+	 * Reads the keys from the destination again and uses them for all further
+	 * calls.
+	 */
+	public void reload() {
+		keys = getKeys(noRequestContextDestinationAccessor.refresh(destinationName));
+	}
+
+	/**
+	 * Uses the rotated keys when the destination that stores them changed. If
+	 * the new keys are invalid, the current ones are kept.
+	 */
+	@EventListener
+	public void onDestinationChanged(DestinationChangedEvent event) {
+		if (!destinationName.equals(event.getDestinationName())) {
+			return;
+		}
+
+		try {
+			keys = getKeys(event.getCurrent());
+			log.info("Keys in destination {} were rotated", destinationName);
+		} catch (RuntimeException e) {
+			log.warn("Keys in destination {} were not rotated, the current keys are still used", destinationName, e);
+		}
+	}
+
+	@Override
+	public String encrypt(final Serializable object) throws SAPSecurityException {
+		final Keys current = keys;
+		try {
+			final byte[] plaintext = AddressConfirmationTokenCodec.encode(object);
+			final byte[] iv = new byte[IV_LENGTH];
+			random.nextBytes(iv);
+
+			final ByteBuffer token = ByteBuffer.allocate(
+					2 + current.encryptionKeyId.length + IV_LENGTH + plaintext.length + TAG_LENGTH_BITS / 8);
+			token.put(FORMAT_VERSION)
+				.put((byte) current.encryptionKeyId.length)
+				.put(current.encryptionKeyId);
+			final int headerLength = token.position();
+			token.put(iv);
+
+			final Cipher cipher = getCipher(Cipher.ENCRYPT_MODE, current.encryptionKey, iv);
+			cipher.updateAAD(token.array(), 0, headerLength);
+			cipher.doFinal(ByteBuffer.wrap(plaintext), token);
+
+			return Base64.getUrlEncoder().encodeToString(token.array());
+		} catch (GeneralSecurityException | IllegalArgumentException | IllegalStateException e) {
+			throw TokenCipher.logAndWrap("Security exception when trying to encrypt access token", e);
+		} catch (SerializationException e) {
+			throw TokenCipher.logAndWrap("Serialization exception when trying to encrypt access token", e);
+		}
+	}
+
+	@Override
+	public <T extends Serializable> T decrypt(final String encrypted) throws SAPSecurityException {
+		final Keys current = keys;
+		try {
+			final ByteBuffer token = ByteBuffer.wrap(Base64.getUrlDecoder().decode(encrypted));
+			if (token.get() != FORMAT_VERSION) {
+				throw new SAPSecurityException("Token is not in the format of " + TRANSFORMATION);
+			}
+
+			final byte[] keyId = new byte[token.get() & 0xFF];
+			token.get(keyId);
+			final SecretKey key = current.decryptionKeys.get(new String(keyId, StandardCharsets.UTF_8));
+			if (key == null) {
+				throw new SAPSecurityException("Token was encrypted with an unknown key");
+			}
+			final int headerLength = token.position();
+
+			final byte[] iv = new byte[IV_LENGTH];
+			token.get(iv);
+
+			final Cipher cipher = getCipher(Cipher.DECRYPT_MODE, key, iv);
+			cipher.updateAAD(token.array(), 0, headerLength);
+			final byte[] plaintext = cipher.doFinal(token.array(), token.position(), token.remaining());
+
+			return AddressConfirmationTokenCodec.decode(plaintext, acceptSerializedTokens);
+		} catch (GeneralSecurityException | IllegalArgumentException | IllegalStateException | BufferUnderflowException e) {
+			throw TokenCipher.logAndWrap("Security exception when trying to decrypt access token", e);
+		} catch (SerializationException e) {
+			throw TokenCipher.logAndWrap("Serialization exception when trying to decrypt access token", e);
+		}
+	}
+
+	/**
+	 * @return the {@link Cipher} of the current thread initialized with
+	 *         {@code key} and {@code iv}
+	 */
+	private Cipher getCipher(final int mode, final SecretKey key, final byte[] iv) throws GeneralSecurityException {
+		Cipher cipher = ciphers.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance(TRANSFORMATION);
+			ciphers.set(cipher);
+		}
+		cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+		return cipher;
+	}
+
+	/**
+	 * Reads the keys from the {@link #KEYS_PROPERTY} property of
+	 * {@code destination}.
+	 *
+	 * @throws SAPSecurityException
+	 *             if the property does not contain any key or a key is not a
+	 *             valid AES key
+	 */
+	private static Keys getKeys(final GenericDestination destination) throws SAPSecurityException {
+		final String property = destination.getPropertiesByName().get(KEYS_PROPERTY);
+		final Map<String, SecretKey> keys = new LinkedHashMap<>();
+
+		for (String entry : StringUtils.split(StringUtils.defaultString(property), ',')) {
+			final String keyId = StringUtils.substringBefore(entry, ":").trim();
+			final byte[] encodedKeyId = keyId.getBytes(StandardCharsets.UTF_8);
+			if (keyId.isEmpty() || encodedKeyId.length > MAX_KEY_ID_LENGTH || !entry.contains(":")) {
+				throw new SAPSecurityException("Cannot initialize " + TRANSFORMATION + " cipher: "
+						+ "keys must be stored as <key ID>:<Base64 encoded key> in " + KEYS_PROPERTY + " property");
+			}
+
+			final byte[] key;
+			try {
+				key = Base64.getDecoder().decode(StringUtils.substringAfter(entry, ":").trim());
+			} catch (IllegalArgumentException e) {
+				throw TokenCipher.logAndWrap("Cannot initialize " + TRANSFORMATION + " cipher: key "
+						+ keyId + " is not Base64 encoded", e);
+			}
+			if (key.length != 16 && key.length != 24 && key.length != 32) {
+				throw new SAPSecurityException("Cannot initialize " + TRANSFORMATION + " cipher: key " + keyId
+						+ " must have 128, 192 or 256 bits");
+			}
+
+			keys.put(keyId, new SecretKeySpec(key, ALGORITHM));
+		}
+
+		if (keys.isEmpty()) {
+			throw new SAPSecurityException("Cannot initialize " + TRANSFORMATION + " cipher: "
+					+ KEYS_PROPERTY + " property does not contain any key");
+		}
+		return new Keys(keys);
+	}
+
+	/**
+	 * Keys by their ID, of which the first one is used for encryption.
+	 */
+	private static final class Keys {
+
+		private final byte[] encryptionKeyId;
+		private final SecretKey encryptionKey;
+		private final Map<String, SecretKey> decryptionKeys;
+
+		private Keys(Map<String, SecretKey> keys) {
+			final Map.Entry<String, SecretKey> first = keys.entrySet().iterator().next();
+			this.encryptionKeyId = first.getKey().getBytes(StandardCharsets.UTF_8);
+			this.encryptionKey = first.getValue();
+			this.decryptionKeys = Collections.unmodifiableMap(keys);
+		}
+
+	}
+
+}
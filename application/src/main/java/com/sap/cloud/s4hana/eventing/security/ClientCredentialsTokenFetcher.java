@@ -0,0 +1,109 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+/**
+ * Requests a JWT from the token endpoint of the XSUAA service with the OAuth
+ * 2.0 client credentials grant. The client ID and secret are sent in the
+ * form body, as expected by the XSUAA service.
+ */
+public class ClientCredentialsTokenFetcher implements XsuaaTokenFetcher {
+
+	/**
+	 * Path of the token endpoint relative to the URL of the XSUAA service
+	 */
+	public static final String TOKEN_PATH = "/oauth/token";
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final String tokenUrl;
+	private final String clientId;
+	private final String clientSecret;
+	private final int timeoutMillis;
+
+	/**
+	 * @param tokenUrl
+	 *            URL of the token endpoint
+	 * @param timeoutMillis
+	 *            connect and read timeout in milliseconds
+	 */
+	public ClientCredentialsTokenFetcher(String tokenUrl, String clientId, String clientSecret, int timeoutMillis) {
+		this.tokenUrl = tokenUrl;
+		this.clientId = clientId;
+		this.clientSecret = clientSecret;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public XsuaaToken fetchToken() throws SAPSecurityException {
+		if (StringUtils.isAnyBlank(tokenUrl, clientId, clientSecret)) {
+			throw new SAPSecurityException("The XSUAA service is not bound to the application");
+		}
+
+		final long requestedAtMillis = System.currentTimeMillis();
+		final HttpURLConnection connection;
+		try {
+			connection = (HttpURLConnection) new URL(tokenUrl).openConnection();
+		} catch (IOException e) {
+			throw new SAPSecurityException("Cannot connect to the XSUAA token endpoint " + tokenUrl, e);
+		}
+
+		try {
+			connection.setRequestMethod("POST");
+			connection.setConnectTimeout(timeoutMillis);
+			connection.setReadTimeout(timeoutMillis);
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			connection.setRequestProperty("Accept", "application/json");
+
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(requestBody().getBytes(StandardCharsets.UTF_8));
+			}
+
+			final int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new SAPSecurityException("The XSUAA token endpoint " + tokenUrl
+						+ " responded with HTTP status " + status);
+			}
+
+			final JsonNode response;
+			try (InputStream in = connection.getInputStream()) {
+				response = objectMapper.readTree(in);
+			}
+
+			final String accessToken = response.path("access_token").asText(null);
+			final long expiresInSeconds = response.path("expires_in").asLong(0);
+			if (StringUtils.isBlank(accessToken) || expiresInSeconds <= 0) {
+				throw new SAPSecurityException("The XSUAA token endpoint " + tokenUrl
+						+ " responded without access token or expiration");
+			}
+
+			// the token expires relative to the time it was requested, not received
+			return new XsuaaToken(accessToken, requestedAtMillis + expiresInSeconds * 1000);
+		} catch (IOException e) {
+			throw new SAPSecurityException("Cannot request a token from the XSUAA token endpoint " + tokenUrl, e);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private String requestBody() throws UnsupportedEncodingException {
+		return "grant_type=client_credentials&response_type=token"
+				+ "&client_id=" + URLEncoder.encode(clientId, "UTF-8")
+				+ "&client_secret=" + URLEncoder.encode(clientSecret, "UTF-8");
+	}
+
+}
@@ -2,6 +2,7 @@ package com.sap.cloud.s4hana.eventing.security;
 
 import java.io.Serializable;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
@@ -21,11 +22,14 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 
 import org.apache.commons.lang3.SerializationException;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -43,12 +47,35 @@ import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
  * <p>
  * Normally you would use symmetric encryption algorithm (e.g. AES) to encrypt
  * the data and use RSA to encrypt and decrypt AES key.
+ * <p>
+ * {@link Cipher} instances are not thread-safe and expensive to create, so
+ * every thread keeps its own initialized instance for encryption and
+ * decryption and reuses it for subsequent calls.
+ * <p>
+ * When the key pair in the destination is rotated, which is detected by
+ * {@link NoRequestContextDestinationAccessor} or requested with
+ * {@link #reload()}, the new key pair is used for all further calls without
+ * a restart. Tokens encrypted with the previous private key can still be
+ * decrypted for {@code previousKeyValidMillis}.
+ * <p>
+ * Objects are converted to bytes with {@link AddressConfirmationTokenCodec}.
+ * <p>
+ * This cipher is used unless {@code security.tokenCipher.type} selects
+ * another one, e.g. {@link AesGcmCipher}.
  * 
  * @see LocalRSACipher
  */
 @Service
+@ConditionalOnProperty(name = "security.tokenCipher.type", havingValue = CloudRSACipher.TYPE, matchIfMissing = true)
 public class CloudRSACipher implements RSACipher {
 	
+	private static final Logger log = LoggerFactory.getLogger(CloudRSACipher.class);
+	
+	/**
+	 * Value of {@code security.tokenCipher.type} that selects this cipher
+	 */
+	public static final String TYPE = "rsa";
+	
 	/**
 	 * Encryption algorithm
 	 * 
@@ -79,7 +106,26 @@ public class CloudRSACipher implements RSACipher {
 	 */
 	public static final String PRIVATE_KEY_PROPERTY = "mail.password";
 	
-	private final KeyPair keyPair;
+	/**
+	 * Default for accepting tokens written with Java serialization, which
+	 * were created before {@link AddressConfirmationTokenCodec} was introduced
+	 */
+	public static final boolean DEFAULT_ACCEPT_SERIALIZED_TOKENS = true;
+	
+	/**
+	 * Default time in milliseconds the previous public key is accepted after
+	 * the key pair was rotated, which is the default validity of a token
+	 * (4 days)
+	 */
+	public static final long DEFAULT_PREVIOUS_KEY_VALID_MILLIS = 345600000;
+	
+	private final boolean acceptSerializedTokens;
+	
+	private final long previousKeyValidMillis;
+	
+	private final String destinationName;
+	
+	private volatile Keys keys;
 	
 	private final NoRequestContextDestinationAccessor noRequestContextDestinationAccessor;
 
@@ -89,17 +135,67 @@ public class CloudRSACipher implements RSACipher {
 	 *            pair. If the provided value is blank (null or empty even when
 	 *            trimmed), then {@link CloudRSACipher#DEFAULT_DESTINATION_NAME}
 	 *            is used as a default value.
+	 * @param acceptSerializedTokens
+	 *            If {@code false}, only tokens in the compact layout of
+	 *            {@link AddressConfirmationTokenCodec} can be decrypted. Can be
+	 *            switched off once all tokens created with Java serialization
+	 *            expired.
+	 * @param previousKeyValidMillis
+	 *            time in milliseconds tokens encrypted with the previous key
+	 *            pair can be decrypted after the key pair was rotated
 	 */
 	@Autowired
 	public CloudRSACipher(NoRequestContextDestinationAccessor noRequestContextDestinationAccessor,
-			@Value("${security.rsaCipher.destination:}") String destinationName) throws SAPException {
+			@Value("${security.rsaCipher.destination:}") String destinationName,
+			@Value("${security.token.acceptSerializedTokens:" + DEFAULT_ACCEPT_SERIALIZED_TOKENS + "}") boolean acceptSerializedTokens,
+			@Value("${security.rsaCipher.previousKeyValidMillis:" + DEFAULT_PREVIOUS_KEY_VALID_MILLIS + "}") long previousKeyValidMillis) throws SAPException {
 		
 		this.noRequestContextDestinationAccessor = noRequestContextDestinationAccessor;
+		this.acceptSerializedTokens = acceptSerializedTokens;
+		this.previousKeyValidMillis = previousKeyValidMillis;
 		
 		if (StringUtils.isBlank(destinationName)) {
 			destinationName = DEFAULT_DESTINATION_NAME;
 		}
-		keyPair = getKeyPairFromDestination(destinationName, ALGORITHM);
+		this.destinationName = destinationName;
+		keys = new Keys(getKeyPairFromDestination(destinationName, ALGORITHM), null, 0);
+	}
+	
+	/**
+	 * Reads the key pair from the destination again and uses it for all
+	 * further calls if it was rotated.
+	 */
+	public void reload() {
+		rotate(getKeyPair(noRequestContextDestinationAccessor.refresh(destinationName), ALGORITHM));
+	}
+	
+	/**
+	 * Uses the rotated key pair when the destination that stores it changed.
+	 * If the new keys are invalid, the current ones are kept.
+	 */
+	@EventListener
+	public void onDestinationChanged(DestinationChangedEvent event) {
+		if (!destinationName.equals(event.getDestinationName())) {
+			return;
+		}
+		
+		try {
+			rotate(getKeyPair(event.getCurrent(), ALGORITHM));
+		} catch (RuntimeException e) {
+			log.warn("Key pair in destination {} was not rotated, the current key pair is still used", destinationName, e);
+		}
+	}
+	
+	private synchronized void rotate(final KeyPair keyPair) {
+		final PublicKey currentPublicKey = keys.keyPair.getPublic();
+		if (currentPublicKey.equals(keyPair.getPublic())) {
+			return;
+		}
+		
+		// new ciphers are initialized with the new keys by every thread
+		keys = new Keys(keyPair, currentPublicKey, System.currentTimeMillis() + previousKeyValidMillis);
+		log.info("Key pair in destination {} was rotated, tokens encrypted with the previous key pair "
+				+ "are accepted for {} ms", destinationName, previousKeyValidMillis);
 	}
 
 	/**
@@ -110,12 +206,14 @@ public class CloudRSACipher implements RSACipher {
 	 * @see CloudRSACipher#PRIVATE_KEY_PROPERTY
 	 */
 	public KeyPair getKeyPairFromDestination(final String destinationName, final String algorithm) {
+		return getKeyPair(noRequestContextDestinationAccessor.getGenericDestination(destinationName), algorithm);
+	}
+	
+	private static KeyPair getKeyPair(final GenericDestination destination, final String algorithm) {
 		// to overcome common key conversion issues 
 		Security.addProvider(new BouncyCastleProvider());
 
 		// get serialized keys from the corresponding destination properties
-		final GenericDestination destination = noRequestContextDestinationAccessor.getGenericDestination(destinationName);
-		
     	final Map<String, String> properties = destination.getPropertiesByName();
     	String privateKeyString = properties.get(PRIVATE_KEY_PROPERTY);
     	String publicKeyString = properties.get(PUBLIC_KEY_PROPERTY);
@@ -143,20 +241,20 @@ public class CloudRSACipher implements RSACipher {
 	}
 
     public PublicKey getPublicKey() {
-		return keyPair.getPublic();
+		return keys.keyPair.getPublic();
 	}
 
     @VisibleForTesting
 	protected PrivateKey getPrivateKey() {
-		return keyPair.getPrivate();
+		return keys.keyPair.getPrivate();
 	}
 	
 	public String encrypt(final Serializable object) throws SAPSecurityException {
+	    final Keys current = keys;
 	    try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);  
-            cipher.init(Cipher.ENCRYPT_MODE, getPrivateKey());
+            final Cipher cipher = getCipher(current.encryptionCiphers, Cipher.ENCRYPT_MODE, current.keyPair.getPrivate());
             
-            return Base64.getUrlEncoder().encodeToString(cipher.doFinal(SerializationUtils.serialize(object)));
+            return Base64.getUrlEncoder().encodeToString(doFinal(current.encryptionCiphers, cipher, AddressConfirmationTokenCodec.encode(object)));
         } catch (NoSuchAlgorithmException e) {
             throw RSACipher.logAndWrap(e, ALGORITHM);
         } catch (NoSuchPaddingException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException | IllegalArgumentException e) {
@@ -167,11 +265,22 @@ public class CloudRSACipher implements RSACipher {
 	}
 	
 	public <T extends Serializable> T decrypt(final String encrypted) throws SAPSecurityException {
+        final Keys current = keys;
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, getPublicKey());
+            final byte[] input = Base64.getUrlDecoder().decode(encrypted);
             
-            return SerializationUtils.deserialize(cipher.doFinal(Base64.getUrlDecoder().decode(encrypted)));
+            byte[] decrypted;
+            try {
+                decrypted = decrypt(current.decryptionCiphers, current.keyPair.getPublic(), input);
+            } catch (BadPaddingException e) {
+                // the token may have been encrypted before the key pair was rotated
+                if (!current.acceptsPreviousPublicKey()) {
+                    throw e;
+                }
+                decrypted = decrypt(current.previousDecryptionCiphers, current.previousPublicKey, input);
+            }
+            
+            return AddressConfirmationTokenCodec.decode(decrypted, acceptSerializedTokens);
         } catch (NoSuchAlgorithmException e) {
             throw RSACipher.logAndWrap(e, ALGORITHM);
         } catch (NoSuchPaddingException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException | IllegalArgumentException e) {
@@ -180,5 +289,72 @@ public class CloudRSACipher implements RSACipher {
             throw RSACipher.logAndWrap("Serialization exception when trying to decrypt access token", e);
         }
 	}
+	
+	private static byte[] decrypt(final ThreadLocal<Cipher> ciphers, final Key key, final byte[] input)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, BadPaddingException,
+			IllegalBlockSizeException {
+		
+		return doFinal(ciphers, getCipher(ciphers, Cipher.DECRYPT_MODE, key), input);
+	}
+	
+	/**
+	 * @return the {@link Cipher} of the current thread, created and
+	 *         initialized with {@code key} on first use
+	 */
+	private static Cipher getCipher(final ThreadLocal<Cipher> ciphers, final int mode, final Key key)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
+		
+		Cipher cipher = ciphers.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance(ALGORITHM);
+			cipher.init(mode, key);
+			ciphers.set(cipher);
+		}
+		return cipher;
+	}
+	
+	/**
+	 * Finishes the operation of {@code cipher}, which resets it for the next
+	 * call. If the operation fails, the cipher is discarded because its state
+	 * is not defined in that case.
+	 */
+	private static byte[] doFinal(final ThreadLocal<Cipher> ciphers, final Cipher cipher, final byte[] input)
+			throws BadPaddingException, IllegalBlockSizeException {
+		
+		try {
+			return cipher.doFinal(input);
+		} catch (BadPaddingException | IllegalBlockSizeException | RuntimeException e) {
+			ciphers.remove();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Key pair and the public key it replaced, together with the ciphers of
+	 * every thread initialized with them. A new instance is created when the
+	 * key pair is rotated, so that no thread keeps using a cipher initialized
+	 * with the previous keys.
+	 */
+	private static final class Keys {
+		
+		private final KeyPair keyPair;
+		private final PublicKey previousPublicKey;
+		private final long previousValidUntilMillis;
+		
+		private final ThreadLocal<Cipher> encryptionCiphers = new ThreadLocal<>();
+		private final ThreadLocal<Cipher> decryptionCiphers = new ThreadLocal<>();
+		private final ThreadLocal<Cipher> previousDecryptionCiphers = new ThreadLocal<>();
+		
+		private Keys(KeyPair keyPair, PublicKey previousPublicKey, long previousValidUntilMillis) {
+			this.keyPair = keyPair;
+			this.previousPublicKey = previousPublicKey;
+			this.previousValidUntilMillis = previousValidUntilMillis;
+		}
+		
+		private boolean acceptsPreviousPublicKey() {
+			return previousPublicKey != null && System.currentTimeMillis() < previousValidUntilMillis;
+		}
+		
+	}
 		
 }
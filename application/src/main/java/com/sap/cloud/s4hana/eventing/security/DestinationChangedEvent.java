@@ -0,0 +1,50 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
+
+/**
+ * Published by {@link NoRequestContextDestinationAccessor} when the
+ * background refresh reads a destination whose type or properties differ
+ * from the cached one, e.g. because credentials or keys were rotated.
+ */
+public class DestinationChangedEvent {
+
+	private final String destinationName;
+	private final GenericDestination previous;
+	private final GenericDestination current;
+
+	public DestinationChangedEvent(String destinationName, GenericDestination previous, GenericDestination current) {
+		this.destinationName = destinationName;
+		this.previous = previous;
+		this.current = current;
+	}
+
+	/**
+	 * @return name of the destination that changed
+	 */
+	public String getDestinationName() {
+		return destinationName;
+	}
+
+	/**
+	 * @return the destination before the change
+	 */
+	public GenericDestination getPrevious() {
+		return previous;
+	}
+
+	/**
+	 * @return the destination after the change, which is now returned by
+	 *         {@link NoRequestContextDestinationAccessor}
+	 */
+	public GenericDestination getCurrent() {
+		return current;
+	}
+
+	@Override
+	public String toString() {
+		// the properties may contain credentials and must not be logged
+		return "DestinationChangedEvent [destinationName=" + destinationName + "]";
+	}
+
+}
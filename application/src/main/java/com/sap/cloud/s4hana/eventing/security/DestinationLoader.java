@@ -0,0 +1,25 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.sdk.cloudplatform.connectivity.DestinationAccessor;
+import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
+
+/**
+ * Reads destinations from the destination service with a JWT token from the
+ * XSUAA service, so that they can be read without a user request context,
+ * e.g. by the background refresh of
+ * {@link NoRequestContextDestinationAccessor}.
+ * <p>
+ * This is a separate bean because {@link ExecuteWithJwtTokenFromXsuaaAspect}
+ * only intercepts calls from other beans.
+ */
+@Component
+public class DestinationLoader {
+
+	@ExecuteWithJwtTokenFromXsuaa(error = "Cannot get destination using JWT token from XSUAA service")
+	public GenericDestination getGenericDestination(final String destinationName) {
+		return DestinationAccessor.getGenericDestination(destinationName);
+	}
+
+}
@@ -23,7 +23,8 @@ import com.sap.cloud.sdk.cloudplatform.security.JwtBasedRequestContextExecutor;
  * </ul>
  * 
  * @see ExecuteWithJwtTokenFromXsuaaAspect#executeWithJwtTokenFromXsuaa(org.aspectj.lang.ProceedingJoinPoint)
- * @see JwtBasedRequestContextExecutor#withXsuaaServiceJwt()
+ * @see JwtBasedRequestContextExecutor#withJwt(String)
+ * @see XsuaaTokenManager
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
@@ -6,6 +6,7 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
@@ -20,15 +21,30 @@ public class ExecuteWithJwtTokenFromXsuaaAspect {
 	
 	private static final Logger log = LoggerFactory.getLogger(ExecuteWithJwtTokenFromXsuaaAspect.class);
 	
+	private final XsuaaTokenManager tokenManager;
+	
+	@Autowired
+	public ExecuteWithJwtTokenFromXsuaaAspect(XsuaaTokenManager tokenManager) {
+		this.tokenManager = tokenManager;
+	}
+	
 	/**
 	 * Aspect-oriented Programming (AOP) advice that executes the {@code method}
 	 * annotated with @{@link ExecuteWithJwtTokenFromXsuaa} annotation with a
-	 * JWT token from XSUAA service.
+	 * JWT token from XSUAA service. The token is cached by
+	 * {@link XsuaaTokenManager} instead of being requested for every call.
+	 * <p>
+	 * If the token cannot be fetched, the exception is wrapped like the ones
+	 * thrown by the {@code method}, so that an unavailable XSUAA service is
+	 * not reported as an invalid token of the user.
 	 * 
 	 * @param method
 	 *            method to be executed
 	 * @return the value returned by the executed {@code method}
-	 * @see JwtBasedRequestContextExecutor#withXsuaaServiceJwt()
+	 * @throws SAPException
+	 *             if the token cannot be fetched
+	 * @see JwtBasedRequestContextExecutor#withJwt(String)
+	 * @see XsuaaTokenManager#getToken()
 	 */
 	@Around("@annotation(ExecuteWithJwtTokenFromXsuaa)")
 	public Object executeWithJwtTokenFromXsuaa(ProceedingJoinPoint method) throws Exception {
@@ -39,8 +55,15 @@ public class ExecuteWithJwtTokenFromXsuaaAspect {
 			executor = executor.withParentRequestContext();
 		}
 		
+		final String token;
+		try {
+			token = tokenManager.getToken();
+		} catch (RuntimeException e) {
+			throw logAndWrap(method, e);
+		}
+		
 		return executor.
-				withXsuaaServiceJwt().
+				withJwt(token).
 				execute(() -> proceed(method));
 	}
 	
@@ -66,14 +89,23 @@ public class ExecuteWithJwtTokenFromXsuaaAspect {
 		try {
 			return method.proceed();
 		} catch (Throwable t) {
-			// get error message from the aspect annotation
-			final ExecuteWithJwtTokenFromXsuaa aspectAnnotation = methodSignature.getMethod().getAnnotation(ExecuteWithJwtTokenFromXsuaa.class);
-			final String message = aspectAnnotation.error();
-			
-			log.warn(message, t);
-			
-	        throw new SAPException(message, t);
+	        throw logAndWrap(method, t);
 		}
 	}
+	
+	/**
+	 * @return {@link SAPException} with the error message of the
+	 *         {@link ExecuteWithJwtTokenFromXsuaa} annotation of {@code method}
+	 */
+	private static SAPException logAndWrap(ProceedingJoinPoint method, Throwable t) {
+		// get error message from the aspect annotation
+		final MethodSignature methodSignature = (MethodSignature) method.getSignature();
+		final ExecuteWithJwtTokenFromXsuaa aspectAnnotation = methodSignature.getMethod().getAnnotation(ExecuteWithJwtTokenFromXsuaa.class);
+		final String message = aspectAnnotation.error();
+		
+		log.warn(message, t);
+		
+		return new SAPException(message, t);
+	}
 
 }
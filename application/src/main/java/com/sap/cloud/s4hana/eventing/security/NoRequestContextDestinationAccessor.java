@@ -1,16 +1,206 @@
 package com.sap.cloud.s4hana.eventing.security;
 
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
-import com.sap.cloud.sdk.cloudplatform.connectivity.DestinationAccessor;
+import com.google.common.annotations.VisibleForTesting;
 import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Reads destinations without a user request context and caches them by their
+ * name.
+ * <p>
+ * A destination is read from the destination service with
+ * {@link DestinationLoader} the first time it is requested. Afterwards the
+ * cached destination is returned, and all cached destinations are read again
+ * in the background every {@code ttlMillis}, so that the latency of the
+ * destination service is not added to the callers. If the destination service
+ * fails or is slow, the last destination read successfully is returned in the
+ * meantime. When the type or the properties of a destination changed,
+ * {@link DestinationChangedEvent} is published, so that beans created from
+ * the destination can pick up rotated credentials or keys without a restart.
+ * <p>
+ * The following metrics are exposed:
+ * <ul>
+ * <li>{@value #METRIC_HITS} - number of destinations returned from the
+ * cache</li>
+ * <li>{@value #METRIC_MISSES} - number of destinations read while the caller
+ * waited</li>
+ * <li>{@value #METRIC_LOOKUP} - latency of the destination service</li>
+ * <li>{@value #METRIC_REFRESH_FAILURES} - number of failed background
+ * refreshes</li>
+ * </ul>
+ */
 @Component
 public class NoRequestContextDestinationAccessor {
-	
-	@ExecuteWithJwtTokenFromXsuaa(error = "Cannot get destination using JWT token from XSUAA service")
+
+	private static final Logger log = LoggerFactory.getLogger(NoRequestContextDestinationAccessor.class);
+
+	/**
+	 * Default time in milliseconds after which cached destinations are read
+	 * again
+	 */
+	public static final long DEFAULT_TTL_MILLIS = 300000;
+
+	public static final String METRIC_HITS = "destinations.cache.hits";
+	public static final String METRIC_MISSES = "destinations.cache.misses";
+	public static final String METRIC_LOOKUP = "destinations.lookup";
+	public static final String METRIC_REFRESH_FAILURES = "destinations.refresh.failures";
+
+	private final DestinationLoader destinationLoader;
+	private final ApplicationEventPublisher eventPublisher;
+	private final long ttlMillis;
+
+	private final ConcurrentMap<String, GenericDestination> destinations = new ConcurrentHashMap<>();
+
+	private final Counter hits;
+	private final Counter misses;
+	private final Timer lookupTimer;
+	private final Counter refreshFailures;
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/**
+	 * Creates an accessor that reads every destination directly from the
+	 * destination service, e.g. for tests.
+	 */
+	public NoRequestContextDestinationAccessor() {
+		this(new DestinationLoader(), event -> {}, new SimpleMeterRegistry(), 0);
+	}
+
+	/**
+	 * @param ttlMillis
+	 *            time in milliseconds after which cached destinations are read
+	 *            again in the background, 0 to read every destination directly
+	 *            from the destination service
+	 */
+	@Autowired
+	public NoRequestContextDestinationAccessor(DestinationLoader destinationLoader,
+			ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry,
+			@Value("${destinations.cache.ttlMillis:" + DEFAULT_TTL_MILLIS + "}") long ttlMillis) {
+
+		this.destinationLoader = destinationLoader;
+		this.eventPublisher = eventPublisher;
+		this.ttlMillis = ttlMillis;
+
+		hits = meterRegistry.counter(METRIC_HITS);
+		misses = meterRegistry.counter(METRIC_MISSES);
+		lookupTimer = meterRegistry.timer(METRIC_LOOKUP);
+		refreshFailures = meterRegistry.counter(METRIC_REFRESH_FAILURES);
+
+		if (ttlMillis > 0) {
+			scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("destination-refresh-"));
+			scheduler.scheduleWithFixedDelay(this::refreshAll, ttlMillis, ttlMillis, TimeUnit.MILLISECONDS);
+		} else {
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @param destinationName
+	 *            name of the destination
+	 * @return the cached destination, or the destination read from the
+	 *         destination service if it is requested the first time
+	 */
 	public GenericDestination getGenericDestination(final String destinationName) {
-		return DestinationAccessor.getGenericDestination(destinationName);
+		if (ttlMillis <= 0) {
+			return lookup(destinationName);
+		}
+
+		final GenericDestination cached = destinations.get(destinationName);
+		if (cached != null) {
+			hits.increment();
+			return cached;
+		}
+
+		// concurrent callers of the same destination wait for a single lookup
+		return destinations.computeIfAbsent(destinationName, name -> {
+			misses.increment();
+			return lookup(name);
+		});
+	}
+
+	/**
+	 * Reads the destination from the destination service and replaces the
+	 * cached one, e.g. after its credentials were rotated.
+	 * {@link DestinationChangedEvent} is published if the destination changed.
+	 *
+	 * @param destinationName
+	 *            name of the destination
+	 * @return the destination read from the destination service
+	 */
+	public GenericDestination refresh(final String destinationName) {
+		final GenericDestination current = lookup(destinationName);
+		if (ttlMillis <= 0) {
+			return current;
+		}
+
+		final GenericDestination previous = destinations.put(destinationName, current);
+		if (previous != null && isChanged(previous, current)) {
+			log.info("Destination {} changed", destinationName);
+			eventPublisher.publishEvent(new DestinationChangedEvent(destinationName, previous, current));
+		}
+		return current;
+	}
+
+	/**
+	 * Reads all cached destinations again, keeping the last known ones that
+	 * cannot be read
+	 */
+	@VisibleForTesting
+	void refreshAll() {
+		for (String destinationName : destinations.keySet()) {
+			try {
+				refresh(destinationName);
+			} catch (RuntimeException e) {
+				// keep the last known destination until the next refresh
+				refreshFailures.increment();
+				log.warn("Destination {} was not refreshed, it is refreshed again in {} ms", destinationName,
+						ttlMillis, e);
+			}
+		}
+	}
+
+	private GenericDestination lookup(final String destinationName) {
+		final Timer.Sample sample = Timer.start();
+		try {
+			return destinationLoader.getGenericDestination(destinationName);
+		} finally {
+			sample.stop(lookupTimer);
+		}
+	}
+
+	private static boolean isChanged(GenericDestination previous, GenericDestination current) {
+		return !Objects.equals(previous.getDestinationType(), current.getDestinationType())
+				|| !Objects.equals(previous.getPropertiesByName(), current.getPropertiesByName());
+	}
+
+	/**
+	 * Stops refreshing the cached destinations in the background.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
 	}
 
 }
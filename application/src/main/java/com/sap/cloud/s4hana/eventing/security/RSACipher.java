@@ -1,34 +1,19 @@
 package com.sap.cloud.s4hana.eventing.security;
 
-import java.io.Serializable;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
 
+/**
+ * {@link TokenCipher} that uses an RSA key pair
+ */
 @Service
-public interface RSACipher {
-   
-    static final Logger log = LoggerFactory.getLogger(RSACipher.class); 
+public interface RSACipher extends TokenCipher {
 
     PublicKey getPublicKey();
-       
-    /**
-     * @param object {@link Serializable} object to be encrypted after serialization
-     * @return encrypted URL-safe string in Base64 encoding 
-     */
-    String encrypt(final Serializable object) throws SAPSecurityException;
-    
-    /**
-     * @param encrypted URL-safe string in Base64 encoding
-     * @param <T> return type
-     * @return decrypted {@link Serializable} object
-     */
-    <T extends Serializable> T decrypt(final String encrypted) throws SAPSecurityException;
     
     /**
 	 * Removes extra characters that can be present in private or public key
@@ -43,8 +28,7 @@ public interface RSACipher {
     }
     
     static SAPSecurityException logAndWrap(final String message, final Exception e) {
-        log.error(message, e);
-        return new SAPSecurityException(message, e);
+        return TokenCipher.logAndWrap(message, e);
     }
     
     static SAPSecurityException logAndWrap(NoSuchAlgorithmException e, String algorithm) {
@@ -0,0 +1,39 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.io.Serializable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+/**
+ * Encrypts the tokens sent to the business partners and decrypts the ones
+ * they send back, see {@link AddressConfirmationToken}.
+ * 
+ * @see CloudRSACipher
+ * @see AesGcmCipher
+ */
+public interface TokenCipher {
+   
+    static final Logger log = LoggerFactory.getLogger(TokenCipher.class); 
+
+    /**
+     * @param object {@link Serializable} object to be encrypted after serialization
+     * @return encrypted URL-safe string in Base64 encoding 
+     */
+    String encrypt(final Serializable object) throws SAPSecurityException;
+    
+    /**
+     * @param encrypted URL-safe string in Base64 encoding
+     * @param <T> return type
+     * @return decrypted {@link Serializable} object
+     */
+    <T extends Serializable> T decrypt(final String encrypted) throws SAPSecurityException;
+    
+    static SAPSecurityException logAndWrap(final String message, final Exception e) {
+        log.error(message, e);
+        return new SAPSecurityException(message, e);
+    }
+
+}
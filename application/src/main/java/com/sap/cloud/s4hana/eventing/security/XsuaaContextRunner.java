@@ -0,0 +1,25 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.core.util.ODataTaskExecutor;
+
+/**
+ * Executes tasks with a JWT token from the XSUAA service in the calling
+ * thread, e.g. in the worker threads of {@link ODataTaskExecutor}, which do
+ * not have the request context of the servlet thread.
+ * <p>
+ * This is a separate bean because {@link ExecuteWithJwtTokenFromXsuaaAspect}
+ * only intercepts calls from other beans.
+ */
+@Component
+public class XsuaaContextRunner {
+
+	@ExecuteWithJwtTokenFromXsuaa(error = "Cannot execute S/4HANA request using JWT token from XSUAA service")
+	public <T> T call(final Supplier<T> task) {
+		return task.get();
+	}
+
+}
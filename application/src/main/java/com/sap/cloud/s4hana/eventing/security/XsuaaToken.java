@@ -0,0 +1,44 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+/**
+ * Encoded JWT issued by the XSUAA service together with the time it expires.
+ */
+public class XsuaaToken {
+
+	private final String encoded;
+	private final long expiresAtMillis;
+
+	/**
+	 * @param encoded
+	 *            encoded JWT
+	 * @param expiresAtMillis
+	 *            time in milliseconds since the epoch when the token expires
+	 */
+	public XsuaaToken(String encoded, long expiresAtMillis) {
+		this.encoded = encoded;
+		this.expiresAtMillis = expiresAtMillis;
+	}
+
+	public String getEncoded() {
+		return encoded;
+	}
+
+	public long getExpiresAtMillis() {
+		return expiresAtMillis;
+	}
+
+	/**
+	 * @return {@code true} if the token does not expire within
+	 *         {@code millis} from now
+	 */
+	public boolean isValidFor(long millis) {
+		return System.currentTimeMillis() + millis < expiresAtMillis;
+	}
+
+	@Override
+	public String toString() {
+		// the encoded JWT must not be logged
+		return "XsuaaToken [expiresAtMillis=" + expiresAtMillis + "]";
+	}
+
+}
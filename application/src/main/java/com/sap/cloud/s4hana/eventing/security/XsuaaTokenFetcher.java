@@ -0,0 +1,20 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+/**
+ * Requests a new JWT from the XSUAA service.
+ *
+ * @see ClientCredentialsTokenFetcher
+ * @see XsuaaTokenManager
+ */
+public interface XsuaaTokenFetcher {
+
+	/**
+	 * @return a new token
+	 * @throws SAPSecurityException
+	 *             if the XSUAA service does not issue a token
+	 */
+	XsuaaToken fetchToken() throws SAPSecurityException;
+
+}
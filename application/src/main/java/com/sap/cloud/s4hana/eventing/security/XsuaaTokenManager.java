@@ -0,0 +1,259 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Caches the JWT of the XSUAA service bound to the application, so that
+ * {@link ExecuteWithJwtTokenFromXsuaaAspect} does not request a new token for
+ * every annotated method call.
+ * <p>
+ * The token is handed out as long as it is valid for at least
+ * {@code minValidityMillis}. It is refreshed in the background
+ * {@code refreshAheadMillis} before it expires, or after half of its
+ * lifetime if that is earlier, so that callers usually do not wait for the
+ * XSUAA service. If the background refresh fails, it is retried after
+ * {@link #RETRY_DELAY_MILLIS} while the current token is still handed out.
+ * <p>
+ * Only one token request is sent at a time: callers that need a token while
+ * it is requested wait for the same response instead of sending their own
+ * request. The following metrics are exposed:
+ * <ul>
+ * <li>{@value #METRIC_FETCH} - latency of the token requests</li>
+ * <li>{@value #METRIC_CACHE_HITS} - number of calls served with the cached
+ * token</li>
+ * <li>{@value #METRIC_CACHE_MISSES} - number of calls that waited for a token
+ * request</li>
+ * </ul>
+ */
+@Component
+@Profile("cloud")
+public class XsuaaTokenManager {
+
+	private static final Logger log = LoggerFactory.getLogger(XsuaaTokenManager.class);
+
+	/**
+	 * Default time in milliseconds before the token expires when it is
+	 * refreshed in the background
+	 */
+	public static final long DEFAULT_REFRESH_AHEAD_MILLIS = 300000;
+
+	/**
+	 * Default minimum time in milliseconds the token must be valid to be
+	 * handed out
+	 */
+	public static final long DEFAULT_MIN_VALIDITY_MILLIS = 30000;
+
+	/**
+	 * Default connect and read timeout of a token request in milliseconds
+	 */
+	public static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	/**
+	 * Time in milliseconds after which a failed background refresh is retried
+	 */
+	public static final long RETRY_DELAY_MILLIS = 5000;
+
+	public static final String METRIC_FETCH = "security.xsuaa.token.fetch";
+	public static final String METRIC_CACHE_HITS = "security.xsuaa.token.cache.hits";
+	public static final String METRIC_CACHE_MISSES = "security.xsuaa.token.cache.misses";
+
+	private final XsuaaTokenFetcher fetcher;
+	private final long refreshAheadMillis;
+	private final long minValidityMillis;
+
+	private final Timer fetchTimer;
+	private final Counter cacheHits;
+	private final Counter cacheMisses;
+
+	private volatile XsuaaToken token;
+
+	// guarded by this
+	private CompletableFuture<XsuaaToken> pendingFetch;
+	private ScheduledFuture<?> scheduledRefresh;
+
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * @param xsuaaUrl
+	 *            URL of the XSUAA service bound to the application, taken from
+	 *            its credentials
+	 * @param clientId
+	 *            client ID of the application, taken from the credentials of
+	 *            the XSUAA service
+	 * @param clientSecret
+	 *            client secret of the application, taken from the credentials
+	 *            of the XSUAA service
+	 * @param refreshAheadMillis
+	 *            time in milliseconds before the token expires when it is
+	 *            refreshed in the background
+	 * @param minValidityMillis
+	 *            minimum time in milliseconds the token must be valid to be
+	 *            handed out
+	 * @param timeoutMillis
+	 *            connect and read timeout of a token request in milliseconds
+	 */
+	@Autowired
+	public XsuaaTokenManager(MeterRegistry meterRegistry,
+			@Value("${vcap.services.xsuaa.credentials.url:}") String xsuaaUrl,
+			@Value("${vcap.services.xsuaa.credentials.clientid:}") String clientId,
+			@Value("${vcap.services.xsuaa.credentials.clientsecret:}") String clientSecret,
+			@Value("${security.xsuaa.refreshAheadMillis:" + DEFAULT_REFRESH_AHEAD_MILLIS + "}") long refreshAheadMillis,
+			@Value("${security.xsuaa.minValidityMillis:" + DEFAULT_MIN_VALIDITY_MILLIS + "}") long minValidityMillis,
+			@Value("${security.xsuaa.timeoutMillis:" + DEFAULT_TIMEOUT_MILLIS + "}") int timeoutMillis) {
+
+		this(new ClientCredentialsTokenFetcher(xsuaaUrl + ClientCredentialsTokenFetcher.TOKEN_PATH, clientId,
+				clientSecret, timeoutMillis), meterRegistry, refreshAheadMillis, minValidityMillis);
+	}
+
+	protected XsuaaTokenManager(XsuaaTokenFetcher fetcher, MeterRegistry meterRegistry, long refreshAheadMillis,
+			long minValidityMillis) {
+
+		this(fetcher, meterRegistry, refreshAheadMillis, minValidityMillis, newScheduler());
+	}
+
+	/**
+	 * @param scheduler
+	 *            refreshes the token in the background
+	 */
+	@VisibleForTesting
+	XsuaaTokenManager(XsuaaTokenFetcher fetcher, MeterRegistry meterRegistry, long refreshAheadMillis,
+			long minValidityMillis, ScheduledExecutorService scheduler) {
+
+		this.fetcher = fetcher;
+		this.refreshAheadMillis = refreshAheadMillis;
+		this.minValidityMillis = minValidityMillis;
+		this.scheduler = scheduler;
+
+		fetchTimer = meterRegistry.timer(METRIC_FETCH);
+		cacheHits = meterRegistry.counter(METRIC_CACHE_HITS);
+		cacheMisses = meterRegistry.counter(METRIC_CACHE_MISSES);
+	}
+
+	private static ScheduledExecutorService newScheduler() {
+		final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+				new CustomizableThreadFactory("xsuaa-token-"));
+		scheduler.setRemoveOnCancelPolicy(true);
+		scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		return scheduler;
+	}
+
+	/**
+	 * @return encoded JWT of the XSUAA service that is valid for at least
+	 *         {@code minValidityMillis}
+	 * @throws SAPSecurityException
+	 *             if a new token is needed and the XSUAA service does not
+	 *             issue one
+	 */
+	public String getToken() throws SAPSecurityException {
+		final XsuaaToken cached = token;
+		if (cached != null && cached.isValidFor(minValidityMillis)) {
+			cacheHits.increment();
+			return cached.getEncoded();
+		}
+
+		cacheMisses.increment();
+		try {
+			return fetch().join().getEncoded();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof SAPSecurityException) {
+				throw (SAPSecurityException) e.getCause();
+			}
+			throw new SAPSecurityException("Cannot get a token from the XSUAA service", e.getCause());
+		}
+	}
+
+	/**
+	 * Requests a new token unless a request is pending already.
+	 *
+	 * @return the pending request
+	 */
+	private CompletableFuture<XsuaaToken> fetch() {
+		final CompletableFuture<XsuaaToken> fetch;
+		synchronized (this) {
+			if (pendingFetch != null) {
+				return pendingFetch;
+			}
+
+			fetch = new CompletableFuture<>();
+			pendingFetch = fetch;
+		}
+
+		// the first caller sends the request, the others wait for it
+		final Timer.Sample sample = Timer.start();
+		try {
+			final XsuaaToken fetched = fetcher.fetchToken();
+			token = fetched;
+			scheduleRefresh(fetched);
+			fetch.complete(fetched);
+			log.debug("New token of the XSUAA service expires at {}", fetched.getExpiresAtMillis());
+		} catch (RuntimeException e) {
+			fetch.completeExceptionally(e);
+		} finally {
+			sample.stop(fetchTimer);
+			synchronized (this) {
+				pendingFetch = null;
+			}
+		}
+
+		return fetch;
+	}
+
+	private synchronized void scheduleRefresh(XsuaaToken fetched) {
+		if (scheduler.isShutdown()) {
+			return;
+		}
+
+		if (scheduledRefresh != null) {
+			scheduledRefresh.cancel(false);
+		}
+
+		final long lifetimeMillis = fetched.getExpiresAtMillis() - System.currentTimeMillis();
+		final long delayMillis = Math.max(0, lifetimeMillis - Math.min(refreshAheadMillis, lifetimeMillis / 2));
+		scheduledRefresh = scheduler.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void refresh() {
+		try {
+			fetch().join();
+		} catch (CompletionException e) {
+			log.warn("Token of the XSUAA service was not refreshed, it is refreshed again in {} ms",
+					RETRY_DELAY_MILLIS, e.getCause());
+			synchronized (this) {
+				if (!scheduler.isShutdown()) {
+					scheduledRefresh = scheduler.schedule(this::refresh, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops refreshing the token in the background.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+}
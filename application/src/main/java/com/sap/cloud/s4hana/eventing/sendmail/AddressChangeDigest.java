@@ -0,0 +1,53 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
+
+/**
+ * Freemarker data model for a digest of several address change notifications
+ * to the same contact person.
+ *
+ * @see AddressChangeNotification
+ * @see <a href="https://freemarker.apache.org/docs/pgui_datamodel.html">Apache
+ *      Freemarker Documentation - The Data Model</a>
+ */
+public class AddressChangeDigest {
+
+	private final BusinessPartner contact;
+	private final String emailAddress;
+	private final List<AddressChangeNotification> notifications;
+
+	/**
+	 * @param notifications
+	 *            notifications to the same email address, the contact person
+	 *            is taken from the last one
+	 */
+	public static AddressChangeDigest of(List<AddressChangeNotification> notifications) {
+		final AddressChangeNotification last = notifications.get(notifications.size() - 1);
+		return new AddressChangeDigest(last.getContact(), last.getEmailAddress(), notifications);
+	}
+
+	protected AddressChangeDigest(BusinessPartner contact,
+			String emailAddress,
+			List<AddressChangeNotification> notifications) {
+
+		this.contact = contact;
+		this.emailAddress = emailAddress;
+		this.notifications = Collections.unmodifiableList(notifications);
+	}
+
+	public BusinessPartner getContact() {
+		return contact;
+	}
+
+	public String getEmailAddress() {
+		return emailAddress;
+	}
+
+	public List<AddressChangeNotification> getNotifications() {
+		return notifications;
+	}
+
+}
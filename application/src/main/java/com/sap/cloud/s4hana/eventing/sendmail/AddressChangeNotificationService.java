@@ -2,15 +2,30 @@ package com.sap.cloud.s4hana.eventing.sendmail;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-import javax.mail.Session;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+import com.sap.cloud.s4hana.eventing.security.AddressChecksum;
 
 import freemarker.template.Configuration;
 import freemarker.template.Template;
@@ -23,12 +38,53 @@ public class AddressChangeNotificationService {
 	
 	public static final String TEMPLATE_FILE = "notification-address-change.ftlh";
 	
+	public static final String DIGEST_TEMPLATE_FILE = "notification-address-change-digest.ftlh";
+	
+	/**
+	 * Default time in milliseconds for which notifications to the same email
+	 * address are collected into one digest email, {@code 0} if every
+	 * notification is sent in its own email
+	 */
+	public static final long DEFAULT_DIGEST_WINDOW_MILLIS = 0;
+	
+	/**
+	 * Default maximum number of business partners in one digest email
+	 */
+	public static final int DEFAULT_DIGEST_MAX_SIZE = 50;
+	
+	/**
+	 * Render buffers that grew larger than this number of characters are not
+	 * reused, so that a single large digest does not pin its memory
+	 */
+	public static final int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+	
 	@Autowired
-	private Session mailSession;
+	private MailSessionHolder mailSessionHolder;
 	
 	@Autowired
 	private Configuration templateConfiguration;
 	
+	@Autowired
+	private SmtpTransportPool transportPool;
+	
+	@Autowired
+	private MailOutbox mailOutbox;
+	
+	@Value("${mail.digest.windowMillis:" + DEFAULT_DIGEST_WINDOW_MILLIS + "}")
+	private long digestWindowMillis;
+	
+	@Value("${mail.digest.maxSize:" + DEFAULT_DIGEST_MAX_SIZE + "}")
+	private int digestMaxSize;
+	
+	// notifications by business partner by lower case email address, guarded by itself 
+	private final Map<String, Map<String, AddressChangeNotification>> digests = new HashMap<>();
+	
+	private final ScheduledExecutorService digestScheduler = new ScheduledThreadPoolExecutor(1,
+			new CustomizableThreadFactory("mail-digest-"));
+	
+	// templates are rendered into a buffer per thread that is reused for the next email
+	private final ThreadLocal<StringWriter> renderBuffers = ThreadLocal.withInitial(StringWriter::new);
+	
 	/**
 	 * Sends email to {@link AddressChangeNotification#getEmailAddress()} about a
 	 * change in {@link AddressChangeNotification#getAddress()} of
@@ -41,6 +97,121 @@ public class AddressChangeNotificationService {
 	 * 
 	 */
 	public void sendMail(AddressChangeNotification notification) throws SAPMailingException {
+		createMail(notification).send(transportPool);
+	}
+	
+	/**
+	 * Queues the email of {@link #sendMail(AddressChangeNotification)} in
+	 * {@link MailOutbox}, which sends it in the background and publishes
+	 * {@link MailDeliveredEvent} with the checksum of
+	 * {@link AddressChangeNotification#getAddress()} when it was sent.
+	 * <p>
+	 * If {@code mail.digest.windowMillis} is set, the notification is kept
+	 * for that time and queued together with the other notifications to the
+	 * same email address in one digest email from template
+	 * {@link #DIGEST_TEMPLATE_FILE}. Of several notifications about the same
+	 * business partner only the last one is kept. A digest is queued earlier
+	 * when it contains {@code mail.digest.maxSize} business partners.
+	 * 
+	 * @param notification
+	 *            data model for a Freemarker template
+	 * @return {@code false} if an email about the same address of the same
+	 *         business partner is already queued or was sent recently
+	 */
+	public boolean queueMail(AddressChangeNotification notification) throws SAPMailingException {
+		if (digestWindowMillis <= 0) {
+			return queueMails(Collections.singletonList(notification));
+		}
+		
+		final String recipient = notification.getEmailAddress().trim().toLowerCase(Locale.ROOT);
+		List<AddressChangeNotification> fullDigest = null;
+		
+		synchronized (digests) {
+			Map<String, AddressChangeNotification> digest = digests.get(recipient);
+			if (digest == null) {
+				final Map<String, AddressChangeNotification> newDigest = new LinkedHashMap<>();
+				digestScheduler.schedule(() -> flushDigest(recipient, newDigest), digestWindowMillis, TimeUnit.MILLISECONDS);
+				digests.put(recipient, newDigest);
+				digest = newDigest;
+			}
+			
+			final String businessPartner = notification.getBusinessPartner().getBusinessPartner();
+			digest.remove(businessPartner);
+			digest.put(businessPartner, notification);
+			
+			if (digest.size() >= digestMaxSize) {
+				digests.remove(recipient);
+				fullDigest = new ArrayList<>(digest.values());
+			}
+		}
+		
+		if (fullDigest != null) {
+			return queueMails(fullDigest);
+		}
+		
+		log.debug("Notification to {} is kept for a digest email", notification.getEmailAddress());
+		return true;
+	}
+	
+	/**
+	 * Queues the notifications that are kept for digest emails immediately
+	 */
+	@PreDestroy
+	public void flushDigests() {
+		digestScheduler.shutdownNow();
+		
+		final Map<String, Map<String, AddressChangeNotification>> pendingDigests;
+		synchronized (digests) {
+			pendingDigests = new HashMap<>(digests);
+		}
+		
+		pendingDigests.forEach(this::flushDigest);
+	}
+	
+	@VisibleForTesting
+	protected void setDigest(long windowMillis, int maxSize) {
+		this.digestWindowMillis = windowMillis;
+		this.digestMaxSize = maxSize;
+	}
+	
+	private void flushDigest(String recipient, Map<String, AddressChangeNotification> digest) {
+		final List<AddressChangeNotification> notifications;
+		synchronized (digests) {
+			// the digest may have been queued already because it was full
+			if (!digests.remove(recipient, digest)) {
+				return;
+			}
+			notifications = new ArrayList<>(digest.values());
+		}
+		
+		try {
+			queueMails(notifications);
+		} catch (SAPMailingException e) {
+			log.error("Digest email to " + recipient + " was not queued", e);
+		}
+	}
+	
+	/**
+	 * Queues one email about the notifications to the same email address,
+	 * a digest email if there are several of them
+	 */
+	private boolean queueMails(List<AddressChangeNotification> notifications) throws SAPMailingException {
+		if (notifications.size() == 1) {
+			final AddressChangeNotification notification = notifications.get(0);
+			return mailOutbox.enqueue(notification.getBusinessPartner().getBusinessPartner(), 
+					AddressChecksum.of(notification.getAddress()), 
+					createMail(notification));
+		}
+		
+		final Map<String, String> addressChecksums = new LinkedHashMap<>();
+		notifications.forEach(notification -> addressChecksums.put(
+				notification.getBusinessPartner().getBusinessPartner(), 
+				AddressChecksum.of(notification.getAddress())));
+		
+		return mailOutbox.enqueue(addressChecksums, createDigestMail(AddressChangeDigest.of(notifications)));
+	}
+	
+	protected Email createMail(AddressChangeNotification notification) throws SAPMailingException {
 		final String partnerEmailAddress = notification.getEmailAddress();
     	
     	final String subject = "Address of business partner " 
@@ -56,13 +227,32 @@ public class AddressChangeNotificationService {
     	
 		final String body = processTemplate(notification);
 			
-		Email.forSession(mailSession)
+		return Email.forSession(mailSessionHolder.getSession())
 			.to(partnerEmailAddress)
 			.subject(subject)
-			.body(body)
-			.send();
+			.body(body);
     }
 
+	protected Email createDigestMail(AddressChangeDigest digest) throws SAPMailingException {
+		final List<AddressChangeNotification> notifications = digest.getNotifications();
+		final String subject = "Addresses of " + notifications.size() + " business partners were changed";
+		
+		log.debug("Try to send digest email notification to {} email address of {} contact "
+				+ "about address changes of {} business partners",
+				digest.getEmailAddress(),
+				digest.getContact(),
+				notifications.stream()
+					.map(notification -> notification.getBusinessPartner().getBusinessPartner())
+					.collect(Collectors.joining(", ")));
+		
+		final String body = processTemplate(DIGEST_TEMPLATE_FILE, digest, "digest to " + digest.getEmailAddress());
+		
+		return Email.forSession(mailSessionHolder.getSession())
+			.to(digest.getEmailAddress())
+			.subject(subject)
+			.body(body);
+	}
+
 	/**
 	 * Processes FreeMarker template from file {@link AddressChangeNotificationService#TEMPLATE_FILE}
 	 * 
@@ -78,13 +268,34 @@ public class AddressChangeNotificationService {
 	 * @see Template#process(Object, java.io.Writer)
 	 */
 	protected String processTemplate(AddressChangeNotification notification) throws SAPMailingException {
+		return processTemplate(TEMPLATE_FILE, notification, 
+				"business partner " + notification.getBusinessPartner().getBusinessPartner());
+	}
+	
+	/**
+	 * Processes FreeMarker template from file {@code templateFile} into the
+	 * render buffer of the current thread
+	 * 
+	 * @param model
+	 *            data model for template
+	 * @param modelDescription
+	 *            describes the data model in error messages
+	 */
+	protected String processTemplate(String templateFile, Object model, String modelDescription) throws SAPMailingException {
 		try {
-			final Template template = templateConfiguration.getTemplate(TEMPLATE_FILE);
-			
-			final StringWriter resultWriter = new StringWriter();
-			template.process(notification, resultWriter);
+			final Template template = templateConfiguration.getTemplate(templateFile);
 			
-			return resultWriter.toString();
+			final StringWriter resultWriter = renderBuffers.get();
+			resultWriter.getBuffer().setLength(0);
+			try {
+				template.process(model, resultWriter);
+				
+				return resultWriter.toString();
+			} finally {
+				if (resultWriter.getBuffer().capacity() > MAX_REUSED_BUFFER_SIZE) {
+					renderBuffers.remove();
+				}
+			}
 		} catch (IOException e) {
 			final String message = e.getClass().getSimpleName() + 
 					" when trying to get email notification template";
@@ -93,7 +304,7 @@ public class AddressChangeNotificationService {
 		} catch (TemplateException e) {
 			final String message = e.getClass().getSimpleName() + 
 					" when trying to proceess email notification template "
-					+ "with business partner " + notification.getBusinessPartner().getBusinessPartner();
+					+ "with " + modelDescription;
 			log.error(message);
 			throw new SAPMailingException(message, e);
 		}
@@ -1,11 +1,16 @@
 package com.sap.cloud.s4hana.eventing.sendmail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.mail.Address;
 import javax.mail.AuthenticationFailedException;
 import javax.mail.MessagingException;
 import javax.mail.NoSuchProviderException;
 import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
@@ -16,6 +21,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+import com.sap.cloud.s4hana.eventing.sendmail.SmtpTransportPool.PooledTransport;
 import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
 
 /**
@@ -52,9 +58,28 @@ public class Email {
 		}
 	}
 	
+	private Email(Session session, MimeMessage message) {
+		this.session = session;
+		this.message = message;
+	}
+	
 	public static Email forSession(Session session) {
 		return new Email(session);
 	}
+	
+	/**
+	 * Reads an email that was written with {@link #toByteArray()}
+	 * 
+	 * @param mime
+	 *            the email in MIME format
+	 */
+	public static Email parse(Session session, byte[] mime) throws SAPMailingException {
+		try {
+			return new Email(session, new MimeMessage(session, new ByteArrayInputStream(mime)));
+		} catch (MessagingException e) {
+			throw error("Error while reading an email in MIME format", e);
+		}
+	}
 
 	/**
 	 * Sets {@code FROM} header to the email message
@@ -128,35 +153,118 @@ public class Email {
 		return this;
 	}
 	
+	/**
+	 * Finalizes the headers of the email, including its {@code Message-ID},
+	 * and writes it in MIME format
+	 * 
+	 * @see Email#parse(Session, byte[])
+	 */
+	public byte[] toByteArray() throws SAPMailingException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try {
+			message.saveChanges();
+			message.writeTo(result);
+		} catch (MessagingException | IOException e) {
+			throw error("Error while writing the email in MIME format", e);
+		}
+		
+		return result.toByteArray();
+	}
+	
+	/**
+	 * @return lower case domain of the first recipient's email address or an
+	 *         empty string if there is none
+	 */
+	public String getRecipientDomain() {
+		try {
+			final Address[] recipients = message.getAllRecipients();
+			if (recipients != null && recipients.length > 0 && recipients[0] instanceof InternetAddress) {
+				final String address = ((InternetAddress) recipients[0]).getAddress();
+				return address.substring(address.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+			}
+		} catch (MessagingException e) {
+			log.debug("Exception when reading the recipients of an email", e);
+		}
+		
+		return "";
+	}
+	
 	@VisibleForTesting
 	protected MimeMessage getMimeMessage() {
 		return message;
 	}
 	
+	/**
+	 * Sends the email over a new connection to the email server which is
+	 * closed afterwards.
+	 * 
+	 * @see Email#send(SmtpTransportPool)
+	 */
 	public void send() throws SAPMailingException {
-    	final Transport transport;
-    	
-    	try {
-			transport = session.getTransport();
-		} catch (NoSuchProviderException e) {
-			throw error("Mail protocol cannot be obtained for javax.mail.Session", e);
-		}
-    	
-    	try {
-			transport.connect();
-		} catch (AuthenticationFailedException e) {
-			throw error("Authentication error while connecting to the email server", e);
+		send(SmtpTransportPool.NO_POOLING);
+	}
+	
+	/**
+	 * Sends the email over a connection to the email server borrowed from
+	 * {@code pool}. If a reused connection fails, the email is sent once more
+	 * over a new connection.
+	 */
+	public void send(SmtpTransportPool pool) throws SAPMailingException {
+		final PooledTransport transport = connect(() -> pool.borrow(session));
+		
+		try {
+			send(pool, transport);
 		} catch (MessagingException e) {
-			throw error("Exception while connecting to the email server", e);
+			if (!transport.isReused()) {
+				throw error("Exception while sending email", e);
+			}
+			
+			log.debug("Reused connection to the email server failed, the email is sent over a new connection", e);
+			try {
+				send(pool, connect(() -> pool.connect(session)));
+			} catch (MessagingException retryException) {
+				throw error("Exception while sending email", retryException);
+			}
 		}
-    	
+	}
+	
+	/**
+	 * Sends the email with {@code transport} and returns it to {@code pool}
+	 * 
+	 * @throws MessagingException
+	 *             if the email was not sent and the transport was closed
+	 */
+	private void send(SmtpTransportPool pool, PooledTransport transport) throws MessagingException, SAPMailingException {
 		try {
 			transport.sendMessage(message, message.getAllRecipients());
 		} catch (SendFailedException e) {
+			pool.release(transport);
 			throw error("Notification email was not sent because one or more recipient addresses was rejected", e);
 		} catch (MessagingException e) {
-			throw error("Exception while sending email", e);
+			pool.invalidate(transport);
+			throw e;
 		}
+		
+		pool.release(transport);
+	}
+	
+	private static PooledTransport connect(TransportSupplier transportSupplier) throws SAPMailingException {
+		try {
+			return transportSupplier.get();
+		} catch (NoSuchProviderException e) {
+			throw error("Mail protocol cannot be obtained for javax.mail.Session", e);
+		} catch (AuthenticationFailedException e) {
+			throw error("Authentication error while connecting to the email server", e);
+		} catch (MessagingException e) {
+			throw error("Exception while connecting to the email server", e);
+		}
+	}
+	
+	@FunctionalInterface
+	private interface TransportSupplier {
+		
+		PooledTransport get() throws MessagingException;
+		
 	}
 
 	public static InternetAddress parseEmailAddress(final String address) throws AddressException {
@@ -1,5 +1,7 @@
 package com.sap.cloud.s4hana.eventing.sendmail;
 
+import java.io.IOException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
@@ -8,12 +10,19 @@ import org.springframework.context.annotation.Scope;
 
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
 
+import freemarker.cache.StrongCacheStorage;
 import freemarker.template.Configuration;
 import freemarker.template.TemplateExceptionHandler;
 
 /**
  * Configures Apache Freemarker templating engine and provides its configuration
  * as singleton.
+ * <p>
+ * The templates are packaged with the application and never change while it
+ * is running. Therefore all {@link #TEMPLATE_FILES} are parsed when the
+ * configuration is created and kept in memory for good, without checking the
+ * template files for modifications. A broken template fails the start of the
+ * application instead of the first email.
  */
 @org.springframework.context.annotation.Configuration
 public class FreemarkerConfig {
@@ -29,13 +38,21 @@ public class FreemarkerConfig {
 	 * @see Configuration#setClassForTemplateLoading(Class, String)
 	 */
 	public static final String PATH_TO_TEMPLATES_FOLDER = "/templates/";
+	
+	/**
+	 * Templates that are loaded when the configuration is created
+	 */
+	public static final String[] TEMPLATE_FILES = {
+			AddressChangeNotificationService.TEMPLATE_FILE,
+			AddressChangeNotificationService.DIGEST_TEMPLATE_FILE
+	};
 
 	/**
 	 * @return {@link Configuration} singleton
 	 * 
 	 * @throws SAPMailingException
 	 *             in case the configuration is not compatible with the current
-	 *             Freemarker version
+	 *             Freemarker version or a template cannot be loaded
 	 * 
 	 * @see ClassTemplateLoader
 	 * @see TemplateException
@@ -74,8 +91,35 @@ public class FreemarkerConfig {
 	
 	    // Wrap unchecked exceptions thrown during template processing into TemplateException-s.
 	    cfg.setWrapUncheckedExceptions(true);
+	    
+	    // Keep loaded templates and never check the template files for modifications
+	    cfg.setCacheStorage(new StrongCacheStorage());
+	    cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+	    
+	    loadTemplates(cfg, TEMPLATE_FILES);
         
         return cfg;
     }
 	
+	/**
+	 * Loads and parses {@code templateFiles} into the template cache of
+	 * {@code cfg}
+	 * 
+	 * @throws SAPMailingException
+	 *             if a template cannot be found or contains a syntax error
+	 */
+	protected static void loadTemplates(Configuration cfg, String... templateFiles) throws SAPMailingException {
+		for (String templateFile : templateFiles) {
+			try {
+				cfg.getTemplate(templateFile);
+			} catch (IOException e) {
+				final String message = "Email notification template " + templateFile + " cannot be loaded";
+				log.error(message, e);
+				throw new SAPMailingException(message, e);
+			}
+		}
+		
+		log.debug("Loaded email notification templates {}", (Object) templateFiles);
+	}
+	
 }
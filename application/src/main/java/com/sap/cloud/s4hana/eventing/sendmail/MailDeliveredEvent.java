@@ -0,0 +1,36 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+/**
+ * Published by {@link MailOutbox} when an email about the address of a
+ * business partner was accepted by the email server.
+ */
+public class MailDeliveredEvent {
+
+	private final String businessPartner;
+	private final String addressChecksum;
+
+	public MailDeliveredEvent(String businessPartner, String addressChecksum) {
+		this.businessPartner = businessPartner;
+		this.addressChecksum = addressChecksum;
+	}
+
+	/**
+	 * @return key of the business partner the email was about
+	 */
+	public String getBusinessPartner() {
+		return businessPartner;
+	}
+
+	/**
+	 * @return checksum of the address the email was about
+	 */
+	public String getAddressChecksum() {
+		return addressChecksum;
+	}
+
+	@Override
+	public String toString() {
+		return "MailDeliveredEvent [businessPartner=" + businessPartner + ", addressChecksum=" + addressChecksum + "]";
+	}
+
+}
@@ -0,0 +1,656 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.annotation.PreDestroy;
+import javax.mail.SendFailedException;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+import com.sap.cloud.s4hana.eventing.events.service.BackpressureController;
+import com.sap.cloud.s4hana.eventing.events.service.BackpressureController.Downstream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Queues emails about the address of a business partner and sends them in
+ * the background, so that the caller does not wait for the email server.
+ * <p>
+ * Every queued email is written in MIME format to an append-only log file in
+ * {@code directory} before {@link #enqueue(String, String, Email)} returns.
+ * Emails that were not sent when the application stopped are read from the
+ * log and sent after the next start. The log is rewritten without the sent
+ * emails when it grows larger than {@link #COMPACTION_THRESHOLD_BYTES}.
+ * <p>
+ * Emails are sent by {@code workers} threads within the quotas of
+ * {@link MailRateLimiter}; an email that exceeds a quota is deferred until
+ * the quota allows it. If sending fails, the email is sent again after a
+ * delay that doubles with every attempt, starting with
+ * {@code initialBackoffMillis} and limited by {@code maxBackoffMillis}. An
+ * email is dropped after {@code maxAttempts} attempts or when the email
+ * server rejects its recipient as invalid. When the email server refuses an
+ * email temporarily, e.g. because a quota was exceeded, the quotas of
+ * {@link MailRateLimiter} are exhausted, so that the following emails are
+ * deferred as well. The duration of every attempt is recorded in
+ * {@link BackpressureController}, which slows down the handling of events
+ * while the email server is degraded.
+ * <p>
+ * An email may be about the addresses of several business partners. An
+ * email about the same business partner and address checksum is queued only
+ * once while it is not sent and for {@code deduplicationWindowMillis} after it
+ * was sent. When the email server accepted an email, a
+ * {@link MailDeliveredEvent} is published for each of its business partners.
+ * <p>
+ * The number of emails that are not sent yet is exposed as metric
+ * {@value #METRIC_SIZE}.
+ */
+@Component
+public class MailOutbox {
+
+	private static final Logger log = LoggerFactory.getLogger(MailOutbox.class);
+
+	/**
+	 * Default directory of the outbox log if {@code mail.outbox.directory} is
+	 * not set, relative to {@code java.io.tmpdir}
+	 */
+	public static final String DEFAULT_DIRECTORY = "address-confirmation-outbox";
+
+	/**
+	 * Default number of threads that send emails
+	 */
+	public static final int DEFAULT_WORKERS = 2;
+
+	/**
+	 * Default maximum number of emails that are not sent yet
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * Default maximum number of attempts to send an email
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 8;
+
+	/**
+	 * Default delay in milliseconds before an email is sent again for the
+	 * first time
+	 */
+	public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+
+	/**
+	 * Default maximum delay in milliseconds before an email is sent again
+	 */
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 300000;
+
+	/**
+	 * Default time in milliseconds for which a sent email is not queued again
+	 */
+	public static final long DEFAULT_DEDUPLICATION_WINDOW_MILLIS = 3600000;
+
+	/**
+	 * Size of the log file after which sent emails are removed from it
+	 */
+	public static final long COMPACTION_THRESHOLD_BYTES = 16 * 1024 * 1024;
+
+	public static final String LOG_FILE_NAME = "outbox.log";
+
+	public static final String METRIC_SIZE = "mail.outbox.size";
+
+	private static final byte RECORD_QUEUED = 1;
+	private static final byte RECORD_DELIVERED = 2;
+	private static final byte RECORD_DROPPED = 3;
+
+	private final MailSessionHolder mailSessionHolder;
+	private final SmtpTransportPool transportPool;
+	private final MailRateLimiter rateLimiter;
+	private final BackpressureController backpressure;
+	private final ApplicationEventPublisher eventPublisher;
+
+	private final int capacity;
+	private final int maxAttempts;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	private final long deduplicationWindowMillis;
+
+	private final Path logFile;
+	private final ScheduledExecutorService workers;
+
+	// guarded by this
+	private FileChannel logChannel;
+	private long logBytes;
+	private long compactAtBytes = COMPACTION_THRESHOLD_BYTES;
+	private long nextId = 1;
+	private boolean started;
+	private final Map<Long, Entry> pending = new LinkedHashMap<>();
+	private final Map<String, Entry> pendingByKey = new HashMap<>();
+	// in the order the emails were sent
+	private final LinkedHashMap<String, Entry> deliveredByKey = new LinkedHashMap<>();
+
+	/**
+	 * Reads the emails that were not sent yet from the log in
+	 * {@code directory}. They are sent when the application context was
+	 * started, see {@link #start()}.
+	 *
+	 * @param directory
+	 *            directory of the log file. If empty,
+	 *            {@link #DEFAULT_DIRECTORY} in {@code java.io.tmpdir} is used.
+	 * @throws SAPMailingException
+	 *             if the log cannot be read or written
+	 */
+	@Autowired
+	public MailOutbox(MailSessionHolder mailSessionHolder, SmtpTransportPool transportPool, MailRateLimiter rateLimiter,
+			BackpressureController backpressure, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry,
+			@Value("${mail.outbox.directory:}") String directory,
+			@Value("${mail.outbox.workers:" + DEFAULT_WORKERS + "}") int workers,
+			@Value("${mail.outbox.capacity:" + DEFAULT_CAPACITY + "}") int capacity,
+			@Value("${mail.outbox.maxAttempts:" + DEFAULT_MAX_ATTEMPTS + "}") int maxAttempts,
+			@Value("${mail.outbox.initialBackoffMillis:" + DEFAULT_INITIAL_BACKOFF_MILLIS + "}") long initialBackoffMillis,
+			@Value("${mail.outbox.maxBackoffMillis:" + DEFAULT_MAX_BACKOFF_MILLIS + "}") long maxBackoffMillis,
+			@Value("${mail.outbox.deduplicationWindowMillis:" + DEFAULT_DEDUPLICATION_WINDOW_MILLIS + "}") long deduplicationWindowMillis)
+			throws SAPMailingException {
+
+		this.mailSessionHolder = mailSessionHolder;
+		this.transportPool = transportPool;
+		this.rateLimiter = rateLimiter;
+		this.backpressure = backpressure;
+		this.eventPublisher = eventPublisher;
+		this.capacity = capacity;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+		this.deduplicationWindowMillis = deduplicationWindowMillis;
+
+		final Path outboxDirectory = StringUtils.isBlank(directory)
+				? Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY)
+				: Paths.get(directory);
+		this.logFile = outboxDirectory.resolve(LOG_FILE_NAME);
+
+		synchronized (this) {
+			try {
+				Files.createDirectories(outboxDirectory);
+				recover();
+				compact();
+			} catch (IOException e) {
+				throw new SAPMailingException("The mail outbox " + logFile + " cannot be read", e);
+			}
+		}
+
+		this.workers = new ScheduledThreadPoolExecutor(workers, new CustomizableThreadFactory("mail-outbox-"));
+		meterRegistry.gauge(METRIC_SIZE, this, MailOutbox::size);
+		log.info("Mail outbox {} contains {} emails that were not sent yet", logFile, pending.size());
+	}
+
+	/**
+	 * Starts sending the emails that were not sent before the application
+	 * stopped. Emails are sent after the application context was started, so
+	 * that every listener of {@link MailDeliveredEvent} is registered.
+	 */
+	@EventListener(ContextRefreshedEvent.class)
+	public synchronized void start() {
+		if (started) {
+			return;
+		}
+
+		started = true;
+		pending.values().forEach(entry -> schedule(entry, 0));
+	}
+
+	/**
+	 * Writes {@code email} to the outbox log and sends it in the background.
+	 *
+	 * @param businessPartner
+	 *            key of the business partner the email is about
+	 * @param addressChecksum
+	 *            checksum of the address the email is about
+	 * @return {@code false} if an email about the same business partner and
+	 *         address checksum is already queued or was sent recently. In the
+	 *         latter case, {@link MailDeliveredEvent} is published again.
+	 * @throws SAPMailingException
+	 *             if the outbox is full or the email cannot be written to the
+	 *             log
+	 */
+	public boolean enqueue(String businessPartner, String addressChecksum, Email email) throws SAPMailingException {
+		return enqueue(Collections.singletonMap(businessPartner, addressChecksum), email);
+	}
+
+	/**
+	 * Writes {@code email} about the addresses of several business partners
+	 * to the outbox log and sends it in the background.
+	 *
+	 * @param addressChecksums
+	 *            checksums of the addresses the email is about by the keys of
+	 *            their business partners
+	 * @return {@code false} if an email about each of the business partners
+	 *         and address checksums is already queued or was sent recently.
+	 *         {@link MailDeliveredEvent} is published again for the ones sent
+	 *         recently.
+	 * @throws SAPMailingException
+	 *             if the outbox is full or the email cannot be written to the
+	 *             log
+	 */
+	public boolean enqueue(Map<String, String> addressChecksums, Email email) throws SAPMailingException {
+		final byte[] mime = email.toByteArray();
+		final Entry entry;
+
+		synchronized (this) {
+			removeExpiredDeliveries();
+
+			final List<MailDeliveredEvent> deliveries = new ArrayList<>(addressChecksums.size());
+			final List<MailDeliveredEvent> sentRecently = new ArrayList<>();
+			addressChecksums.forEach((businessPartner, addressChecksum) -> {
+				final String key = key(businessPartner, addressChecksum);
+				final MailDeliveredEvent delivery = new MailDeliveredEvent(businessPartner, addressChecksum);
+
+				if (pendingByKey.containsKey(key)) {
+					log.debug("Email about business partner {} is already queued", businessPartner);
+				} else if (deliveredByKey.containsKey(key)) {
+					log.debug("Email about business partner {} was sent recently", businessPartner);
+					sentRecently.add(delivery);
+				} else {
+					deliveries.add(delivery);
+				}
+			});
+
+			if (!sentRecently.isEmpty()) {
+				workers.execute(() -> sentRecently.forEach(this::publish));
+			}
+
+			if (deliveries.isEmpty()) {
+				return false;
+			}
+
+			entry = new Entry(nextId++, deliveries, mime);
+
+			if (pending.size() >= capacity) {
+				throw new SAPMailingException("The mail outbox is full, the email about business partner(s) "
+						+ entry.businessPartners() + " was not queued");
+			}
+
+			try {
+				append(queuedRecord(entry));
+			} catch (IOException e) {
+				throw new SAPMailingException("The email about business partner(s) " + entry.businessPartners()
+						+ " cannot be written to the mail outbox", e);
+			}
+
+			addPending(entry);
+			if (started) {
+				schedule(entry, 0);
+			}
+		}
+
+		log.debug("Email about business partner(s) {} was queued", entry.businessPartners());
+		return true;
+	}
+
+	/**
+	 * @return number of emails that are not sent yet
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Stops sending emails. Emails that are not sent yet stay in the log and
+	 * are sent after the next start.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		workers.shutdownNow();
+
+		synchronized (this) {
+			try {
+				logChannel.close();
+			} catch (IOException e) {
+				log.debug("Exception when closing the mail outbox", e);
+			}
+		}
+	}
+
+	private void schedule(Entry entry, long delayMillis) {
+		workers.schedule(() -> deliver(entry), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void deliver(Entry entry) {
+		String recipientDomain = "";
+		try {
+			// parsed with the current session, so that rotated credentials are used
+			final Email email = Email.parse(mailSessionHolder.getSession(), entry.mime);
+			recipientDomain = email.getRecipientDomain();
+
+			final long waitMillis = rateLimiter.reserve(recipientDomain);
+			if (waitMillis > 0) {
+				log.debug("Email about business partner(s) {} is deferred by {} ms to stay within the quota",
+						entry.businessPartners(), waitMillis);
+				schedule(entry, waitMillis);
+				return;
+			}
+
+			final long start = System.nanoTime();
+			try {
+				email.send(transportPool);
+			} finally {
+				backpressure.record(Downstream.SMTP, System.nanoTime() - start);
+			}
+		} catch (SAPMailingException e) {
+			retryOrDrop(entry, e, recipientDomain);
+			return;
+		} catch (RuntimeException e) {
+			// otherwise the executor swallows the exception and the entry is stuck in pending
+			log.error("Unexpected exception when sending email about business partner(s) " + entry.businessPartners(), e);
+			retryOrDrop(entry, e, recipientDomain);
+			return;
+		}
+
+		log.debug("Email about business partner(s) {} was sent", entry.businessPartners());
+		complete(entry, RECORD_DELIVERED);
+		entry.deliveries.forEach(this::publish);
+	}
+
+	private void retryOrDrop(Entry entry, Exception e, String recipientDomain) {
+		entry.attempts++;
+
+		final boolean rejected = e.getCause() instanceof SendFailedException
+				&& ArrayUtils.isNotEmpty(((SendFailedException) e.getCause()).getInvalidAddresses());
+		if (e.getCause() instanceof SendFailedException && !rejected) {
+			// the email server refused the email temporarily, e.g. because of a quota
+			rateLimiter.onQuotaExceeded(recipientDomain);
+		}
+
+		if (rejected || entry.attempts >= maxAttempts) {
+			log.error("Email about business partner(s) {} was not sent after {} attempt(s) and is dropped",
+					entry.businessPartners(), entry.attempts);
+			complete(entry, RECORD_DROPPED);
+			return;
+		}
+
+		final long backoffMillis = backoffMillis(entry.attempts);
+		log.warn("Email about business partner(s) {} was not sent, attempt {} of {} in {} ms",
+				entry.businessPartners(), entry.attempts + 1, maxAttempts, backoffMillis);
+		schedule(entry, backoffMillis);
+	}
+
+	/**
+	 * @return exponential backoff with jitter, between half and the full delay
+	 */
+	private long backoffMillis(int attempts) {
+		final long delay = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempts - 1, 30));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	private void publish(MailDeliveredEvent event) {
+		try {
+			eventPublisher.publishEvent(event);
+		} catch (RuntimeException e) {
+			log.error("Exception when handling " + event, e);
+		}
+	}
+
+	private synchronized void complete(Entry entry, byte recordType) {
+		removePending(entry.id);
+
+		if (recordType == RECORD_DELIVERED) {
+			entry.mime = null;
+			entry.completedAtMillis = System.currentTimeMillis();
+			addDelivered(entry);
+		}
+
+		try {
+			append(completedRecord(entry, recordType));
+			if (logBytes > compactAtBytes) {
+				compact();
+			}
+		} catch (IOException e) {
+			// the email may be sent again after the next start
+			log.error("Exception when writing to the mail outbox " + logFile, e);
+		}
+	}
+
+	private void addPending(Entry entry) {
+		pending.put(entry.id, entry);
+		entry.keys().forEach(key -> pendingByKey.put(key, entry));
+	}
+
+	private void removePending(long id) {
+		final Entry entry = pending.remove(id);
+		if (entry != null) {
+			entry.keys().forEach(key -> pendingByKey.remove(key, entry));
+		}
+	}
+
+	private void addDelivered(Entry entry) {
+		entry.keys().forEach(key -> {
+			deliveredByKey.remove(key);
+			deliveredByKey.put(key, entry);
+		});
+	}
+
+	private void removeExpiredDeliveries() {
+		final long expiredBefore = System.currentTimeMillis() - deduplicationWindowMillis;
+		final Iterator<Entry> iterator = deliveredByKey.values().iterator();
+		while (iterator.hasNext() && iterator.next().completedAtMillis < expiredBefore) {
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Reads the records of the log up to the first incomplete one, which was
+	 * being written when the application stopped.
+	 */
+	private void recover() throws IOException {
+		if (!Files.exists(logFile)) {
+			return;
+		}
+
+		final long fileSize = Files.size(logFile);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)))) {
+			while (true) {
+				final byte[] record;
+				try {
+					final int length = in.readInt();
+					final long checksum = in.readInt() & 0xFFFFFFFFL;
+					if (length < 0 || length > fileSize) {
+						log.warn("Mail outbox {} ends with a corrupt record that is ignored", logFile);
+						return;
+					}
+
+					record = new byte[length];
+					in.readFully(record);
+
+					if (crc(record) != checksum) {
+						log.warn("Mail outbox {} ends with a corrupt record that is ignored", logFile);
+						return;
+					}
+				} catch (EOFException e) {
+					return;
+				}
+
+				apply(record);
+			}
+		}
+	}
+
+	private void apply(byte[] record) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		final byte recordType = in.readByte();
+		final long id = in.readLong();
+		final int numberOfDeliveries = in.readInt();
+		final List<MailDeliveredEvent> deliveries = new ArrayList<>(numberOfDeliveries);
+		for (int i = 0; i < numberOfDeliveries; i++) {
+			deliveries.add(new MailDeliveredEvent(in.readUTF(), in.readUTF()));
+		}
+
+		nextId = Math.max(nextId, id + 1);
+
+		if (recordType == RECORD_QUEUED) {
+			final byte[] mime = new byte[in.readInt()];
+			in.readFully(mime);
+			addPending(new Entry(id, deliveries, mime));
+			return;
+		}
+
+		removePending(id);
+
+		if (recordType == RECORD_DELIVERED) {
+			final Entry entry = new Entry(id, deliveries, null);
+			entry.completedAtMillis = in.readLong();
+			addDelivered(entry);
+		}
+	}
+
+	/**
+	 * Replaces the log with one that contains only the emails that are not
+	 * sent yet and the recently sent ones.
+	 */
+	private void compact() throws IOException {
+		removeExpiredDeliveries();
+
+		final Path compactedFile = logFile.resolveSibling(LOG_FILE_NAME + ".tmp");
+		try (FileChannel compacted = FileChannel.open(compactedFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+			for (Entry entry : pending.values()) {
+				write(compacted, queuedRecord(entry));
+			}
+			for (Entry entry : new LinkedHashSet<>(deliveredByKey.values())) {
+				write(compacted, completedRecord(entry, RECORD_DELIVERED));
+			}
+			compacted.force(true);
+		}
+
+		if (logChannel != null) {
+			logChannel.close();
+		}
+		Files.move(compactedFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		logChannel = FileChannel.open(logFile, CREATE, WRITE, APPEND);
+		logBytes = logChannel.size();
+		compactAtBytes = Math.max(COMPACTION_THRESHOLD_BYTES, 2 * logBytes);
+	}
+
+	private void append(byte[] record) throws IOException {
+		logBytes += write(logChannel, record);
+		logChannel.force(false);
+	}
+
+	private static int write(FileChannel channel, byte[] record) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(8 + record.length);
+		buffer.putInt(record.length).putInt((int) crc(record)).put(record).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		return buffer.limit();
+	}
+
+	private static byte[] queuedRecord(Entry entry) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.mime.length + 64);
+		final DataOutputStream out = header(bytes, RECORD_QUEUED, entry);
+		out.writeInt(entry.mime.length);
+		out.write(entry.mime);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] completedRecord(Entry entry, byte recordType) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		final DataOutputStream out = header(bytes, recordType, entry);
+		if (recordType == RECORD_DELIVERED) {
+			out.writeLong(entry.completedAtMillis);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static DataOutputStream header(ByteArrayOutputStream bytes, byte recordType, Entry entry) throws IOException {
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(recordType);
+		out.writeLong(entry.id);
+		out.writeInt(entry.deliveries.size());
+		for (MailDeliveredEvent delivery : entry.deliveries) {
+			out.writeUTF(delivery.getBusinessPartner());
+			out.writeUTF(delivery.getAddressChecksum());
+		}
+		return out;
+	}
+
+	private static long crc(byte[] record) {
+		final CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+		return crc.getValue();
+	}
+
+	private static String key(String businessPartner, String addressChecksum) {
+		return businessPartner + '\n' + addressChecksum;
+	}
+
+	/**
+	 * An email in the outbox
+	 */
+	private static class Entry {
+
+		private final long id;
+		// published when the email was sent
+		private final List<MailDeliveredEvent> deliveries;
+
+		private volatile byte[] mime;
+		private volatile int attempts;
+		private volatile long completedAtMillis;
+
+		private Entry(long id, List<MailDeliveredEvent> deliveries, byte[] mime) {
+			this.id = id;
+			this.deliveries = deliveries;
+			this.mime = mime;
+		}
+
+		private List<String> keys() {
+			return deliveries.stream()
+					.map(delivery -> key(delivery.getBusinessPartner(), delivery.getAddressChecksum()))
+					.collect(Collectors.toList());
+		}
+
+		private String businessPartners() {
+			return deliveries.stream()
+					.map(MailDeliveredEvent::getBusinessPartner)
+					.collect(Collectors.joining(", "));
+		}
+
+	}
+
+}
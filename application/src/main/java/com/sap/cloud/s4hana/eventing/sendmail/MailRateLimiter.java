@@ -0,0 +1,200 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Limits the number of emails sent to the quotas of the email server with
+ * token buckets: one for all emails per minute, one for all emails per day and
+ * one per recipient domain per minute. A bucket holds as many tokens as its
+ * quota allows and is refilled evenly over its period, so that emails can be
+ * sent in bursts up to the quota and at the quota's rate afterwards.
+ * <p>
+ * An email may be sent when every bucket it is counted in has a token left,
+ * see {@link #reserve(String)}. Otherwise it should be deferred rather than
+ * sent and rejected by the email server.
+ * <p>
+ * A limit of {@code 0} disables the respective bucket. The following metrics
+ * are exposed:
+ * <ul>
+ * <li>{@value #METRIC_TOKENS} - tokens left in the buckets for all emails,
+ * tagged with {@code bucket=perMinute} or {@code bucket=perDay}</li>
+ * <li>{@value #METRIC_DEFERRED} - number of times an email had to be
+ * deferred</li>
+ * </ul>
+ */
+@Component
+public class MailRateLimiter {
+
+	/**
+	 * Default maximum number of emails per minute, {@code 0} for no limit
+	 */
+	public static final int DEFAULT_PER_MINUTE = 0;
+
+	/**
+	 * Default maximum number of emails per day, {@code 0} for no limit
+	 */
+	public static final int DEFAULT_PER_DAY = 0;
+
+	/**
+	 * Default maximum number of emails per recipient domain per minute,
+	 * {@code 0} for no limit
+	 */
+	public static final int DEFAULT_PER_DOMAIN_PER_MINUTE = 0;
+
+	/**
+	 * Maximum number of recipient domains whose buckets are kept, the least
+	 * recently used one is removed first
+	 */
+	public static final int MAX_DOMAINS = 10000;
+
+	public static final String METRIC_TOKENS = "mail.ratelimit.tokens";
+	public static final String METRIC_DEFERRED = "mail.ratelimit.deferred";
+
+	private final TokenBucket perMinute;
+	private final TokenBucket perDay;
+	private final int perDomainPerMinute;
+
+	// guarded by this
+	private final Map<String, TokenBucket> perDomain = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+			return size() > MAX_DOMAINS;
+		}
+
+	};
+
+	private final Counter deferredCounter;
+
+	@Autowired
+	public MailRateLimiter(MeterRegistry meterRegistry,
+			@Value("${mail.rateLimit.perMinute:" + DEFAULT_PER_MINUTE + "}") int perMinute,
+			@Value("${mail.rateLimit.perDay:" + DEFAULT_PER_DAY + "}") int perDay,
+			@Value("${mail.rateLimit.perDomainPerMinute:" + DEFAULT_PER_DOMAIN_PER_MINUTE + "}") int perDomainPerMinute) {
+
+		final long now = System.nanoTime();
+		this.perMinute = perMinute > 0 ? new TokenBucket(perMinute, TimeUnit.MINUTES.toNanos(1), now) : null;
+		this.perDay = perDay > 0 ? new TokenBucket(perDay, TimeUnit.DAYS.toNanos(1), now) : null;
+		this.perDomainPerMinute = perDomainPerMinute;
+
+		deferredCounter = meterRegistry.counter(METRIC_DEFERRED);
+		if (this.perMinute != null) {
+			meterRegistry.gauge(METRIC_TOKENS, Tags.of("bucket", "perMinute"), this, limiter -> limiter.tokens(limiter.perMinute));
+		}
+		if (this.perDay != null) {
+			meterRegistry.gauge(METRIC_TOKENS, Tags.of("bucket", "perDay"), this, limiter -> limiter.tokens(limiter.perDay));
+		}
+	}
+
+	/**
+	 * Takes a token for an email to {@code recipientDomain} from every bucket
+	 * if each of them has one left.
+	 *
+	 * @return {@code 0} if the email may be sent now, otherwise the time in
+	 *         milliseconds after which it should be tried again. No token is
+	 *         taken in this case.
+	 */
+	public synchronized long reserve(String recipientDomain) {
+		final long now = System.nanoTime();
+		final TokenBucket domainBucket = domainBucket(recipientDomain, now);
+
+		final long waitNanos = Math.max(waitNanos(perMinute, now),
+				Math.max(waitNanos(perDay, now), waitNanos(domainBucket, now)));
+		if (waitNanos > 0) {
+			deferredCounter.increment();
+			return TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+		}
+
+		take(perMinute);
+		take(perDay);
+		take(domainBucket);
+		return 0;
+	}
+
+	/**
+	 * Empties the buckets for all emails and for {@code recipientDomain} when
+	 * the email server reported that a quota was exceeded anyway, so that the
+	 * following emails are deferred until the buckets are refilled.
+	 */
+	public synchronized void onQuotaExceeded(String recipientDomain) {
+		final long now = System.nanoTime();
+		drain(perMinute, now);
+		drain(perDay, now);
+		drain(domainBucket(recipientDomain, now), now);
+	}
+
+	private TokenBucket domainBucket(String recipientDomain, long now) {
+		if (perDomainPerMinute <= 0) {
+			return null;
+		}
+
+		return perDomain.computeIfAbsent(recipientDomain,
+				domain -> new TokenBucket(perDomainPerMinute, TimeUnit.MINUTES.toNanos(1), now));
+	}
+
+	private synchronized double tokens(TokenBucket bucket) {
+		bucket.refill(System.nanoTime());
+		return bucket.tokens;
+	}
+
+	private static long waitNanos(TokenBucket bucket, long now) {
+		if (bucket == null) {
+			return 0;
+		}
+
+		bucket.refill(now);
+		return bucket.tokens >= 1 ? 0 : (long) Math.ceil((1 - bucket.tokens) * bucket.nanosPerToken);
+	}
+
+	private static void take(TokenBucket bucket) {
+		if (bucket != null) {
+			bucket.tokens -= 1;
+		}
+	}
+
+	private static void drain(TokenBucket bucket, long now) {
+		if (bucket != null) {
+			bucket.refill(now);
+			bucket.tokens = Math.min(bucket.tokens, 0);
+		}
+	}
+
+	/**
+	 * A bucket with up to {@code capacity} tokens that is refilled with
+	 * {@code capacity} tokens per {@code periodNanos}
+	 */
+	private static class TokenBucket {
+
+		private final int capacity;
+		private final double nanosPerToken;
+
+		private double tokens;
+		private long refilledAtNanos;
+
+		private TokenBucket(int capacity, long periodNanos, long now) {
+			this.capacity = capacity;
+			this.nanosPerToken = (double) periodNanos / capacity;
+			this.tokens = capacity;
+			this.refilledAtNanos = now;
+		}
+
+		private void refill(long now) {
+			tokens = Math.min(capacity, tokens + (now - refilledAtNanos) / nanosPerToken);
+			refilledAtNanos = now;
+		}
+
+	}
+
+}
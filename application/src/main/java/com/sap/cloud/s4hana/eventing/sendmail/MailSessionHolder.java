@@ -0,0 +1,115 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import javax.mail.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+import com.sap.cloud.s4hana.eventing.security.DestinationChangedEvent;
+import com.sap.cloud.s4hana.eventing.security.NoRequestContextDestinationAccessor;
+
+/**
+ * Holds the current mail {@link Session} of the default mail destination of
+ * {@link SessionConfig}.
+ * <p>
+ * The session is replaced when the destination changed, which is detected by
+ * {@link NoRequestContextDestinationAccessor} or requested with
+ * {@link #reload()}, so that rotated SMTP credentials are used without a
+ * restart. Emails that are sent while the session is replaced use the
+ * previous session; its connections are closed by
+ * {@link SmtpTransportPool#retire(Session)} afterwards.
+ */
+@Component
+public class MailSessionHolder {
+
+	private static final Logger log = LoggerFactory.getLogger(MailSessionHolder.class);
+
+	private final SessionConfig sessionConfig;
+	private final NoRequestContextDestinationAccessor noRequestContextDestinationAccessor;
+	private final SmtpTransportPool transportPool;
+
+	private volatile Session session;
+
+	/**
+	 * @param session
+	 *            the session created from the default mail destination when
+	 *            the application started
+	 */
+	@Autowired
+	public MailSessionHolder(Session session, SessionConfig sessionConfig,
+			NoRequestContextDestinationAccessor noRequestContextDestinationAccessor,
+			SmtpTransportPool transportPool) {
+
+		this.session = session;
+		this.sessionConfig = sessionConfig;
+		this.noRequestContextDestinationAccessor = noRequestContextDestinationAccessor;
+		this.transportPool = transportPool;
+	}
+
+	private MailSessionHolder(Session session) {
+		this(session, null, null, null);
+	}
+
+	/**
+	 * @return holder of a session that is never replaced, e.g. for tests
+	 */
+	public static MailSessionHolder of(Session session) {
+		return new MailSessionHolder(session);
+	}
+
+	/**
+	 * @return the current session, which must not be kept by the caller
+	 */
+	public Session getSession() {
+		return session;
+	}
+
+	/**
+	 * Reads the mail destination again and replaces the session if the
+	 * destination changed.
+	 *
+	 * @throws SAPMailingException
+	 *             when the destination cannot be read or is not of type MAIL
+	 */
+	public void reload() throws SAPMailingException {
+		final String destinationName = sessionConfig.getDestinationName();
+		noRequestContextDestinationAccessor.refresh(destinationName);
+		replace(sessionConfig.getSession(destinationName));
+	}
+
+	/**
+	 * Replaces the session when the mail destination changed. If the new
+	 * destination is invalid, the current session is kept.
+	 */
+	@EventListener
+	public void onDestinationChanged(DestinationChangedEvent event) {
+		if (!sessionConfig.getDestinationName().equals(event.getDestinationName())) {
+			return;
+		}
+
+		try {
+			// not getDefaultSession(), which returns the session bean created at startup
+			replace(sessionConfig.getSession(event.getDestinationName()));
+		} catch (RuntimeException e) {
+			log.warn("Mail session of destination {} was not replaced, the current session is still used",
+					event.getDestinationName(), e);
+		}
+	}
+
+	private synchronized void replace(final Session newSession) {
+		final Session previous = session;
+		// all properties of the destination, including the credentials, are session properties
+		if (previous.getProperties().equals(newSession.getProperties())) {
+			return;
+		}
+
+		session = newSession;
+		transportPool.retire(previous);
+		log.info("Mail session of destination {} was replaced", sessionConfig.getDestinationName());
+	}
+
+}
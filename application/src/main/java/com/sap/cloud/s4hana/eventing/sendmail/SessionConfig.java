@@ -59,6 +59,13 @@ public class SessionConfig {
 		this.noRequestContextDestinationAccessor = noRequestContextDestinationAccessor;
 	}
 
+	/**
+	 * @return name of the mail destination of {@link #getDefaultSession()}
+	 */
+	public String getDestinationName() {
+		return destinationName;
+	}
+
 	/**
 	 * @return {@link Session} constructed from destination with default name
 	 *         {@link MAIL_DESTINATION_NAME}
@@ -67,6 +74,8 @@ public class SessionConfig {
 	 * @see Session
 	 * @see SessionConfig#getMailDestination(String)
 	 * @see SessionConfig#DEFAULT_MAIL_DESTINATION_NAME
+	 * @see MailSessionHolder MailSessionHolder, which replaces this session
+	 *      when the destination changed
 	 */
 	@Bean
 	public Session getDefaultSession() throws SAPMailingException {
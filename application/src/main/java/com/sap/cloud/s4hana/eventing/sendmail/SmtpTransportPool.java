@@ -0,0 +1,331 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps connected {@link Transport}s of a mail {@link Session} open, so that
+ * subsequent emails do not need to connect and authenticate to the email
+ * server again.
+ * <p>
+ * A transport is borrowed with {@link #borrow(Session)} and must be returned
+ * with {@link #release(PooledTransport)} if it can be used for further emails
+ * or with {@link #invalidate(PooledTransport)} if sending failed.
+ * <p>
+ * Idle transports are closed when they were not used for
+ * {@code maxIdleMillis}, when more than {@code maxIdle} transports of a session
+ * are idle or when a transport sent {@code maxMessagesPerConnection} emails.
+ * Expired idle transports are closed by a background thread that runs every
+ * {@code maxIdleMillis / 2}, so that the connections of a burst of emails do
+ * not stay open until the next email is sent.
+ * A transport that was idle for more than {@code validateAfterIdleMillis} is
+ * checked with {@link Transport#isConnected()} before it is borrowed, which
+ * sends {@code NOOP} to an SMTP server.
+ * <p>
+ * If {@code maxIdle} is {@code 0}, every borrowed transport is connected and
+ * closed when it is returned.
+ * <p>
+ * When a session is replaced, e.g. by {@link MailSessionHolder} after the
+ * credentials were rotated, its transports are closed with
+ * {@link #retire(Session)}. Transports of a retired session are never pooled
+ * again, even if the session is still used by an email that was created
+ * before it was replaced. Retired sessions are only weakly referenced, so
+ * that they and their credentials are garbage collected once no email and no
+ * borrowed transport uses them anymore.
+ */
+@Component
+public class SmtpTransportPool {
+
+	private static final Logger log = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+	/**
+	 * Default maximum number of idle transports per session
+	 */
+	public static final int DEFAULT_MAX_IDLE = 4;
+
+	/**
+	 * Default time in milliseconds after which an idle transport is closed
+	 */
+	public static final long DEFAULT_MAX_IDLE_MILLIS = 60000;
+
+	/**
+	 * Default time in milliseconds after which an idle transport is checked
+	 * before it is borrowed
+	 */
+	public static final long DEFAULT_VALIDATE_AFTER_IDLE_MILLIS = 5000;
+
+	/**
+	 * Default maximum number of emails sent over one connection
+	 */
+	public static final int DEFAULT_MAX_MESSAGES_PER_CONNECTION = 100;
+
+	/**
+	 * Pool that connects a new transport for every email
+	 */
+	public static final SmtpTransportPool NO_POOLING = new SmtpTransportPool(0, 0, 0, 0);
+
+	private final int maxIdle;
+	private final long maxIdleMillis;
+	private final long validateAfterIdleMillis;
+	private final int maxMessagesPerConnection;
+
+	private final Map<Session, BlockingDeque<PooledTransport>> idleTransports = new ConcurrentHashMap<>();
+
+	private final ScheduledThreadPoolExecutor evictor;
+
+	// guarded by this, so that a transport is not pooled after its session was retired
+	private final Set<Session> retiredSessions = Collections.newSetFromMap(new WeakHashMap<>());
+
+	/**
+	 * @param maxIdle
+	 *            maximum number of idle transports per session. If {@code 0},
+	 *            transports are not pooled.
+	 * @param maxIdleMillis
+	 *            time in milliseconds after which an idle transport is closed
+	 * @param validateAfterIdleMillis
+	 *            time in milliseconds after which an idle transport is checked
+	 *            before it is borrowed
+	 * @param maxMessagesPerConnection
+	 *            maximum number of emails sent over one connection. If
+	 *            {@code 0}, the number is not limited.
+	 */
+	@Autowired
+	public SmtpTransportPool(@Value("${mail.pool.maxIdle:" + DEFAULT_MAX_IDLE + "}") int maxIdle,
+			@Value("${mail.pool.maxIdleMillis:" + DEFAULT_MAX_IDLE_MILLIS + "}") long maxIdleMillis,
+			@Value("${mail.pool.validateAfterIdleMillis:" + DEFAULT_VALIDATE_AFTER_IDLE_MILLIS + "}") long validateAfterIdleMillis,
+			@Value("${mail.pool.maxMessagesPerConnection:" + DEFAULT_MAX_MESSAGES_PER_CONNECTION + "}") int maxMessagesPerConnection) {
+
+		this.maxIdle = maxIdle;
+		this.maxIdleMillis = maxIdleMillis;
+		this.validateAfterIdleMillis = validateAfterIdleMillis;
+		this.maxMessagesPerConnection = maxMessagesPerConnection;
+
+		if (maxIdle > 0 && maxIdleMillis > 0) {
+			final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("smtp-pool-evictor-");
+			threadFactory.setDaemon(true);
+			evictor = new ScheduledThreadPoolExecutor(1, threadFactory);
+			final long evictionIntervalMillis = Math.max(1, maxIdleMillis / 2);
+			evictor.scheduleWithFixedDelay(this::evictExpired, evictionIntervalMillis, evictionIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		} else {
+			evictor = null;
+		}
+	}
+
+	/**
+	 * @return the most recently used idle transport of {@code session} that is
+	 *         still connected, or a newly connected one
+	 * @throws MessagingException
+	 *             if a new transport cannot be connected
+	 */
+	public PooledTransport borrow(final Session session) throws MessagingException {
+		PooledTransport transport;
+		while ((transport = pollIdle(session)) != null) {
+			final long idleMillis = System.currentTimeMillis() - transport.lastUsedMillis;
+
+			if (idleMillis > maxIdleMillis) {
+				invalidate(transport);
+			} else if (idleMillis > validateAfterIdleMillis && !transport.transport.isConnected()) {
+				log.debug("Idle connection to the email server was closed by the server");
+				invalidate(transport);
+			} else {
+				return transport;
+			}
+		}
+
+		return connect(session);
+	}
+
+	/**
+	 * @return a newly connected transport of {@code session}
+	 * @throws MessagingException
+	 *             if the transport cannot be connected
+	 */
+	public PooledTransport connect(final Session session) throws MessagingException {
+		final Transport transport = session.getTransport();
+		transport.connect();
+		return new PooledTransport(session, transport);
+	}
+
+	/**
+	 * Returns a transport that can be used for further emails to the pool.
+	 */
+	public void release(final PooledTransport transport) {
+		transport.lastUsedMillis = System.currentTimeMillis();
+
+		final boolean reusable = maxMessagesPerConnection <= 0 || transport.messagesSent < maxMessagesPerConnection;
+		final PooledTransport closed = giveBack(transport, reusable);
+		if (closed != null) {
+			close(closed);
+		}
+	}
+
+	/**
+	 * Closes the idle transports of a session that is not used anymore.
+	 * Transports of the session that are borrowed or connected later are
+	 * closed when they are returned.
+	 */
+	public void retire(final Session session) {
+		final BlockingDeque<PooledTransport> idle;
+		synchronized (this) {
+			retiredSessions.add(session);
+			idle = idleTransports.remove(session);
+		}
+
+		if (idle != null) {
+			final List<PooledTransport> transports = new ArrayList<>();
+			idle.drainTo(transports);
+			transports.forEach(this::close);
+		}
+	}
+
+	/**
+	 * Closes a transport that failed.
+	 */
+	public void invalidate(final PooledTransport transport) {
+		close(transport);
+	}
+
+	/**
+	 * Closes all idle transports.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (evictor != null) {
+			evictor.shutdownNow();
+		}
+
+		final List<PooledTransport> transports = new ArrayList<>();
+		idleTransports.values().forEach(idle -> idle.drainTo(transports));
+		transports.forEach(this::close);
+	}
+
+	/**
+	 * @return {@code true} if {@code session} was retired
+	 */
+	@VisibleForTesting
+	synchronized boolean isRetired(final Session session) {
+		return retiredSessions.contains(session);
+	}
+
+	/**
+	 * Closes the idle transports that were not used for {@code maxIdleMillis}.
+	 */
+	@VisibleForTesting
+	void evictExpired() {
+		final List<PooledTransport> expired = new ArrayList<>();
+		final long now = System.currentTimeMillis();
+
+		synchronized (this) {
+			for (BlockingDeque<PooledTransport> idle : idleTransports.values()) {
+				// the least recently used transports are at the end
+				PooledTransport eldest;
+				while ((eldest = idle.peekLast()) != null && now - eldest.lastUsedMillis > maxIdleMillis) {
+					expired.add(idle.pollLast());
+				}
+			}
+		}
+
+		if (!expired.isEmpty()) {
+			log.debug("{} idle connection(s) to the email server are closed", expired.size());
+			expired.forEach(this::close);
+		}
+	}
+
+	private synchronized PooledTransport pollIdle(final Session session) {
+		final BlockingDeque<PooledTransport> idle = retiredSessions.contains(session) ? null
+				: idleTransports.get(session);
+		return idle == null ? null : idle.pollFirst();
+	}
+
+	/**
+	 * Pools {@code transport} unless its session was retired.
+	 *
+	 * @return the transport to be closed, which is {@code transport} itself or
+	 *         the least recently used idle transport of its session, or
+	 *         {@code null}
+	 */
+	private synchronized PooledTransport giveBack(final PooledTransport transport, final boolean reusable) {
+		final Session session = transport.session;
+		if (!reusable || retiredSessions.contains(session)) {
+			return transport;
+		}
+
+		final BlockingDeque<PooledTransport> idle = idleTransports.computeIfAbsent(session,
+				key -> new LinkedBlockingDeque<>());
+		if (!idle.offerFirst(transport) || idle.size() > maxIdle) {
+			// close the least recently used transport
+			return idle.pollLast();
+		}
+		return null;
+	}
+
+	private void close(final PooledTransport transport) {
+		try {
+			transport.transport.close();
+		} catch (MessagingException e) {
+			log.debug("Exception when closing the connection to the email server", e);
+		}
+	}
+
+	/**
+	 * A connected {@link Transport} borrowed from {@link SmtpTransportPool}.
+	 */
+	public static class PooledTransport {
+
+		private final Session session;
+		private final Transport transport;
+
+		private int messagesSent;
+		private long lastUsedMillis;
+
+		private PooledTransport(Session session, Transport transport) {
+			this.session = session;
+			this.transport = transport;
+		}
+
+		/**
+		 * @see Transport#sendMessage(Message, Address[])
+		 */
+		public void sendMessage(final Message message, final Address[] recipients) throws MessagingException {
+			messagesSent++;
+			transport.sendMessage(message, recipients);
+		}
+
+		/**
+		 * @return {@code true} if the transport was used for another email
+		 *         before, so that a failure may be caused by a connection that
+		 *         was closed by the server in the meantime
+		 */
+		public boolean isReused() {
+			return messagesSent > 1;
+		}
+
+	}
+
+}
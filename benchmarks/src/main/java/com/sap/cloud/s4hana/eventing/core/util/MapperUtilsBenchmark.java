@@ -0,0 +1,78 @@
+package com.sap.cloud.s4hana.eventing.core.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
+import com.sap.cloud.s4hana.eventing.businesspartner.model.CustomBusinessPartner;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+
+/**
+ * Compares the shared {@link org.modelmapper.ModelMapper} instances of
+ * {@link MapperUtils} with a new mapper per call, which discovers the type
+ * map by reflection every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperUtilsBenchmark {
+
+	private BusinessPartner businessPartner;
+	private BusinessPartnerAddress address;
+
+	@Setup
+	public void setUp() {
+		address = BusinessPartnerAddress.builder()
+				.addressID("0123456789")
+				.businessPartner("1000090")
+				.streetName("Dietmar-Hopp-Allee")
+				.houseNumber("16")
+				.postalCode("69190")
+				.cityName("Walldorf")
+				.country("DE")
+				.language("DE")
+				.build();
+
+		businessPartner = BusinessPartner.builder()
+				.businessPartner("1000090")
+				.customer("1000090")
+				.businessPartnerFullName("A Company That Makes Everything Inc.")
+				.businessPartnerAddress(address)
+				.build();
+	}
+
+	@Benchmark
+	public CustomBusinessPartner businessPartnerWithSharedMapper() {
+		return CustomBusinessPartner.of(businessPartner);
+	}
+
+	@Benchmark
+	public CustomBusinessPartner businessPartnerWithNewMapper() {
+		return MapperUtils.getMapper().map(businessPartner, CustomBusinessPartner.class);
+	}
+
+	@Benchmark
+	public AddressDTO addressWithSharedMapper() {
+		return AddressDTO.of(address);
+	}
+
+	@Benchmark
+	public AddressDTO addressWithNewMapper() {
+		return MapperUtils.getMapper().map(address, AddressDTO.class);
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.sap.cloud.s4hana.eventing.events.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessEvent;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessPartnerEvent;
+
+/**
+ * Compares {@link BusinessPartnerEventDecoder} with the full polymorphic
+ * binding of {@link BusinessEventMessageConverter}'s {@link ObjectMapper},
+ * with and without the bean validation that follows it, on business partner
+ * events as they are sent by SAP S/4HANA Cloud.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BusinessPartnerEventDecoderBenchmark {
+
+	@Param({ BusinessPartnerEvent.JSON_TYPE_ID_CREATED, BusinessPartnerEvent.JSON_TYPE_ID_CHANGED })
+	public String eventType;
+
+	private ObjectMapper objectMapper;
+	private BusinessPartnerEventDecoder decoder;
+	private ValidatorFactory validatorFactory;
+	private Validator validator;
+	private byte[] json;
+
+	@Setup
+	public void setUp() {
+		objectMapper = new BusinessEventMessageConverter().getObjectMapper();
+		decoder = new BusinessPartnerEventDecoder(objectMapper.getFactory());
+		validatorFactory = Validation.buildDefaultValidatorFactory();
+		validator = validatorFactory.getValidator();
+
+		json = ("{\r\n" +
+				"  \"eventType\": \"" + eventType + "\",\r\n" +
+				"  \"cloudEventsVersion\": \"0.1\",\r\n" +
+				"  \"source\": \"https://my300000.s4hana.ondemand.com\",\r\n" +
+				"  \"eventID\": \"ABY+LHs5Hti56Xn6eGqGVw==\",\r\n" +
+				"  \"eventTime\": \"2018-11-13T13:55:44Z\",\r\n" +
+				"  \"schemaURL\": \"/sap/opu/odata/IWXBE/BROWSER_SRV/\",\r\n" +
+				"  \"contentType\": \"application/json\",\r\n" +
+				"  \"data\": {\r\n" +
+				"    \"KEY\": [\r\n" +
+				"      {\r\n" +
+				"        \"BUSINESSPARTNER\": \"9980021470\"\r\n" +
+				"      }\r\n" +
+				"    ]\r\n" +
+				"  }\r\n" +
+				"}").getBytes(StandardCharsets.UTF_8);
+	}
+
+	@TearDown
+	public void tearDown() {
+		validatorFactory.close();
+	}
+
+	@Benchmark
+	public BusinessPartnerEvent decodeStreaming() {
+		return decoder.decode(json);
+	}
+
+	@Benchmark
+	public BusinessEvent<?> bindWithObjectMapper() throws IOException {
+		return objectMapper.readValue(json, BusinessEvent.class);
+	}
+
+	@Benchmark
+	public Set<ConstraintViolation<BusinessEvent<?>>> bindAndValidate() throws IOException {
+		final BusinessEvent<?> event = objectMapper.readValue(json, BusinessEvent.class);
+		return validator.validate(event);
+	}
+
+}
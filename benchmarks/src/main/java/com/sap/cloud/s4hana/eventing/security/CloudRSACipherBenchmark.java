@@ -0,0 +1,122 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import java.lang.reflect.Proxy;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+
+/**
+ * Measures the throughput and the latency distribution (including p99) of
+ * {@link CloudRSACipher} with the key sizes in {@code docu/crypt}, while
+ * several threads use the same cipher, e.g. for concurrent requests of the UI.
+ * The {@code *WithNewCipher} benchmarks create and initialize a
+ * {@link Cipher} for every call, as it was done before the ciphers were
+ * reused per thread.
+ * <p>
+ * The number of threads can be changed with {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class CloudRSACipherBenchmark {
+
+	@Param({ "1024", "2048", "4096" })
+	public int keySize;
+
+	private KeyPair keyPair;
+	private CloudRSACipher cipher;
+	private AddressConfirmationToken token;
+	private String encryptedToken;
+
+	@Setup
+	public void setUp() throws GeneralSecurityException {
+		final KeyPairGenerator generator = KeyPairGenerator.getInstance(CloudRSACipher.ALGORITHM);
+		generator.initialize(keySize);
+		keyPair = generator.generateKeyPair();
+
+		final GenericDestination destination = destination(keyPair);
+		cipher = new CloudRSACipher(new NoRequestContextDestinationAccessor() {
+			@Override
+			public GenericDestination getGenericDestination(String destinationName) {
+				return destination;
+			}
+		}, null, CloudRSACipher.DEFAULT_ACCEPT_SERIALIZED_TOKENS, CloudRSACipher.DEFAULT_PREVIOUS_KEY_VALID_MILLIS);
+
+		token = AddressConfirmationToken.of(BusinessPartnerAddress.builder()
+				.addressID("0123456789")
+				.businessPartner("1000090")
+				.streetName("Dietmar-Hopp-Allee")
+				.houseNumber("16")
+				.postalCode("69190")
+				.cityName("Walldorf")
+				.country("DE")
+				.build(), AddressConfirmationService.DEFAULT_NUMBER_OF_DAYS_VALID);
+		encryptedToken = cipher.encrypt(token);
+	}
+
+	@Benchmark
+	public String encrypt() {
+		return cipher.encrypt(token);
+	}
+
+	@Benchmark
+	public AddressConfirmationToken decrypt() {
+		return cipher.decrypt(encryptedToken);
+	}
+
+	@Benchmark
+	public byte[] encryptWithNewCipher() throws GeneralSecurityException {
+		final Cipher newCipher = Cipher.getInstance(CloudRSACipher.ALGORITHM);
+		newCipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+		return newCipher.doFinal(AddressConfirmationTokenCodec.encode(token));
+	}
+
+	@Benchmark
+	public byte[] decryptWithNewCipher() throws GeneralSecurityException {
+		final Cipher newCipher = Cipher.getInstance(CloudRSACipher.ALGORITHM);
+		newCipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+		return newCipher.doFinal(Base64.getUrlDecoder().decode(encryptedToken));
+	}
+
+	/**
+	 * @return a destination that stores {@code keyPair} like the one in
+	 *         {@code docu/crypt}
+	 */
+	private static GenericDestination destination(KeyPair keyPair) {
+		final Map<String, String> properties = new HashMap<>();
+		properties.put(CloudRSACipher.PRIVATE_KEY_PROPERTY, Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
+		properties.put(CloudRSACipher.PUBLIC_KEY_PROPERTY, Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+
+		return (GenericDestination) Proxy.newProxyInstance(GenericDestination.class.getClassLoader(),
+				new Class<?>[] { GenericDestination.class },
+				(proxy, method, args) -> "getPropertiesByName".equals(method.getName()) ? properties : null);
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Minimal SMTP server on the loopback interface that accepts every email and
+ * discards it, so that sending emails can be measured without a real email
+ * server.
+ * <p>
+ * The greeting of every new connection is delayed by {@code connectMillis}
+ * to stand in for the TCP and TLS handshakes and the authentication with a
+ * remote email server.
+ */
+public class LocalSmtpServer implements Closeable {
+
+	private final ServerSocket serverSocket;
+	private final long connectMillis;
+	private final ExecutorService connections;
+
+	private final AtomicLong connectionCount = new AtomicLong();
+	private final AtomicLong messageCount = new AtomicLong();
+
+	public LocalSmtpServer(long connectMillis) throws IOException {
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		this.connectMillis = connectMillis;
+
+		final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("local-smtp-");
+		threadFactory.setDaemon(true);
+		this.connections = Executors.newCachedThreadPool(threadFactory);
+		connections.execute(this::accept);
+	}
+
+	public String getHost() {
+		return serverSocket.getInetAddress().getHostAddress();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return number of connections accepted so far
+	 */
+	public long getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * @return number of emails received so far
+	 */
+	public long getMessageCount() {
+		return messageCount.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		connections.shutdownNow();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				connectionCount.incrementAndGet();
+				connections.execute(() -> handle(socket));
+			} catch (IOException e) {
+				// the server socket was closed
+			}
+		}
+	}
+
+	private void handle(Socket socket) {
+		try (Socket connection = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+				OutputStream out = connection.getOutputStream()) {
+
+			if (connectMillis > 0) {
+				Thread.sleep(connectMillis);
+			}
+			reply(out, "220 localhost ESMTP");
+
+			String line;
+			while ((line = in.readLine()) != null) {
+				final String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase(Locale.ROOT);
+				switch (command) {
+				case "DATA":
+					reply(out, "354 End data with <CR><LF>.<CR><LF>");
+					while ((line = in.readLine()) != null && !line.equals(".")) {
+						// the email is discarded
+					}
+					messageCount.incrementAndGet();
+					reply(out, "250 OK");
+					break;
+				case "QUIT":
+					reply(out, "221 Bye");
+					return;
+				default:
+					// EHLO, HELO, MAIL, RCPT, RSET and NOOP
+					reply(out, "250 OK");
+				}
+			}
+		} catch (IOException e) {
+			// the client closed the connection
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void reply(OutputStream out, String reply) throws IOException {
+		out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+
+/**
+ * Measures the time to render an {@link AddressChangeNotification} with the
+ * templates pinned by {@link FreemarkerConfig} and the render buffers of
+ * {@link AddressChangeNotificationService}, compared with a Freemarker
+ * configuration with default cache and update delay settings that renders
+ * into a new {@link StringWriter} for every email.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotificationTemplateBenchmark {
+
+	private AddressChangeNotificationService service;
+	private Configuration defaultConfiguration;
+	private AddressChangeNotification notification;
+
+	@Setup
+	public void setUp() throws SAPMailingException {
+		service = new AddressChangeNotificationService();
+		final Field templateConfiguration = ReflectionUtils.findField(AddressChangeNotificationService.class, "templateConfiguration");
+		ReflectionUtils.makeAccessible(templateConfiguration);
+		ReflectionUtils.setField(templateConfiguration, service, new FreemarkerConfig().getConfiguration());
+
+		defaultConfiguration = new Configuration(Configuration.VERSION_2_3_27);
+		defaultConfiguration.setClassForTemplateLoading(FreemarkerConfig.class, FreemarkerConfig.PATH_TO_TEMPLATES_FOLDER);
+		defaultConfiguration.setDefaultEncoding("UTF-8");
+
+		final BusinessPartnerAddress address = BusinessPartnerAddress.builder()
+				.addressID("0123456789")
+				.businessPartner("1000090")
+				.person("Mustermann")
+				.streetName("Dietmar-Hopp-Allee")
+				.houseNumber("16")
+				.houseNumberSupplementText("a")
+				.cityCode("08226")
+				.cityName("Walldorf")
+				.county("Rhein-Neckar-Kreis")
+				.postalCode("69190")
+				.country("DE")
+				.build();
+
+		final BusinessPartner contact = BusinessPartner.builder()
+				.businessPartner("1000091")
+				.academicTitle("Dr.")
+				.firstName("Erika")
+				.lastName("Mustermann")
+				.build();
+
+		notification = AddressChangeNotification.of(BusinessPartner.builder()
+				.businessPartner("1000090")
+				.customer("1000090")
+				.businessPartnerFullName("A Company That Makes Everything Inc.")
+				.build(),
+				AddressDTO.of(address),
+				contact,
+				"erika.mustermann@example.com",
+				"https://address-validation.example.com/#/confirm/0123456789abcdef");
+	}
+
+	@TearDown
+	public void tearDown() {
+		service.flushDigests();
+	}
+
+	@Benchmark
+	public String renderWithPinnedTemplates() throws SAPMailingException {
+		return service.processTemplate(notification);
+	}
+
+	@Benchmark
+	public String renderWithDefaultConfiguration() throws IOException, TemplateException {
+		final StringWriter resultWriter = new StringWriter();
+		defaultConfiguration.getTemplate(AddressChangeNotificationService.TEMPLATE_FILE).process(notification, resultWriter);
+		return resultWriter.toString();
+	}
+
+}
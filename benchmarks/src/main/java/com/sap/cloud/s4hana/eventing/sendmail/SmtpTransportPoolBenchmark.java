@@ -0,0 +1,90 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the emails sent per second to a {@link LocalSmtpServer} with
+ * {@link SmtpTransportPool} and without pooling, i.e. with a new connection
+ * per email.
+ * <p>
+ * {@code connectMillis} delays every new connection like the handshakes with
+ * a remote email server, {@code 0} measures only the SMTP conversation over
+ * the loopback interface.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(SmtpTransportPool.DEFAULT_MAX_IDLE)
+@Fork(1)
+public class SmtpTransportPoolBenchmark {
+
+	@Param({ "0", "20" })
+	public long connectMillis;
+
+	private LocalSmtpServer server;
+	private Session session;
+	private SmtpTransportPool pool;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new LocalSmtpServer(connectMillis);
+
+		final Properties properties = new Properties();
+		properties.setProperty("mail.transport.protocol", "smtp");
+		properties.setProperty("mail.smtp.host", server.getHost());
+		properties.setProperty("mail.smtp.port", Integer.toString(server.getPort()));
+		properties.setProperty(Email.DESTINATION_PROPERTY_FROM, "sender@example.com");
+		session = Session.getInstance(properties);
+
+		pool = new SmtpTransportPool(SmtpTransportPool.DEFAULT_MAX_IDLE, SmtpTransportPool.DEFAULT_MAX_IDLE_MILLIS,
+				SmtpTransportPool.DEFAULT_VALIDATE_AFTER_IDLE_MILLIS, SmtpTransportPool.DEFAULT_MAX_MESSAGES_PER_CONNECTION);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		pool.shutdown();
+		server.close();
+	}
+
+	@Benchmark
+	public void sendWithPool() {
+		email().send(pool);
+	}
+
+	@Benchmark
+	public void sendWithoutPooling() {
+		email().send(SmtpTransportPool.NO_POOLING);
+	}
+
+	/**
+	 * @return a new email for every call, since a message must not be sent by
+	 *         several threads at the same time
+	 */
+	private Email email() {
+		return Email.forSession(session)
+				.to("recipient@example.com")
+				.subject("Please confirm the address of your company")
+				.body("<html><body><p>Please confirm the address of your company.</p></body></html>");
+	}
+
+}
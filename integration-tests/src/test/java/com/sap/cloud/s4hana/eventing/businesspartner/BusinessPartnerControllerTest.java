@@ -1,5 +1,6 @@
 package com.sap.cloud.s4hana.eventing.businesspartner;
 
+import static com.sap.cloud.s4hana.eventing.testutil.MockMvcUtil.performAsync;
 import static org.hamcrest.Matchers.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -30,7 +31,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.sap.cloud.s4hana.eventing.businesspartner.controller.BusinessPartnerController;
 import com.sap.cloud.s4hana.eventing.security.AddressConfirmationToken;
-import com.sap.cloud.s4hana.eventing.security.RSACipher;
+import com.sap.cloud.s4hana.eventing.security.TokenCipher;
 import com.sap.cloud.s4hana.eventing.testutil.CloudFoundryEnvironmentMock;
 import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
@@ -53,7 +54,7 @@ public class BusinessPartnerControllerTest {
     private MockMvc mockMvc;
     
     @Autowired
-    RSACipher cipher;
+    TokenCipher cipher;
     
     private BusinessPartnerAddress address;
     private String encryptedValidToken;
@@ -74,7 +75,7 @@ public class BusinessPartnerControllerTest {
     
     @Test
     public void testGetBusinessPartnerAddress() throws Exception {
-        mockMvc.perform(get(ADDRESS_ENDPOINT)
+        performAsync(mockMvc, get(ADDRESS_ENDPOINT)
                 	.param("token", encryptedValidToken))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.businessPartner", is(address.getBusinessPartner())))
@@ -84,7 +85,7 @@ public class BusinessPartnerControllerTest {
     @Test
     @Ignore // this can only be tested against a real S/4HANA system, not against WireMock
     public void testUpdateBupdaAddress() throws Exception {        
-        MockHttpServletResponse response = mockMvc.perform(get(ADDRESS_ENDPOINT)
+        MockHttpServletResponse response = performAsync(mockMvc, get(ADDRESS_ENDPOINT)
                 	.param("token", encryptedValidToken))
                 .andReturn()
                 .getResponse();
@@ -93,14 +94,14 @@ public class BusinessPartnerControllerTest {
         String originalStreet = address.getStreetName();
         
         address.setStreetName("Some New Street");
-        mockMvc.perform(patch(ADDRESS_ENDPOINT)
+        performAsync(mockMvc, patch(ADDRESS_ENDPOINT)
 	                .param("token", encryptedValidToken)
 	                .content(toJson(address))
 	                .contentType(APPLICATION_JSON_UTF8))
                 .andExpect(status().isNoContent());
         
         address.setStreetName(originalStreet);
-        mockMvc.perform(patch(ADDRESS_ENDPOINT)
+        performAsync(mockMvc, patch(ADDRESS_ENDPOINT)
 	                .param("token", encryptedValidToken)
 	                .content(toJson(address))
 	                .contentType(APPLICATION_JSON_UTF8))
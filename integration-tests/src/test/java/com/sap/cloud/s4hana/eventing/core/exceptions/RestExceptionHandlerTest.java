@@ -1,5 +1,6 @@
 package com.sap.cloud.s4hana.eventing.core.exceptions;
 
+import static com.sap.cloud.s4hana.eventing.testutil.MockMvcUtil.performAsync;
 import static org.hamcrest.Matchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -24,7 +25,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.sap.cloud.s4hana.eventing.businesspartner.controller.BusinessPartnerController;
 import com.sap.cloud.s4hana.eventing.security.AddressConfirmationToken;
-import com.sap.cloud.s4hana.eventing.security.RSACipher;
+import com.sap.cloud.s4hana.eventing.security.TokenCipher;
 import com.sap.cloud.s4hana.eventing.testutil.CloudFoundryEnvironmentMock;
 import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
@@ -47,7 +48,7 @@ public class RestExceptionHandlerTest {
 	    private MockMvc mockMvc;
 	    
 	    @Autowired
-	    RSACipher cipher;
+	    TokenCipher cipher;
 	    
 	    private BusinessPartnerAddress address;
 	    private String encryptedValidToken;
@@ -80,7 +81,7 @@ public class RestExceptionHandlerTest {
 	    	wireMockRule.givenThat(WireMock.get(WireMock.anyUrl()).
 					willReturn(WireMock.aResponse().withFault(Fault.MALFORMED_RESPONSE_CHUNK)));	
 	    	
-	        mockMvc.perform(get(ADDRESS_ENDPOINT)
+	        performAsync(mockMvc, get(ADDRESS_ENDPOINT)
 	                	.param("token", encryptedValidToken))
 	                .andExpect(status().is(equalTo(HttpStatus.INTERNAL_SERVER_ERROR.value())))
 	                .andExpect(jsonPath("$.code", is(SAPODataException.class.getSimpleName())))
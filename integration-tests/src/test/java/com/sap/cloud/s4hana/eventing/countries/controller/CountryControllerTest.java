@@ -1,7 +1,10 @@
 package com.sap.cloud.s4hana.eventing.countries.controller;
 
+import static com.sap.cloud.s4hana.eventing.testutil.MockMvcUtil.performAsync;
 import static org.hamcrest.Matchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -13,6 +16,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -20,7 +24,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.sap.cloud.s4hana.eventing.countries.controller.CountryController;
 import com.sap.cloud.s4hana.eventing.security.AddressConfirmationToken;
-import com.sap.cloud.s4hana.eventing.security.RSACipher;
+import com.sap.cloud.s4hana.eventing.security.TokenCipher;
 import com.sap.cloud.s4hana.eventing.testutil.CloudFoundryEnvironmentMock;
 import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
@@ -41,7 +45,7 @@ public class CountryControllerTest {
     private MockMvc mockMvc;
     
     @Autowired
-    private RSACipher cipher;
+    private TokenCipher cipher;
     
     private BusinessPartnerAddress address;
     private String encryptedValidToken;
@@ -62,12 +66,59 @@ public class CountryControllerTest {
     
     @Test
     public void testGetCountries() throws Exception {
-        mockMvc.perform(get(CountryController.PATH)
+        performAsync(mockMvc, get(CountryController.PATH)
         			.param("token", encryptedValidToken))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$[?(@.CountryName == 'Germany')].Country", contains("DE")));
     }
     
+    @Test
+    public void testGetCountriesNotModified() throws Exception {
+        final String eTag = performAsync(mockMvc, get(CountryController.PATH)
+        			.param("token", encryptedValidToken))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("max-age")))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        
+        performAsync(mockMvc, get(CountryController.PATH)
+        			.param("token", encryptedValidToken)
+        			.header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().bytes(new byte[0]));
+    }
+    
+    @Test
+    public void testGetCountriesGzipped() throws Exception {
+        final String eTag = performAsync(mockMvc, get(CountryController.PATH)
+        			.param("token", encryptedValidToken))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        
+        final String gzippedETag = performAsync(mockMvc, get(CountryController.PATH)
+        			.param("token", encryptedValidToken)
+        			.header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT_ENCODING)))
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        
+        performAsync(mockMvc, get(CountryController.PATH)
+        			.param("token", encryptedValidToken)
+        			.header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+        			.header(HttpHeaders.IF_NONE_MATCH, gzippedETag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, gzippedETag));
+    }
+    
+    @Test
+    public void testGetCountriesNotModifiedWithInvalidToken() throws Exception {
+        mockMvc.perform(get(CountryController.PATH)
+        			.param("token", "Invalid Token")
+        			.header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().isUnauthorized());
+    }
+    
     @Test
     public void testGetCountriesWithInvalidToken() throws Exception {
 		testGetCountriesWithInvalidToken("Invalid Token");
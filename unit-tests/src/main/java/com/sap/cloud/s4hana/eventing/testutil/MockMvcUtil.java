@@ -0,0 +1,28 @@
+package com.sap.cloud.s4hana.eventing.testutil;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+public class MockMvcUtil {
+
+	/**
+	 * Performs a request to an asynchronous endpoint and dispatches its result
+	 *
+	 * @return result of the dispatched request
+	 */
+	public static ResultActions performAsync(MockMvc mockMvc, MockHttpServletRequestBuilder requestBuilder)
+			throws Exception {
+
+		final MvcResult result = mockMvc.perform(requestBuilder)
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		return mockMvc.perform(asyncDispatch(result));
+	}
+
+}
@@ -3,15 +3,23 @@ package com.sap.cloud.s4hana.eventing.businesspartner.service;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyList;
 
 import static org.mockito.Mockito.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
@@ -22,13 +30,17 @@ import static com.sap.cloud.s4hana.eventing.businesspartner.model.AddrConfState.
 import static com.sap.cloud.s4hana.eventing.businesspartner.model.AddrConfState.INITIAL;
 import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
 import com.sap.cloud.s4hana.eventing.businesspartner.model.CustomBusinessPartner;
+import com.sap.cloud.s4hana.eventing.businesspartner.model.ExpandedBusinessPartner;
 import com.sap.cloud.s4hana.eventing.businesspartner.service.CustomBusinessPartnerService;
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
 import com.sap.cloud.s4hana.eventing.security.AddressConfirmationToken;
+import com.sap.cloud.s4hana.eventing.security.AddressChecksum;
 import com.sap.cloud.s4hana.eventing.security.HashUtils;
-import com.sap.cloud.s4hana.eventing.security.RSACipher;
+import com.sap.cloud.s4hana.eventing.security.TokenCipher;
 import com.sap.cloud.s4hana.eventing.sendmail.AddressChangeNotification;
 import com.sap.cloud.s4hana.eventing.sendmail.AddressChangeNotificationService;
+import com.sap.cloud.s4hana.eventing.sendmail.MailDeliveredEvent;
 import com.sap.cloud.s4hana.eventing.testutil.CloudFoundryEnvironmentMock;
 import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BPContactToFuncAndDept;
@@ -37,14 +49,20 @@ import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.Busin
 /**
  * Different Cases that will be tested here:
  * <ul>
- * <li>Address was changed, State doesn’t matter and Email is sent</li>
+ * <li>Address was changed, State doesn’t matter and Email is queued</li>
  * <li>Address was changed and no Email address</li>
+ * <li>Address was changed and the Customer is another Business Partner</li>
  * <li>Address was not changed, but state is INITIAL</li>
  * <li>Address was not changed, but state is INITIAL and still no Email</li>
+ * <li>Address was not changed, but state is INITIAL and the checksum is a legacy one</li>
  * <li>Address was not changed and state is Confirmed or Open</li>
  * <li>Business Partner is not a customer</li>
  * <li>Business Partner is a person</li>
  * <li>Business Partner has no address</li>
+ * <li>Email was sent and the address was not changed in the meantime</li>
+ * <li>Email was sent but the address was changed in the meantime</li>
+ * <li>Addresses of several Business Partners are confirmed in a batch</li>
+ * <li>Business Partner in a batch could not be updated</li>
  * <ul>
  */
 public class AddressConfirmationServiceTest {
@@ -56,7 +74,7 @@ public class AddressConfirmationServiceTest {
     public static CloudFoundryEnvironmentMock environmentMock = new CloudFoundryEnvironmentMock();
     
     @Mock
-    private RSACipher cipherMock;
+    private TokenCipher cipherMock;
     
     @Mock
     private CustomBusinessPartnerService businessPartnerServiceMock;
@@ -76,6 +94,8 @@ public class AddressConfirmationServiceTest {
 	public void setUp() {
     	testee = new AddressConfirmationService(
         		businessPartnerServiceMock, 
+        		// updates are not batched
+        		new BusinessPartnerUpdateBatcher(businessPartnerServiceMock, 1, 0),
         		notificationServiceMock,
         		cipherMock,
                 "confirmation.link/%s",
@@ -83,20 +103,21 @@ public class AddressConfirmationServiceTest {
 	}
 
     /**
-     * Address was changed, State doesn’t matter and Email is sent
+     * Address was changed, State doesn’t matter and Email is queued
      */
     @Test
     public void testAddressChangeWithContactAndEmail() {
         // Given dummy entities ...
         final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
         final BPContactToFuncAndDept contact = EntitySupplier.getDefaultContact();
+        final List<BPContactToFuncAndDept> contacts = Collections.singletonList(contact);
         final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
         
         // ... and a business partner service's mock that returns dummy entities ...
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, contacts))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
         doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerByKey(contact.getBusinessPartnerPerson());
-        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(businessPartner);
-        doReturn(address).when(businessPartnerServiceMock).getAddress(businessPartner);
+        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(contacts);
         
         // ... and cipher's mock that always return the same string ...
         final String urlToken = "RSA-2048 encrypted, Base64 encoded and URL encoded string";
@@ -105,8 +126,8 @@ public class AddressConfirmationServiceTest {
         // When
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
-        // Then notification service is sent ...
-        verify(notificationServiceMock).sendMail(notificationCaptor.capture());
+        // Then notification is queued ...
+        verify(notificationServiceMock).queueMail(notificationCaptor.capture());
         
         final AddressChangeNotification notification = notificationCaptor.getValue();
         assertThat("notification's business partner", 
@@ -122,9 +143,48 @@ public class AddressConfirmationServiceTest {
                 notification.getConfirmationLink(), 
                 containsString(urlToken));
         
+        // ... after the new checksum was stored ...
+        final InOrder inOrder = inOrder(businessPartnerServiceMock, notificationServiceMock);
+        inOrder.verify(businessPartnerServiceMock).updateBusinessPartner(businessPartner);
+        inOrder.verify(notificationServiceMock).queueMail(any());
+        
+        // ... and Address Confirmation State stays Initial until the email was sent
         assertThat("Address Confirmation State after processing",
                 businessPartner.getAddressConfirmationState(), 
-                is(equalTo(OPEN)));
+                is(equalTo(INITIAL)));
+        assertThat("Address Checksum after processing", 
+                businessPartner.getAddressChecksum(),
+                is(AddressChecksum.of(address)));
+    }
+    
+    /**
+     * Address was changed and the Customer is another Business Partner
+     */
+    @Test
+    public void testAddressChangeOfAnotherCustomerUsesContactsOfTheCustomer() {
+        // Given a business partner whose customer number is not its key ...
+        final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
+        businessPartner.setCustomer(EntitySupplier.EXISTING_BUSINESS_PARTNER_KEY);
+        final BPContactToFuncAndDept contact = EntitySupplier.getDefaultContact();
+        final List<BPContactToFuncAndDept> customerContacts = Collections.singletonList(contact);
+        final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+        
+        // ... and a business partner service's mock that returns the contacts of the customer
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, Collections.emptyList()))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
+        doReturn(customerContacts).when(businessPartnerServiceMock).getContacts(EntitySupplier.EXISTING_BUSINESS_PARTNER_KEY);
+        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerByKey(contact.getBusinessPartnerPerson());
+        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(customerContacts);
+        doReturn("token").when(cipherMock).encrypt(any(AddressConfirmationToken.class));
+        
+        // When
+        testee.confirmAddress(businessPartner.getBusinessPartner());
+        
+        // Then the email is sent to the contact person of the customer
+        verify(notificationServiceMock).queueMail(notificationCaptor.capture());
+        assertThat("notification's email address", 
+                notificationCaptor.getValue().getEmailAddress(), 
+                is(contact.getEmailAddress()));
     }
     
     /**
@@ -135,26 +195,27 @@ public class AddressConfirmationServiceTest {
         // Given dummy entities ...
         final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
         final BPContactToFuncAndDept contact = EntitySupplier.getDefaultContact();
+        final List<BPContactToFuncAndDept> contacts = Collections.singletonList(contact);
         final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
         
         // ... and a business partner service's mock that returns dummy entities ...
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, contacts))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
         doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerByKey(contact.getBusinessPartnerPerson());
-        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(businessPartner);
-        doReturn(address).when(businessPartnerServiceMock).getAddress(businessPartner);
+        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(contacts);
         
         // ... and cipher's mock that always return the same string ...
         final String urlToken = "RSA-2048 encrypted, Base64 encoded and URL encoded string";
         doReturn(urlToken).when(cipherMock).encrypt(any(AddressConfirmationToken.class));
         
         // ... and email notification service that always throw an exception 
-        doThrow(new SAPMailingException("mock exception when sending a mail")).when(notificationServiceMock).sendMail(any());
+        doThrow(new SAPMailingException("mock exception when queuing a mail")).when(notificationServiceMock).queueMail(any());
         
         // When
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
-        // Then notification service is sent ...
-        verify(notificationServiceMock).sendMail(notificationCaptor.capture());
+        // Then notification is queued ...
+        verify(notificationServiceMock).queueMail(notificationCaptor.capture());
         
         assertThat("Address Confirmation State after processing should be INITIAL in case the email was not sent",
                 businessPartner.getAddressConfirmationState(), 
@@ -169,18 +230,19 @@ public class AddressConfirmationServiceTest {
         // Given dummy entities ...
         final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
         final BPContactToFuncAndDept contact = new BPContactToFuncAndDept(); // contains no email address
+        final List<BPContactToFuncAndDept> contacts = Collections.singletonList(contact);
         final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
         
         // ... and a business partner service's mock that returns dummy entities ...        
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
-        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(businessPartner);
-        doReturn(address).when(businessPartnerServiceMock).getAddress(businessPartner);
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, contacts))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
+        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(contacts);
         
         // When
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
         // Then notification service is never called ...
-        verify(notificationServiceMock, never()).sendMail(null);
+        verify(notificationServiceMock, never()).queueMail(any());
         
         assertThat("Address Confirmation State",
                 businessPartner.getAddressConfirmationState(), 
@@ -188,7 +250,7 @@ public class AddressConfirmationServiceTest {
         
         assertThat("Address Checksum after processing", 
                 businessPartner.getAddressChecksum(),
-                is(HashUtils.hash(AddressDTO.of(address).toString())));
+                is(AddressChecksum.of(address)));
     }
     
     /**
@@ -199,6 +261,7 @@ public class AddressConfirmationServiceTest {
         // Given dummy entities ...
         final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
         final BPContactToFuncAndDept contact = EntitySupplier.getDefaultContact();
+        final List<BPContactToFuncAndDept> contacts = Collections.singletonList(contact);
         final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
         
         // ... and a address Checksum on the Businesspartner, that is the same as the current address ...
@@ -208,10 +271,10 @@ public class AddressConfirmationServiceTest {
         businessPartner.setAddressConfirmationState(INITIAL);
         
         // ... and a business partner service's mock that returns dummy entities ...
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, contacts))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
         doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerByKey(contact.getBusinessPartnerPerson());
-        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(businessPartner);
-        doReturn(address).when(businessPartnerServiceMock).getAddress(businessPartner);
+        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(contacts);
         
         // ... and cipher's mock that always return the same string ...
         final String urlToken = "RSA-2048 encrypted, Base64 encoded and URL encoded string";
@@ -220,8 +283,8 @@ public class AddressConfirmationServiceTest {
         // When
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
-        // Then notification service is sent ...
-        verify(notificationServiceMock).sendMail(notificationCaptor.capture());
+        // Then notification is queued ...
+        verify(notificationServiceMock).queueMail(notificationCaptor.capture());
         
         final AddressChangeNotification notification = notificationCaptor.getValue();
         assertThat("notification's business partner", 
@@ -237,8 +300,55 @@ public class AddressConfirmationServiceTest {
                 notification.getConfirmationLink(), 
                 containsString(urlToken));
         
-        // ... and Address Confirmation State is Open
+        // ... and Address Confirmation State is still Initial until the email was sent
         assertThat("Address Confirmation State after processing",
+                businessPartner.getAddressConfirmationState(), 
+                is(equalTo(INITIAL)));
+    }
+    
+    /**
+     * Address was not changed, but state is INITIAL and the checksum is a legacy one
+     */
+    @Test
+    public void testNoAddressChangeWithLegacyChecksumAndInitialAddress() {
+        // Given dummy entities ...
+        final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
+        final BPContactToFuncAndDept contact = EntitySupplier.getDefaultContact();
+        final List<BPContactToFuncAndDept> contacts = Collections.singletonList(contact);
+        final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+        
+        // ... and a legacy address checksum on the business partner, that matches the current address ...
+        final String legacyChecksum = HashUtils.hash(AddressDTO.of(address).toString());
+        businessPartner.setAddressChecksum(legacyChecksum);
+        assertThat("legacy checksum matches", AddressChecksum.matches(legacyChecksum, address), is(true));
+        
+        // ... and Address Confirmation State is Initial
+        businessPartner.setAddressConfirmationState(INITIAL);
+        
+        // ... and a business partner service's mock that returns dummy entities ...
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, contacts))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
+        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerByKey(contact.getBusinessPartnerPerson());
+        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(contacts);
+        doReturn("RSA-2048 encrypted, Base64 encoded and URL encoded string")
+                .when(cipherMock).encrypt(any(AddressConfirmationToken.class));
+        
+        // When
+        testee.confirmAddress(businessPartner.getBusinessPartner());
+        
+        // Then the versioned checksum is stored before the email is queued ...
+        final InOrder inOrder = inOrder(businessPartnerServiceMock, notificationServiceMock);
+        inOrder.verify(businessPartnerServiceMock).updateBusinessPartner(businessPartner);
+        inOrder.verify(notificationServiceMock).queueMail(any());
+        
+        final String addressChecksum = AddressChecksum.of(address);
+        assertThat("Address Checksum after processing", businessPartner.getAddressChecksum(), is(addressChecksum));
+        
+        // ... so that the state is set to Open when the email was sent
+        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
+        testee.onMailDelivered(new MailDeliveredEvent(businessPartner.getBusinessPartner(), addressChecksum));
+        
+        assertThat("Address Confirmation State after the email was sent",
                 businessPartner.getAddressConfirmationState(), 
                 is(equalTo(OPEN)));
     }
@@ -251,12 +361,13 @@ public class AddressConfirmationServiceTest {
         // Given dummy entities ...
         final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
         final BPContactToFuncAndDept contact = EntitySupplier.getContactWithNoEmail();
+        final List<BPContactToFuncAndDept> contacts = Collections.singletonList(contact);
         final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
         
         // ... and a business partner service's mock that returns dummy entities ...
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
-        doReturn(address).when(businessPartnerServiceMock).getAddress(businessPartner);
-        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(businessPartner);
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, contacts))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
+        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(contacts);
         
         //... and a address Checksum on the Businesspartner, that is the same as the current address
         businessPartner.setAddressChecksum(HashUtils.hash(AddressDTO.of(address).toString()));
@@ -268,7 +379,7 @@ public class AddressConfirmationServiceTest {
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
         // Then notification service is never called ...
-        verify(notificationServiceMock, never()).sendMail(null);
+        verify(notificationServiceMock, never()).queueMail(any());
 
         //... and Address Confirmation State is still Initial
         assertThat("Address Confirmation State after processing",
@@ -287,8 +398,8 @@ public class AddressConfirmationServiceTest {
         final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
         
         // ... and a business partner service's mock that returns dummy entities ...
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
-        doReturn(address).when(businessPartnerServiceMock).getAddress(businessPartner);
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, Collections.emptyList()))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
 
         //... and a address Checksum on the Businesspartner, that is the same as the current address ...
         businessPartner.setAddressChecksum(HashUtils.hash((AddressDTO.of(address).toString())));
@@ -300,7 +411,7 @@ public class AddressConfirmationServiceTest {
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
         // Then notification service is never called ...
-        verify(notificationServiceMock, never()).sendMail(null);
+        verify(notificationServiceMock, never()).queueMail(any());
 
         //... and Address Confirmation State is still Confirmed
         assertThat("Address Confirmation State after processing",
@@ -317,19 +428,20 @@ public class AddressConfirmationServiceTest {
         final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getNoCustomerBusinessPartner());
         
         // ... and a business partner service's mock that returns dummy entities ...        
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
+        doReturn(ExpandedBusinessPartner.of(businessPartner, null, Collections.emptyList()))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
         
         // When
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
         // Then notification service is never called ...
-        verify(notificationServiceMock, never()).sendMail(null);
+        verify(notificationServiceMock, never()).queueMail(any());
         
         //... and cipherService is never called
         verify(cipherMock, never()).encrypt(null);
         
-        //... and address was never fetched
-        verify(businessPartnerServiceMock,never()).getAddress(null);
+        //... and the contact person was never determined
+        verify(businessPartnerServiceMock, never()).determineResponsibleContact(anyList());
     }
     
     /**
@@ -341,19 +453,20 @@ public class AddressConfirmationServiceTest {
         final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getCustomerAndPersonBusinessPartner());
         
         // ... and a business partner service's mock that returns dummy entities ...        
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
+        doReturn(ExpandedBusinessPartner.of(businessPartner, null, Collections.emptyList()))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
         
         // When
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
         // Then notification service is never called ...
-        verify(notificationServiceMock, never()).sendMail(null);
+        verify(notificationServiceMock, never()).queueMail(any());
         
         // ... and cipherService is never called
         verify(cipherMock, never()).encrypt(null);
         
-        // ... and address was never fetched
-        verify(businessPartnerServiceMock,never()).getAddress(null);
+        // ... and the contact person was never determined
+        verify(businessPartnerServiceMock, never()).determineResponsibleContact(anyList());
     }
     
     /**
@@ -366,14 +479,14 @@ public class AddressConfirmationServiceTest {
         final BusinessPartnerAddress address = null;
         
         // ... and a business partner service's mock that returns dummy entities        
-        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
-        doReturn(address).when(businessPartnerServiceMock).getAddress(businessPartner);
+        doReturn(ExpandedBusinessPartner.of(businessPartner, address, Collections.emptyList()))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
         
         // When
         testee.confirmAddress(businessPartner.getBusinessPartner());
         
         // Then notification service is never called ...
-        verify(notificationServiceMock, never()).sendMail(null);
+        verify(notificationServiceMock, never()).queueMail(any());
         
         // ... and Address Checksum is empty ...
         assertThat("Address Checksum after processing", 
@@ -386,4 +499,121 @@ public class AddressConfirmationServiceTest {
                 is(INITIAL));
     }
     
+    /**
+     * Email was sent and the address was not changed in the meantime
+     */
+    @Test
+    public void testMailDeliveredSetsStateToOpen() {
+        // Given a business partner whose email was queued ...
+        final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
+        final String addressChecksum = AddressChecksum.of(EntitySupplier.getDefaultAddress());
+        businessPartner.setAddressChecksum(addressChecksum);
+        businessPartner.setAddressConfirmationState(INITIAL);
+        
+        // ... and a business partner service's mock that returns it
+        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
+        
+        // When the email about the same address was sent
+        testee.onMailDelivered(new MailDeliveredEvent(businessPartner.getBusinessPartner(), addressChecksum));
+        
+        // Then Address Confirmation State is Open ...
+        assertThat("Address Confirmation State after processing",
+                businessPartner.getAddressConfirmationState(), 
+                is(equalTo(OPEN)));
+        
+        // ... and the business partner is updated
+        verify(businessPartnerServiceMock).updateBusinessPartner(businessPartner);
+    }
+    
+    /**
+     * Email was sent but the address was changed in the meantime
+     */
+    @Test
+    public void testMailDeliveredForChangedAddressKeepsState() {
+        // Given a business partner whose address was changed after its email was queued ...
+        final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
+        businessPartner.setAddressChecksum(AddressChecksum.of(EntitySupplier.getDefaultAddress()));
+        businessPartner.setAddressConfirmationState(INITIAL);
+        
+        // ... and a business partner service's mock that returns it
+        doReturn(businessPartner).when(businessPartnerServiceMock).getBusinessPartnerRootByKey(businessPartner.getBusinessPartner());
+        
+        // When the email about the previous address was sent
+        testee.onMailDelivered(new MailDeliveredEvent(businessPartner.getBusinessPartner(), "previous checksum"));
+        
+        // Then Address Confirmation State is still Initial ...
+        assertThat("Address Confirmation State after processing",
+                businessPartner.getAddressConfirmationState(), 
+                is(equalTo(INITIAL)));
+        
+        // ... and the business partner is not updated
+        verify(businessPartnerServiceMock, never()).updateBusinessPartner(any());
+    }
+    
+    /**
+     * Addresses of several Business Partners are confirmed in a batch
+     */
+    @Test
+    public void testConfirmAddressesUpdatesAllInOneBatch() {
+        // Given a business partner with a changed address and one without address ...
+        final CustomBusinessPartner changed = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
+        final CustomBusinessPartner withoutAddress = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
+        withoutAddress.setBusinessPartner("without address");
+        final BPContactToFuncAndDept contact = EntitySupplier.getDefaultContact();
+        final List<BPContactToFuncAndDept> contacts = Collections.singletonList(contact);
+        final List<String> keys = Arrays.asList(changed.getBusinessPartner(), withoutAddress.getBusinessPartner());
+        
+        // ... and a business partner service's mock that returns both of them in one request ...
+        doReturn(Arrays.asList(
+                ExpandedBusinessPartner.of(changed, EntitySupplier.getDefaultAddress(), contacts),
+                ExpandedBusinessPartner.of(withoutAddress, null, Collections.emptyList())))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnersByKeys(keys);
+        doReturn(Arrays.asList(Optional.empty(), Optional.empty()))
+                .when(businessPartnerServiceMock).updateBusinessPartners(anyList());
+        doReturn(changed).when(businessPartnerServiceMock).getBusinessPartnerByKey(contact.getBusinessPartnerPerson());
+        doReturn(contact).when(businessPartnerServiceMock).determineResponsibleContact(contacts);
+        doReturn("token").when(cipherMock).encrypt(any(AddressConfirmationToken.class));
+        
+        // When
+        final Map<String, SAPODataException> failed = testee.confirmAddresses(keys);
+        
+        // Then both business partners are updated in one batch ...
+        assertThat("failed business partners", failed.keySet(), is(empty()));
+        verify(businessPartnerServiceMock).updateBusinessPartners(Arrays.asList(changed, withoutAddress));
+        verify(businessPartnerServiceMock, never()).updateBusinessPartner(any());
+        
+        // ... and an email is queued only for the changed address
+        verify(notificationServiceMock).queueMail(notificationCaptor.capture());
+        assertThat("notification's business partner", 
+                notificationCaptor.getValue().getBusinessPartner(), 
+                is(changed));
+    }
+    
+    /**
+     * Business Partner in a batch could not be updated
+     */
+    @Test
+    public void testConfirmAddressesWithFailedUpdate() {
+        // Given a business partner with a changed address ...
+        final CustomBusinessPartner businessPartner = CustomBusinessPartner.of(EntitySupplier.getDefaultBusinessPartnerRoot());
+        final List<String> keys = Collections.singletonList(businessPartner.getBusinessPartner());
+        doReturn(Collections.singletonList(ExpandedBusinessPartner.of(businessPartner, 
+                EntitySupplier.getDefaultAddress(), Collections.emptyList())))
+                .when(businessPartnerServiceMock).getExpandedBusinessPartnersByKeys(keys);
+        
+        // ... that cannot be updated
+        doReturn(Collections.singletonList(Optional.of(new SAPODataException("mock exception"))))
+                .when(businessPartnerServiceMock).updateBusinessPartners(anyList());
+        
+        // When
+        final Map<String, SAPODataException> failed = testee.confirmAddresses(keys);
+        
+        // Then the business partner is returned with its error ...
+        assertThat("failed business partners", failed.keySet(), contains(businessPartner.getBusinessPartner()));
+        assertThat("error", failed.get(businessPartner.getBusinessPartner()).getMessage(), is("mock exception"));
+        
+        // ... and no email is queued
+        verify(notificationServiceMock, never()).queueMail(any());
+    }
+    
 }
@@ -0,0 +1,170 @@
+package com.sap.cloud.s4hana.eventing.businesspartner.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.model.CustomBusinessPartner;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
+
+public class BusinessPartnerUpdateBatcherTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	CustomBusinessPartnerService businessPartnerServiceMock;
+
+	@Captor
+	ArgumentCaptor<List<BusinessPartner>> batchCaptor;
+
+	BusinessPartnerUpdateBatcher testee;
+
+	@After
+	public void tearDown() {
+		testee.shutdown();
+	}
+
+	@Test
+	public void testUpdatesAreSentInOneBatchWhenMaxSizeIsReached() throws Exception {
+		// Given a batcher with a long deadline ...
+		testee = new BusinessPartnerUpdateBatcher(businessPartnerServiceMock, 2, 60000);
+
+		// ... and a business partner service's mock that updates everything successfully
+		doReturn(Arrays.asList(Optional.empty(), Optional.empty()))
+				.when(businessPartnerServiceMock).updateBusinessPartners(anyList());
+
+		// When two updates are submitted
+		final BusinessPartner first = businessPartner("1");
+		final BusinessPartner second = businessPartner("2");
+		final CompletableFuture<Void> firstResult = testee.submit(first);
+		final CompletableFuture<Void> secondResult = testee.submit(second);
+
+		// Then both are completed ...
+		firstResult.get(5, TimeUnit.SECONDS);
+		secondResult.get(5, TimeUnit.SECONDS);
+
+		// ... by a single batch request
+		verify(businessPartnerServiceMock).updateBusinessPartners(batchCaptor.capture());
+		assertThat("batch", batchCaptor.getValue(), contains(first, second));
+
+		// ... and the flush after the deadline is cancelled
+		assertThat("scheduled flushes", testee.scheduledFlushes(), is(0));
+	}
+
+	@Test
+	public void testUpdatesAreSentWhenDeadlineIsReached() throws Exception {
+		// Given a batcher with a short deadline ...
+		testee = new BusinessPartnerUpdateBatcher(businessPartnerServiceMock, 50, 50);
+
+		// ... and a business partner service's mock that updates everything successfully
+		doReturn(Arrays.asList(Optional.empty()))
+				.when(businessPartnerServiceMock).updateBusinessPartners(anyList());
+
+		// When a single update is submitted
+		final CompletableFuture<Void> result = testee.submit(businessPartner("1"));
+
+		// Then it is sent although the batch is not full
+		result.get(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testFailedUpdateDoesNotAffectOtherUpdates() throws Exception {
+		// Given a batcher ...
+		testee = new BusinessPartnerUpdateBatcher(businessPartnerServiceMock, 2, 60000);
+
+		// ... and a business partner service's mock that fails to update the first business partner
+		final SAPODataException expectedException = new SAPODataException("mock exception");
+		doReturn(Arrays.asList(Optional.of(expectedException), Optional.empty()))
+				.when(businessPartnerServiceMock).updateBusinessPartners(anyList());
+
+		// When two updates are submitted
+		final CompletableFuture<Void> firstResult = testee.submit(businessPartner("1"));
+		final CompletableFuture<Void> secondResult = testee.submit(businessPartner("2"));
+
+		// Then only the first one fails
+		try {
+			firstResult.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertThat("cause", e.getCause(), is(sameInstance(expectedException)));
+		}
+		assertThat("first update failed", firstResult.isCompletedExceptionally(), is(true));
+
+		secondResult.get(5, TimeUnit.SECONDS);
+	}
+
+	@Test(expected = SAPODataException.class)
+	public void testFailedBatchIsReportedToTheCaller() {
+		// Given a batcher ...
+		testee = new BusinessPartnerUpdateBatcher(businessPartnerServiceMock, 50, 10);
+
+		// ... and a business partner service's mock that fails to send the batch
+		doThrow(new SAPODataException("mock exception"))
+				.when(businessPartnerServiceMock).updateBusinessPartners(anyList());
+
+		// When an update is sent
+		testee.updateBusinessPartner(businessPartner("1"));
+
+		// Then the exception is thrown in the calling thread
+	}
+
+	@Test
+	public void testUpdateAfterShutdownIsRejected() {
+		// Given a batcher that was shut down
+		testee = new BusinessPartnerUpdateBatcher(businessPartnerServiceMock, 50, 10);
+		testee.shutdown();
+
+		// When an update is submitted
+		try {
+			testee.submit(businessPartner("1"));
+			fail("Update after shutdown was accepted");
+		} catch (SAPODataException e) {
+			// Then it is rejected and not sent when the batcher is flushed
+			testee.flush();
+			verify(businessPartnerServiceMock, never()).updateBusinessPartners(anyList());
+		}
+	}
+
+	@Test
+	public void testWithoutBatchingUpdatesAreSentImmediately() {
+		// Given a batcher that does not batch updates
+		testee = new BusinessPartnerUpdateBatcher(businessPartnerServiceMock, 1, 0);
+
+		// When an update is sent
+		final BusinessPartner businessPartner = businessPartner("1");
+		testee.updateBusinessPartner(businessPartner);
+
+		// Then a single update request is sent
+		verify(businessPartnerServiceMock).updateBusinessPartner(businessPartner);
+		verify(businessPartnerServiceMock, never()).updateBusinessPartners(anyList());
+	}
+
+	private static BusinessPartner businessPartner(String key) {
+		final CustomBusinessPartner businessPartner = CustomBusinessPartner.newInstance();
+		businessPartner.setBusinessPartner(key);
+		return businessPartner;
+	}
+
+}
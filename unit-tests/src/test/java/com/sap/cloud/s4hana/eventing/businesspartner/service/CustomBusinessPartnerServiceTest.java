@@ -4,28 +4,40 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import com.sap.cloud.s4hana.eventing.businesspartner.model.CustomBusinessPartner;
+import com.sap.cloud.s4hana.eventing.businesspartner.model.ExpandedBusinessPartner;
 import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
 import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
 import com.sap.cloud.sdk.odatav2.connectivity.ODataException;
 import com.sap.cloud.sdk.s4hana.connectivity.ErpConfigContext;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.helper.ExpressionFluentHelper;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.helper.batch.BatchResponse;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.helper.batch.BatchResponseChangeSet;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BPContactToFuncAndDept;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerContact;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.selectable.BusinessPartnerSelectable;
 import com.sap.cloud.sdk.s4hana.datamodel.odata.services.BusinessPartnerService;
 
+import io.vavr.control.Try;
+
 @RunWith(MockitoJUnitRunner.StrictStubs.class)
 public class CustomBusinessPartnerServiceTest {
     
@@ -120,6 +132,155 @@ public class CustomBusinessPartnerServiceTest {
         assertThat("The right Business Partner should be returned by Service", newBusinessPartner, is(equalTo(businessPartner)));
     }
     
+    @Test
+    public void testGetExpandedByKey() throws ODataException {
+        // Given a dummy business partner with an address and a contact ...
+        BusinessPartner businessPartner = BusinessPartner.builder()
+                .businessPartner("0000000000")
+                .customer("0000000000")
+                .businessPartnerAddress(EntitySupplier.getDefaultAddress())
+                .businessPartnerContact(BusinessPartnerContact.builder()
+                        .contactRelationship(EntitySupplier.getDefaultContact())
+                        .build())
+                .build();
+        
+        // ... and a business partner service's mock that returns it ...
+        when(serviceMock
+                .getBusinessPartnerByKey(businessPartner.getBusinessPartner())
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .execute(any(ErpConfigContext.class)))
+        .thenReturn(businessPartner);
+        
+        // When CustomBusinessPartnerService is called
+        ExpandedBusinessPartner expandedBusinessPartner = testee.getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
+        
+        // Then the business partner, its first address and the contact are returned
+        assertThat("business partner key", 
+                expandedBusinessPartner.getBusinessPartner().getBusinessPartner(), 
+                is(equalTo(businessPartner.getBusinessPartner())));
+        assertThat("address", expandedBusinessPartner.getAddress(), is(equalTo(EntitySupplier.getDefaultAddress())));
+        assertThat("contacts", expandedBusinessPartner.getContacts(), contains(EntitySupplier.getDefaultContact()));
+    }
+    
+    @Test
+    public void testGetExpandedByKeyWithoutAddressAndContacts() throws ODataException {
+        // Given a dummy business partner without navigation properties ...
+        BusinessPartner businessPartner = EntitySupplier.getDefaultBusinessPartnerRoot();
+        
+        // ... and a business partner service's mock that returns it ...
+        when(serviceMock
+                .getBusinessPartnerByKey(businessPartner.getBusinessPartner())
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .execute(any(ErpConfigContext.class)))
+        .thenReturn(businessPartner);
+        
+        // When CustomBusinessPartnerService is called
+        ExpandedBusinessPartner expandedBusinessPartner = testee.getExpandedBusinessPartnerByKey(businessPartner.getBusinessPartner());
+        
+        // Then there is neither an address nor contacts
+        assertThat("address", expandedBusinessPartner.getAddress(), is(nullValue()));
+        assertThat("contacts", expandedBusinessPartner.getContacts(), is(empty()));
+    }
+    
+    @Test
+    public void testGetExpandedByKeys() throws ODataException {
+        // Given two dummy business partners ...
+        BusinessPartner first = EntitySupplier.getDefaultBusinessPartnerRoot();
+        BusinessPartner second = BusinessPartner.builder()
+                .businessPartner("0000000001")
+                .customer("0000000001")
+                .businessPartnerAddress(EntitySupplier.getDefaultAddress())
+                .build();
+        
+        // ... and a business partner service's mock that returns both of them in one request ...
+        when(serviceMock
+                .getAllBusinessPartner()
+                .filter(any(ExpressionFluentHelper.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .select(any(BusinessPartnerSelectable.class))
+                .top(2)
+                .execute(any(ErpConfigContext.class)))
+        .thenReturn(Arrays.asList(first, second));
+        
+        // When CustomBusinessPartnerService is called
+        List<ExpandedBusinessPartner> expandedBusinessPartners = testee.getExpandedBusinessPartnersByKeys(
+                Arrays.asList(first.getBusinessPartner(), second.getBusinessPartner()));
+        
+        // Then both business partners are returned with their addresses
+        assertThat("number of business partners", expandedBusinessPartners, hasSize(2));
+        assertThat("first address", expandedBusinessPartners.get(0).getAddress(), is(nullValue()));
+        assertThat("second address", expandedBusinessPartners.get(1).getAddress(), is(equalTo(EntitySupplier.getDefaultAddress())));
+    }
+    
+    @Test
+    public void testGetExpandedByNoKeys() {
+        // When CustomBusinessPartnerService is called without keys
+        List<ExpandedBusinessPartner> expandedBusinessPartners = testee.getExpandedBusinessPartnersByKeys(Collections.emptyList());
+        
+        // Then nothing is requested
+        assertThat("business partners", expandedBusinessPartners, is(empty()));
+    }
+    
+    @Test
+    public void testUpdateInBatchContainsOnlyCustomFields() throws ODataException {
+        // Given a business partner with an address and other loaded fields ...
+        CustomBusinessPartner businessPartner = EntitySupplier.getDefaultBusinessPartner();
+        businessPartner.setVersionIdentifier("W/\"datetimeoffset'2019-01-01T00:00:00Z'\"");
+        
+        // ... and a business partner service's mock that updates it successfully
+        BatchResponse responseMock = mock(BatchResponse.class);
+        when(responseMock.get(0)).thenReturn(Try.success(mock(BatchResponseChangeSet.class)));
+        when(serviceMock
+                .batch()
+                .beginChangeSet()
+                .updateBusinessPartner(any(BusinessPartner.class))
+                .endChangeSet()
+                .execute(any(ErpConfigContext.class)))
+        .thenReturn(responseMock);
+        
+        // When CustomBusinessPartnerService is called
+        List<Optional<SAPODataException>> results = testee.updateBusinessPartners(Collections.singletonList(businessPartner));
+        
+        // Then the update was successful ...
+        assertThat("results", results, contains(Optional.empty()));
+        
+        // ... and the changeset contains only the key, the version identifier and the custom fields
+        ArgumentCaptor<BusinessPartner> update = ArgumentCaptor.forClass(BusinessPartner.class);
+        verify(serviceMock.batch().beginChangeSet()).updateBusinessPartner(update.capture());
+        
+        BusinessPartner patch = update.getValue();
+        assertThat("key", patch.getBusinessPartner(), is(businessPartner.getBusinessPartner()));
+        assertThat("version identifier", patch.getVersionIdentifier().getOrNull(), 
+                is(businessPartner.getVersionIdentifier().getOrNull()));
+        assertThat("custom fields", patch.getCustomFields().keySet(), containsInAnyOrder(
+                CustomBusinessPartner.ADDRESS_CONFIRMATION_STATE_CUSTOM_FIELD_NAME,
+                CustomBusinessPartner.ADDRESS_CHECKSUM_CUSTOM_FIELD_NAME));
+        assertThat("address checksum", patch.getCustomField(CustomBusinessPartner.ADDRESS_CHECKSUM), 
+                is(EntitySupplier.ADDRESS_CHECKSUM));
+        assertThat("address confirmation state", patch.getCustomField(CustomBusinessPartner.ADDRESS_CONFIRMATION_STATE), 
+                is(EntitySupplier.ADDRESS_CONFIRMATION_STATE.toString()));
+        assertThat("full name", patch.getBusinessPartnerFullName(), is(nullValue()));
+        assertThat("customer", patch.getCustomer(), is(nullValue()));
+        assertThat("addresses", patch.getBusinessPartnerAddressIfPresent().isPresent(), is(false));
+    }
+    
+    @Test
+    public void testDetermineResponsibleContactFromList() {
+        // When CustomBusinessPartnerService is called with already fetched contacts ...
+        BPContactToFuncAndDept contactPerson = testee.determineResponsibleContact(EntitySupplier.getListOfContactsWithAll());
+        
+        // Then the same contact is determined as when the contacts are fetched
+        assertThat("Contact Person", contactPerson, is(equalTo(EntitySupplier.getQualityAssuranceQualityOfficeContact())));
+    }
+    
     @Test
     @SuppressWarnings("unchecked")
     public void testDetermineResponsibleContactWithNoContacts() throws ODataException {
@@ -0,0 +1,86 @@
+package com.sap.cloud.s4hana.eventing.core.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.modelmapper.ModelMapper;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
+import com.sap.cloud.s4hana.eventing.businesspartner.model.CustomBusinessPartner;
+import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartner;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+
+public class MapperUtilsTest {
+
+	@Test
+	public void testSharedMapperProducesTheSameResultAsANewMapper() {
+		// Given a business partner and an address
+		final BusinessPartner businessPartner = EntitySupplier.getDefaultBusinessPartner();
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+
+		// When they are mapped twice with the shared mapper
+		final CustomBusinessPartner firstBusinessPartner = MapperUtils.map(businessPartner, CustomBusinessPartner.class);
+		final CustomBusinessPartner secondBusinessPartner = MapperUtils.map(businessPartner, CustomBusinessPartner.class);
+		final AddressDTO firstAddress = MapperUtils.map(address, AddressDTO.class);
+		final AddressDTO secondAddress = MapperUtils.map(address, AddressDTO.class);
+
+		// Then the results are the same as with a newly created mapper
+		final ModelMapper newMapper = MapperUtils.getMapper();
+		assertThat("first business partner", firstBusinessPartner,
+				is(equalTo(newMapper.map(businessPartner, CustomBusinessPartner.class))));
+		assertThat("second business partner", secondBusinessPartner, is(equalTo(firstBusinessPartner)));
+		assertThat("first address", firstAddress, is(equalTo(newMapper.map(address, AddressDTO.class))));
+		assertThat("second address", secondAddress, is(equalTo(firstAddress)));
+	}
+
+	@Test
+	public void testMapToExistingObjectProducesTheSameResultAsANewMapper() {
+		// Given an address DTO
+		final AddressDTO addressDTO = AddressDTO.of(EntitySupplier.getDefaultAddress());
+
+		// When it is mapped to an existing address twice
+		final BusinessPartnerAddress first = MapperUtils.map(addressDTO, BusinessPartnerAddress.builder().build());
+		final BusinessPartnerAddress second = MapperUtils.map(addressDTO, BusinessPartnerAddress.builder().build());
+
+		// Then the results are the same as with a newly created default mapper
+		final BusinessPartnerAddress expected = BusinessPartnerAddress.builder().build();
+		new ModelMapper().map(addressDTO, expected);
+
+		assertThat("first address", first, is(equalTo(expected)));
+		assertThat("second address", second, is(equalTo(expected)));
+	}
+
+	@Test
+	public void testSharedMapperIsThreadSafe() throws Exception {
+		// Given an address and its expected mapping
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		final AddressDTO expected = MapperUtils.getMapper().map(address, AddressDTO.class);
+
+		// When it is mapped from many threads at the same time
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final List<Future<AddressDTO>> results = new ArrayList<>();
+		try {
+			final Callable<AddressDTO> mapping = () -> MapperUtils.map(address, AddressDTO.class);
+			for (int i = 0; i < 1000; i++) {
+				results.add(executor.submit(mapping));
+			}
+
+			// Then all the results are correct
+			for (Future<AddressDTO> result : results) {
+				assertThat("mapped address", result.get(), is(equalTo(expected)));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.sap.cloud.s4hana.eventing.core.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPServiceUnavailableException;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPTimeoutException;
+import com.sap.cloud.s4hana.eventing.security.XsuaaContextRunner;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ODataTaskExecutorTest {
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	final CountDownLatch release = new CountDownLatch(1);
+
+	ODataTaskExecutor testee;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (testee != null) {
+			testee.shutdown();
+		}
+	}
+
+	@Test
+	public void testResultIsReturned() throws Exception {
+		// Given
+		testee = newTestee(/* numberOfThreads = */ 1, /* queueCapacity = */ 1, ODataTaskExecutor.DEFAULT_TIMEOUT_MILLIS);
+
+		// When
+		final CompletableFuture<String> result = testee.supplyAsync(() -> Thread.currentThread().getName());
+
+		// Then the task is executed by a worker thread
+		assertThat("thread", result.get(1, TimeUnit.SECONDS), startsWith("odata-worker-"));
+	}
+
+	@Test
+	public void testExceptionOfTaskIsReturned() throws Exception {
+		// Given
+		testee = newTestee(/* numberOfThreads = */ 1, /* queueCapacity = */ 1, ODataTaskExecutor.DEFAULT_TIMEOUT_MILLIS);
+
+		// When
+		final CompletableFuture<String> result = testee.supplyAsync(() -> {
+			throw new SAPODataException("S/4HANA is not available");
+		});
+
+		// Then
+		assertThat("cause", causeOf(result), is(instanceOf(SAPODataException.class)));
+	}
+
+	@Test
+	public void testSlowTaskTimesOut() throws Exception {
+		// Given
+		testee = newTestee(/* numberOfThreads = */ 1, /* queueCapacity = */ 1, /* timeoutMillis = */ 50);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+
+		// When the task does not finish in time
+		final CompletableFuture<String> result = testee.supplyAsync(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return "too late";
+		});
+
+		// Then the future fails and the worker thread is interrupted
+		assertThat("cause", causeOf(result), is(instanceOf(SAPTimeoutException.class)));
+		assertThat("interrupted", interrupted.await(1, TimeUnit.SECONDS), is(true));
+		assertThat("timeouts", meterRegistry.counter(ODataTaskExecutor.METRIC_TIMEOUTS).count(), is(1.0));
+	}
+
+	@Test
+	public void testTaskIsRejectedWhenQueueIsFull() throws Exception {
+		// Given one busy worker thread and a full queue
+		testee = newTestee(/* numberOfThreads = */ 1, /* queueCapacity = */ 1, ODataTaskExecutor.DEFAULT_TIMEOUT_MILLIS);
+		testee.supplyAsync(this::awaitRelease);
+		testee.supplyAsync(this::awaitRelease);
+
+		// When
+		final CompletableFuture<String> result = testee.supplyAsync(() -> "rejected");
+
+		// Then the caller does not wait
+		assertThat("done", result.isDone(), is(true));
+		assertThat("cause", causeOf(result), is(instanceOf(SAPServiceUnavailableException.class)));
+		assertThat("rejections", meterRegistry.counter(ODataTaskExecutor.METRIC_REJECTIONS).count(), is(1.0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveTimeoutIsRejected() {
+		newTestee(/* numberOfThreads = */ 1, /* queueCapacity = */ 1, /* timeoutMillis = */ 0);
+	}
+
+	private String awaitRelease() {
+		try {
+			release.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "released";
+	}
+
+	private static Throwable causeOf(CompletableFuture<?> result) throws Exception {
+		try {
+			result.get(1, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+
+		fail("future should have failed");
+		return null;
+	}
+
+	private ODataTaskExecutor newTestee(int numberOfThreads, int queueCapacity, long timeoutMillis) {
+		return new ODataTaskExecutor(new XsuaaContextRunner(), meterRegistry, numberOfThreads, queueCapacity,
+				timeoutMillis);
+	}
+
+}
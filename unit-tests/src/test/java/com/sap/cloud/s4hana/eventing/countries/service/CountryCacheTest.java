@@ -0,0 +1,207 @@
+package com.sap.cloud.s4hana.eventing.countries.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.s4hana.eventing.countries.service.CountryCache.Countries;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.country.CountryText;
+
+public class CountryCacheTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	CountryService countryServiceMock;
+
+	@Mock
+	Clock clockMock;
+
+	final ObjectMapper objectMapper = new ObjectMapper();
+
+	CountryCache testee;
+
+	@After
+	public void tearDown() {
+		testee.shutdown();
+	}
+
+	@Test
+	public void testCountriesAreLoadedOnlyOnce() throws Exception {
+		// Given a cache and a country service's mock
+		testee = new CountryCache(countryServiceMock, objectMapper, 3600);
+		final List<CountryText> countryList = countries("DE", "Germany");
+		doReturn(countryList).when(countryServiceMock).getAll();
+
+		// When the countries are requested twice
+		final Countries first = testee.get();
+		final Countries second = testee.get();
+
+		// Then they are loaded only once ...
+		verify(countryServiceMock, times(1)).getAll();
+		assertThat("second countries", second, is(sameInstance(first)));
+
+		// ... and contain the JSON and its compressed version
+		assertThat("countries", first.getCountries(), is(equalTo(countryList)));
+		assertThat("JSON", first.getJson(), is(equalTo(objectMapper.writeValueAsBytes(countryList))));
+		assertThat("gzipped JSON", StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(first.getGzippedJson()))),
+				is(equalTo(first.getJson())));
+	}
+
+	@Test
+	public void testETagChangesWithTheCountries() {
+		// Given a cache that does not cache the countries ...
+		testee = new CountryCache(countryServiceMock, objectMapper, 0);
+
+		// ... and a country service's mock that returns the same list twice and then a changed one
+		doReturn(countries("DE", "Germany"), countries("DE", "Germany"), countries("DE", "Deutschland"))
+				.when(countryServiceMock).getAll();
+
+		// When the countries are requested three times
+		final String firstETag = testee.get().getETag();
+		final String secondETag = testee.get().getETag();
+		final String thirdETag = testee.get().getETag();
+
+		// Then they are loaded every time and only the changed list has a different ETag
+		verify(countryServiceMock, times(3)).getAll();
+		assertThat("ETag of the same list", secondETag, is(equalTo(firstETag)));
+		assertThat("ETag of the changed list", thirdETag, is(not(equalTo(firstETag))));
+		assertThat("ETag", firstETag, allOf(startsWith("\""), endsWith("\"")));
+	}
+
+	@Test
+	public void testStaleCountriesAreReturnedWhileTheyAreReloaded() {
+		// Given a cache with a time to live of a second that reloads the countries in the calling thread
+		testee = newCacheWithClockMock(1);
+		doReturn(countries("DE", "Germany"), countries("DE", "Deutschland")).when(countryServiceMock).getAll();
+		doReturn(0L).when(clockMock).millis();
+		final Countries stale = testee.get();
+
+		// When the countries are requested after the time to live
+		doReturn(1001L).when(clockMock).millis();
+		final Countries result = testee.get();
+
+		// Then the stale ones are returned ...
+		assertThat("countries", result, is(sameInstance(stale)));
+
+		// ... and the new ones are loaded for the next request
+		verify(countryServiceMock, times(2)).getAll();
+		assertThat("reloaded country", testee.get().getCountries().get(0).getCountryName(), is("Deutschland"));
+	}
+
+	@Test
+	public void testCountriesAreNotReloadedWithinTheTimeToLive() {
+		// Given a cache with a time to live of a second
+		testee = newCacheWithClockMock(1);
+		doReturn(countries("DE", "Germany")).when(countryServiceMock).getAll();
+		doReturn(0L).when(clockMock).millis();
+		final Countries first = testee.get();
+
+		// When the countries are requested at the end of the time to live
+		doReturn(1000L).when(clockMock).millis();
+		final Countries second = testee.get();
+
+		// Then they are not reloaded
+		verify(countryServiceMock, times(1)).getAll();
+		assertThat("countries", second, is(sameInstance(first)));
+	}
+
+	@Test
+	public void testStaleCountriesAreKeptWhenReloadFails() {
+		// Given a cache with stale countries ...
+		testee = newCacheWithClockMock(1);
+		doReturn(countries("DE", "Germany")).when(countryServiceMock).getAll();
+		doReturn(0L).when(clockMock).millis();
+		final Countries stale = testee.get();
+		doReturn(1001L).when(clockMock).millis();
+
+		// ... and a country service's mock that fails
+		doThrow(new SAPODataException("mock exception")).when(countryServiceMock).getAll();
+
+		// When the countries are requested
+		testee.get();
+
+		// Then the reload is attempted but the stale countries are still returned
+		verify(countryServiceMock, times(2)).getAll();
+		assertThat("countries", testee.get(), is(sameInstance(stale)));
+	}
+
+	@Test
+	public void testIsLoadedAfterFirstLoad() {
+		// Given a cache and a country service's mock
+		testee = new CountryCache(countryServiceMock, objectMapper, 3600);
+		doReturn(countries("DE", "Germany")).when(countryServiceMock).getAll();
+		assertThat("loaded before the first request", testee.isLoaded(), is(false));
+
+		// When the countries are requested
+		testee.get();
+
+		// Then
+		assertThat("loaded after the first request", testee.isLoaded(), is(true));
+	}
+
+	@Test
+	public void testIsNeverLoadedWithoutCaching() {
+		// Given a cache that does not cache the countries
+		testee = new CountryCache(countryServiceMock, objectMapper, 0);
+		doReturn(countries("DE", "Germany")).when(countryServiceMock).getAll();
+
+		// When the countries are requested
+		testee.get();
+
+		// Then
+		assertThat("loaded", testee.isLoaded(), is(false));
+	}
+
+	@Test
+	public void testIsMatchedBy() {
+		// Given a list of countries
+		testee = new CountryCache(countryServiceMock, objectMapper, 0);
+		doReturn(Collections.emptyList()).when(countryServiceMock).getAll();
+		final Countries countries = testee.get();
+		final String eTag = countries.getETag();
+		assertThat("ETag of the gzipped list", countries.getGzippedETag(),
+				allOf(not(equalTo(eTag)), startsWith("\""), endsWith(Countries.GZIPPED_ETAG_SUFFIX + "\"")));
+
+		// When it is compared to If-None-Match headers, then only matching ones match
+		assertThat("no header", countries.isMatchedBy(null), is(false));
+		assertThat("same ETag", countries.isMatchedBy(eTag), is(true));
+		assertThat("ETag of the gzipped list", countries.isMatchedBy(countries.getGzippedETag()), is(true));
+		assertThat("weak ETag", countries.isMatchedBy("W/" + eTag), is(true));
+		assertThat("list of ETags", countries.isMatchedBy("\"other\", " + eTag), is(true));
+		assertThat("any ETag", countries.isMatchedBy("*"), is(true));
+		assertThat("other ETag", countries.isMatchedBy("\"other\""), is(false));
+	}
+
+	private CountryCache newCacheWithClockMock(long ttlSeconds) {
+		return new CountryCache(countryServiceMock, objectMapper, ttlSeconds, clockMock,
+				MoreExecutors.newDirectExecutorService());
+	}
+
+	private static List<CountryText> countries(String country, String countryName) {
+		return Arrays.asList(CountryText.builder().country(country).countryName(countryName).language("EN").build());
+	}
+
+}
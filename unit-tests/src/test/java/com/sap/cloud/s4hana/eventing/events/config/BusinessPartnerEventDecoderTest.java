@@ -0,0 +1,114 @@
+package com.sap.cloud.s4hana.eventing.events.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessEvent;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessPartnerEvent;
+
+public class BusinessPartnerEventDecoderTest {
+
+	final ObjectMapper objectMapper = new BusinessEventMessageConverter().getObjectMapper();
+
+	final BusinessPartnerEventDecoder testee = new BusinessPartnerEventDecoder(objectMapper.getFactory());
+
+	@Test
+	public void testEventIsDecodedLikeWithFullBinding() throws IOException {
+		// Given an event as sent by SAP S/4HANA with properties that are not needed
+		final String json = event(BusinessPartnerEvent.JSON_TYPE_ID_CHANGED,
+				"{\"KEY\":[{\"BUSINESSPARTNER\":\"9980021470\",\"EXTRA\":{\"A\":[1,2,{\"B\":null}]}}],\"OTHER\":[\"x\"]}");
+
+		// When
+		final BusinessPartnerEvent decoded = testee.decode(bytes(json));
+
+		// Then the event is decoded ...
+		assertThat("decoded event", decoded, is(notNullValue()));
+
+		// ... to the same values as with full binding
+		final BusinessPartnerEvent bound = (BusinessPartnerEvent) objectMapper.readValue(bytes(json), BusinessEvent.class);
+		assertThat("event ID", decoded.getEventID(), is(equalTo(bound.getEventID())));
+		assertThat("content type", decoded.getContentType(), is(equalTo(bound.getContentType())));
+		assertThat("business partner key", decoded.getPayload().getBusinessPartnerKey(),
+				is(equalTo(bound.getPayload().getBusinessPartnerKey())));
+		assertThat("business partner key", decoded.getPayload().getBusinessPartnerKey(), is("9980021470"));
+	}
+
+	@Test
+	public void testCreatedEventIsDecoded() {
+		// Given
+		final String json = event(BusinessPartnerEvent.JSON_TYPE_ID_CREATED, "{\"KEY\":[{\"BUSINESSPARTNER\":\"1\"}]}");
+
+		// When
+		final BusinessPartnerEvent decoded = testee.decode(bytes(json));
+
+		// Then
+		assertThat("business partner key", decoded.getPayload().getBusinessPartnerKey(), is("1"));
+	}
+
+	@Test
+	public void testUndecidableEventsAreLeftToFullBinding() {
+		// unknown event type
+		assertThat(testee.decode(bytes(event("BO.SalesOrder.Changed", "{\"KEY\":[{\"BUSINESSPARTNER\":\"1\"}]}"))),
+				is(nullValue()));
+
+		// more than one key
+		assertThat(testee.decode(bytes(event(BusinessPartnerEvent.JSON_TYPE_ID_CHANGED,
+				"{\"KEY\":[{\"BUSINESSPARTNER\":\"1\"},{\"BUSINESSPARTNER\":\"2\"}]}"))), is(nullValue()));
+
+		// no key
+		assertThat(testee.decode(bytes(event(BusinessPartnerEvent.JSON_TYPE_ID_CHANGED, "{\"KEY\":[]}"))),
+				is(nullValue()));
+
+		// key is not a string
+		assertThat(testee.decode(bytes(event(BusinessPartnerEvent.JSON_TYPE_ID_CHANGED,
+				"{\"KEY\":[{\"BUSINESSPARTNER\":{}}]}"))), is(nullValue()));
+
+		// not well-formed
+		assertThat(testee.decode(bytes("{\"eventType\":")), is(nullValue()));
+	}
+
+	@Test
+	public void testConverterFallsBackToFullBinding() throws JMSException {
+		// Given an event with a numeric key that the fast path does not decide
+		final Message message = mock(Message.class);
+		when(message.getBody(byte[].class)).thenReturn(bytes(event(BusinessPartnerEvent.JSON_TYPE_ID_CHANGED,
+				"{\"KEY\":[{\"BUSINESSPARTNER\":9980021470}]}")));
+
+		// When
+		final Object event = new BusinessEventMessageConverter().fromMessage(message);
+
+		// Then it is bound by Jackson
+		assertThat("event", event, is(instanceOf(BusinessPartnerEvent.class)));
+		assertThat("business partner key", ((BusinessPartnerEvent) event).getPayload().getBusinessPartnerKey(),
+				is("9980021470"));
+	}
+
+	private static String event(String eventType, String data) {
+		return "{\r\n" +
+				"  \"eventType\": \"" + eventType + "\",\r\n" +
+				"  \"cloudEventsVersion\": \"0.1\",\r\n" +
+				"  \"source\": \"https://my300000.s4hana.ondemand.com\",\r\n" +
+				"  \"eventID\": \"ABY+LHs5Hti56Xn6eGqGVw==\",\r\n" +
+				"  \"eventTime\": \"2018-11-13T13:55:44Z\",\r\n" +
+				"  \"schemaURL\": \"/sap/opu/odata/IWXBE/BROWSER_SRV/\",\r\n" +
+				"  \"contentType\": \"application/json\",\r\n" +
+				"  \"data\": " + data + "\r\n" +
+				"}";
+	}
+
+	private static byte[] bytes(String json) {
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.listener.MessageListenerContainer;
+
+import com.sap.cloud.s4hana.eventing.events.service.BackpressureController.Downstream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class BackpressureControllerTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	JmsListenerEndpointRegistry listenerRegistryMock;
+
+	@Mock
+	MessageListenerContainer containerMock;
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	BackpressureController testee;
+
+	@Before
+	public void setUp() {
+		// concurrency between 1 and 8, latency thresholds of 100 ms, adjusted manually
+		testee = new BackpressureController(listenerRegistryMock, meterRegistry, 1, 8, 100, 100, 0.5, 0);
+	}
+
+	@After
+	public void tearDown() {
+		testee.shutdown();
+	}
+
+	@Test
+	public void testConcurrencyIsHalvedWhileDownstreamIsSlow() {
+		// Given slow calls of SAP S/4HANA
+		testee.record(Downstream.S4HANA, TimeUnit.MILLISECONDS.toNanos(500));
+
+		// When the limit is adjusted twice
+		testee.adjust();
+		testee.adjust();
+
+		// Then it is halved every time
+		assertThat("concurrency", testee.getConcurrency(), is(2));
+		assertThat("metric", meterRegistry.get(BackpressureController.METRIC_CONCURRENCY).gauge().value(), is(2.0));
+	}
+
+	@Test
+	public void testConcurrencyIsNotDecreasedBelowMinimum() {
+		// Given slow calls of the SMTP server
+		testee.record(Downstream.SMTP, TimeUnit.MILLISECONDS.toNanos(500));
+
+		// When the limit is adjusted many times
+		for (int i = 0; i < 10; i++) {
+			testee.adjust();
+		}
+
+		// Then it stays at the minimum
+		assertThat("concurrency", testee.getConcurrency(), is(1));
+	}
+
+	@Test
+	public void testConcurrencyIsIncreasedByOneWhenLimitIsReached() throws InterruptedException {
+		// Given a limit that was decreased ...
+		testee.record(Downstream.S4HANA, TimeUnit.MILLISECONDS.toNanos(500));
+		testee.adjust();
+
+		// ... and a downstream system that recovered
+		for (int i = 0; i < 50; i++) {
+			testee.record(Downstream.S4HANA, TimeUnit.MILLISECONDS.toNanos(10));
+		}
+
+		// When all permits are used
+		for (int i = 0; i < 4; i++) {
+			testee.acquire();
+		}
+		testee.adjust();
+
+		// Then the limit is increased by one
+		assertThat("concurrency", testee.getConcurrency(), is(5));
+		assertThat("in flight", testee.getInFlight(), is(4));
+	}
+
+	@Test
+	public void testConcurrencyIsNotIncreasedWhenLimitIsNotReached() {
+		// Given a limit that was decreased and a downstream system that recovered
+		testee.record(Downstream.S4HANA, TimeUnit.MILLISECONDS.toNanos(500));
+		testee.adjust();
+		for (int i = 0; i < 50; i++) {
+			testee.record(Downstream.S4HANA, TimeUnit.MILLISECONDS.toNanos(10));
+		}
+
+		// When the limit is adjusted without load
+		testee.adjust();
+
+		// Then it stays the same
+		assertThat("concurrency", testee.getConcurrency(), is(4));
+	}
+
+	@Test
+	public void testListenersArePausedUntilEventsInProgressAreHandled() throws InterruptedException {
+		// Given a slow downstream system and the minimum number of events in progress
+		doReturn(Collections.singletonList(containerMock)).when(listenerRegistryMock).getListenerContainers();
+		testee.record(Downstream.S4HANA, TimeUnit.MILLISECONDS.toNanos(500));
+		for (int i = 0; i < 4; i++) {
+			testee.adjust();
+		}
+		testee.acquire();
+
+		// When the limit is adjusted
+		testee.adjust();
+
+		// Then the listeners are stopped ...
+		verify(containerMock).stop();
+		assertThat("paused", testee.isPaused(), is(true));
+		assertThat("metric", meterRegistry.get(BackpressureController.METRIC_PAUSED).gauge().value(), is(1.0));
+
+		// ... and started again when the event was handled
+		testee.release();
+		testee.adjust();
+		verify(containerMock).start();
+		assertThat("paused", testee.isPaused(), is(false));
+	}
+
+	@Test
+	public void testListenersAreNotPausedWhileDownstreamIsFast() throws InterruptedException {
+		// Given a fast downstream system and all permits used
+		testee.record(Downstream.S4HANA, TimeUnit.MILLISECONDS.toNanos(10));
+		for (int i = 0; i < 8; i++) {
+			testee.acquire();
+		}
+
+		// When the limit is adjusted
+		testee.adjust();
+
+		// Then the listeners keep running
+		verify(containerMock, never()).stop();
+		assertThat("concurrency", testee.getConcurrency(), is(8));
+	}
+
+	@Test
+	public void testAcquireWaitsWhileLimitIsReached() throws InterruptedException {
+		// Given a limit of one that is used
+		testee.record(Downstream.S4HANA, TimeUnit.MILLISECONDS.toNanos(500));
+		for (int i = 0; i < 4; i++) {
+			testee.adjust();
+		}
+		testee.acquire();
+
+		// When another thread acquires a permit
+		final Thread waiting = new Thread(() -> {
+			try {
+				testee.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		waiting.start();
+		waiting.join(100);
+
+		// Then it waits until the first permit is released
+		assertThat("waiting", waiting.isAlive(), is(true));
+		testee.release();
+		waiting.join(5000);
+		assertThat("waiting", waiting.isAlive(), is(false));
+		assertThat("in flight", testee.getInFlight(), is(1));
+	}
+
+	@Test
+	public void testUnlimitedControllerDoesNotWait() throws InterruptedException {
+		// When many permits are acquired
+		for (int i = 0; i < 100; i++) {
+			BackpressureController.UNLIMITED.acquire();
+		}
+
+		// Then none of them is counted
+		assertThat("in flight", BackpressureController.UNLIMITED.getInFlight(), is(0));
+	}
+
+}
@@ -0,0 +1,192 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.s4hana.eventing.events.config.BusinessEventMessageConverter;
+import com.sap.cloud.s4hana.eventing.events.model.BusinessPartnerEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class BusinessPartnerBatchConsumerTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	ConnectionFactory connectionFactoryMock;
+
+	@Mock
+	BusinessEventMessageConverter messageConverterMock;
+
+	@Mock
+	AddressConfirmationService addressConfirmationServiceMock;
+
+	@Mock
+	DeadLetterService deadLetterServiceMock;
+
+	@Mock
+	Session sessionMock;
+
+	@Mock
+	MessageConsumer consumerMock;
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	BusinessPartnerBatchConsumer testee;
+
+	@Before
+	public void setUp() {
+		testee = new BusinessPartnerBatchConsumer(connectionFactoryMock, messageConverterMock,
+				addressConfirmationServiceMock, new EventDeduplicator((EventIdStore) null, meterRegistry, 100, 60000),
+				deadLetterServiceMock, meterRegistry, "queue", 3, 100, 0);
+	}
+
+	@Test
+	public void testBatchIsHandledAndAcknowledgedAtOnce() throws JMSException {
+		// Given three messages about two business partners
+		final Message first = message("1");
+		final Message second = message("2");
+		final Message third = message("1");
+		when(consumerMock.receive(anyLong())).thenReturn(first, second, third);
+
+		// When a batch is received
+		final int received = testee.receiveBatch(sessionMock, consumerMock);
+
+		// Then the addresses of both business partners are confirmed at once ...
+		assertThat("received messages", received, is(3));
+		verify(addressConfirmationServiceMock).confirmAddresses(Arrays.asList("1", "2"));
+
+		// ... and the last message is acknowledged which acknowledges the whole batch
+		verify(third).acknowledge();
+		verify(sessionMock, never()).recover();
+		assertThat("batch size", meterRegistry.summary(BusinessPartnerBatchConsumer.METRIC_BATCH_SIZE).totalAmount(), is(3.0));
+	}
+
+	@Test
+	public void testBatchIsSmallerWhenNoMoreMessagesArrive() throws JMSException {
+		// Given one message and no more messages within the waiting time
+		final Message first = message("1");
+		when(consumerMock.receive(anyLong())).thenReturn(first, (Message) null);
+
+		// When a batch is received
+		final int received = testee.receiveBatch(sessionMock, consumerMock);
+
+		// Then the batch contains only the first message
+		assertThat("received messages", received, is(1));
+		verify(addressConfirmationServiceMock).confirmAddresses(Arrays.asList("1"));
+		verify(first).acknowledge();
+	}
+
+	@Test
+	public void testFailedBatchIsRedelivered() throws JMSException {
+		// Given two messages ...
+		final Message first = message("1");
+		final Message second = message("2");
+		when(consumerMock.receive(anyLong())).thenReturn(first, second, (Message) null);
+
+		// ... and a batch that cannot be handled
+		doThrow(new SAPODataException("mock exception")).when(addressConfirmationServiceMock).confirmAddresses(any());
+
+		// When a batch is received
+		testee.receiveBatch(sessionMock, consumerMock);
+
+		// Then the messages are not acknowledged but redelivered
+		verify(second, never()).acknowledge();
+		verify(sessionMock).recover();
+	}
+
+	@Test
+	public void testFailedBusinessPartnerIsDeadLetteredAndBatchIsAcknowledged() throws JMSException {
+		// Given two messages ...
+		final Message first = message("1");
+		final Message second = message("2");
+		when(consumerMock.receive(anyLong())).thenReturn(first, second, (Message) null);
+
+		// ... and a business partner that cannot be updated
+		final SAPODataException cause = new SAPODataException("mock exception");
+		doReturn(Collections.singletonMap("2", cause)).when(addressConfirmationServiceMock).confirmAddresses(any());
+
+		// When a batch is received
+		testee.receiveBatch(sessionMock, consumerMock);
+
+		// Then only the failed business partner is kept as a dead letter ...
+		final String eventId = eventId(second);
+		verify(deadLetterServiceMock).deadLetter(eq("2"), eq(eventId), eq(cause));
+		verify(deadLetterServiceMock, never()).deadLetter(eq("1"), any(), any());
+
+		// ... and the batch is acknowledged instead of redelivered
+		verify(second).acknowledge();
+		verify(sessionMock, never()).recover();
+	}
+
+	@Test
+	public void testDuplicateEventsAreDropped() throws JMSException {
+		// Given a batch that was handled
+		final Message first = message("1");
+		when(consumerMock.receive(anyLong())).thenReturn(first, (Message) null);
+		testee.receiveBatch(sessionMock, consumerMock);
+
+		// When the same message is received again
+		when(consumerMock.receive(anyLong())).thenReturn(first, (Message) null);
+		testee.receiveBatch(sessionMock, consumerMock);
+
+		// Then it is handled only once but acknowledged both times
+		verify(addressConfirmationServiceMock, times(1)).confirmAddresses(any());
+		verify(first, times(2)).acknowledge();
+	}
+
+	@Test
+	public void testNoBatchWithoutMessages() throws JMSException {
+		// When no message arrives
+		final int received = testee.receiveBatch(sessionMock, consumerMock);
+
+		// Then nothing is handled
+		assertThat("received messages", received, is(0));
+		verify(addressConfirmationServiceMock, never()).confirmAddresses(any());
+	}
+
+	private String eventId(Message message) throws JMSException {
+		return ((BusinessPartnerEvent) messageConverterMock.fromMessage(message)).getEventID();
+	}
+
+	private Message message(String businessPartnerKey) throws JMSException {
+		final Message message = mock(Message.class);
+		final BusinessPartnerEvent event = mock(BusinessPartnerEvent.class, Answers.RETURNS_DEEP_STUBS);
+		when(event.getPayload().getBusinessPartnerKey()).thenReturn(businessPartnerKey);
+		when(event.getEventID()).thenReturn("event of " + businessPartnerKey + " " + System.identityHashCode(message));
+		doReturn(event).when(messageConverterMock).fromMessage(message);
+		return message;
+	}
+
+}
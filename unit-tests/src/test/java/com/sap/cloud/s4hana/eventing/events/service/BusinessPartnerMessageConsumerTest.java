@@ -1,33 +1,81 @@
 package com.sap.cloud.s4hana.eventing.events.service;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Answers;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
 import com.sap.cloud.s4hana.eventing.events.model.BusinessPartnerEvent;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 public class BusinessPartnerMessageConsumerTest {
 	
 	@Rule 
 	public MockitoRule rule = MockitoJUnit.rule();
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	@Mock
 	AddressConfirmationService addressConfirmationServiceMock;
 	
+	@Mock
+	DeadLetterService deadLetterServiceMock;
+	
+	@Mock
+	EventCoalescer coalescerMock;
+	
 	@Mock(answer = Answers.RETURNS_DEEP_STUBS)
 	BusinessPartnerEvent eventMock;
 	
-	@InjectMocks
+	EventDeduplicator deduplicator;
+	
+	EventInbox inbox;
+	
 	BusinessPartnerMessageConsumer testee;
 	
+	@Before
+	public void setUp() {
+		inbox = newInbox();
+		
+		// events are handled synchronously when there are no workers and no time window
+		final KeyedEventDispatcher synchronousDispatcher = new KeyedEventDispatcher(BackpressureController.UNLIMITED, 0, 0, 0);
+		final EventCoalescer synchronousCoalescer = new EventCoalescer(synchronousDispatcher, 
+				new SimpleMeterRegistry(), 0, 0);
+		
+		final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		deduplicator = new EventDeduplicator((EventIdStore) null, meterRegistry, 100, 60000);
+		
+		testee = new BusinessPartnerMessageConsumer(addressConfirmationServiceMock, synchronousCoalescer, deduplicator,
+				deadLetterServiceMock, inbox);
+	}
+	
+	@After
+	public void tearDown() {
+		inbox.close();
+	}
+	
 	@Test
 	public void testOnEventThenConfirmationServiceIsCalledWithTheBusinessPartnerKey() {
 		// Given an event mock that returns the expected business partner key
@@ -40,5 +88,117 @@ public class BusinessPartnerMessageConsumerTest {
 		// Then the AddressConfirmationService is called with the expected business partner key
 		verify(addressConfirmationServiceMock).confirmAddress(expectedBusinessPartnerKey);
 	}
+	
+	@Test
+	public void testOnDuplicateEventThenConfirmationServiceIsCalledOnce() {
+		// Given an event mock with an event ID
+		final String expectedBusinessPartnerKey = "ExpectedBusinessPartnerKey";
+		when(eventMock.getPayload().getBusinessPartnerKey()).thenReturn(expectedBusinessPartnerKey);
+		when(eventMock.getEventID()).thenReturn("ABY+LHs5Hti56Xn6eGqGVw==");
+		
+		// When the event handler is called twice with the same event
+		testee.onEvent(eventMock);
+		testee.onEvent(eventMock);
+		
+		// Then the AddressConfirmationService is called only once
+		verify(addressConfirmationServiceMock, times(1)).confirmAddress(expectedBusinessPartnerKey);
+	}
+	
+	@Test
+	public void testOnEventThatFailsThenEventIsDeadLettered() {
+		// Given an event whose address cannot be confirmed
+		final String expectedBusinessPartnerKey = "ExpectedBusinessPartnerKey";
+		when(eventMock.getPayload().getBusinessPartnerKey()).thenReturn(expectedBusinessPartnerKey);
+		when(eventMock.getEventID()).thenReturn("ABY+LHs5Hti56Xn6eGqGVw==");
+		final SAPODataException exception = new SAPODataException("mock exception");
+		doThrow(exception).when(addressConfirmationServiceMock).confirmAddress(expectedBusinessPartnerKey);
+		
+		// When the event handler is called
+		testee.onEvent(eventMock);
+		
+		// Then the event is handed over to the DeadLetterService
+		verify(deadLetterServiceMock).deadLetter(expectedBusinessPartnerKey, "ABY+LHs5Hti56Xn6eGqGVw==", exception);
+	}
+	
+	@Test
+	public void testOnEventThatIsNotHandedOverThenRedeliveredEventIsHandled() {
+		// Given a coalescer that is shut down when the event is received the first time
+		final String expectedBusinessPartnerKey = "ExpectedBusinessPartnerKey";
+		when(eventMock.getPayload().getBusinessPartnerKey()).thenReturn(expectedBusinessPartnerKey);
+		when(eventMock.getEventID()).thenReturn("ABY+LHs5Hti56Xn6eGqGVw==");
+		doThrow(new IllegalStateException("Event dispatcher is shut down"))
+				.doAnswer(invocation -> {
+					invocation.<Runnable> getArgument(1).run();
+					return null;
+				})
+				.when(coalescerMock).submit(eq(expectedBusinessPartnerKey), any());
+		testee = new BusinessPartnerMessageConsumer(addressConfirmationServiceMock, coalescerMock, deduplicator,
+				deadLetterServiceMock, inbox);
+		
+		// When the event is received and redelivered because it was not acknowledged
+		try {
+			testee.onEvent(eventMock);
+		} catch (IllegalStateException e) {
+			// expected, the message is not acknowledged
+		}
+		assertThat("duplicate before it was handled", deduplicator.isDuplicate("ABY+LHs5Hti56Xn6eGqGVw=="), is(false));
+		testee.onEvent(eventMock);
+		
+		// Then the redelivered event is handled and marked as processed
+		verify(addressConfirmationServiceMock).confirmAddress(expectedBusinessPartnerKey);
+		assertThat("duplicate after it was handled", deduplicator.isDuplicate("ABY+LHs5Hti56Xn6eGqGVw=="), is(true));
+		assertThat("events in the inbox", inbox.size(), is(0));
+	}
+	
+	@Test
+	public void testOnEventThatWasNotHandledBeforeRestartThenEventIsHandledOnStart() {
+		// Given an acknowledged event that was still waiting in the coalescer when the application stopped
+		final String expectedBusinessPartnerKey = "ExpectedBusinessPartnerKey";
+		when(eventMock.getPayload().getBusinessPartnerKey()).thenReturn(expectedBusinessPartnerKey);
+		when(eventMock.getEventID()).thenReturn("ABY+LHs5Hti56Xn6eGqGVw==");
+		new BusinessPartnerMessageConsumer(addressConfirmationServiceMock, coalescerMock, deduplicator,
+				deadLetterServiceMock, inbox).onEvent(eventMock);
+		inbox.close();
+		
+		// When the application is started again
+		inbox = newInbox();
+		testee = new BusinessPartnerMessageConsumer(addressConfirmationServiceMock, new EventCoalescer(
+				new KeyedEventDispatcher(BackpressureController.UNLIMITED, 0, 0, 0), new SimpleMeterRegistry(), 0, 0),
+				deduplicator, deadLetterServiceMock, inbox);
+		testee.start();
+		
+		// Then the event is handled and removed from the inbox
+		verify(addressConfirmationServiceMock).confirmAddress(expectedBusinessPartnerKey);
+		assertThat("events in the inbox", inbox.size(), is(0));
+		assertThat("duplicate after it was handled", deduplicator.isDuplicate("ABY+LHs5Hti56Xn6eGqGVw=="), is(true));
+	}
+	
+	@Test
+	public void testOnCollapsedEventsThenAllEventsAreRemovedFromInbox() {
+		// Given two events about the same business partner, collapsed into the second one
+		final String expectedBusinessPartnerKey = "ExpectedBusinessPartnerKey";
+		when(eventMock.getPayload().getBusinessPartnerKey()).thenReturn(expectedBusinessPartnerKey);
+		final List<Runnable> tasks = new ArrayList<>();
+		doAnswer(invocation -> tasks.add(invocation.getArgument(1)))
+				.when(coalescerMock).submit(eq(expectedBusinessPartnerKey), any());
+		testee = new BusinessPartnerMessageConsumer(addressConfirmationServiceMock, coalescerMock, deduplicator,
+				deadLetterServiceMock, inbox);
+		when(eventMock.getEventID()).thenReturn("first event");
+		testee.onEvent(eventMock);
+		when(eventMock.getEventID()).thenReturn("second event");
+		testee.onEvent(eventMock);
+		
+		// When only the latest event is handled
+		tasks.get(1).run();
+		
+		// Then both events are removed from the inbox and marked as processed
+		assertThat("events in the inbox", inbox.size(), is(0));
+		assertThat("first event is duplicate", deduplicator.isDuplicate("first event"), is(true));
+		assertThat("second event is duplicate", deduplicator.isDuplicate("second event"), is(true));
+	}
+	
+	private EventInbox newInbox() {
+		return new EventInbox(folder.getRoot().getAbsolutePath(), DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES);
+	}
 
 }
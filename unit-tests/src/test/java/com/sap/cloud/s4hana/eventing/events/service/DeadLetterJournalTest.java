@@ -0,0 +1,161 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sap.cloud.s4hana.eventing.events.model.DeadLetter;
+
+public class DeadLetterJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	DeadLetterJournal testee;
+
+	@After
+	public void tearDown() {
+		if (testee != null) {
+			testee.close();
+		}
+	}
+
+	@Test
+	public void testDeadLettersAreKeptAfterRestart() {
+		// Given a journal with two dead letters, one of them resolved
+		testee = newJournal(DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES);
+		final DeadLetter first = testee.append("1", "event 1", "mock exception");
+		final DeadLetter second = testee.append("2", null, "mock exception");
+		testee.recordFailure(first.getId(), "another mock exception");
+		testee.resolve(second.getId());
+		testee.close();
+
+		// When the journal is read again
+		testee = newJournal(DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES);
+
+		// Then only the unresolved dead letter with its last attempt is kept
+		final List<DeadLetter> deadLetters = testee.find(null, null, null);
+		assertThat("business partners", businessPartnerKeys(deadLetters), contains("1"));
+		assertThat("event ID", deadLetters.get(0).getEventId(), is("event 1"));
+		assertThat("attempts", deadLetters.get(0).getAttempts(), is(2));
+		assertThat("cause", deadLetters.get(0).getCause(), is("another mock exception"));
+
+		// ... and new dead letters get new IDs
+		assertThat("new ID", testee.append("3", null, "mock exception").getId(), is(second.getId() + 1));
+	}
+
+	@Test
+	public void testFindByBusinessPartnerAndTime() throws InterruptedException {
+		// Given dead letters of two business partners at different times
+		testee = newJournal(DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES);
+		testee.append("1", null, "mock exception");
+		Thread.sleep(10);
+		final Instant between = Instant.now();
+		Thread.sleep(10);
+		testee.append("2", null, "mock exception");
+		testee.append("1", null, "mock exception");
+
+		// When / Then
+		assertThat("by business partner", testee.find("1", null, null).size(), is(2));
+		assertThat("from", businessPartnerKeys(testee.find(null, between, null)), contains("2", "1"));
+		assertThat("to", businessPartnerKeys(testee.find(null, null, between)), contains("1"));
+		assertThat("both", businessPartnerKeys(testee.find("2", between, null)), contains("2"));
+	}
+
+	@Test
+	public void testResolvedSegmentsAreDeleted() throws IOException {
+		// Given a journal with small segments
+		testee = newJournal(1);
+
+		// When many dead letters are written and resolved
+		for (int i = 0; i < 20; i++) {
+			testee.resolve(testee.append(String.valueOf(i), null, "mock exception").getId());
+		}
+
+		// Then the old segments are deleted
+		assertThat("segments", testee.segments(), is(1));
+		assertThat("files", segmentFiles(), is(1L));
+		assertThat("dead letters", testee.find(null, null, null), is(empty()));
+	}
+
+	@Test
+	public void testOldSegmentIsMovedWhenThereAreTooManySegments() throws IOException {
+		// Given a journal with small segments and an unresolved dead letter in the oldest segment
+		testee = newJournal(1);
+		final DeadLetter oldest = testee.append("oldest", null, "mock exception");
+
+		// When many more dead letters are written
+		for (int i = 0; i < 5 * DeadLetterJournal.MAX_SEGMENTS; i++) {
+			testee.append(String.valueOf(i), null, "mock exception");
+		}
+		testee.close();
+		testee = newJournal(1);
+
+		// Then the number of segments is limited and no dead letter is lost
+		assertThat("segments", segmentFiles(), is(lessThanOrEqualTo(DeadLetterJournal.MAX_SEGMENTS + 2L)));
+		assertThat("dead letters", testee.size(), is(5 * DeadLetterJournal.MAX_SEGMENTS + 1));
+		assertThat("oldest", testee.get(oldest.getId()).getBusinessPartnerKey(), is("oldest"));
+	}
+
+	@Test
+	public void testIncompleteRecordIsIgnored() throws IOException {
+		// Given a journal whose last record was not written completely
+		testee = newJournal(DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES);
+		testee.append("1", null, "mock exception");
+		testee.close();
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			final Path segment = files.findFirst().get();
+			Files.write(segment, new byte[] { 0, 0, 0, 42, 1, 2 }, StandardOpenOption.APPEND);
+		}
+
+		// When the journal is read again
+		testee = newJournal(DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES);
+
+		// Then the complete records are kept
+		assertThat("business partners", businessPartnerKeys(testee.find(null, null, null)), contains("1"));
+	}
+
+	@Test
+	public void testResolvedDeadLetterCannotFailAgain() {
+		// Given a resolved dead letter
+		testee = newJournal(DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES);
+		final DeadLetter deadLetter = testee.append("1", null, "mock exception");
+		testee.resolve(deadLetter.getId());
+
+		// When / Then
+		assertThat("failed", testee.recordFailure(deadLetter.getId(), "mock exception"), is(nullValue()));
+		assertThat("resolved again", testee.resolve(deadLetter.getId()), is(false));
+	}
+
+	private DeadLetterJournal newJournal(long maxSegmentBytes) {
+		return new DeadLetterJournal(folder.getRoot().getAbsolutePath(), maxSegmentBytes);
+	}
+
+	private long segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			return files.count();
+		}
+	}
+
+	private static List<String> businessPartnerKeys(List<DeadLetter> deadLetters) {
+		return deadLetters.stream().map(DeadLetter::getBusinessPartnerKey).collect(Collectors.toList());
+	}
+
+}
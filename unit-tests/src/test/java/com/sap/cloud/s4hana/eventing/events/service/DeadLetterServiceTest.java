@@ -0,0 +1,150 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class DeadLetterServiceTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Mock
+	AddressConfirmationService addressConfirmationServiceMock;
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	DeadLetterJournal journal;
+
+	DeadLetterService testee;
+
+	@Before
+	public void setUp() {
+		journal = new DeadLetterJournal(folder.getRoot().getAbsolutePath(), DeadLetterJournal.DEFAULT_MAX_SEGMENT_BYTES);
+	}
+
+	@After
+	public void tearDown() {
+		if (testee != null) {
+			testee.shutdown();
+		}
+		journal.close();
+	}
+
+	@Test
+	public void testFailedEventIsReplayedAfterBackoff() {
+		// Given a started service with a short backoff
+		testee = newService(3, 10);
+		testee.start();
+
+		// When an event failed
+		testee.deadLetter("1", "event 1", new SAPODataException("mock exception"));
+
+		// Then it is replayed and removed from the journal
+		verify(addressConfirmationServiceMock, timeout(5000)).confirmAddress("1");
+		verify(addressConfirmationServiceMock, after(100).times(1)).confirmAddress("1");
+		assertThat("dead letters", journal.size(), is(0));
+		assertThat("replayed", meterRegistry.counter(DeadLetterService.METRIC_REPLAYED).count(), is(1.0));
+	}
+
+	@Test
+	public void testEventIsReplayedOnlyOnRequestAfterMaxAttempts() {
+		// Given a started service and an event that keeps failing
+		doThrow(new SAPODataException("mock exception")).when(addressConfirmationServiceMock).confirmAddress("1");
+		testee = newService(3, 1);
+		testee.start();
+
+		// When the event failed
+		testee.deadLetter("1", "event 1", new SAPODataException("mock exception"));
+
+		// Then it is replayed until it failed 3 times but kept in the journal
+		verify(addressConfirmationServiceMock, timeout(5000).times(2)).confirmAddress("1");
+		verify(addressConfirmationServiceMock, after(200).times(2)).confirmAddress("1");
+		assertThat("attempts", journal.find("1", null, null).get(0).getAttempts(), is(3));
+
+		// ... and replayed again on request
+		doNothing().when(addressConfirmationServiceMock).confirmAddress("1");
+		assertThat("replayed", testee.replay("1", null, null), is(1));
+		verify(addressConfirmationServiceMock, timeout(5000).times(3)).confirmAddress("1");
+		verify(addressConfirmationServiceMock, after(100).times(3)).confirmAddress("1");
+		assertThat("dead letters", journal.size(), is(0));
+	}
+
+	@Test
+	public void testReplayOfOtherBusinessPartnerIsNotAffected() {
+		// Given dead letters of two business partners with a long backoff
+		testee = newService(3, 60000);
+		testee.start();
+		testee.deadLetter("1", null, new SAPODataException("mock exception"));
+		testee.deadLetter("2", null, new SAPODataException("mock exception"));
+
+		// When the dead letters of one business partner are replayed
+		final int replayed = testee.replay("1", null, null);
+
+		// Then only they are replayed now
+		assertThat("replayed", replayed, is(1));
+		verify(addressConfirmationServiceMock, timeout(5000)).confirmAddress("1");
+		verify(addressConfirmationServiceMock, after(100).never()).confirmAddress("2");
+	}
+
+	@Test
+	public void testDeadLettersAreReplayedAfterRestart() {
+		// Given a dead letter written before the restart
+		journal.append("1", "event 1", "mock exception");
+
+		// When the service is started
+		testee = newService(3, 1);
+		testee.start();
+
+		// Then the dead letter is replayed
+		verify(addressConfirmationServiceMock, timeout(5000)).confirmAddress("1");
+	}
+
+	@Test
+	public void testDiscardedDeadLetterIsNotReplayed() {
+		// Given a dead letter with a short backoff that is discarded
+		testee = newService(3, 200);
+		testee.deadLetter("1", null, new SAPODataException("mock exception"));
+		final long id = journal.find("1", null, null).get(0).getId();
+
+		// When it is discarded before the service is started
+		assertThat("discarded", testee.discard(id), is(true));
+		testee.start();
+
+		// Then it is not replayed
+		verify(addressConfirmationServiceMock, after(500).never()).confirmAddress("1");
+		verify(addressConfirmationServiceMock, times(0)).confirmAddress("1");
+	}
+
+	private DeadLetterService newService(int maxAttempts, long backoffMillis) {
+		// replayed synchronously in the scheduler thread
+		final KeyedEventDispatcher synchronousDispatcher = new KeyedEventDispatcher(BackpressureController.UNLIMITED, 0, 0, 0);
+		return new DeadLetterService(journal, addressConfirmationServiceMock, synchronousDispatcher, meterRegistry,
+				maxAttempts, backoffMillis, backoffMillis, 1000);
+	}
+
+}
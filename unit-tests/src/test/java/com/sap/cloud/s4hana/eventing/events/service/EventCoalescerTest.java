@@ -0,0 +1,102 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class EventCoalescerTest {
+	
+	final KeyedEventDispatcher synchronousDispatcher = new KeyedEventDispatcher(BackpressureController.UNLIMITED, 0, 0, 0);
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final List<String> handledEvents = Collections.synchronizedList(new ArrayList<>());
+	
+	EventCoalescer testee;
+	
+	@After
+	public void tearDown() {
+		testee.shutdown();
+	}
+	
+	@Test
+	public void testOnlyTheLatestEventPerKeyIsHandled() {
+		// Given a coalescer with a time window whose closing is scheduled by a mock
+		final ScheduledExecutorService schedulerMock = mock(ScheduledExecutorService.class);
+		testee = new EventCoalescer(synchronousDispatcher, meterRegistry, 200, 100, schedulerMock);
+		
+		// When several events for the same key arrive within the time window
+		testee.submit("First", () -> handledEvents.add("First-1"));
+		testee.submit("First", () -> handledEvents.add("First-2"));
+		testee.submit("Second", () -> handledEvents.add("Second-1"));
+		testee.submit("First", () -> handledEvents.add("First-3"));
+		
+		// Then nothing is handled until the window closes ...
+		final ArgumentCaptor<Runnable> windowClosings = ArgumentCaptor.forClass(Runnable.class);
+		verify(schedulerMock, times(2)).schedule(windowClosings.capture(), eq(200L), eq(TimeUnit.MILLISECONDS));
+		assertThat("handled events within the time window", handledEvents, is(empty()));
+		assertThat("pending events within the time window", meterRegistry.get(EventCoalescer.METRIC_PENDING).gauge().value(), is(2.0));
+		
+		// ... and only the latest event per key is handled when it closes
+		windowClosings.getAllValues().forEach(Runnable::run);
+		assertThat("handled events", handledEvents, containsInAnyOrder("First-3", "Second-1"));
+		assertThat("received events", meterRegistry.counter(EventCoalescer.METRIC_RECEIVED).count(), is(4.0));
+		assertThat("collapsed events", meterRegistry.counter(EventCoalescer.METRIC_COLLAPSED).count(), is(2.0));
+		assertThat("pending events", meterRegistry.get(EventCoalescer.METRIC_PENDING).gauge().value(), is(0.0));
+	}
+	
+	@Test
+	public void testWithoutTimeWindowEventsAreDispatchedImmediately() {
+		// Given a coalescer without a time window
+		testee = new EventCoalescer(synchronousDispatcher, meterRegistry, 0, 0);
+		
+		// When two events for the same key arrive
+		testee.submit("First", () -> handledEvents.add("First-1"));
+		testee.submit("First", () -> handledEvents.add("First-2"));
+		
+		// Then both are handled
+		assertThat("handled events", handledEvents, contains("First-1", "First-2"));
+		assertThat("collapsed events", meterRegistry.counter(EventCoalescer.METRIC_COLLAPSED).count(), is(0.0));
+	}
+	
+	@Test
+	public void testWhenTooManyEventsArePendingNewKeysAreDispatchedImmediately() {
+		// Given a coalescer that holds back only one key
+		testee = new EventCoalescer(synchronousDispatcher, meterRegistry, 60000, 1);
+		
+		// When events for two keys arrive
+		testee.submit("First", () -> handledEvents.add("First-1"));
+		testee.submit("Second", () -> handledEvents.add("Second-1"));
+		
+		// Then the event of the second key is handled immediately
+		assertThat("handled events", handledEvents, contains("Second-1"));
+	}
+	
+	@Test
+	public void testPendingEventsAreHandledOnShutdown() {
+		// Given a coalescer with a long time window
+		testee = new EventCoalescer(synchronousDispatcher, meterRegistry, 60000, 100);
+		testee.submit("First", () -> handledEvents.add("First-1"));
+		
+		// When it is shut down
+		testee.shutdown();
+		
+		// Then the pending event is handled
+		assertThat("handled events", handledEvents, contains("First-1"));
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class EventDeduplicatorTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	EventIdStore persistentStoreMock;
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	public void testProcessedEventIsDuplicate() {
+		// Given
+		final EventDeduplicator testee = new EventDeduplicator((EventIdStore) null, meterRegistry, 100, 60000);
+
+		// When
+		final boolean before = testee.isDuplicate("1");
+		testee.markProcessed("1");
+		final boolean after = testee.isDuplicate("1");
+
+		// Then
+		assertThat("before processing", before, is(false));
+		assertThat("after processing", after, is(true));
+		assertThat("checked", meterRegistry.counter(EventDeduplicator.METRIC_CHECKED).count(), is(2.0));
+		assertThat("duplicates", meterRegistry.counter(EventDeduplicator.METRIC_DUPLICATES).count(), is(1.0));
+	}
+
+	@Test
+	public void testEventWithoutIdIsNeverDuplicate() {
+		// Given
+		final EventDeduplicator testee = new EventDeduplicator((EventIdStore) null, meterRegistry, 100, 60000);
+
+		// When
+		testee.markProcessed(null);
+
+		// Then
+		assertThat("duplicate", testee.isDuplicate(null), is(false));
+	}
+
+	@Test
+	public void testDeduplicationCanBeDisabled() {
+		// Given
+		final EventDeduplicator testee = new EventDeduplicator((EventIdStore) null, meterRegistry, 0, 60000);
+
+		// When
+		testee.markProcessed("1");
+
+		// Then
+		assertThat("duplicate", testee.isDuplicate("1"), is(false));
+	}
+
+	@Test
+	public void testEventProcessedByAnotherInstanceIsDuplicate() {
+		// Given a persistent store that knows the event
+		doReturn(true).when(persistentStoreMock).contains("1");
+		final EventDeduplicator testee = new EventDeduplicator(persistentStoreMock, meterRegistry, 100, 60000);
+
+		// When
+		final boolean duplicate = testee.isDuplicate("1");
+
+		// Then
+		assertThat("duplicate", duplicate, is(true));
+	}
+
+	@Test
+	public void testProcessedEventIsStoredPersistently() {
+		// Given
+		final EventDeduplicator testee = new EventDeduplicator(persistentStoreMock, meterRegistry, 100, 60000);
+
+		// When
+		testee.markProcessed("1");
+
+		// Then
+		verify(persistentStoreMock).add("1");
+	}
+
+	@Test
+	public void testEventIsNotDuplicateWhenPersistentStoreFails() {
+		// Given a persistent store that is not available
+		doThrow(new IllegalStateException("mock exception")).when(persistentStoreMock).contains(any());
+		final EventDeduplicator testee = new EventDeduplicator(persistentStoreMock, meterRegistry, 100, 60000);
+
+		// When
+		final boolean duplicate = testee.isDuplicate("1");
+
+		// Then
+		assertThat("duplicate", duplicate, is(false));
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+public class InMemoryEventIdStoreTest {
+
+	@Test
+	public void testAddedEventIdIsContained() {
+		// Given
+		final InMemoryEventIdStore testee = new InMemoryEventIdStore(10, 60000);
+
+		// When
+		testee.add("1");
+
+		// Then
+		assertThat("added", testee.contains("1"), is(true));
+		assertThat("not added", testee.contains("2"), is(false));
+	}
+
+	@Test
+	public void testExpiredEventIdIsNotContained() throws InterruptedException {
+		// Given
+		final InMemoryEventIdStore testee = new InMemoryEventIdStore(10, 1);
+
+		// When
+		testee.add("1");
+		Thread.sleep(10);
+
+		// Then
+		assertThat("expired", testee.contains("1"), is(false));
+		assertThat("size", testee.size(), is(0));
+	}
+
+	@Test
+	public void testOldestEventIdIsRemovedWhenFull() {
+		// Given
+		final InMemoryEventIdStore testee = new InMemoryEventIdStore(2, 60000);
+
+		// When
+		testee.add("1");
+		testee.add("2");
+		testee.add("3");
+
+		// Then
+		assertThat("oldest", testee.contains("1"), is(false));
+		assertThat("second", testee.contains("2"), is(true));
+		assertThat("newest", testee.contains("3"), is(true));
+		assertThat("size", testee.size(), is(2));
+	}
+
+	@Test
+	public void testRenewedEventIdIsContainedAfterManyAdditions() {
+		// Given
+		final InMemoryEventIdStore testee = new InMemoryEventIdStore(2, 60000);
+		testee.add("1");
+
+		// When the same IDs are added again and again so that the filter is rebuilt several times
+		for (int i = 0; i < 10; i++) {
+			testee.add("2");
+		}
+
+		// Then the IDs kept in the set are still contained
+		assertThat("first", testee.contains("1"), is(true));
+		assertThat("renewed", testee.contains("2"), is(true));
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.UUID;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcEventIdStoreTest {
+
+	JdbcDataSource dataSource;
+
+	JdbcEventIdStore testee;
+
+	@Before
+	public void setUp() {
+		// every test uses its own in-memory database that is kept until the JVM exits
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+	}
+
+	@After
+	public void tearDown() {
+		if (testee != null) {
+			testee.shutdown();
+		}
+	}
+
+	@Test
+	public void testAddedEventIdIsContained() {
+		// Given
+		testee = new JdbcEventIdStore(dataSource, JdbcEventIdStore.DEFAULT_TABLE, 60000, 0);
+
+		// When
+		testee.add("1");
+
+		// Then
+		assertThat("added", testee.contains("1"), is(true));
+		assertThat("not added", testee.contains("2"), is(false));
+	}
+
+	@Test
+	public void testEventIdIsContainedAfterRestart() {
+		// Given a store with an event ID
+		testee = new JdbcEventIdStore(dataSource, JdbcEventIdStore.DEFAULT_TABLE, 60000, 0);
+		testee.add("1");
+		testee.shutdown();
+
+		// When the store is created again with the existing table
+		testee = new JdbcEventIdStore(dataSource, JdbcEventIdStore.DEFAULT_TABLE, 60000, 0);
+
+		// Then the event ID is still contained
+		assertThat("added before restart", testee.contains("1"), is(true));
+	}
+
+	@Test
+	public void testEventIdCanBeAddedTwice() {
+		// Given
+		testee = new JdbcEventIdStore(dataSource, JdbcEventIdStore.DEFAULT_TABLE, 60000, 0);
+
+		// When
+		testee.add("1");
+		testee.add("1");
+
+		// Then
+		assertThat("added", testee.contains("1"), is(true));
+	}
+
+	@Test
+	public void testExpiredEventIdsAreDeleted() throws InterruptedException {
+		// Given a store with an expired event ID
+		testee = new JdbcEventIdStore(dataSource, JdbcEventIdStore.DEFAULT_TABLE, 1, 0);
+		testee.add("1");
+		Thread.sleep(10);
+
+		// When
+		final int deleted = testee.deleteExpired();
+
+		// Then
+		assertThat("deleted", deleted, is(1));
+		assertThat("expired", testee.contains("1"), is(false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTableName() {
+		new JdbcEventIdStore(dataSource, "EVENTS; DROP TABLE X", 60000, 0);
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class KeyedEventDispatcherTest {
+
+	KeyedEventDispatcher testee;
+
+	@After
+	public void tearDown() {
+		if (testee != null) {
+			testee.shutdown();
+		}
+	}
+
+	@Test
+	public void testTasksWithTheSameKeyAreExecutedInOrder() {
+		// Given a dispatcher with several workers
+		testee = new KeyedEventDispatcher(BackpressureController.UNLIMITED, 4, 1000, 10);
+
+		// When many tasks for the same key are dispatched
+		final List<Integer> executionOrder = Collections.synchronizedList(new ArrayList<>());
+		for (int i = 0; i < 1000; i++) {
+			final int taskNumber = i;
+			testee.dispatch("BusinessPartnerKey", () -> executionOrder.add(taskNumber));
+		}
+		testee.shutdown();
+
+		// Then they are executed in the order they were dispatched
+		final List<Integer> expectedOrder = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			expectedOrder.add(i);
+		}
+		assertThat("execution order", executionOrder, is(expectedOrder));
+	}
+
+	@Test
+	public void testTasksWithDifferentKeysAreExecutedInParallel() throws InterruptedException {
+		// Given a dispatcher with two workers and two keys assigned to different workers
+		testee = new KeyedEventDispatcher(BackpressureController.UNLIMITED, 2, 10, 10);
+		final String firstKey = keyForWorker(0, 2);
+		final String secondKey = keyForWorker(1, 2);
+
+		// When the task of the first key waits for the task of the second key
+		final CountDownLatch secondTaskExecuted = new CountDownLatch(1);
+		final CountDownLatch firstTaskFinished = new CountDownLatch(1);
+		testee.dispatch(firstKey, () -> {
+			try {
+				if (secondTaskExecuted.await(5, TimeUnit.SECONDS)) {
+					firstTaskFinished.countDown();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		testee.dispatch(secondKey, secondTaskExecuted::countDown);
+
+		// Then the second task is not blocked by the first one
+		assertThat("first task finished", firstTaskFinished.await(5, TimeUnit.SECONDS), is(true));
+	}
+
+	@Test
+	public void testFailedTaskDoesNotStopTheWorker() {
+		// Given a dispatcher with one worker
+		testee = new KeyedEventDispatcher(BackpressureController.UNLIMITED, 1, 10, 10);
+
+		// When the first task fails
+		final List<String> executedTasks = Collections.synchronizedList(new ArrayList<>());
+		testee.dispatch("BusinessPartnerKey", () -> {
+			throw new IllegalStateException("Expected exception");
+		});
+		testee.dispatch("BusinessPartnerKey", () -> executedTasks.add("second"));
+		testee.shutdown();
+
+		// Then the next task is executed anyway
+		assertThat("executed tasks", executedTasks, contains("second"));
+	}
+
+	@Test
+	public void testWithoutWorkersTasksAreExecutedSynchronously() {
+		// Given a dispatcher without workers
+		testee = new KeyedEventDispatcher(BackpressureController.UNLIMITED, 0, 0, 0);
+
+		// When a task is dispatched
+		final List<Thread> executingThreads = new ArrayList<>();
+		testee.dispatch("BusinessPartnerKey", () -> executingThreads.add(Thread.currentThread()));
+
+		// Then it is executed in the calling thread
+		assertThat("executing thread", executingThreads, contains(Thread.currentThread()));
+	}
+
+	private static String keyForWorker(int workerIndex, int numberOfWorkers) {
+		for (int i = 0; ; i++) {
+			final String key = "BusinessPartner" + i;
+			if (KeyedEventDispatcher.workerIndex(key, numberOfWorkers) == workerIndex) {
+				return key;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.sap.cloud.s4hana.eventing.events.service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.service.AddressConfirmationService;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPODataException;
+import com.sap.cloud.s4hana.eventing.sendmail.MailDeliveredEvent;
+
+public class MailDeliveredListenerTest {
+
+	private static final String BUSINESS_PARTNER_KEY = "1003764";
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	AddressConfirmationService addressConfirmationServiceMock;
+
+	@Mock
+	DeadLetterService deadLetterServiceMock;
+
+	@Mock
+	KeyedEventDispatcher dispatcherMock;
+
+	final MailDeliveredEvent event = new MailDeliveredEvent(BUSINESS_PARTNER_KEY, "checksum");
+
+	MailDeliveredListener testee;
+
+	@Before
+	public void setUp() {
+		// tasks are executed synchronously when there are no workers
+		final KeyedEventDispatcher synchronousDispatcher = new KeyedEventDispatcher(BackpressureController.UNLIMITED, 0, 0, 0);
+		testee = new MailDeliveredListener(addressConfirmationServiceMock, synchronousDispatcher, deadLetterServiceMock);
+	}
+
+	@Test
+	public void testOnMailDeliveredThenConfirmationStateIsUpdated() {
+		// When
+		testee.onMailDelivered(event);
+
+		// Then
+		verify(addressConfirmationServiceMock).onMailDelivered(event);
+		verify(deadLetterServiceMock, never()).deadLetter(any(), any(), any());
+	}
+
+	@Test
+	public void testOnMailDeliveredWhenUpdateFailsThenBusinessPartnerIsDeadLettered() {
+		// Given
+		final SAPODataException exception = new SAPODataException("mock exception");
+		doThrow(exception).when(addressConfirmationServiceMock).onMailDelivered(event);
+
+		// When
+		testee.onMailDelivered(event);
+
+		// Then
+		verify(deadLetterServiceMock).deadLetter(BUSINESS_PARTNER_KEY, null, exception);
+	}
+
+	@Test
+	public void testOnMailDeliveredWhenDispatcherIsShutDownThenBusinessPartnerIsDeadLettered() {
+		// Given
+		testee = new MailDeliveredListener(addressConfirmationServiceMock, dispatcherMock, deadLetterServiceMock);
+		doThrow(new RejectedExecutionException("mock exception")).when(dispatcherMock).dispatch(eq(BUSINESS_PARTNER_KEY), any());
+
+		// When
+		testee.onMailDelivered(event);
+
+		// Then
+		verify(addressConfirmationServiceMock, never()).onMailDelivered(any());
+		verify(deadLetterServiceMock).deadLetter(eq(BUSINESS_PARTNER_KEY), isNull(), any(RejectedExecutionException.class));
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
+import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
+import com.sap.cloud.sdk.s4hana.datamodel.odata.namespaces.businesspartner.BusinessPartnerAddress;
+
+public class AddressChecksumTest {
+
+	@Test
+	public void testChecksumOfAddressAndItsDTOAreEqual() {
+		// Given an address and its DTO
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		final AddressDTO addressDTO = AddressDTO.of(address);
+
+		// When the checksums are calculated
+		final String addressChecksum = AddressChecksum.of(address);
+		final String addressDTOChecksum = AddressChecksum.of(addressDTO);
+
+		// Then they are equal ...
+		assertThat("checksum of the DTO", addressDTOChecksum, is(equalTo(addressChecksum)));
+
+		// ... versioned and as long as a legacy checksum
+		assertThat("checksum", addressChecksum, startsWith(AddressChecksum.VERSION_PREFIX));
+		assertThat("checksum length", addressChecksum.length(),
+				is(HashUtils.hash(addressDTO.toString()).length()));
+	}
+
+	@Test
+	public void testChecksumChangesWhenAFieldChanges() {
+		// Given two addresses that differ in the street name only
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		final BusinessPartnerAddress changedAddress = EntitySupplier.getDefaultAddress();
+		changedAddress.setStreetName(address.getStreetName() + "ß");
+
+		// When the checksums are calculated
+		final String checksum = AddressChecksum.of(address);
+		final String changedChecksum = AddressChecksum.of(changedAddress);
+
+		// Then they are different
+		assertThat("checksum of the changed address", changedChecksum, is(not(equalTo(checksum))));
+		assertThat("checksum is repeatable", AddressChecksum.of(address), is(equalTo(checksum)));
+	}
+
+	@Test
+	public void testChecksumChangesWhenAValueMovesToTheNextField() {
+		// Given two addresses with the same concatenated street prefix and street name
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		address.setStreetPrefixName("Haupt");
+		address.setStreetName("straße");
+		final BusinessPartnerAddress changedAddress = EntitySupplier.getDefaultAddress();
+		changedAddress.setStreetPrefixName("Hauptstraße");
+		changedAddress.setStreetName("");
+
+		// When the checksums are calculated, then they are different
+		assertThat("checksum of the changed address", AddressChecksum.of(changedAddress),
+				is(not(equalTo(AddressChecksum.of(address)))));
+	}
+
+	@Test
+	public void testMatches() {
+		// Given an address and a changed address
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		final BusinessPartnerAddress changedAddress = EntitySupplier.getDefaultAddress();
+		changedAddress.setCityName("Walldorf (Baden)");
+
+		// When the checksum of the address is checked, then only the address matches
+		final String checksum = AddressChecksum.of(address);
+		assertThat("address matches", AddressChecksum.matches(checksum, address), is(true));
+		assertThat("changed address matches", AddressChecksum.matches(checksum, changedAddress), is(false));
+	}
+
+	@Test
+	public void testMatchesLegacyChecksum() {
+		// Given a checksum calculated by a previous version
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		final String legacyChecksum = HashUtils.hash(AddressDTO.of(address).toString());
+
+		// When it is checked, then it still matches the address
+		assertThat("address matches", AddressChecksum.matches(legacyChecksum, address), is(true));
+
+		final BusinessPartnerAddress changedAddress = EntitySupplier.getDefaultAddress();
+		changedAddress.setPostalCode("69190");
+		assertThat("changed address matches", AddressChecksum.matches(legacyChecksum, changedAddress), is(false));
+	}
+
+	@Test
+	public void testEmptyChecksumDoesNotMatch() {
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+
+		assertThat("null matches", AddressChecksum.matches(null, address), is(false));
+		assertThat("empty matches", AddressChecksum.matches("", address), is(false));
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AddressConfirmationTokenCacheTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	TokenCipher cipherMock;
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	public void testTokenIsDecryptedOnlyOnce() {
+		// Given a cache and a valid token
+		final AddressConfirmationTokenCache testee = new AddressConfirmationTokenCache(cipherMock, meterRegistry, 10);
+		final AddressConfirmationToken token = validToken("1");
+		doReturn(token).when(cipherMock).decrypt("encrypted1");
+
+		// When the token is requested three times
+		for (int i = 0; i < 3; i++) {
+			assertThat("token", testee.getValidToken("encrypted1"), is(sameInstance(token)));
+		}
+
+		// Then it is decrypted only once
+		verify(cipherMock, times(1)).decrypt("encrypted1");
+		assertThat("hits", meterRegistry.counter(AddressConfirmationTokenCache.METRIC_HITS).count(), is(2.0));
+		assertThat("misses", meterRegistry.counter(AddressConfirmationTokenCache.METRIC_MISSES).count(), is(1.0));
+	}
+
+	@Test
+	public void testExpiredTokenIsNeitherCachedNorReturned() {
+		// Given a cache and an expired token
+		final AddressConfirmationTokenCache testee = new AddressConfirmationTokenCache(cipherMock, meterRegistry, 10);
+		doReturn(new AddressConfirmationToken("1", "1", System.currentTimeMillis() - 1))
+				.when(cipherMock).decrypt("expired");
+
+		// When the token is requested twice, then it is rejected every time
+		for (int i = 0; i < 2; i++) {
+			try {
+				testee.getValidToken("expired");
+			} catch (SAPSecurityException e) {
+				assertThat("message", e.getMessage(), startsWith("Token expired."));
+			}
+		}
+
+		verify(cipherMock, times(2)).decrypt("expired");
+		assertThat("size", testee.size(), is(0));
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testCachedTokenIsNotReturnedAfterItsExpiry() throws Exception {
+		// Given a cache with a token that expires soon
+		final AddressConfirmationTokenCache testee = new AddressConfirmationTokenCache(cipherMock, meterRegistry, 10);
+		doReturn(new AddressConfirmationToken("1", "1", System.currentTimeMillis() + 50))
+				.when(cipherMock).decrypt("expiresSoon");
+		testee.getValidToken("expiresSoon");
+
+		// When it is requested after its expiry
+		Thread.sleep(100);
+		testee.getValidToken("expiresSoon");
+
+		// Then an exception is thrown
+	}
+
+	@Test
+	public void testLeastRecentlyUsedTokenIsEvicted() {
+		// Given a cache for two tokens
+		final AddressConfirmationTokenCache testee = new AddressConfirmationTokenCache(cipherMock, meterRegistry, 2);
+		doReturn(validToken("1")).when(cipherMock).decrypt("encrypted1");
+		doReturn(validToken("2")).when(cipherMock).decrypt("encrypted2");
+		doReturn(validToken("3")).when(cipherMock).decrypt("encrypted3");
+
+		// When three tokens are requested and the first one is used again before the third one
+		testee.getValidToken("encrypted1");
+		testee.getValidToken("encrypted2");
+		testee.getValidToken("encrypted1");
+		testee.getValidToken("encrypted3");
+
+		// Then the second one is evicted
+		assertThat("size", testee.size(), is(2));
+		testee.getValidToken("encrypted1");
+		testee.getValidToken("encrypted2");
+		verify(cipherMock, times(1)).decrypt("encrypted1");
+		verify(cipherMock, times(2)).decrypt("encrypted2");
+	}
+
+	@Test
+	public void testCacheCanBeDisabled() {
+		// Given a cache with size 0
+		final AddressConfirmationTokenCache testee = new AddressConfirmationTokenCache(cipherMock, meterRegistry, 0);
+		doReturn(validToken("1")).when(cipherMock).decrypt("encrypted1");
+
+		// When a token is requested twice
+		testee.getValidToken("encrypted1");
+		testee.getValidToken("encrypted1");
+
+		// Then it is decrypted every time
+		verify(cipherMock, times(2)).decrypt("encrypted1");
+	}
+
+	private static AddressConfirmationToken validToken(String businessPartner) {
+		return new AddressConfirmationToken(businessPartner, "1", System.currentTimeMillis() + 60000);
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.junit.Test;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
+
+public class AddressConfirmationTokenCodecTest {
+
+	@Test
+	public void testTokenIsDecodedFromCompactLayout() {
+		// Given a token
+		final AddressConfirmationToken token = AddressConfirmationToken.of(EntitySupplier.getDefaultAddress(),
+				/* numberOfDaysValid = */ 1);
+
+		// When it is encoded and decoded
+		final byte[] encoded = AddressConfirmationTokenCodec.encode(token);
+		final AddressConfirmationToken decoded = AddressConfirmationTokenCodec.decode(encoded, false);
+
+		// Then it is written in the compact layout ...
+		assertThat("version", encoded[0], is(AddressConfirmationTokenCodec.VERSION));
+		assertThat("encoded length", encoded.length, is(lessThan(SerializationUtils.serialize(token).length / 2)));
+
+		// ... and decoded to the same token
+		assertThat("decoded token should match the original one", EqualsBuilder.reflectionEquals(decoded, token));
+	}
+
+	@Test
+	public void testNonAsciiKeysAreDecoded() {
+		// Given a token with non-ASCII keys
+		final AddressConfirmationToken token = new AddressConfirmationToken("Größe", "Ä1", 42L);
+
+		// When it is encoded and decoded, then it matches the original one
+		final AddressConfirmationToken decoded = AddressConfirmationTokenCodec
+				.decode(AddressConfirmationTokenCodec.encode(token), false);
+
+		assertThat("decoded token should match the original one", EqualsBuilder.reflectionEquals(decoded, token));
+	}
+
+	@Test
+	public void testSerializedTokenIsAcceptedDuringTransition() {
+		// Given a token that was serialized by a previous version
+		final AddressConfirmationToken token = AddressConfirmationToken.of(EntitySupplier.getDefaultAddress(),
+				/* numberOfDaysValid = */ 1);
+		final byte[] serialized = SerializationUtils.serialize(token);
+
+		// When it is decoded, then it matches the original one
+		final AddressConfirmationToken decoded = AddressConfirmationTokenCodec.decode(serialized, true);
+
+		assertThat("decoded token should match the original one", EqualsBuilder.reflectionEquals(decoded, token));
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testSerializedTokenIsRejectedAfterTransition() {
+		// Given a token that was serialized by a previous version
+		final byte[] serialized = SerializationUtils.serialize(AddressConfirmationToken
+				.of(EntitySupplier.getDefaultAddress(), /* numberOfDaysValid = */ 1));
+
+		// When it is decoded without accepting serialized tokens
+		AddressConfirmationTokenCodec.decode(serialized, false);
+
+		// Then an exception is thrown
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testTruncatedTokenIsRejected() {
+		// Given a truncated token
+		final byte[] encoded = AddressConfirmationTokenCodec.encode(AddressConfirmationToken
+				.of(EntitySupplier.getDefaultAddress(), /* numberOfDaysValid = */ 1));
+
+		// When it is decoded
+		AddressConfirmationTokenCodec.decode(Arrays.copyOf(encoded, encoded.length - 1), true);
+
+		// Then an exception is thrown
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testUnknownFormatIsRejected() {
+		AddressConfirmationTokenCodec.decode(new byte[] { 42, 0, 0 }, true);
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.util.Base64;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
+
+public class AesGcmCipherTest extends TokenCipherImplTester {
+
+	static final String KEY_1 = "1:" + Base64.getEncoder().encodeToString(new byte[32]);
+	static final String KEY_2 = "2:" + Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10,
+			11, 12, 13, 14, 15, 16 });
+
+	AesGcmCipher testee;
+
+	@Override
+	AesGcmCipher getTestee() {
+		return testee;
+	}
+
+	@Before
+	public void setUp() {
+		testee = newCipher(KEY_1);
+	}
+
+	@Test
+	public void testTokenOfPreviousKeyIsDecryptedAfterRotation() {
+		// Given a token encrypted before a new key was added
+		final String encryptedBeforeRotation = testee.encrypt("Hello World!");
+
+		// When the new key is added in front of the previous one
+		testee.onDestinationChanged(changed(KEY_2 + "," + KEY_1));
+
+		// Then the token encrypted before can still be decrypted ...
+		assertThat("decrypted message", testee.decrypt(encryptedBeforeRotation), is("Hello World!"));
+
+		// ... and new tokens are encrypted with the new key
+		final String encryptedAfterRotation = testee.encrypt("Hello Moon!");
+		assertThat("decrypted message", newCipher(KEY_2).decrypt(encryptedAfterRotation), is("Hello Moon!"));
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testTokenOfRemovedKeyIsRejected() {
+		// Given a token encrypted with a key that was removed afterwards
+		final String encrypted = testee.encrypt("Hello World!");
+		testee.onDestinationChanged(changed(KEY_2));
+
+		// When
+		testee.decrypt(encrypted);
+	}
+
+	@Test
+	public void testKeysAreKeptWhenChangedKeysAreInvalid() {
+		// Given
+		final String encrypted = testee.encrypt("Hello World!");
+
+		// When the destination contains a key that is too short
+		testee.onDestinationChanged(changed("3:" + Base64.getEncoder().encodeToString(new byte[8])));
+
+		// Then the current key is still used
+		assertThat("decrypted message", testee.decrypt(encrypted), is("Hello World!"));
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testDestinationWithoutKeysIsRejected() {
+		newCipher("");
+	}
+
+	@Test
+	public void testEncryptionIsRandomized() {
+		// When the same message is encrypted twice
+		final String first = testee.encrypt("Hello World!");
+		final String second = testee.encrypt("Hello World!");
+
+		// Then the tokens differ, because every token has its own initialization vector
+		assertThat("second token", second, is(not(first)));
+	}
+
+	private static AesGcmCipher newCipher(String keys) {
+		final NoRequestContextDestinationAccessor destinationAccessorMock = mock(NoRequestContextDestinationAccessor.class);
+		final GenericDestination destination = destination(keys);
+		doReturn(destination).when(destinationAccessorMock).getGenericDestination(AesGcmCipher.DEFAULT_DESTINATION_NAME);
+
+		return new AesGcmCipher(destinationAccessorMock, null, CloudRSACipher.DEFAULT_ACCEPT_SERIALIZED_TOKENS);
+	}
+
+	private static DestinationChangedEvent changed(String keys) {
+		return new DestinationChangedEvent(AesGcmCipher.DEFAULT_DESTINATION_NAME, null, destination(keys));
+	}
+
+	private static GenericDestination destination(String keys) {
+		final GenericDestination destinationMock = mock(GenericDestination.class);
+		doReturn(Collections.singletonMap(AesGcmCipher.KEYS_PROPERTY, keys)).when(destinationMock).getPropertiesByName();
+		return destinationMock;
+	}
+
+}
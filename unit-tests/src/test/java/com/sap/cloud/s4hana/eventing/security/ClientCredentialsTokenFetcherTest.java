@@ -0,0 +1,102 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+import com.sun.net.httpserver.HttpServer;
+
+public class ClientCredentialsTokenFetcherTest {
+
+	HttpServer tokenEndpoint;
+
+	final AtomicReference<String> requestBody = new AtomicReference<>();
+
+	int status = 200;
+	String responseBody = "{\"access_token\":\"jwt\",\"token_type\":\"bearer\",\"expires_in\":43199}";
+
+	@Before
+	public void setUp() throws IOException {
+		// local stub of the token endpoint of the XSUAA service
+		tokenEndpoint = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		tokenEndpoint.createContext(ClientCredentialsTokenFetcher.TOKEN_PATH, exchange -> {
+			try (InputStream in = exchange.getRequestBody()) {
+				requestBody.set(StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+			}
+
+			final byte[] response = responseBody.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(status, response.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(response);
+			}
+		});
+		tokenEndpoint.start();
+	}
+
+	@After
+	public void tearDown() {
+		tokenEndpoint.stop(0);
+	}
+
+	@Test
+	public void testTokenIsRequestedWithClientCredentials() {
+		// Given
+		final long now = System.currentTimeMillis();
+
+		// When
+		final XsuaaToken token = newTestee("client", "secret&1").fetchToken();
+
+		// Then
+		assertThat("request", requestBody.get(), allOf(
+				containsString("grant_type=client_credentials"),
+				containsString("client_id=client"),
+				containsString("client_secret=secret%261")));
+		assertThat("token", token.getEncoded(), is("jwt"));
+		assertThat("expires at", token.getExpiresAtMillis(),
+				is(both(greaterThanOrEqualTo(now + 43199000)).and(lessThan(now + 43199000 + 5000))));
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testErrorStatusIsRejected() {
+		// Given
+		status = 401;
+		responseBody = "{\"error\":\"unauthorized\"}";
+
+		// When
+		newTestee("client", "wrong").fetchToken();
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testResponseWithoutTokenIsRejected() {
+		// Given
+		responseBody = "{\"token_type\":\"bearer\"}";
+
+		// When
+		newTestee("client", "secret").fetchToken();
+	}
+
+	@Test(expected = SAPSecurityException.class)
+	public void testMissingCredentialsAreRejected() {
+		// When
+		newTestee("", "").fetchToken();
+	}
+
+	private ClientCredentialsTokenFetcher newTestee(String clientId, String clientSecret) {
+		final String tokenUrl = "http://localhost:" + tokenEndpoint.getAddress().getPort()
+				+ ClientCredentialsTokenFetcher.TOKEN_PATH;
+		return new ClientCredentialsTokenFetcher(tokenUrl, clientId, clientSecret, 5000);
+	}
+
+}
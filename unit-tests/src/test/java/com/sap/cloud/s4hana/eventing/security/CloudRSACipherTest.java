@@ -1,12 +1,26 @@
 package com.sap.cloud.s4hana.eventing.security;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
 import com.sap.cloud.s4hana.eventing.testutil.CloudFoundryEnvironmentMock;
+import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
 
-public class CloudRSACipherTest extends RSACipherImplTester {
+public class CloudRSACipherTest extends TokenCipherImplTester {
 	
 	@ClassRule
 	public static CloudFoundryEnvironmentMock environmentMock = new CloudFoundryEnvironmentMock();
@@ -20,7 +34,8 @@ public class CloudRSACipherTest extends RSACipherImplTester {
 	
 	@Before
 	public void setUp() {
-		testee = new CloudRSACipher(new NoRequestContextDestinationAccessor(), null);
+		testee = new CloudRSACipher(new NoRequestContextDestinationAccessor(), null,
+				CloudRSACipher.DEFAULT_ACCEPT_SERIALIZED_TOKENS, CloudRSACipher.DEFAULT_PREVIOUS_KEY_VALID_MILLIS);
 	}
 	
 	@Test
@@ -29,4 +44,78 @@ public class CloudRSACipherTest extends RSACipherImplTester {
 				CloudRSACipher.ALGORITHM);
 	}
 	
+	@Test
+	public void testTokenOfPreviousKeyPairIsDecryptedAfterRotation() throws NoSuchAlgorithmException {
+		// Given a token encrypted before the key pair in the destination was rotated
+		final KeyPair previous = newKeyPair();
+		final KeyPair rotated = newKeyPair();
+		final CloudRSACipher cipher = newCipher(previous, CloudRSACipher.DEFAULT_PREVIOUS_KEY_VALID_MILLIS);
+		final String encryptedBeforeRotation = cipher.encrypt("Hello World!");
+		
+		// When the destination changed
+		cipher.onDestinationChanged(changed(CloudRSACipher.DEFAULT_DESTINATION_NAME, rotated));
+		
+		// Then new tokens are encrypted with the rotated key pair ...
+		assertThat("public key", cipher.getPublicKey(), is(rotated.getPublic()));
+		assertThat("decrypted message", cipher.decrypt(cipher.encrypt("Hello Moon!")), is("Hello Moon!"));
+		
+		// ... and the token encrypted before can still be decrypted
+		assertThat("decrypted message", cipher.decrypt(encryptedBeforeRotation), is("Hello World!"));
+	}
+	
+	@Test(expected = SAPSecurityException.class)
+	public void testTokenOfPreviousKeyPairIsRejectedAfterTransition() throws NoSuchAlgorithmException {
+		// Given a cipher that does not accept the previous key pair after the rotation
+		final CloudRSACipher cipher = newCipher(newKeyPair(), 0);
+		final String encryptedBeforeRotation = cipher.encrypt("Hello World!");
+		
+		// When the destination changed
+		cipher.onDestinationChanged(changed(CloudRSACipher.DEFAULT_DESTINATION_NAME, newKeyPair()));
+		
+		// Then the token encrypted before is rejected
+		cipher.decrypt(encryptedBeforeRotation);
+	}
+	
+	@Test
+	public void testKeyPairIsKeptWhenOtherDestinationChanged() throws NoSuchAlgorithmException {
+		// Given
+		final KeyPair keyPair = newKeyPair();
+		final CloudRSACipher cipher = newCipher(keyPair, CloudRSACipher.DEFAULT_PREVIOUS_KEY_VALID_MILLIS);
+		
+		// When
+		cipher.onDestinationChanged(changed("MailSession", newKeyPair()));
+		
+		// Then
+		assertThat("public key", cipher.getPublicKey(), is(keyPair.getPublic()));
+	}
+	
+	private static CloudRSACipher newCipher(KeyPair keyPair, long previousKeyValidMillis) {
+		final NoRequestContextDestinationAccessor destinationAccessorMock = mock(NoRequestContextDestinationAccessor.class);
+		final GenericDestination destination = destination(keyPair);
+		doReturn(destination).when(destinationAccessorMock).getGenericDestination(CloudRSACipher.DEFAULT_DESTINATION_NAME);
+		
+		return new CloudRSACipher(destinationAccessorMock, null, CloudRSACipher.DEFAULT_ACCEPT_SERIALIZED_TOKENS,
+				previousKeyValidMillis);
+	}
+	
+	private static DestinationChangedEvent changed(String destinationName, KeyPair keyPair) {
+		return new DestinationChangedEvent(destinationName, null, destination(keyPair));
+	}
+	
+	private static GenericDestination destination(KeyPair keyPair) {
+		final Map<String, String> properties = new HashMap<>();
+		properties.put(CloudRSACipher.PRIVATE_KEY_PROPERTY, Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
+		properties.put(CloudRSACipher.PUBLIC_KEY_PROPERTY, Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+		
+		final GenericDestination destinationMock = mock(GenericDestination.class);
+		doReturn(properties).when(destinationMock).getPropertiesByName();
+		return destinationMock;
+	}
+	
+	private static KeyPair newKeyPair() throws NoSuchAlgorithmException {
+		final KeyPairGenerator generator = KeyPairGenerator.getInstance(CloudRSACipher.ALGORITHM);
+		generator.initialize(2048);
+		return generator.generateKeyPair();
+	}
+	
 }
@@ -0,0 +1,64 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPException;
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+public class ExecuteWithJwtTokenFromXsuaaAspectTest {
+
+	private static final String ERROR = "Expected error message";
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	XsuaaTokenManager tokenManagerMock;
+
+	@Mock
+	ProceedingJoinPoint methodMock;
+
+	@Mock
+	MethodSignature methodSignatureMock;
+
+	@Test
+	public void testTokenThatCannotBeFetchedIsWrappedWithErrorOfAnnotation() throws Throwable {
+		// Given an XSUAA service that is not available
+		final SAPSecurityException cause = new SAPSecurityException("Cannot get a token from the XSUAA service");
+		doThrow(cause).when(tokenManagerMock).getToken();
+		doReturn(methodSignatureMock).when(methodMock).getSignature();
+		doReturn(getClass().getDeclaredMethod("annotatedMethod")).when(methodSignatureMock).getMethod();
+
+		// When the annotated method is called
+		try {
+			new ExecuteWithJwtTokenFromXsuaaAspect(tokenManagerMock).executeWithJwtTokenFromXsuaa(methodMock);
+			fail("SAPException should have been thrown");
+		} catch (SAPException e) {
+			// Then the exception has the error message of the annotation instead of being reported as unauthorized
+			assertThat("message", e.getMessage(), is(ERROR));
+			assertThat("cause", e.getCause(), is(sameInstance(cause)));
+		}
+
+		verify(methodMock, never()).proceed();
+	}
+
+	@ExecuteWithJwtTokenFromXsuaa(error = ERROR)
+	void annotatedMethod() {
+		// annotation is read by the test
+	}
+
+}
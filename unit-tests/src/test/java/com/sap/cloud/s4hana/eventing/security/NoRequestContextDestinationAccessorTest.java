@@ -0,0 +1,164 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPException;
+import com.sap.cloud.sdk.cloudplatform.connectivity.DestinationType;
+import com.sap.cloud.sdk.cloudplatform.connectivity.GenericDestination;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class NoRequestContextDestinationAccessorTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Mock
+	DestinationLoader destinationLoaderMock;
+
+	@Mock
+	ApplicationEventPublisher eventPublisherMock;
+
+	@Mock
+	GenericDestination destinationMock;
+
+	@Mock
+	GenericDestination rotatedDestinationMock;
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	NoRequestContextDestinationAccessor testee;
+
+	@After
+	public void tearDown() {
+		testee.shutdown();
+	}
+
+	@Test
+	public void testDestinationIsReadOnlyOnce() {
+		// Given
+		testee = newTestee(NoRequestContextDestinationAccessor.DEFAULT_TTL_MILLIS);
+		doReturn(destinationMock).when(destinationLoaderMock).getGenericDestination("MailSession");
+
+		// When the destination is requested three times
+		for (int i = 0; i < 3; i++) {
+			assertThat("destination", testee.getGenericDestination("MailSession"), is(sameInstance(destinationMock)));
+		}
+
+		// Then it is read only once
+		verify(destinationLoaderMock, times(1)).getGenericDestination("MailSession");
+		assertThat("hits", meterRegistry.counter(NoRequestContextDestinationAccessor.METRIC_HITS).count(), is(2.0));
+		assertThat("misses", meterRegistry.counter(NoRequestContextDestinationAccessor.METRIC_MISSES).count(), is(1.0));
+	}
+
+	@Test
+	public void testDestinationIsReadEveryTimeWithoutTtl() {
+		// Given
+		testee = newTestee(0);
+		doReturn(destinationMock).when(destinationLoaderMock).getGenericDestination("MailSession");
+
+		// When
+		testee.getGenericDestination("MailSession");
+		testee.getGenericDestination("MailSession");
+
+		// Then
+		verify(destinationLoaderMock, times(2)).getGenericDestination("MailSession");
+	}
+
+	@Test
+	public void testChangedDestinationIsPublishedByBackgroundRefresh() {
+		// Given a cached destination whose password is rotated afterwards
+		testee = newTestee(100);
+		doReturn(DestinationType.MAIL).when(destinationMock).getDestinationType();
+		doReturn(Collections.singletonMap("mail.password", "old")).when(destinationMock).getPropertiesByName();
+		doReturn(DestinationType.MAIL).when(rotatedDestinationMock).getDestinationType();
+		doReturn(Collections.singletonMap("mail.password", "new")).when(rotatedDestinationMock).getPropertiesByName();
+		doReturn(destinationMock).doReturn(rotatedDestinationMock)
+				.when(destinationLoaderMock).getGenericDestination("MailSession");
+		testee.getGenericDestination("MailSession");
+
+		// When the destination is refreshed in the background
+		final ArgumentCaptor<DestinationChangedEvent> event = ArgumentCaptor.forClass(DestinationChangedEvent.class);
+		verify(eventPublisherMock, timeout(1000)).publishEvent(event.capture());
+
+		// Then the change is published and the new destination is returned
+		assertThat("name", event.getValue().getDestinationName(), is("MailSession"));
+		assertThat("previous", event.getValue().getPrevious(), is(sameInstance(destinationMock)));
+		assertThat("current", event.getValue().getCurrent(), is(sameInstance(rotatedDestinationMock)));
+		assertThat("destination", testee.getGenericDestination("MailSession"), is(sameInstance(rotatedDestinationMock)));
+	}
+
+	@Test
+	public void testUnchangedDestinationIsNotPublished() {
+		// Given
+		testee = newTestee(NoRequestContextDestinationAccessor.DEFAULT_TTL_MILLIS);
+		doReturn(DestinationType.MAIL).when(destinationMock).getDestinationType();
+		doReturn(Collections.singletonMap("mail.password", "old")).when(destinationMock).getPropertiesByName();
+		doReturn(destinationMock).when(destinationLoaderMock).getGenericDestination("MailSession");
+		testee.getGenericDestination("MailSession");
+
+		// When
+		testee.refresh("MailSession");
+
+		// Then
+		verify(eventPublisherMock, never()).publishEvent(any(Object.class));
+	}
+
+	@Test
+	public void testLastKnownDestinationIsReturnedWhenRefreshFails() {
+		// Given a cached destination and a failing destination service
+		testee = newTestee(NoRequestContextDestinationAccessor.DEFAULT_TTL_MILLIS);
+		doReturn(destinationMock).doThrow(new SAPException("Destination service is not available"))
+				.when(destinationLoaderMock).getGenericDestination("MailSession");
+		testee.getGenericDestination("MailSession");
+
+		// When the background refresh fails
+		testee.refreshAll();
+
+		// Then the cached destination is still returned
+		assertThat("failures", meterRegistry.counter(NoRequestContextDestinationAccessor.METRIC_REFRESH_FAILURES).count(),
+				is(1.0));
+		assertThat("destination", testee.getGenericDestination("MailSession"), is(sameInstance(destinationMock)));
+	}
+
+	@Test(expected = SAPException.class)
+	public void testFailedReadIsNotCached() {
+		// Given
+		testee = newTestee(NoRequestContextDestinationAccessor.DEFAULT_TTL_MILLIS);
+		doThrow(new SAPException("Destination service is not available")).doReturn(destinationMock)
+				.when(destinationLoaderMock).getGenericDestination("MailSession");
+
+		// When the first read fails, then it is read again by the next call
+		try {
+			testee.getGenericDestination("MailSession");
+		} finally {
+			assertThat("destination", testee.getGenericDestination("MailSession"), is(sameInstance(destinationMock)));
+		}
+	}
+
+	private NoRequestContextDestinationAccessor newTestee(long ttlMillis) {
+		return new NoRequestContextDestinationAccessor(destinationLoaderMock, eventPublisherMock, meterRegistry,
+				ttlMillis);
+	}
+
+}
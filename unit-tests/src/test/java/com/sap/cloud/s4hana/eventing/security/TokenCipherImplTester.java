@@ -0,0 +1,95 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.junit.Test;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
+
+/**
+ * @see AesGcmCipherTest
+ * @see CloudRSACipherTest
+ */
+public abstract class TokenCipherImplTester {
+	
+	abstract TokenCipher getTestee();
+	
+	@Test
+	public void testDecryptedStringMatchesEncryptedString() {
+		final String message = "Hello World!";
+		
+		final String encrypted = getTestee().encrypt(message);
+		final String decrypted = getTestee().decrypt(encrypted);
+		
+		assertThat("encrypted string should match original message after decryption", 
+				decrypted, is(message));
+	}
+	
+	@Test
+	public void testDecryptedTesteeMatchesEncryptedTestee() {
+		final AddressConfirmationToken token = AddressConfirmationToken.of(EntitySupplier.getDefaultAddress(),
+				/* numberOfDaysValid = */ 1);
+		
+		final String encrypted = getTestee().encrypt(token);
+		final AddressConfirmationToken decrypted = getTestee().decrypt(encrypted);
+		
+		assertThat("encrypted token should match original one after decryption", 
+				EqualsBuilder.reflectionEquals(decrypted, token));
+	}
+	
+	@Test
+	public void testConcurrentEncryptionAndDecryption() throws Exception {
+		// Given a testee that is used by many threads at the same time
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final List<Future<String>> results = new ArrayList<>();
+		
+		try {
+			// When every thread encrypts and decrypts its own message
+			for (int i = 0; i < 200; i++) {
+				final String message = "Message " + i;
+				results.add(executor.submit(() -> getTestee().decrypt(getTestee().encrypt(message))));
+			}
+			
+			// Then every message is decrypted correctly
+			for (int i = 0; i < results.size(); i++) {
+				assertThat("decrypted message", results.get(i).get(), is("Message " + i));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testDecryptionWorksAfterFailedDecryption() {
+		// Given an encrypted message that was tampered with
+		final String encrypted = getTestee().encrypt("Hello World!");
+		final char[] tampered = encrypted.toCharArray();
+		tampered[tampered.length / 2] = tampered[tampered.length / 2] == 'A' ? 'B' : 'A';
+		
+		// When it is decrypted
+		try {
+			getTestee().decrypt(new String(tampered));
+		} catch (SAPSecurityException e) {
+			// expected
+		}
+		
+		// Then the next decryption in the same thread still works
+		assertThat("decrypted message", getTestee().decrypt(encrypted), is("Hello World!"));
+	}
+	
+	public void assertKeyPair(KeyPair keyPair, String algorithm) {
+		assertThat("Private key's algorithm", keyPair.getPrivate().getAlgorithm(), is(algorithm));
+		assertThat("Public key's algorithm", keyPair.getPublic().getAlgorithm(), is(algorithm));
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.sap.cloud.s4hana.eventing.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPSecurityException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class XsuaaTokenManagerTest {
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	final AtomicInteger fetches = new AtomicInteger();
+
+	XsuaaTokenManager testee;
+
+	@After
+	public void tearDown() {
+		if (testee != null) {
+			testee.shutdown();
+		}
+	}
+
+	@Test
+	public void testTokenIsFetchedOnlyOnce() {
+		// Given a token that is valid for an hour
+		testee = new XsuaaTokenManager(() -> newToken(3600000), meterRegistry, 300000, 30000);
+
+		// When the token is requested three times
+		for (int i = 0; i < 3; i++) {
+			assertThat("token", testee.getToken(), is("jwt1"));
+		}
+
+		// Then it is fetched only once
+		assertThat("fetches", fetches.get(), is(1));
+		assertThat("hits", meterRegistry.counter(XsuaaTokenManager.METRIC_CACHE_HITS).count(), is(2.0));
+		assertThat("misses", meterRegistry.counter(XsuaaTokenManager.METRIC_CACHE_MISSES).count(), is(1.0));
+		assertThat("fetch latency", meterRegistry.timer(XsuaaTokenManager.METRIC_FETCH).count(), is(1L));
+	}
+
+	@Test
+	public void testTokenIsFetchedAgainShortlyBeforeItExpires() {
+		// Given a token that expires within the minimum validity
+		testee = new XsuaaTokenManager(() -> newToken(20000), meterRegistry, 300000, 30000);
+
+		// When the token is requested twice
+		testee.getToken();
+		final String token = testee.getToken();
+
+		// Then a new token is fetched
+		assertThat("token", token, is("jwt2"));
+		assertThat("misses", meterRegistry.counter(XsuaaTokenManager.METRIC_CACHE_MISSES).count(), is(2.0));
+	}
+
+	@Test
+	public void testConcurrentCallersShareOneFetch() throws Exception {
+		// Given a slow token endpoint
+		final CountDownLatch fetchStarted = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		testee = new XsuaaTokenManager(() -> {
+			fetchStarted.countDown();
+			await(release);
+			return newToken(3600000);
+		}, meterRegistry, 300000, 30000);
+
+		// When several threads request a token while it is requested
+		final CountDownLatch callersStarted = new CountDownLatch(4);
+		final ExecutorService callers = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<String>> tokens = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				tokens.add(callers.submit(() -> {
+					callersStarted.countDown();
+					return testee.getToken();
+				}));
+			}
+			assertThat("fetch started", fetchStarted.await(5, TimeUnit.SECONDS), is(true));
+			assertThat("callers started", callersStarted.await(5, TimeUnit.SECONDS), is(true));
+			release.countDown();
+
+			// Then all of them get the token of a single request
+			for (Future<String> token : tokens) {
+				assertThat("token", token.get(5, TimeUnit.SECONDS), is("jwt1"));
+			}
+			assertThat("fetches", fetches.get(), is(1));
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testTokenIsRefreshedInTheBackground() {
+		// Given a token that is valid for an hour and refreshed 5 minutes before it expires
+		final ScheduledExecutorService schedulerMock = mock(ScheduledExecutorService.class);
+		testee = new XsuaaTokenManager(() -> newToken(3600000), meterRegistry, 300000, 30000, schedulerMock);
+		assertThat("token", testee.getToken(), is("jwt1"));
+
+		// When the refresh time has passed
+		final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+		verify(schedulerMock).schedule(refresh.capture(), longThat(delay -> delay > 3000000 && delay <= 3300000),
+				eq(TimeUnit.MILLISECONDS));
+		refresh.getValue().run();
+
+		// Then a new token is handed out without waiting for a request
+		assertThat("fetches", fetches.get(), is(2));
+		assertThat("token", testee.getToken(), is("jwt2"));
+		assertThat("misses", meterRegistry.counter(XsuaaTokenManager.METRIC_CACHE_MISSES).count(), is(1.0));
+	}
+
+	@Test
+	public void testFailedFetchIsPropagatedAndRetried() {
+		// Given a token endpoint that fails once
+		testee = new XsuaaTokenManager(() -> {
+			if (fetches.incrementAndGet() == 1) {
+				throw new SAPSecurityException("XSUAA is not available");
+			}
+			return new XsuaaToken("jwt" + fetches.get(), System.currentTimeMillis() + 3600000);
+		}, meterRegistry, 300000, 30000);
+
+		// When a token is requested, then the failure is propagated
+		try {
+			testee.getToken();
+			fail("SAPSecurityException expected");
+		} catch (SAPSecurityException e) {
+			assertThat("message", e.getMessage(), is("XSUAA is not available"));
+		}
+
+		// And the next call fetches the token again
+		assertThat("token", testee.getToken(), is("jwt2"));
+	}
+
+	private XsuaaToken newToken(long validityMillis) {
+		return new XsuaaToken("jwt" + fetches.incrementAndGet(), System.currentTimeMillis() + validityMillis);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
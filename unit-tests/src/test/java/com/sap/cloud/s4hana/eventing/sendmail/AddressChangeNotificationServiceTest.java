@@ -7,6 +7,7 @@ import static org.mockito.Mockito.*;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.mail.Address;
@@ -15,17 +16,22 @@ import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.Transport;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import com.sap.cloud.s4hana.eventing.businesspartner.model.AddressDTO;
+import com.sap.cloud.s4hana.eventing.security.AddressChecksum;
 import com.sap.cloud.s4hana.eventing.sendmail.AddressChangeNotification;
 import com.sap.cloud.s4hana.eventing.sendmail.AddressChangeNotificationService;
 import com.sap.cloud.s4hana.eventing.testutil.EntitySupplier;
@@ -45,12 +51,21 @@ public class AddressChangeNotificationServiceTest {
 	@Mock
 	private Session sessionMock;
 	
+	@Mock
+	private MailSessionHolder mailSessionHolderMock;
+	
 	@Mock
 	private Configuration templateConfigurationMock;
 	
 	@Mock
 	private Template templateMock;
 	
+	@Spy
+	private SmtpTransportPool transportPool = new SmtpTransportPool(1, 60000, 5000, 100);
+	
+	@Mock
+	private MailOutbox mailOutboxMock;
+	
 	@InjectMocks
 	public AddressChangeNotificationService notificationService;
 	
@@ -63,6 +78,19 @@ public class AddressChangeNotificationServiceTest {
 	@Captor
 	private ArgumentCaptor<Address[]> recipientsCaptor;
 	
+	@Captor
+	private ArgumentCaptor<Map<String, String>> addressChecksumsCaptor;
+	
+	@Before
+	public void setUp() {
+		lenient().when(mailSessionHolderMock.getSession()).thenReturn(sessionMock);
+	}
+	
+	@After
+	public void tearDown() {
+		notificationService.flushDigests();
+	}
+	
 	@Test
 	public void testSendMail() throws MessagingException, IOException, TemplateException {
 		// Given business partner, address, contact and other necessary data
@@ -100,6 +128,10 @@ public class AddressChangeNotificationServiceTest {
 		// ... and the email is sent ...
 		verify(transportMock).sendMessage(emailCaptor.capture(), recipientsCaptor.capture());
 		
+		// ... over a connection that is returned to the pool ...
+		verify(transportPool).release(any());
+		verify(transportMock, never()).close();
+		
 		// ... to the same recipients that are specified in the email ...  
 		final Message email = emailCaptor.getValue();
 		final Address[] recipients = recipientsCaptor.getValue();		
@@ -114,4 +146,99 @@ public class AddressChangeNotificationServiceTest {
 	    assertTrue(true);
 	}
 	
+	@Test
+	public void testQueueMail() throws MessagingException, IOException, TemplateException {
+		// Given a notification ...
+		final BusinessPartner bp = EntitySupplier.getDefaultBusinessPartner();
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		final AddressChangeNotification notification = AddressChangeNotification.of(
+				bp, 
+				AddressDTO.of(address), 
+				EntitySupplier.getDefaultContactBusinessPartner(),
+				EntitySupplier.getDefaultContact().getEmailAddress(),
+				"http://example.com/confirmAddress");
+		
+		// ... and mocked Template configuration ...
+		when(templateConfigurationMock.getTemplate(AddressChangeNotificationService.TEMPLATE_FILE))
+			.thenReturn(templateMock);
+		
+		// ... and an outbox that accepts the email
+		when(mailOutboxMock.enqueue(any(), any(), any())).thenReturn(true);
+		
+		// When notification email is queued
+		final boolean queued = notificationService.queueMail(notification);
+		
+		// Then the email is queued with the business partner and the checksum of its address ...
+		assertThat("queued", queued, is(true));
+		verify(mailOutboxMock).enqueue(eq(bp.getBusinessPartner()), eq(AddressChecksum.of(address)), any(Email.class));
+		
+		// ... and not sent directly
+		verify(sessionMock, never()).getTransport();
+	}
+	
+	@Test
+	public void testNotificationsToTheSameEmailAddressAreQueuedInOneDigest() throws IOException, TemplateException {
+		// Given notifications about two business partners to the same contact ...
+		final BusinessPartner bp = EntitySupplier.getDefaultBusinessPartner();
+		final BusinessPartner otherBp = EntitySupplier.getDefaultBusinessPartner();
+		otherBp.setBusinessPartner("0000000001");
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		
+		// ... and a digest for at most two business partners ...
+		notificationService.setDigest(60000, 2);
+		
+		// ... and mocked Template configuration ...
+		when(templateConfigurationMock.getTemplate(AddressChangeNotificationService.DIGEST_TEMPLATE_FILE))
+			.thenReturn(templateMock);
+		
+		// ... and an outbox that accepts the email
+		when(mailOutboxMock.enqueue(anyMap(), any())).thenReturn(true);
+		
+		// When both notifications are queued
+		notificationService.queueMail(notification(bp, address));
+		notificationService.queueMail(notification(otherBp, address));
+		
+		// Then one digest email is queued ...
+		verify(mailOutboxMock).enqueue(addressChecksumsCaptor.capture(), any());
+		verify(templateMock).process(ArgumentMatchers.isA(AddressChangeDigest.class), any());
+		verify(templateConfigurationMock, never()).getTemplate(AddressChangeNotificationService.TEMPLATE_FILE);
+		
+		// ... with both business partners and the checksums of their addresses
+		assertThat("business partners in the digest", addressChecksumsCaptor.getValue().keySet(), 
+				contains(bp.getBusinessPartner(), otherBp.getBusinessPartner()));
+		assertThat("address checksums in the digest", addressChecksumsCaptor.getValue().values(), 
+				everyItem(is(AddressChecksum.of(address))));
+	}
+	
+	@Test
+	public void testDigestWithOneBusinessPartnerIsQueuedAsSingleEmailAfterWindow() throws IOException {
+		// Given two notifications about the same business partner ...
+		final BusinessPartner bp = EntitySupplier.getDefaultBusinessPartner();
+		final BusinessPartnerAddress address = EntitySupplier.getDefaultAddress();
+		
+		// ... and a digest window of 50 ms ...
+		notificationService.setDigest(50, 50);
+		
+		// ... and mocked Template configuration
+		when(templateConfigurationMock.getTemplate(AddressChangeNotificationService.TEMPLATE_FILE))
+			.thenReturn(templateMock);
+		
+		// When both notifications are queued
+		notificationService.queueMail(notification(bp, address));
+		notificationService.queueMail(notification(bp, address));
+		
+		// Then one regular email is queued after the window
+		verify(mailOutboxMock, timeout(5000)).enqueue(eq(bp.getBusinessPartner()), eq(AddressChecksum.of(address)), any(Email.class));
+		verify(mailOutboxMock, never()).enqueue(anyMap(), any());
+	}
+	
+	private static AddressChangeNotification notification(BusinessPartner bp, BusinessPartnerAddress address) {
+		return AddressChangeNotification.of(
+				bp, 
+				AddressDTO.of(address), 
+				EntitySupplier.getDefaultContactBusinessPartner(),
+				EntitySupplier.getDefaultContact().getEmailAddress(),
+				"http://example.com/confirmAddress");
+	}
+	
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.sap.cloud.s4hana.eventing.sendmail;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
@@ -169,6 +170,44 @@ public class EmailTest {
 		verify(sessionMock).getTransport();
 		verify(transportMock).connect();
 		verify(transportMock).sendMessage(testee.getMimeMessage(), testee.getMimeMessage().getAllRecipients());
+		verify(transportMock).close();
+	}
+	
+	@Mock
+	Transport secondTransportMock;
+	
+	@Test
+	public void testSendWithPoolReconnectsWhenReusedConnectionFails() throws MessagingException {
+		// Given a pool with a connection that was already used ...
+		final SmtpTransportPool pool = new SmtpTransportPool(1, 60000, 5000, 100);
+		doReturn(transportMock, secondTransportMock).when(sessionMock).getTransport();
+		givenTesteeEmail();
+		testee.send(pool);
+		
+		// ... and was closed by the server in the meantime
+		doThrow(new MessagingException("connection closed")).when(transportMock).sendMessage(any(), any());
+		
+		// When the email is sent again
+		testee.send(pool);
+		
+		// Then the failed connection is closed and the email is sent over a new one
+		verify(transportMock).close();
+		verify(secondTransportMock).connect();
+		verify(secondTransportMock).sendMessage(testee.getMimeMessage(), testee.getMimeMessage().getAllRecipients());
+	}
+	
+	@Test(expected = SAPMailingException.class)
+	public void testSendWithPoolDoesNotRetryNewConnection() throws MessagingException {
+		// Given a pool and a new connection that fails
+		final SmtpTransportPool pool = new SmtpTransportPool(1, 60000, 5000, 100);
+		doReturn(transportMock).when(sessionMock).getTransport();
+		doThrow(new MessagingException("mock exception")).when(transportMock).sendMessage(any(), any());
+		givenTesteeEmail();
+		
+		// When the email is sent
+		testee.send(pool);
+		
+		// Then the exception is thrown without a retry
 	}
 	
 	@Test
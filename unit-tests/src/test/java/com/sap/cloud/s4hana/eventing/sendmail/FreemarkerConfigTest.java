@@ -0,0 +1,70 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.core.ParseException;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class FreemarkerConfigTest {
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	@Test
+	public void testTemplatesAreLoadedOnce() throws IOException {
+		// Given
+		final Configuration cfg = new FreemarkerConfig().getConfiguration();
+
+		// When
+		final Template first = cfg.getTemplate(AddressChangeNotificationService.TEMPLATE_FILE);
+		final Template second = cfg.getTemplate(AddressChangeNotificationService.TEMPLATE_FILE);
+
+		// Then
+		assertThat("same template", second, is(sameInstance(first)));
+		assertThat("template update delay", cfg.getTemplateUpdateDelayMilliseconds(), is(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testBrokenTemplateFailsLoading() {
+		// Given
+		final StringTemplateLoader templateLoader = new StringTemplateLoader();
+		templateLoader.putTemplate("broken.ftlh", "<p>${notification.contact</p>");
+
+		final Configuration cfg = new Configuration(Configuration.VERSION_2_3_27);
+		cfg.setTemplateLoader(templateLoader);
+
+		// Then
+		expectedException.expect(SAPMailingException.class);
+		expectedException.expectMessage("broken.ftlh");
+		expectedException.expectCause(isA(ParseException.class));
+
+		// When
+		FreemarkerConfig.loadTemplates(cfg, "broken.ftlh");
+	}
+
+	@Test
+	public void testMissingTemplateFailsLoading() {
+		// Given
+		final Configuration cfg = new Configuration(Configuration.VERSION_2_3_27);
+		cfg.setTemplateLoader(new StringTemplateLoader());
+
+		// Then
+		expectedException.expect(SAPMailingException.class);
+		expectedException.expectMessage("missing.ftlh");
+
+		// When
+		FreemarkerConfig.loadTemplates(cfg, "missing.ftlh");
+	}
+
+}
@@ -0,0 +1,337 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.sap.cloud.s4hana.eventing.events.service.BackpressureController;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MailOutboxTest {
+
+	@Rule
+	public MockitoRule rule = MockitoJUnit.rule();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Mock
+	Session sessionMock;
+
+	@Mock
+	Transport transportMock;
+
+	@Mock
+	ApplicationEventPublisher eventPublisherMock;
+
+	@Captor
+	ArgumentCaptor<Object> eventCaptor;
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	MailOutbox testee;
+
+	@Before
+	public void setUp() throws MessagingException {
+		doReturn(new Properties()).when(sessionMock).getProperties();
+		doReturn("sender@example.com").when(sessionMock).getProperty(Email.DESTINATION_PROPERTY_FROM);
+		doReturn(transportMock).when(sessionMock).getTransport();
+	}
+
+	@After
+	public void tearDown() {
+		if (testee != null) {
+			testee.shutdown();
+		}
+	}
+
+	@Test
+	public void testQueuedEmailIsSentAndReported() throws MessagingException {
+		// Given a started outbox
+		testee = newOutbox(3);
+		testee.start();
+
+		// When an email is queued
+		final boolean queued = testee.enqueue("1", "checksum", email());
+
+		// Then it is sent ...
+		assertThat("queued", queued, is(true));
+		verify(transportMock, timeout(5000)).sendMessage(any(), any());
+
+		// ... and reported as delivered
+		verify(eventPublisherMock, timeout(5000)).publishEvent(eventCaptor.capture());
+		final MailDeliveredEvent event = (MailDeliveredEvent) eventCaptor.getValue();
+		assertThat("business partner", event.getBusinessPartner(), is("1"));
+		assertThat("address checksum", event.getAddressChecksum(), is("checksum"));
+		assertThat("size", testee.size(), is(0));
+	}
+
+	@Test
+	public void testEmailIsQueuedOnlyOnce() {
+		// Given an outbox that is not started yet
+		testee = newOutbox(3);
+
+		// When the same email is queued twice and another one once
+		final boolean first = testee.enqueue("1", "checksum", email());
+		final boolean second = testee.enqueue("1", "checksum", email());
+		final boolean other = testee.enqueue("1", "other checksum", email());
+
+		// Then only the first one and the other one are queued
+		assertThat("first", first, is(true));
+		assertThat("second", second, is(false));
+		assertThat("other", other, is(true));
+		assertThat("size", testee.size(), is(2));
+	}
+
+	@Test
+	public void testEmailAboutSeveralBusinessPartnersIsReportedForEach() throws MessagingException {
+		// Given an outbox with a queued email about business partner 1
+		testee = newOutbox(3);
+		testee.enqueue("1", "checksum", email());
+
+		// When an email about business partners 1 and 2 is queued
+		final Map<String, String> addressChecksums = new LinkedHashMap<>();
+		addressChecksums.put("1", "checksum");
+		addressChecksums.put("2", "checksum");
+		final boolean queued = testee.enqueue(addressChecksums, email());
+		testee.start();
+
+		// Then it is queued only for business partner 2 ...
+		assertThat("queued", queued, is(true));
+		assertThat("size", testee.size(), is(2));
+
+		// ... and both emails are sent and reported once for each business partner
+		verify(eventPublisherMock, timeout(5000).times(2)).publishEvent(eventCaptor.capture());
+		assertThat("business partners", eventCaptor.getAllValues(), containsInAnyOrder(
+				hasProperty("businessPartner", is("1")),
+				hasProperty("businessPartner", is("2"))));
+		verify(transportMock, times(2)).sendMessage(any(), any());
+	}
+
+	@Test
+	public void testRecentlySentEmailIsNotQueuedAgainButReportedAgain() throws MessagingException {
+		// Given an outbox that sent an email
+		testee = newOutbox(3);
+		testee.start();
+		testee.enqueue("1", "checksum", email());
+		verify(eventPublisherMock, timeout(5000)).publishEvent(any(MailDeliveredEvent.class));
+
+		// When the same email is queued again
+		final boolean queued = testee.enqueue("1", "checksum", email());
+
+		// Then it is not sent again but reported as delivered again
+		assertThat("queued", queued, is(false));
+		verify(eventPublisherMock, timeout(5000).times(2)).publishEvent(any(MailDeliveredEvent.class));
+		verify(transportMock, times(1)).sendMessage(any(), any());
+	}
+
+	@Test
+	public void testQueuedEmailsAreSentAfterRestart() throws MessagingException {
+		// Given an outbox with a queued email that was stopped before the email was sent
+		testee = newOutbox(3);
+		testee.enqueue("1", "checksum", email());
+		testee.shutdown();
+
+		// When the outbox is started again
+		testee = newOutbox(3);
+		testee.start();
+
+		// Then the email is sent
+		verify(transportMock, timeout(5000)).sendMessage(any(), any());
+		verify(eventPublisherMock, timeout(5000)).publishEvent(any(MailDeliveredEvent.class));
+	}
+
+	@Test
+	public void testSentEmailsAreNotSentAfterRestart() throws MessagingException {
+		// Given an outbox that sent an email
+		testee = newOutbox(3);
+		testee.start();
+		testee.enqueue("1", "checksum", email());
+		verify(eventPublisherMock, timeout(5000)).publishEvent(any(MailDeliveredEvent.class));
+		testee.shutdown();
+
+		// When the outbox is started again
+		testee = newOutbox(3);
+		testee.start();
+
+		// Then nothing is sent again ...
+		assertThat("size", testee.size(), is(0));
+		verify(transportMock, after(200).times(1)).sendMessage(any(), any());
+
+		// ... and the email is still known as recently sent
+		assertThat("queued", testee.enqueue("1", "checksum", email()), is(false));
+	}
+
+	@Test
+	public void testIncompleteRecordIsIgnoredAfterRestart() throws IOException, MessagingException {
+		// Given an outbox log with a queued email and an incomplete record at its end
+		testee = newOutbox(3);
+		testee.enqueue("1", "checksum", email());
+		testee.shutdown();
+		Files.write(folder.getRoot().toPath().resolve(MailOutbox.LOG_FILE_NAME), new byte[] { 0, 0, 1 },
+				StandardOpenOption.APPEND);
+
+		// When the outbox is started again
+		testee = newOutbox(3);
+		testee.start();
+
+		// Then the queued email is sent
+		verify(transportMock, timeout(5000)).sendMessage(any(), any());
+	}
+
+	@Test
+	public void testEmailIsSentAgainAfterFailure() throws MessagingException {
+		// Given an email server that fails once
+		doThrow(new MessagingException("mock exception")).doNothing().when(transportMock).sendMessage(any(), any());
+
+		// When an email is queued
+		testee = newOutbox(3);
+		testee.start();
+		testee.enqueue("1", "checksum", email());
+
+		// Then it is sent again and reported as delivered
+		verify(eventPublisherMock, timeout(5000)).publishEvent(any(MailDeliveredEvent.class));
+		verify(transportMock, times(2)).sendMessage(any(), any());
+	}
+
+	@Test
+	public void testEmailIsSentAgainAfterUnexpectedException() throws MessagingException {
+		// Given an email server that fails once with an unchecked exception
+		doThrow(new IllegalStateException("mock exception")).doNothing().when(transportMock).sendMessage(any(), any());
+
+		// When an email is queued
+		testee = newOutbox(3);
+		testee.start();
+		testee.enqueue("1", "checksum", email());
+
+		// Then it is sent again and reported as delivered
+		verify(eventPublisherMock, timeout(5000)).publishEvent(any(MailDeliveredEvent.class));
+		verify(transportMock, times(2)).sendMessage(any(), any());
+		assertThat("size", testee.size(), is(0));
+	}
+
+	@Test
+	public void testEmailIsDroppedAfterMaxAttempts() throws MessagingException {
+		// Given an email server that always fails
+		doThrow(new MessagingException("mock exception")).when(transportMock).sendMessage(any(), any());
+
+		// When an email is queued
+		testee = newOutbox(2);
+		testee.start();
+		testee.enqueue("1", "checksum", email());
+
+		// Then it is sent only twice and never reported as delivered
+		verify(transportMock, timeout(5000).times(2)).sendMessage(any(), any());
+		verify(transportMock, after(200).times(2)).sendMessage(any(), any());
+		verify(eventPublisherMock, never()).publishEvent(any(Object.class));
+		assertThat("size", testee.size(), is(0));
+	}
+
+	@Test
+	public void testEmailWithRejectedRecipientIsNotSentAgain() throws MessagingException {
+		// Given an email server that rejects the recipient
+		doThrow(new SendFailedException("mock exception", null, new Address[0], new Address[0],
+				new Address[] { new InternetAddress("recipient@example.com") }))
+				.when(transportMock).sendMessage(any(), any());
+
+		// When an email is queued
+		testee = newOutbox(3);
+		testee.start();
+		testee.enqueue("1", "checksum", email());
+
+		// Then it is sent only once
+		verify(transportMock, timeout(5000)).sendMessage(any(), any());
+		verify(transportMock, after(200).times(1)).sendMessage(any(), any());
+		verify(eventPublisherMock, never()).publishEvent(any(Object.class));
+	}
+
+	@Test
+	public void testTemporarilyRefusedEmailIsSentAgain() throws MessagingException {
+		// Given an email server that refuses the email once because of its quota
+		doThrow(new SendFailedException("mock exception", null, new Address[0],
+				new Address[] { new InternetAddress("recipient@example.com") }, new Address[0]))
+				.doNothing()
+				.when(transportMock).sendMessage(any(), any());
+
+		// When an email is queued
+		testee = newOutbox(3);
+		testee.start();
+		testee.enqueue("1", "checksum", email());
+
+		// Then it is sent again and reported as delivered
+		verify(eventPublisherMock, timeout(5000)).publishEvent(any(MailDeliveredEvent.class));
+		verify(transportMock, times(2)).sendMessage(any(), any());
+	}
+
+	@Test
+	public void testEmailsExceedingTheQuotaAreDeferred() throws MessagingException {
+		// Given an outbox that may send one email per minute
+		testee = newOutbox(3, new MailRateLimiter(meterRegistry, 1, 0, 0));
+		testee.start();
+
+		// When two emails are queued
+		testee.enqueue("1", "checksum", email());
+		testee.enqueue("2", "checksum", email());
+
+		// Then only the first one is sent ...
+		verify(transportMock, timeout(5000)).sendMessage(any(), any());
+		verify(transportMock, after(200).times(1)).sendMessage(any(), any());
+
+		// ... and the second one is deferred and still queued
+		assertThat("deferred", meterRegistry.counter(MailRateLimiter.METRIC_DEFERRED).count(), is(1.0));
+		assertThat("queued emails", meterRegistry.get(MailOutbox.METRIC_SIZE).gauge().value(), is(1.0));
+	}
+
+	private MailOutbox newOutbox(int maxAttempts) {
+		return newOutbox(maxAttempts, new MailRateLimiter(meterRegistry, 0, 0, 0));
+	}
+
+	private MailOutbox newOutbox(int maxAttempts, MailRateLimiter rateLimiter) {
+		return new MailOutbox(MailSessionHolder.of(sessionMock), SmtpTransportPool.NO_POOLING, rateLimiter,
+				BackpressureController.UNLIMITED, eventPublisherMock,
+				meterRegistry, folder.getRoot().getAbsolutePath(), 1, 10, maxAttempts, 10, 100, 60000);
+	}
+
+	private Email email() {
+		return Email.forSession(sessionMock)
+				.to("recipient@example.com")
+				.subject("Address of business partner was changed")
+				.body("<p>Please confirm the address</p>");
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MailRateLimiterTest {
+
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	public void testEmailsAreAllowedUpToTheQuota() {
+		// Given a limiter that allows two emails per minute
+		final MailRateLimiter testee = new MailRateLimiter(meterRegistry, 2, 0, 0);
+
+		// When three emails are reserved
+		final long first = testee.reserve("example.com");
+		final long second = testee.reserve("example.com");
+		final long third = testee.reserve("example.com");
+
+		// Then the first two are allowed and the third one has to wait for about half a minute
+		assertThat("first", first, is(0L));
+		assertThat("second", second, is(0L));
+		assertThat("third", third, is(both(greaterThan(29000L)).and(lessThanOrEqualTo(30001L))));
+		assertThat("deferred", meterRegistry.counter(MailRateLimiter.METRIC_DEFERRED).count(), is(1.0));
+	}
+
+	@Test
+	public void testDomainsHaveTheirOwnQuota() {
+		// Given a limiter that allows one email per domain per minute
+		final MailRateLimiter testee = new MailRateLimiter(meterRegistry, 0, 0, 1);
+
+		// When emails to two domains are reserved twice
+		final long first = testee.reserve("example.com");
+		final long other = testee.reserve("example.org");
+		final long second = testee.reserve("example.com");
+
+		// Then only the second email to the same domain has to wait
+		assertThat("first", first, is(0L));
+		assertThat("other domain", other, is(0L));
+		assertThat("second", second, is(greaterThan(0L)));
+	}
+
+	@Test
+	public void testNoTokenIsTakenWhenAnyQuotaIsExceeded() {
+		// Given a limiter that allows two emails per minute but only one per domain
+		final MailRateLimiter testee = new MailRateLimiter(meterRegistry, 2, 0, 1);
+		testee.reserve("example.com");
+
+		// When a second email to the same domain is deferred
+		testee.reserve("example.com");
+
+		// Then the token for all emails is still available for another domain
+		assertThat("other domain", testee.reserve("example.org"), is(0L));
+	}
+
+	@Test
+	public void testQuotaExceededEmptiesTheBuckets() {
+		// Given a limiter that allows 100 emails per minute and 1000 per day
+		final MailRateLimiter testee = new MailRateLimiter(meterRegistry, 100, 1000, 0);
+
+		// When the email server reports that a quota was exceeded
+		testee.onQuotaExceeded("example.com");
+
+		// Then the next email has to wait ...
+		assertThat("next", testee.reserve("example.com"), is(greaterThan(0L)));
+
+		// ... and the buckets are empty
+		assertThat("tokens per minute", meterRegistry.get(MailRateLimiter.METRIC_TOKENS).tag("bucket", "perMinute").gauge().value(),
+				is(lessThan(1.0)));
+		assertThat("tokens per day", meterRegistry.get(MailRateLimiter.METRIC_TOKENS).tag("bucket", "perDay").gauge().value(),
+				is(lessThan(1.0)));
+	}
+
+	@Test
+	public void testNoLimits() {
+		// Given a limiter without limits
+		final MailRateLimiter testee = new MailRateLimiter(meterRegistry, 0, 0, 0);
+
+		// When many emails are reserved, then all of them are allowed
+		for (int i = 0; i < 1000; i++) {
+			assertThat("email " + i, testee.reserve("example.com"), is(0L));
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Properties;
+
+import javax.mail.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.sap.cloud.s4hana.eventing.core.exceptions.SAPMailingException;
+import com.sap.cloud.s4hana.eventing.security.DestinationChangedEvent;
+import com.sap.cloud.s4hana.eventing.security.NoRequestContextDestinationAccessor;
+
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class MailSessionHolderTest {
+
+	@Mock
+	SessionConfig sessionConfigMock;
+
+	@Mock
+	NoRequestContextDestinationAccessor destinationAccessorMock;
+
+	@Mock
+	SmtpTransportPool transportPoolMock;
+
+	@Mock
+	Session sessionMock;
+
+	@Mock
+	Session rotatedSessionMock;
+
+	MailSessionHolder testee;
+
+	@Before
+	public void setUp() {
+		doReturn(SessionConfig.DEFAULT_MAIL_DESTINATION_NAME).when(sessionConfigMock).getDestinationName();
+		testee = new MailSessionHolder(sessionMock, sessionConfigMock, destinationAccessorMock, transportPoolMock);
+	}
+
+	@Test
+	public void testSessionIsReplacedWhenDestinationChanged() {
+		// Given a destination whose password was rotated
+		doReturn(properties("old")).when(sessionMock).getProperties();
+		doReturn(properties("new")).when(rotatedSessionMock).getProperties();
+		doReturn(rotatedSessionMock).when(sessionConfigMock).getSession(SessionConfig.DEFAULT_MAIL_DESTINATION_NAME);
+
+		// When
+		testee.onDestinationChanged(changed(SessionConfig.DEFAULT_MAIL_DESTINATION_NAME));
+
+		// Then the new session is used and the connections of the previous one are closed
+		assertThat("session", testee.getSession(), is(sameInstance(rotatedSessionMock)));
+		verify(transportPoolMock).retire(sessionMock);
+	}
+
+	@Test
+	public void testSessionIsKeptWhenOtherDestinationChanged() {
+		// When
+		testee.onDestinationChanged(changed("RSAKeyPairStorage"));
+
+		// Then
+		assertThat("session", testee.getSession(), is(sameInstance(sessionMock)));
+		verify(sessionConfigMock, never()).getSession("RSAKeyPairStorage");
+	}
+
+	@Test
+	public void testSessionIsKeptWhenChangedDestinationIsInvalid() {
+		// Given a destination that is not of type MAIL anymore
+		doThrow(new SAPMailingException("Destination MailSession is not of type MAIL."))
+				.when(sessionConfigMock).getSession(SessionConfig.DEFAULT_MAIL_DESTINATION_NAME);
+
+		// When
+		testee.onDestinationChanged(changed(SessionConfig.DEFAULT_MAIL_DESTINATION_NAME));
+
+		// Then
+		assertThat("session", testee.getSession(), is(sameInstance(sessionMock)));
+		verify(transportPoolMock, never()).retire(sessionMock);
+	}
+
+	@Test
+	public void testReloadKeepsSessionOfUnchangedDestination() {
+		// Given a destination that did not change
+		doReturn(properties("old")).when(sessionMock).getProperties();
+		doReturn(properties("old")).when(rotatedSessionMock).getProperties();
+		doReturn(rotatedSessionMock).when(sessionConfigMock).getSession(SessionConfig.DEFAULT_MAIL_DESTINATION_NAME);
+
+		// When
+		testee.reload();
+
+		// Then the destination is read again, but the session is kept
+		verify(destinationAccessorMock).refresh(SessionConfig.DEFAULT_MAIL_DESTINATION_NAME);
+		assertThat("session", testee.getSession(), is(sameInstance(sessionMock)));
+		verify(transportPoolMock, never()).retire(sessionMock);
+	}
+
+	private static DestinationChangedEvent changed(String destinationName) {
+		return new DestinationChangedEvent(destinationName, null, null);
+	}
+
+	private static Properties properties(String password) {
+		final Properties properties = new Properties();
+		properties.setProperty(SessionConfig.PROPERTY_MAIL_PASSWORD, password);
+		return properties;
+	}
+
+}
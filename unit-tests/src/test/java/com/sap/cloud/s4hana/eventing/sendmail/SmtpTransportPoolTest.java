@@ -0,0 +1,226 @@
+package com.sap.cloud.s4hana.eventing.sendmail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.sap.cloud.s4hana.eventing.sendmail.SmtpTransportPool.PooledTransport;
+
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class SmtpTransportPoolTest {
+
+	@Mock
+	Session sessionMock;
+
+	@Mock
+	Transport transportMock;
+
+	@Mock
+	Transport secondTransportMock;
+
+	@Test
+	public void testReleasedTransportIsReused() throws MessagingException {
+		// Given a pool
+		final SmtpTransportPool testee = new SmtpTransportPool(1, 60000, 5000, 100);
+		doReturn(transportMock).when(sessionMock).getTransport();
+
+		// When a transport is borrowed, released and borrowed again
+		final PooledTransport first = testee.borrow(sessionMock);
+		first.sendMessage(null, null);
+		testee.release(first);
+		final PooledTransport second = testee.borrow(sessionMock);
+
+		// Then it is the same connected transport
+		assertThat("second transport", second, is(sameInstance(first)));
+		assertThat("second transport is reused", second.isReused(), is(false));
+		verify(transportMock, times(1)).connect();
+		verify(transportMock, never()).close();
+	}
+
+	@Test
+	public void testTransportIsClosedAfterMaxMessages() throws MessagingException {
+		// Given a pool that allows two messages per connection
+		final SmtpTransportPool testee = new SmtpTransportPool(1, 60000, 5000, 2);
+		doReturn(transportMock, secondTransportMock).when(sessionMock).getTransport();
+
+		// When two messages are sent over the same transport
+		for (int i = 0; i < 2; i++) {
+			final PooledTransport transport = testee.borrow(sessionMock);
+			transport.sendMessage(null, null);
+			testee.release(transport);
+		}
+
+		// Then it is closed ...
+		verify(transportMock).close();
+
+		// ... and a new one is connected for the next message
+		testee.borrow(sessionMock);
+		verify(secondTransportMock).connect();
+	}
+
+	@Test
+	public void testIdleTransportIsCheckedBeforeItIsBorrowed() throws MessagingException {
+		// Given a pool that checks every idle transport ...
+		final SmtpTransportPool testee = new SmtpTransportPool(1, 60000, -1, 100);
+		doReturn(transportMock, secondTransportMock).when(sessionMock).getTransport();
+
+		// ... and an idle transport that was closed by the server
+		testee.release(testee.borrow(sessionMock));
+		doReturn(false).when(transportMock).isConnected();
+
+		// When a transport is borrowed
+		testee.borrow(sessionMock);
+
+		// Then the idle transport is closed and a new one is connected
+		verify(transportMock).isConnected();
+		verify(transportMock).close();
+		verify(secondTransportMock).connect();
+	}
+
+	@Test
+	public void testTransportIdleForTooLongIsClosed() throws MessagingException {
+		// Given a pool that closes transports that are idle for longer than 0 ms ...
+		final SmtpTransportPool testee = new SmtpTransportPool(1, -1, 5000, 100);
+		doReturn(transportMock, secondTransportMock).when(sessionMock).getTransport();
+
+		// ... and an idle transport
+		testee.release(testee.borrow(sessionMock));
+
+		// When a transport is borrowed
+		testee.borrow(sessionMock);
+
+		// Then the idle transport is closed without a check and a new one is connected
+		verify(transportMock, never()).isConnected();
+		verify(transportMock).close();
+		verify(secondTransportMock).connect();
+	}
+
+	@Test
+	public void testExpiredIdleTransportIsClosedWithoutBorrowing() throws MessagingException {
+		// Given a pool that closes transports that are idle for longer than 0 ms ...
+		final SmtpTransportPool testee = new SmtpTransportPool(1, -1, 5000, 100);
+		doReturn(transportMock).when(sessionMock).getTransport();
+
+		// ... and an idle transport
+		testee.release(testee.borrow(sessionMock));
+
+		// When the expired transports are evicted
+		testee.evictExpired();
+
+		// Then the idle transport is closed although no email was sent
+		verify(transportMock).close();
+	}
+
+	@Test
+	public void testIdleTransportIsKeptByEvictionUntilItExpires() throws MessagingException {
+		// Given a pool with an idle transport
+		final SmtpTransportPool testee = new SmtpTransportPool(1, 60000, 5000, 100);
+		doReturn(transportMock).when(sessionMock).getTransport();
+		testee.release(testee.borrow(sessionMock));
+
+		// When the expired transports are evicted
+		testee.evictExpired();
+
+		// Then the idle transport is kept and reused
+		verify(transportMock, never()).close();
+		testee.borrow(sessionMock);
+		verify(sessionMock, times(1)).getTransport();
+		testee.shutdown();
+	}
+
+	@Test
+	public void testWithoutPoolingTransportIsClosedWhenReleased() throws MessagingException {
+		// Given a pool that does not pool transports
+		final SmtpTransportPool testee = SmtpTransportPool.NO_POOLING;
+		doReturn(transportMock).when(sessionMock).getTransport();
+
+		// When a transport is borrowed and released
+		testee.release(testee.borrow(sessionMock));
+
+		// Then it is closed
+		verify(transportMock).connect();
+		verify(transportMock).close();
+	}
+
+	@Test
+	public void testIdleTransportsAreClosedOnShutdown() throws MessagingException {
+		// Given a pool with an idle transport
+		final SmtpTransportPool testee = new SmtpTransportPool(1, 60000, 5000, 100);
+		doReturn(transportMock).when(sessionMock).getTransport();
+		testee.release(testee.borrow(sessionMock));
+
+		// When the pool is shut down
+		testee.shutdown();
+
+		// Then the transport is closed
+		verify(transportMock).close();
+	}
+
+	@Test
+	public void testTransportsOfRetiredSessionAreClosed() throws MessagingException {
+		// Given a pool with an idle transport and a borrowed transport of a session
+		final SmtpTransportPool testee = new SmtpTransportPool(2, 60000, 5000, 100);
+		doReturn(transportMock, secondTransportMock).when(sessionMock).getTransport();
+		final PooledTransport borrowed = testee.borrow(sessionMock);
+		testee.release(testee.borrow(sessionMock));
+
+		// When the session is retired, then its idle transport is closed ...
+		testee.retire(sessionMock);
+		verify(secondTransportMock).close();
+
+		// ... and the borrowed transport is closed when it is returned
+		testee.release(borrowed);
+		verify(transportMock).close();
+	}
+
+	@Test
+	public void testTransportOfRetiredSessionIsNotPooled() throws MessagingException {
+		// Given a retired session with a borrowed transport
+		final SmtpTransportPool testee = new SmtpTransportPool(2, 60000, 5000, 100);
+		doReturn(transportMock, secondTransportMock).when(sessionMock).getTransport();
+		final PooledTransport borrowed = testee.borrow(sessionMock);
+		testee.retire(sessionMock);
+
+		// When another transport of the session is borrowed late and released
+		testee.release(testee.borrow(sessionMock));
+
+		// Then it is closed instead of being pooled
+		verify(secondTransportMock).close();
+		verify(transportMock, never()).close();
+		assertThat("retired", testee.isRetired(sessionMock), is(true));
+
+		testee.release(borrowed);
+	}
+
+	@Test
+	public void testTransportConnectedAfterSessionWasRetiredIsNotPooled() throws MessagingException {
+		// Given a session without borrowed transports that was retired
+		final SmtpTransportPool testee = new SmtpTransportPool(2, 60000, 5000, 100);
+		doReturn(transportMock, secondTransportMock).when(sessionMock).getTransport();
+		testee.retire(sessionMock);
+
+		// When an email created before the session was replaced is sent with it
+		testee.release(testee.borrow(sessionMock));
+
+		// Then the transport is closed instead of being pooled ...
+		verify(transportMock).close();
+		assertThat("retired", testee.isRetired(sessionMock), is(true));
+
+		// ... and the next email connects again
+		testee.release(testee.borrow(sessionMock));
+		verify(secondTransportMock).close();
+	}
+
+}